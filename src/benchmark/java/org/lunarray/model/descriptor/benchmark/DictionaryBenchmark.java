@@ -0,0 +1,191 @@
+/* 
+ * Model Tools.
+ * Copyright (C) 2013 Pal Hargitai (pal@lunarray.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.lunarray.model.descriptor.benchmark;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.EntityTransaction;
+import javax.persistence.Persistence;
+
+import org.lunarray.model.descriptor.builder.annotation.resolver.attribute.jpa.JpaAttributeEntityResolverStrategy;
+import org.lunarray.model.descriptor.builder.annotation.resolver.attribute.jpa.JpaAttributePropertyResolverStrategy;
+import org.lunarray.model.descriptor.builder.annotation.resolver.entity.def.DefaultEntityAttributeResolverStrategy;
+import org.lunarray.model.descriptor.builder.annotation.resolver.property.def.DefaultPropertyAttributeResolverStrategy;
+import org.lunarray.model.descriptor.builder.annotation.simple.SimpleBuilder;
+import org.lunarray.model.descriptor.dictionary.DictionaryJpaImpl;
+import org.lunarray.model.descriptor.dictionary.exceptions.DictionaryException;
+import org.lunarray.model.descriptor.model.Model;
+import org.lunarray.model.descriptor.model.SampleEntity01;
+import org.lunarray.model.descriptor.model.entity.KeyedEntityDescriptor;
+import org.lunarray.model.descriptor.resource.jparesource.JpaResource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the JPA dictionary against the test persistence unit.
+ * 
+ * @author Pal Hargitai (pal@lunarray.org)
+ * @see DictionaryJpaImpl
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DictionaryBenchmark {
+
+	/** The deep offset. */
+	private static final int DEEP_ROW = 9000;
+	/** The number of elements. */
+	private static final int ELEMENTS = 10000;
+	/** The page size. */
+	private static final int PAGE_SIZE = 50;
+	/** The shallow offset. */
+	private static final int SHALLOW_ROW = 50;
+
+	/** The descriptor. */
+	private KeyedEntityDescriptor<SampleEntity01, Long> descriptor;
+	/** The JPA dictionary. */
+	private DictionaryJpaImpl dictionary;
+	/** The entity manager factory. */
+	private EntityManagerFactory emf;
+	/** The keys of the elements. */
+	private List<Long> keys;
+	/** The key sequence. */
+	private Random random;
+
+	/**
+	 * Benchmarks looking up all elements.
+	 * 
+	 * @return The elements.
+	 * @throws DictionaryException
+	 *             Thrown if the lookup failed.
+	 */
+	@Benchmark
+	public Collection<SampleEntity01> lookupAll() throws DictionaryException {
+		return this.dictionary.lookup(this.descriptor);
+	}
+
+	/**
+	 * Benchmarks looking up an element by key.
+	 * 
+	 * @return The element.
+	 * @throws DictionaryException
+	 *             Thrown if the lookup failed.
+	 */
+	@Benchmark
+	public SampleEntity01 lookupKey() throws DictionaryException {
+		return this.dictionary.lookup(this.descriptor, this.keys.get(this.random.nextInt(this.keys.size())));
+	}
+
+	/**
+	 * Benchmarks looking up a page at a deep offset.
+	 * 
+	 * @return The page.
+	 * @throws DictionaryException
+	 *             Thrown if the lookup failed.
+	 */
+	@Benchmark
+	public List<SampleEntity01> lookupPaginatedDeep() throws DictionaryException {
+		return this.dictionary.lookupPaginated(this.descriptor, DictionaryBenchmark.DEEP_ROW, DictionaryBenchmark.PAGE_SIZE);
+	}
+
+	/**
+	 * Benchmarks looking up a page at a shallow offset.
+	 * 
+	 * @return The page.
+	 * @throws DictionaryException
+	 *             Thrown if the lookup failed.
+	 */
+	@Benchmark
+	public List<SampleEntity01> lookupPaginatedShallow() throws DictionaryException {
+		return this.dictionary.lookupPaginated(this.descriptor, DictionaryBenchmark.SHALLOW_ROW, DictionaryBenchmark.PAGE_SIZE);
+	}
+
+	/**
+	 * Benchmarks counting the elements.
+	 * 
+	 * @return The count.
+	 * @throws DictionaryException
+	 *             Thrown if the lookup failed.
+	 */
+	@Benchmark
+	public int lookupTotals() throws DictionaryException {
+		return this.dictionary.lookupTotals(this.descriptor);
+	}
+
+	/**
+	 * Builds the model and inserts the elements.
+	 * 
+	 * @throws Exception
+	 *             Thrown if the model could not be built.
+	 */
+	@SuppressWarnings("unchecked")
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		this.emf = Persistence.createEntityManagerFactory("default-unit",
+				Collections.singletonMap("hibernate.generate_statistics", "false"));
+		final SimpleBuilder<Object> builder = SimpleBuilder.createBuilder();
+		builder.attributePropertyResolver(new JpaAttributePropertyResolverStrategy(new DefaultPropertyAttributeResolverStrategy()))
+				.attributeEntityResolver(new JpaAttributeEntityResolverStrategy(new DefaultEntityAttributeResolverStrategy<Object>()))
+				.resources(new JpaResource<Object>(this.emf));
+		final Model<Object> model = builder.build();
+		this.descriptor = model.getEntity(SampleEntity01.class).adapt(KeyedEntityDescriptor.class);
+		this.keys = new ArrayList<Long>(DictionaryBenchmark.ELEMENTS);
+		final EntityManager em = this.emf.createEntityManager();
+		final EntityTransaction et = em.getTransaction();
+		et.begin();
+		for (int i = 0; i < DictionaryBenchmark.ELEMENTS; i++) {
+			final SampleEntity01 entity = new SampleEntity01();
+			entity.setSample(new StringBuilder("entity-instance-").append(i).toString());
+			em.persist(entity);
+			this.keys.add(entity.getIdentifier());
+		}
+		et.commit();
+		em.close();
+		this.dictionary = new DictionaryJpaImpl(this.emf);
+		this.random = new Random(0);
+	}
+
+	/**
+	 * Closes the dictionary and entity manager factory.
+	 */
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		this.dictionary.close();
+		this.emf.close();
+	}
+}
@@ -0,0 +1,154 @@
+/* 
+ * Model Tools.
+ * Copyright (C) 2013 Pal Hargitai (pal@lunarray.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.lunarray.model.descriptor.benchmark;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.EntityTransaction;
+import javax.persistence.Persistence;
+
+import org.lunarray.model.descriptor.builder.annotation.resolver.attribute.jpa.JpaAttributeEntityResolverStrategy;
+import org.lunarray.model.descriptor.builder.annotation.resolver.attribute.jpa.JpaAttributePropertyResolverStrategy;
+import org.lunarray.model.descriptor.builder.annotation.resolver.entity.def.DefaultEntityAttributeResolverStrategy;
+import org.lunarray.model.descriptor.builder.annotation.resolver.property.def.DefaultPropertyAttributeResolverStrategy;
+import org.lunarray.model.descriptor.builder.annotation.simple.SimpleBuilder;
+import org.lunarray.model.descriptor.dictionary.CloseableIterator;
+import org.lunarray.model.descriptor.dictionary.DictionaryJpaImpl;
+import org.lunarray.model.descriptor.model.Model;
+import org.lunarray.model.descriptor.model.SampleEntity01;
+import org.lunarray.model.descriptor.model.entity.EntityDescriptor;
+import org.lunarray.model.descriptor.resource.jparesource.JpaResource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks iterating all elements through a shared entity manager, at a
+ * scale where a persistence context holding every element would not fit the
+ * heap. Run with <code>-prof gc</code> to see the heap stays bounded by the
+ * chunk size rather than the number of elements.
+ * 
+ * @author Pal Hargitai (pal@lunarray.org)
+ * @see DictionaryJpaImpl#lookupIterator(EntityDescriptor, int)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = "-Xmx1g")
+public class IteratorBenchmark {
+
+	/** The chunk size. */
+	private static final int CHUNK_SIZE = 1000;
+
+	/** The descriptor. */
+	private EntityDescriptor<SampleEntity01> descriptor;
+	/** The JPA dictionary. */
+	private DictionaryJpaImpl dictionary;
+	/** The number of elements. */
+	@Param({ "100000", "1000000" })
+	private int elements;
+	/** The entity manager factory. */
+	private EntityManagerFactory emf;
+	/** The shared entity manager. */
+	private EntityManager manager;
+
+	/**
+	 * Benchmarks iterating all elements.
+	 * 
+	 * @param blackhole
+	 *            The blackhole consuming the elements.
+	 * @return The number of elements.
+	 * @throws Exception
+	 *             Thrown if the iteration failed.
+	 */
+	@Benchmark
+	public int iterate(final Blackhole blackhole) throws Exception {
+		int count = 0;
+		final CloseableIterator<SampleEntity01> iterator = this.dictionary.lookupIterator(this.descriptor,
+				IteratorBenchmark.CHUNK_SIZE);
+		try {
+			while (iterator.hasNext()) {
+				blackhole.consume(iterator.next());
+				count++;
+			}
+		} finally {
+			iterator.close();
+		}
+		return count;
+	}
+
+	/**
+	 * Builds the model and inserts the elements.
+	 * 
+	 * @throws Exception
+	 *             Thrown if the model could not be built.
+	 */
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		this.emf = Persistence.createEntityManagerFactory("default-unit",
+				Collections.singletonMap("hibernate.generate_statistics", "false"));
+		final SimpleBuilder<Object> builder = SimpleBuilder.createBuilder();
+		builder.attributePropertyResolver(new JpaAttributePropertyResolverStrategy(new DefaultPropertyAttributeResolverStrategy()))
+				.attributeEntityResolver(new JpaAttributeEntityResolverStrategy(new DefaultEntityAttributeResolverStrategy<Object>()))
+				.resources(new JpaResource<Object>(this.emf));
+		final Model<Object> model = builder.build();
+		this.descriptor = model.getEntity(SampleEntity01.class);
+		final EntityManager em = this.emf.createEntityManager();
+		final EntityTransaction et = em.getTransaction();
+		et.begin();
+		for (int i = 0; i < this.elements; i++) {
+			final SampleEntity01 entity = new SampleEntity01();
+			entity.setSample(new StringBuilder("entity-instance-").append(i).toString());
+			em.persist(entity);
+			if (i % IteratorBenchmark.CHUNK_SIZE == 0) {
+				em.flush();
+				em.clear();
+			}
+		}
+		et.commit();
+		em.close();
+		this.manager = this.emf.createEntityManager();
+		this.dictionary = new DictionaryJpaImpl(this.manager);
+	}
+
+	/**
+	 * Closes the dictionary and entity manager factory.
+	 */
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		this.dictionary.close();
+		this.manager.close();
+		this.emf.close();
+	}
+}
@@ -0,0 +1,174 @@
+/* 
+ * Model Tools.
+ * Copyright (C) 2013 Pal Hargitai (pal@lunarray.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.lunarray.model.descriptor.benchmark;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtField;
+import javassist.CtNewConstructor;
+import javassist.CtNewMethod;
+import javassist.bytecode.AnnotationsAttribute;
+import javassist.bytecode.ConstPool;
+import javassist.bytecode.annotation.Annotation;
+import javassist.bytecode.annotation.StringMemberValue;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+
+import org.lunarray.model.descriptor.builder.annotation.resolver.attribute.jpa.JpaAttributeEntityResolverStrategy;
+import org.lunarray.model.descriptor.builder.annotation.resolver.attribute.jpa.JpaAttributePropertyResolverStrategy;
+import org.lunarray.model.descriptor.builder.annotation.resolver.entity.def.DefaultEntityAttributeResolverStrategy;
+import org.lunarray.model.descriptor.builder.annotation.resolver.property.def.DefaultPropertyAttributeResolverStrategy;
+import org.lunarray.model.descriptor.builder.annotation.simple.SimpleBuilder;
+import org.lunarray.model.descriptor.model.Model;
+import org.lunarray.model.descriptor.resource.Resource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks building a model of generated entity classes with the JPA
+ * resolver strategies.
+ * 
+ * @author Pal Hargitai (pal@lunarray.org)
+ * @see JpaAttributePropertyResolverStrategy
+ * @see JpaAttributeEntityResolverStrategy
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ModelBuildBenchmark {
+
+	/** The generated class package. */
+	private static final String PACKAGE = "org.lunarray.model.descriptor.benchmark.generated.";
+
+	/** The number of entity classes. */
+	@Param({ "10", "100", "1000" })
+	private int entityCount;
+	/** The resource holding the generated classes. */
+	private Resource<Class<? extends Object>> resource;
+
+	/**
+	 * Benchmarks building the model.
+	 * 
+	 * @return The model.
+	 */
+	@Benchmark
+	public Model<Object> build() {
+		final SimpleBuilder<Object> builder = SimpleBuilder.createBuilder();
+		builder.attributePropertyResolver(new JpaAttributePropertyResolverStrategy(new DefaultPropertyAttributeResolverStrategy()))
+				.attributeEntityResolver(new JpaAttributeEntityResolverStrategy(new DefaultEntityAttributeResolverStrategy<Object>()))
+				.resources(this.resource);
+		return builder.build();
+	}
+
+	/**
+	 * Generates the entity classes.
+	 * 
+	 * @throws Exception
+	 *             Thrown if the classes could not be generated.
+	 */
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		final ClassPool pool = new ClassPool(true);
+		final ClassLoader loader = new URLClassLoader(new URL[0], ModelBuildBenchmark.class.getClassLoader());
+		final List<Class<? extends Object>> classes = new ArrayList<Class<? extends Object>>(this.entityCount);
+		for (int i = 0; i < this.entityCount; i++) {
+			classes.add(ModelBuildBenchmark.generate(pool, i).toClass(loader, null));
+		}
+		this.resource = new Resource<Class<? extends Object>>() {
+			/** {@inheritDoc} */
+			@Override
+			public Collection<Class<? extends Object>> getResources() {
+				return classes;
+			}
+		};
+	}
+
+	/**
+	 * Creates an annotation attribute.
+	 * 
+	 * @param constPool
+	 *            The constant pool.
+	 * @param type
+	 *            The annotation type.
+	 * @param name
+	 *            The name member, or null for none.
+	 * @return The attribute.
+	 */
+	private static AnnotationsAttribute annotate(final ConstPool constPool, final Class<?> type, final String name) {
+		final AnnotationsAttribute attribute = new AnnotationsAttribute(constPool, AnnotationsAttribute.visibleTag);
+		final Annotation annotation = new Annotation(type.getName(), constPool);
+		if (name != null) {
+			annotation.addMemberValue("name", new StringMemberValue(name, constPool));
+		}
+		attribute.addAnnotation(annotation);
+		return attribute;
+	}
+
+	/**
+	 * Generates an entity class with a key and a named column.
+	 * 
+	 * @param pool
+	 *            The class pool.
+	 * @param index
+	 *            The class index.
+	 * @return The class.
+	 * @throws Exception
+	 *             Thrown if the class could not be generated.
+	 */
+	private static CtClass generate(final ClassPool pool, final int index) throws Exception {
+		final CtClass entity = pool.makeClass(new StringBuilder(ModelBuildBenchmark.PACKAGE).append("GeneratedEntity").append(index)
+				.toString());
+		final ConstPool constPool = entity.getClassFile().getConstPool();
+		entity.getClassFile().addAttribute(
+				ModelBuildBenchmark.annotate(constPool, Entity.class, new StringBuilder("generated-").append(index).toString()));
+		entity.addConstructor(CtNewConstructor.defaultConstructor(entity));
+		final CtField identifier = new CtField(pool.get(Long.class.getName()), "identifier", entity);
+		identifier.getFieldInfo().addAttribute(ModelBuildBenchmark.annotate(constPool, Id.class, null));
+		entity.addField(identifier);
+		entity.addMethod(CtNewMethod.getter("getIdentifier", identifier));
+		entity.addMethod(CtNewMethod.setter("setIdentifier", identifier));
+		final CtField sample = new CtField(pool.get(String.class.getName()), "sample", entity);
+		sample.getFieldInfo().addAttribute(ModelBuildBenchmark.annotate(constPool, Column.class, "sampleColumn"));
+		entity.addField(sample);
+		entity.addMethod(CtNewMethod.getter("getSample", sample));
+		entity.addMethod(CtNewMethod.setter("setSample", sample));
+		return entity;
+	}
+}
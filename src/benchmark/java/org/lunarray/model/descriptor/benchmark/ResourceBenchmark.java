@@ -0,0 +1,108 @@
+/* 
+ * Model Tools.
+ * Copyright (C) 2013 Pal Hargitai (pal@lunarray.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.lunarray.model.descriptor.benchmark;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+import org.lunarray.model.descriptor.resource.jparesource.IndexedJpaResource;
+import org.lunarray.model.descriptor.resource.jparesource.JpaResource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks resolving the entities of the test persistence unit.
+ * 
+ * Cold lookups use a new resource each time, so bootstrap the persistence
+ * unit or read the index. Warm lookups reuse a resource.
+ * 
+ * @author Pal Hargitai (pal@lunarray.org)
+ * @see JpaResource
+ * @see IndexedJpaResource
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+public class ResourceBenchmark {
+
+	/** The persistence unit. */
+	private static final String UNIT = "default-unit";
+
+	/** The resource. */
+	private JpaResource<Object> resource;
+
+	/**
+	 * Benchmarks resolving the entities through the index.
+	 * 
+	 * @return The entities.
+	 */
+	@Benchmark
+	@BenchmarkMode(Mode.AverageTime)
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	@Warmup(iterations = 5, time = 1)
+	@Measurement(iterations = 5, time = 1)
+	public Collection<Class<? extends Object>> getResourcesIndexed() {
+		return new IndexedJpaResource<Object>(ResourceBenchmark.UNIT).getResources();
+	}
+
+	/**
+	 * Benchmarks resolving the entities with a new resource.
+	 * 
+	 * @return The entities.
+	 */
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	@Warmup(iterations = 3)
+	@Measurement(iterations = 10)
+	public Collection<Class<? extends Object>> getResourcesCold() {
+		return new JpaResource<Object>(ResourceBenchmark.UNIT).getResources();
+	}
+
+	/**
+	 * Benchmarks resolving the entities with a resource that has resolved
+	 * them before.
+	 * 
+	 * @return The entities.
+	 */
+	@Benchmark
+	@BenchmarkMode(Mode.AverageTime)
+	@OutputTimeUnit(TimeUnit.NANOSECONDS)
+	@Warmup(iterations = 5, time = 1)
+	@Measurement(iterations = 5, time = 1)
+	public Collection<Class<? extends Object>> getResourcesWarm() {
+		return this.resource.getResources();
+	}
+
+	/**
+	 * Creates and warms the resource.
+	 */
+	@Setup(Level.Trial)
+	public void setup() {
+		this.resource = new JpaResource<Object>(ResourceBenchmark.UNIT);
+		this.resource.getResources();
+	}
+}
@@ -0,0 +1,92 @@
+/* 
+ * Model Tools.
+ * Copyright (C) 2013 Pal Hargitai (pal@lunarray.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.lunarray.model.descriptor.builder.annotation.resolver.attribute.jpa;
+
+/**
+ * The resolved metadata of a persistent attribute.
+ * 
+ * @author Pal Hargitai (pal@lunarray.org)
+ * @see MetamodelPropertyResolverStrategy
+ */
+final class AttributeMetadata {
+
+	/** Whether the attribute is embedded. */
+	private final transient boolean embedded;
+	/** Whether the attribute is a key. */
+	private final transient boolean key;
+	/** The column name, may be empty. */
+	private final transient String name;
+	/** The referenced entity type, may be null. */
+	private final transient Class<?> reference;
+
+	/**
+	 * Default constructor.
+	 * 
+	 * @param name
+	 *            The column name, may be empty.
+	 * @param key
+	 *            Whether the attribute is a key.
+	 * @param embedded
+	 *            Whether the attribute is embedded.
+	 * @param reference
+	 *            The referenced entity type, or null if the attribute is not
+	 *            a reference.
+	 */
+	AttributeMetadata(final String name, final boolean key, final boolean embedded, final Class<?> reference) {
+		this.name = name;
+		this.key = key;
+		this.embedded = embedded;
+		this.reference = reference;
+	}
+
+	/**
+	 * Gets the value for the name field.
+	 * 
+	 * @return The value for the name field.
+	 */
+	public String getName() {
+		return this.name;
+	}
+
+	/**
+	 * Gets the value for the reference field.
+	 * 
+	 * @return The value for the reference field.
+	 */
+	public Class<?> getReference() {
+		return this.reference;
+	}
+
+	/**
+	 * Tests whether the attribute is embedded.
+	 * 
+	 * @return True if and only if the attribute is embedded.
+	 */
+	public boolean isEmbedded() {
+		return this.embedded;
+	}
+
+	/**
+	 * Tests whether the attribute is a key.
+	 * 
+	 * @return True if and only if the attribute is a key.
+	 */
+	public boolean isKey() {
+		return this.key;
+	}
+}
@@ -23,6 +23,8 @@ import javax.persistence.Column;
 import javax.persistence.Embedded;
 import javax.persistence.EmbeddedId;
 import javax.persistence.Id;
+import javax.persistence.ManyToOne;
+import javax.persistence.OneToOne;
 
 import org.lunarray.model.descriptor.accessor.property.DescribedProperty;
 import org.lunarray.model.descriptor.builder.annotation.resolver.property.PropertyAttributeResolverStrategy;
@@ -35,7 +37,9 @@ import org.lunarray.model.descriptor.util.StringUtil;
  * <ul>
  * <li>Name uses {@link Column},</li>
  * <li>Key uses {@link Id} or {@link EmbeddedId},</li>
- * <li>Embedded uses {@link Embedded} or {@link EmbeddedId}.</li>
+ * <li>Embedded uses {@link Embedded} or {@link EmbeddedId},</li>
+ * <li>Reference uses {@link OneToOne} or {@link ManyToOne}, with their
+ * target entity as relation if given.</li>
  * </ul>
  * 
  * @author Pal Hargitai (pal@lunarray.org)
@@ -81,7 +85,23 @@ public final class JpaAttributePropertyResolverStrategy
 	/** {@inheritDoc} */
 	@Override
 	public Class<?> getReferenceRelation(final DescribedProperty<?> property) {
-		return this.delegate.getReferenceRelation(property);
+		Class<?> relation = void.class;
+		if (property.isAnnotationPresent(OneToOne.class)) {
+			final Iterator<OneToOne> candidates = property.getAnnotation(OneToOne.class).iterator();
+			while (void.class.equals(relation) && candidates.hasNext()) {
+				relation = candidates.next().targetEntity();
+			}
+		}
+		if (property.isAnnotationPresent(ManyToOne.class)) {
+			final Iterator<ManyToOne> candidates = property.getAnnotation(ManyToOne.class).iterator();
+			while (void.class.equals(relation) && candidates.hasNext()) {
+				relation = candidates.next().targetEntity();
+			}
+		}
+		if (void.class.equals(relation)) {
+			relation = this.delegate.getReferenceRelation(property);
+		}
+		return relation;
 	}
 
 	/** {@inheritDoc} */
@@ -115,6 +135,9 @@ public final class JpaAttributePropertyResolverStrategy
 	/** {@inheritDoc} */
 	@Override
 	public boolean isReference(final DescribedProperty<?> property) {
-		return this.delegate.isReference(property);
+		boolean reference = false;
+		reference |= property.isAnnotationPresent(OneToOne.class);
+		reference |= property.isAnnotationPresent(ManyToOne.class);
+		return reference || this.delegate.isReference(property);
 	}
 }
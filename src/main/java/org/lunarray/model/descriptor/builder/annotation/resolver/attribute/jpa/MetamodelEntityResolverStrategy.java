@@ -0,0 +1,82 @@
+/* 
+ * Model Tools.
+ * Copyright (C) 2013 Pal Hargitai (pal@lunarray.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.lunarray.model.descriptor.builder.annotation.resolver.attribute.jpa;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.persistence.metamodel.EntityType;
+import javax.persistence.metamodel.Metamodel;
+
+import org.apache.commons.lang.Validate;
+import org.lunarray.common.check.CheckUtil;
+import org.lunarray.model.descriptor.accessor.entity.DescribedEntity;
+import org.lunarray.model.descriptor.builder.annotation.resolver.entity.EntityAttributeResolverStrategy;
+
+/**
+ * JPA meta model based entity resolver strategy.
+ * 
+ * Resolves the names of all entity types once, up front, from
+ * {@link EntityType#getName()}. Entity names mapped in XML are thus found as
+ * well, and every entity of a hierarchy resolves its own name. Names that are
+ * the unqualified class name, the JPA default, and types the meta model does
+ * not manage are resolved through the delegate.
+ * 
+ * @author Pal Hargitai (pal@lunarray.org)
+ * @see MetamodelPropertyResolverStrategy
+ */
+public final class MetamodelEntityResolverStrategy
+		implements EntityAttributeResolverStrategy {
+
+	/** The attribute resolver delegate. */
+	private final transient EntityAttributeResolverStrategy delegate;
+	/** The explicit entity names, by entity type. */
+	private final transient Map<Class<?>, String> names;
+
+	/**
+	 * Default constructor.
+	 * 
+	 * @param metamodel
+	 *            The meta model. May not be null.
+	 * @param delegate
+	 *            The attribute resolver delegate. May not be null.
+	 */
+	public MetamodelEntityResolverStrategy(final Metamodel metamodel, final EntityAttributeResolverStrategy delegate) {
+		Validate.notNull(metamodel, "Meta model may not be null.");
+		Validate.notNull(delegate, "Delegate may not be null.");
+		this.delegate = delegate;
+		final Map<Class<?>, String> resolved = new HashMap<Class<?>, String>();
+		for (final EntityType<?> entityType : metamodel.getEntities()) {
+			if (!entityType.getJavaType().getSimpleName().equals(entityType.getName())) {
+				resolved.put(entityType.getJavaType(), entityType.getName());
+			}
+		}
+		this.names = Collections.unmodifiableMap(resolved);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public String getName(final DescribedEntity<?> entityType) {
+		final String name = this.names.get(entityType.getEntityType());
+		if (CheckUtil.isNull(name)) {
+			return this.delegate.getName(entityType);
+		}
+		return name;
+	}
+}
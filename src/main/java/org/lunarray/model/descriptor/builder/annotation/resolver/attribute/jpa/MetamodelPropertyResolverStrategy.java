@@ -0,0 +1,250 @@
+/* 
+ * Model Tools.
+ * Copyright (C) 2013 Pal Hargitai (pal@lunarray.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.lunarray.model.descriptor.builder.annotation.resolver.attribute.jpa;
+
+import java.lang.reflect.AnnotatedElement;
+import java.lang.reflect.Member;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import javax.persistence.Column;
+import javax.persistence.metamodel.Attribute;
+import javax.persistence.metamodel.Attribute.PersistentAttributeType;
+import javax.persistence.metamodel.IdentifiableType;
+import javax.persistence.metamodel.ManagedType;
+import javax.persistence.metamodel.Metamodel;
+import javax.persistence.metamodel.SingularAttribute;
+
+import org.apache.commons.lang.Validate;
+import org.lunarray.common.check.CheckUtil;
+import org.lunarray.model.descriptor.accessor.property.DescribedProperty;
+import org.lunarray.model.descriptor.builder.annotation.resolver.property.PropertyAttributeResolverStrategy;
+import org.lunarray.model.descriptor.util.StringUtil;
+
+/**
+ * JPA meta model based property attribute resolver.
+ * 
+ * Resolves the attributes of all managed types once, up front:
+ * <ul>
+ * <li>Name uses {@link Column},</li>
+ * <li>Key uses {@link SingularAttribute#isId()} or the id class attributes,</li>
+ * <li>Embedded uses {@link PersistentAttributeType#EMBEDDED},</li>
+ * <li>Reference uses {@link PersistentAttributeType#ONE_TO_ONE} or
+ * {@link PersistentAttributeType#MANY_TO_ONE}, with the attribute type as
+ * relation.</li>
+ * </ul>
+ * Keys and embedded attributes mapped in XML or inherited from mapped
+ * superclasses are thus found as well. The attributes are kept per managed
+ * type, including inherited attributes, and properties are matched by the
+ * entity type of the property and the name the delegate resolves. Properties
+ * of types the meta model does not manage, such as data transfer objects, or
+ * that match no attribute, are resolved through a
+ * {@link JpaAttributePropertyResolverStrategy}.
+ * 
+ * @author Pal Hargitai (pal@lunarray.org)
+ */
+public final class MetamodelPropertyResolverStrategy
+		implements PropertyAttributeResolverStrategy {
+
+	/** The resolved attributes, by managed type and attribute name. */
+	private final transient Map<Class<?>, Map<String, AttributeMetadata>> attributes;
+	/** The attribute resolver delegate. */
+	private final transient PropertyAttributeResolverStrategy delegate;
+	/** The annotation based resolver for unresolved properties. */
+	private final transient PropertyAttributeResolverStrategy fallback;
+
+	/**
+	 * Default constructor.
+	 * 
+	 * @param metamodel
+	 *            The meta model. May not be null.
+	 * @param delegate
+	 *            The attribute resolver delegate. May not be null.
+	 */
+	public MetamodelPropertyResolverStrategy(final Metamodel metamodel, final PropertyAttributeResolverStrategy delegate) {
+		Validate.notNull(metamodel, "Meta model may not be null.");
+		Validate.notNull(delegate, "Delegate may not be null.");
+		this.delegate = delegate;
+		this.fallback = new JpaAttributePropertyResolverStrategy(delegate);
+		final Map<Class<?>, Map<String, AttributeMetadata>> resolved = new HashMap<Class<?>, Map<String, AttributeMetadata>>();
+		for (final ManagedType<?> type : metamodel.getManagedTypes()) {
+			final Set<String> idClassAttributes = MetamodelPropertyResolverStrategy.getIdClassAttributes(type);
+			final Map<String, AttributeMetadata> typeAttributes = new HashMap<String, AttributeMetadata>();
+			for (final Attribute<?, ?> attribute : type.getAttributes()) {
+				typeAttributes.put(attribute.getName(),
+						MetamodelPropertyResolverStrategy.createMetadata(attribute, idClassAttributes.contains(attribute.getName())));
+			}
+			resolved.put(type.getJavaType(), typeAttributes);
+		}
+		this.attributes = Collections.unmodifiableMap(resolved);
+	}
+
+	/**
+	 * Creates the metadata of an attribute.
+	 * 
+	 * @param attribute
+	 *            The attribute.
+	 * @param idClassAttribute
+	 *            Whether the attribute is an id class attribute.
+	 * @return The metadata.
+	 */
+	private static AttributeMetadata createMetadata(final Attribute<?, ?> attribute, final boolean idClassAttribute) {
+		String name = "";
+		final Member member = attribute.getJavaMember();
+		if (member instanceof AnnotatedElement) {
+			final Column column = ((AnnotatedElement) member).getAnnotation(Column.class);
+			if (!CheckUtil.isNull(column)) {
+				name = column.name();
+			}
+		}
+		final boolean key = idClassAttribute
+				|| (attribute instanceof SingularAttribute && ((SingularAttribute<?, ?>) attribute).isId());
+		final PersistentAttributeType type = attribute.getPersistentAttributeType();
+		Class<?> reference = null;
+		if (PersistentAttributeType.ONE_TO_ONE.equals(type) || PersistentAttributeType.MANY_TO_ONE.equals(type)) {
+			reference = ((SingularAttribute<?, ?>) attribute).getType().getJavaType();
+		}
+		return new AttributeMetadata(name, key, PersistentAttributeType.EMBEDDED.equals(type), reference);
+	}
+
+	/**
+	 * Gets the names of the id class attributes of a type.
+	 * 
+	 * @param type
+	 *            The type.
+	 * @return The names, empty if the type has a single id attribute.
+	 */
+	private static Set<String> getIdClassAttributes(final ManagedType<?> type) {
+		final Set<String> names = new HashSet<String>();
+		if (type instanceof IdentifiableType) {
+			final IdentifiableType<?> identifiable = (IdentifiableType<?>) type;
+			if (!CheckUtil.isNull(identifiable.getIdType()) && !identifiable.hasSingleIdAttribute()) {
+				for (final SingularAttribute<?, ?> attribute : identifiable.getIdClassAttributes()) {
+					names.add(attribute.getName());
+				}
+			}
+		}
+		return names;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public String getAlias(final DescribedProperty<?> property) {
+		return this.delegate.getAlias(property);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public String getName(final DescribedProperty<?> property) {
+		final String name = this.delegate.getName(property);
+		final AttributeMetadata metadata = this.getMetadata(property, name);
+		if (CheckUtil.isNull(metadata)) {
+			return this.fallback.getName(property);
+		} else if (StringUtil.isEmptyString(metadata.getName())) {
+			return name;
+		}
+		return metadata.getName();
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public Class<?> getReferenceRelation(final DescribedProperty<?> property) {
+		final AttributeMetadata metadata = this.getMetadata(property);
+		if (CheckUtil.isNull(metadata)) {
+			return this.fallback.getReferenceRelation(property);
+		} else if (CheckUtil.isNull(metadata.getReference())) {
+			return this.delegate.getReferenceRelation(property);
+		}
+		return metadata.getReference();
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public boolean isAlias(final DescribedProperty<?> property) {
+		return this.delegate.isAlias(property);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public boolean isEmbedded(final DescribedProperty<?> property) {
+		final AttributeMetadata metadata = this.getMetadata(property);
+		if (CheckUtil.isNull(metadata)) {
+			return this.fallback.isEmbedded(property);
+		}
+		return metadata.isEmbedded();
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public boolean isIgnore(final DescribedProperty<?> property) {
+		return this.delegate.isIgnore(property);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public boolean isKey(final DescribedProperty<?> property) {
+		final AttributeMetadata metadata = this.getMetadata(property);
+		if (CheckUtil.isNull(metadata)) {
+			return this.fallback.isKey(property);
+		}
+		return metadata.isKey();
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public boolean isReference(final DescribedProperty<?> property) {
+		final AttributeMetadata metadata = this.getMetadata(property);
+		if (CheckUtil.isNull(metadata)) {
+			return this.fallback.isReference(property);
+		}
+		return !CheckUtil.isNull(metadata.getReference()) || this.delegate.isReference(property);
+	}
+
+	/**
+	 * Gets the metadata of a property.
+	 * 
+	 * @param property
+	 *            The property.
+	 * @return The metadata, or null if the property is not an attribute of a
+	 *         managed type.
+	 */
+	private AttributeMetadata getMetadata(final DescribedProperty<?> property) {
+		return this.getMetadata(property, this.delegate.getName(property));
+	}
+
+	/**
+	 * Gets the metadata of a property.
+	 * 
+	 * @param property
+	 *            The property.
+	 * @param name
+	 *            The name the delegate resolves for the property.
+	 * @return The metadata, or null if the property is not an attribute of a
+	 *         managed type.
+	 */
+	private AttributeMetadata getMetadata(final DescribedProperty<?> property, final String name) {
+		final Map<String, AttributeMetadata> typeAttributes = this.attributes.get(property.getEntityType());
+		if (CheckUtil.isNull(typeAttributes)) {
+			return null;
+		}
+		return typeAttributes.get(name);
+	}
+}
@@ -16,7 +16,8 @@
  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 /**
- * JPA based entity and property resolvers, processes JPA annotations.
+ * JPA based entity and property resolvers, processes JPA annotations or the
+ * JPA meta model.
  */
 package org.lunarray.model.descriptor.builder.annotation.resolver.attribute.jpa;
 
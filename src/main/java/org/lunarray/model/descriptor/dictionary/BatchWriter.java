@@ -0,0 +1,291 @@
+/* 
+ * Model Tools.
+ * Copyright (C) 2013 Pal Hargitai (pal@lunarray.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.lunarray.model.descriptor.dictionary;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.EntityTransaction;
+import javax.persistence.FlushModeType;
+import javax.persistence.PersistenceUnitUtil;
+
+import org.apache.commons.lang.Validate;
+import org.lunarray.common.check.CheckUtil;
+import org.lunarray.model.descriptor.dictionary.manager.ReplicaEntityManagerProvider;
+import org.lunarray.model.descriptor.model.entity.EntityDescriptor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes entities in bulk, as a companion to the read only dictionary.
+ * 
+ * Every call runs in a single resource local transaction on its own entity
+ * manager. The persistence context is flushed and cleared every batch, so
+ * memory use is bounded by the batch size. Each flush is sent as JDBC batches
+ * if the provider is configured to batch, see
+ * {@link #createBatchingProperties(int)}, and the batch size should match the
+ * JDBC batch size. A writer on a {@link ReplicaEntityManagerProvider} writes
+ * to the primary and pins the writing thread to it after every commit, so the
+ * dictionary reads its own writes within the pin window.
+ * 
+ * @author Pal Hargitai (pal@lunarray.org)
+ */
+public final class BatchWriter {
+
+	/** The default batch size. */
+	public static final int DEFAULT_BATCH_SIZE = 50;
+	/** The EclipseLink batch writing property. */
+	public static final String ECLIPSELINK_BATCH_WRITING = "eclipselink.jdbc.batch-writing";
+	/** The EclipseLink batch writing size property. */
+	public static final String ECLIPSELINK_BATCH_WRITING_SIZE = "eclipselink.jdbc.batch-writing.size";
+	/** The Hibernate batch size property. */
+	public static final String HIBERNATE_BATCH_SIZE = "hibernate.jdbc.batch_size";
+	/** The Hibernate versioned data batching property. */
+	public static final String HIBERNATE_BATCH_VERSIONED_DATA = "hibernate.jdbc.batch_versioned_data";
+	/** The Hibernate insert ordering property. */
+	public static final String HIBERNATE_ORDER_INSERTS = "hibernate.order_inserts";
+	/** The Hibernate update ordering property. */
+	public static final String HIBERNATE_ORDER_UPDATES = "hibernate.order_updates";
+	/** Validation message. */
+	private static final String ENTITIES_NULL = "Entities may not be null.";
+	/** Validation message. */
+	private static final String ENTITY_DESCRIPTOR_NULL = "Entity descriptor may not be null.";
+	/** The logger. */
+	private static final Logger LOGGER = LoggerFactory.getLogger(BatchWriter.class);
+	/** The number of entities per flush. */
+	private transient volatile int batchSize = BatchWriter.DEFAULT_BATCH_SIZE;
+	/** The entity manager factory. */
+	private final transient EntityManagerFactory entityManagerFactory;
+	/** The replica provider to record writes on, may be null. */
+	private final transient ReplicaEntityManagerProvider replicaProvider;
+
+	/**
+	 * Default constructor.
+	 * 
+	 * @param entityManagerFactory
+	 *            The entity manager factory to write through. May not be
+	 *            null.
+	 */
+	public BatchWriter(final EntityManagerFactory entityManagerFactory) {
+		this(entityManagerFactory, null);
+	}
+
+	/**
+	 * Constructs a writer on the primary of a replica provider. Every
+	 * committed write is recorded on the provider.
+	 * 
+	 * @param replicaProvider
+	 *            The replica provider. May not be null.
+	 * @see ReplicaEntityManagerProvider#recordWrite()
+	 */
+	public BatchWriter(final ReplicaEntityManagerProvider replicaProvider) {
+		this(BatchWriter.primaryFactory(replicaProvider), replicaProvider);
+	}
+
+	/**
+	 * Constructs the writer.
+	 * 
+	 * @param entityManagerFactory
+	 *            The entity manager factory to write through. May not be
+	 *            null.
+	 * @param replicaProvider
+	 *            The replica provider to record writes on, may be null.
+	 */
+	private BatchWriter(final EntityManagerFactory entityManagerFactory, final ReplicaEntityManagerProvider replicaProvider) {
+		Validate.notNull(entityManagerFactory, "Entity manager factory may not be null.");
+		this.entityManagerFactory = entityManagerFactory;
+		this.replicaProvider = replicaProvider;
+	}
+
+	/**
+	 * Creates the properties that enable JDBC batching, with ordered inserts
+	 * and updates, for both Hibernate and EclipseLink. Pass these when
+	 * creating the entity manager factory.
+	 * 
+	 * @param batchSize
+	 *            The JDBC batch size. Must be positive.
+	 * @return The properties.
+	 */
+	public static Map<String, Object> createBatchingProperties(final int batchSize) {
+		Validate.isTrue(CheckUtil.checkPositive(batchSize), "Batch size is not positive.");
+		final Map<String, Object> properties = new HashMap<String, Object>();
+		properties.put(BatchWriter.HIBERNATE_BATCH_SIZE, String.valueOf(batchSize));
+		properties.put(BatchWriter.HIBERNATE_BATCH_VERSIONED_DATA, Boolean.TRUE.toString());
+		properties.put(BatchWriter.HIBERNATE_ORDER_INSERTS, Boolean.TRUE.toString());
+		properties.put(BatchWriter.HIBERNATE_ORDER_UPDATES, Boolean.TRUE.toString());
+		properties.put(BatchWriter.ECLIPSELINK_BATCH_WRITING, "JDBC");
+		properties.put(BatchWriter.ECLIPSELINK_BATCH_WRITING_SIZE, String.valueOf(batchSize));
+		return Collections.unmodifiableMap(properties);
+	}
+
+	/**
+	 * Gets the primary factory of a replica provider.
+	 * 
+	 * @param replicaProvider
+	 *            The replica provider. May not be null.
+	 * @return The primary factory.
+	 */
+	private static EntityManagerFactory primaryFactory(final ReplicaEntityManagerProvider replicaProvider) {
+		Validate.notNull(replicaProvider, "Replica provider may not be null.");
+		return replicaProvider.getPrimaryFactory();
+	}
+
+	/**
+	 * Gets the value for the batchSize field.
+	 * 
+	 * @return The value for the batchSize field.
+	 */
+	public int getBatchSize() {
+		return this.batchSize;
+	}
+
+	/**
+	 * Merges entities.
+	 * 
+	 * @param entityDescriptor
+	 *            The entity descriptor. May not be null.
+	 * @param entities
+	 *            The entities. May not be null.
+	 * @param <E>
+	 *            The entity type.
+	 * @return The number of merged entities.
+	 */
+	public <E> int merge(final EntityDescriptor<E> entityDescriptor, final Iterable<? extends E> entities) {
+		return this.write(entityDescriptor, entities, WriteOperation.MERGE);
+	}
+
+	/**
+	 * Persists new entities.
+	 * 
+	 * @param entityDescriptor
+	 *            The entity descriptor. May not be null.
+	 * @param entities
+	 *            The entities. May not be null.
+	 * @param <E>
+	 *            The entity type.
+	 * @return The number of persisted entities.
+	 */
+	public <E> int persist(final EntityDescriptor<E> entityDescriptor, final Iterable<? extends E> entities) {
+		return this.write(entityDescriptor, entities, WriteOperation.PERSIST);
+	}
+
+	/**
+	 * Removes entities, identified by their key.
+	 * 
+	 * @param entityDescriptor
+	 *            The entity descriptor. May not be null.
+	 * @param entities
+	 *            The entities. May not be null.
+	 * @param <E>
+	 *            The entity type.
+	 * @return The number of removed entities.
+	 */
+	public <E> int remove(final EntityDescriptor<E> entityDescriptor, final Iterable<? extends E> entities) {
+		return this.write(entityDescriptor, entities, WriteOperation.REMOVE);
+	}
+
+	/**
+	 * Sets the number of entities written between flushes.
+	 * 
+	 * @param batchSize
+	 *            The batch size. Must be positive.
+	 */
+	public void setBatchSize(final int batchSize) {
+		Validate.isTrue(CheckUtil.checkPositive(batchSize), "Batch size is not positive.");
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Writes entities in a single transaction, flushing and clearing every
+	 * batch. The transaction is rolled back on failure, a commit is recorded
+	 * on the replica provider, if any.
+	 * 
+	 * @param entityDescriptor
+	 *            The entity descriptor.
+	 * @param entities
+	 *            The entities.
+	 * @param operation
+	 *            The write operation.
+	 * @param <E>
+	 *            The entity type.
+	 * @return The number of written entities.
+	 */
+	private <E> int write(final EntityDescriptor<E> entityDescriptor, final Iterable<? extends E> entities,
+			final WriteOperation operation) {
+		Validate.notNull(entityDescriptor, BatchWriter.ENTITY_DESCRIPTOR_NULL);
+		Validate.notNull(entities, BatchWriter.ENTITIES_NULL);
+		final Class<E> entityType = entityDescriptor.getEntityType();
+		final int size = this.batchSize;
+		final EntityManager manager = this.entityManagerFactory.createEntityManager();
+		try {
+			manager.setFlushMode(FlushModeType.COMMIT);
+			final PersistenceUnitUtil util = this.entityManagerFactory.getPersistenceUnitUtil();
+			final EntityTransaction transaction = manager.getTransaction();
+			transaction.begin();
+			boolean success = false;
+			try {
+				int count = 0;
+				for (final E entity : entities) {
+					Validate.notNull(entity, "Entity may not be null.");
+					if (WriteOperation.PERSIST.equals(operation)) {
+						manager.persist(entity);
+					} else if (WriteOperation.MERGE.equals(operation)) {
+						manager.merge(entity);
+					} else {
+						manager.remove(manager.getReference(entityType, util.getIdentifier(entity)));
+					}
+					count++;
+					if (count % size == 0) {
+						manager.flush();
+						manager.clear();
+					}
+				}
+				transaction.commit();
+				success = true;
+				if (!CheckUtil.isNull(this.replicaProvider)) {
+					this.replicaProvider.recordWrite();
+				}
+				BatchWriter.LOGGER.debug("Wrote {} entities of {} in batches of {}.", count, entityType, size);
+				return count;
+			} finally {
+				if (!success && transaction.isActive()) {
+					transaction.rollback();
+				}
+			}
+		} finally {
+			manager.close();
+		}
+	}
+
+	/**
+	 * The write operations.
+	 * 
+	 * @author Pal Hargitai (pal@lunarray.org)
+	 */
+	private enum WriteOperation {
+		/** Merge entities. */
+		MERGE,
+		/** Persist new entities. */
+		PERSIST,
+		/** Remove entities. */
+		REMOVE;
+	}
+}
@@ -0,0 +1,187 @@
+/* 
+ * Model Tools.
+ * Copyright (C) 2013 Pal Hargitai (pal@lunarray.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.lunarray.model.descriptor.dictionary;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceException;
+
+import org.lunarray.model.descriptor.dictionary.exceptions.DictionaryException;
+import org.lunarray.model.descriptor.dictionary.manager.EntityManagerProvider;
+import org.lunarray.model.descriptor.dictionary.monitor.DictionaryOperation;
+
+/**
+ * Iterates over all entities of a type in key order, reading them in chunks.
+ * 
+ * Every chunk is read on an entity manager acquired for that chunk only, so
+ * an open iterator does not hold on to an entity manager, nor block other
+ * users of a shared one. If the entity manager is shared, the entities of a
+ * chunk are detached before the next chunk is read, and those of the last
+ * chunk on close. Otherwise the persistence context ends with the release of
+ * the entity manager. Either way, the memory used stays bounded by the chunk
+ * size.
+ * 
+ * @author Pal Hargitai (pal@lunarray.org)
+ * @param <E>
+ *            The entity type.
+ */
+final class ChunkedIterator<E>
+		implements CloseableIterator<E>, ManagerCallback<List<E>> {
+
+	/** The chunk size. */
+	private final transient int chunkSize;
+	/** The current chunk. */
+	private transient List<E> chunk;
+	/** The current chunk iterator. */
+	private transient Iterator<E> chunkIterator;
+	/** Whether the iterator is closed. */
+	private transient boolean closed;
+	/** The dictionary. */
+	private final transient DictionaryJpaImpl dictionary;
+	/** The entity type. */
+	private final transient Class<E> entityType;
+	/** The key of the last entity read, may be null. */
+	private transient Object lastKey;
+	/** The entity manager provider. */
+	private final transient EntityManagerProvider provider;
+	/** Whether the entity manager is shared. */
+	private final transient boolean shared;
+
+	/**
+	 * Constructs the iterator.
+	 * 
+	 * @param dictionary
+	 *            The dictionary to read chunks through.
+	 * @param provider
+	 *            The provider of the dictionary.
+	 * @param entityType
+	 *            The entity type.
+	 * @param chunkSize
+	 *            The chunk size.
+	 */
+	public ChunkedIterator(final DictionaryJpaImpl dictionary, final EntityManagerProvider provider, final Class<E> entityType,
+			final int chunkSize) {
+		this.dictionary = dictionary;
+		this.provider = provider;
+		this.shared = provider.isShared();
+		this.entityType = entityType;
+		this.chunkSize = chunkSize;
+		this.chunk = Collections.emptyList();
+		this.chunkIterator = this.chunk.iterator();
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void close() {
+		if (!this.closed) {
+			this.closed = true;
+			try {
+				if (this.shared && !this.chunk.isEmpty()) {
+					final EntityManager manager = this.provider.acquire();
+					try {
+						this.detach(manager);
+					} finally {
+						this.provider.release(manager);
+					}
+				}
+			} finally {
+				this.chunk = Collections.emptyList();
+				this.chunkIterator = this.chunk.iterator();
+			}
+		}
+	}
+
+	/**
+	 * Reads the next chunk, detaching the current chunk first.
+	 * 
+	 * @param manager
+	 *            The entity manager.
+	 * @return The next chunk.
+	 */
+	@Override
+	public List<E> execute(final EntityManager manager) {
+		if (this.shared) {
+			this.detach(manager);
+		}
+		final List<E> next = this.dictionary.createChunkQuery(manager, this.entityType, this.lastKey, this.chunkSize)
+				.getResultList();
+		if (!next.isEmpty()) {
+			this.lastKey = manager.getEntityManagerFactory().getPersistenceUnitUtil().getIdentifier(next.get(next.size() - 1));
+		}
+		return next;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public boolean hasNext() {
+		if (!this.closed && !this.chunkIterator.hasNext()) {
+			this.nextChunk();
+		}
+		return this.chunkIterator.hasNext();
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public E next() {
+		if (!this.hasNext()) {
+			throw new NoSuchElementException();
+		}
+		return this.chunkIterator.next();
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException("Dictionaries are read only.");
+	}
+
+	/**
+	 * Detaches the current chunk.
+	 * 
+	 * @param manager
+	 *            The entity manager.
+	 */
+	private void detach(final EntityManager manager) {
+		for (final E entity : this.chunk) {
+			manager.detach(entity);
+		}
+	}
+
+	/**
+	 * Reads the next chunk, closes the iterator if there is none.
+	 */
+	private void nextChunk() {
+		if (!this.chunk.isEmpty() && this.chunk.size() < this.chunkSize) {
+			this.close();
+		} else {
+			try {
+				this.chunk = this.dictionary.execute(this.entityType, DictionaryOperation.LOOKUP_CHUNK, this);
+			} catch (final DictionaryException e) {
+				throw new PersistenceException(e);
+			}
+			this.chunkIterator = this.chunk.iterator();
+			if (this.chunk.isEmpty()) {
+				this.close();
+			}
+		}
+	}
+}
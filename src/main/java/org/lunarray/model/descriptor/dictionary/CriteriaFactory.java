@@ -0,0 +1,41 @@
+/* 
+ * Model Tools.
+ * Copyright (C) 2013 Pal Hargitai (pal@lunarray.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.lunarray.model.descriptor.dictionary;
+
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+
+/**
+ * Creates a criteria query once it is needed, for example on a cache miss.
+ * 
+ * @author Pal Hargitai (pal@lunarray.org)
+ * @param <T>
+ *            The result type.
+ * @see QueryCache
+ */
+public interface CriteriaFactory<T> {
+
+	/**
+	 * Creates the criteria query.
+	 * 
+	 * @param builder
+	 *            The criteria builder.
+	 * @return The criteria query.
+	 */
+	CriteriaQuery<T> create(CriteriaBuilder builder);
+}
@@ -17,71 +17,277 @@
  */
 package org.lunarray.model.descriptor.dictionary;
 
+import java.io.Closeable;
 import java.io.Serializable;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import javax.persistence.Cache;
 import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
 import javax.persistence.Persistence;
+import javax.persistence.PersistenceException;
+import javax.persistence.PersistenceUnitUtil;
+import javax.persistence.Tuple;
 import javax.persistence.TypedQuery;
 import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Expression;
+import javax.persistence.criteria.Order;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import javax.persistence.criteria.Selection;
+import javax.persistence.metamodel.Attribute;
+import javax.persistence.metamodel.Attribute.PersistentAttributeType;
 
 import org.apache.commons.lang.Validate;
 import org.lunarray.common.check.CheckUtil;
 import org.lunarray.model.descriptor.dictionary.exceptions.DictionaryException;
+import org.lunarray.model.descriptor.dictionary.manager.AbstractEntityManagerProvider;
+import org.lunarray.model.descriptor.dictionary.manager.CallScopedEntityManagerProvider;
+import org.lunarray.model.descriptor.dictionary.manager.EntityManagerProvider;
+import org.lunarray.model.descriptor.dictionary.manager.ReplicaEntityManagerProvider;
+import org.lunarray.model.descriptor.dictionary.manager.SharedEntityManagerProvider;
+import org.lunarray.model.descriptor.dictionary.manager.ThreadScopedEntityManagerProvider;
+import org.lunarray.model.descriptor.dictionary.monitor.DictionaryMonitor;
+import org.lunarray.model.descriptor.dictionary.monitor.DictionaryOperation;
+import org.lunarray.model.descriptor.dictionary.monitor.NoOpDictionaryMonitor;
+import org.lunarray.model.descriptor.dictionary.query.QuerySpecification;
+import org.lunarray.model.descriptor.dictionary.totals.ExactTotalsStrategy;
+import org.lunarray.model.descriptor.dictionary.totals.Totals;
+import org.lunarray.model.descriptor.dictionary.totals.TotalsStrategy;
 import org.lunarray.model.descriptor.model.entity.EntityDescriptor;
 import org.lunarray.model.descriptor.model.entity.KeyedEntityDescriptor;
+import org.lunarray.model.descriptor.model.property.PropertyDescriptor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * JPA based dictionary implementation.
  * 
+ * Entity managers are obtained from an {@link EntityManagerProvider}, which
+ * decides their scope. Every operation releases the entity managers it
+ * acquires, and {@link #close()} releases everything the dictionary holds.
+ * Entities stay managed only if the provider shares its entity managers,
+ * otherwise they are returned detached.
+ * 
  * @author Pal Hargitai (pal@lunarray.org)
  */
 public final class DictionaryJpaImpl
-		implements PaginatedDictionary {
+		implements KeysetPaginatedDictionary, Closeable {
 
+	/** The default number of bind parameters per key lookup query. */
+	public static final int DEFAULT_KEY_BATCH_SIZE = 500;
+	/** The number of threads counting the totals of pages. */
+	private static final int COUNT_THREADS = 4;
+	/** The number of page totals that may wait for a counting thread. */
+	private static final int COUNT_QUEUE_SIZE = 64;
 	/** Validation message. */
 	private static final String ENTITY_DESCRIPTOR_NULL = "Entity descriptor may not be null.";
 	/** The logger. */
 	private static final Logger LOGGER = LoggerFactory.getLogger(DictionaryJpaImpl.class);
-	/** The Entity manager. */
-	private transient EntityManager entityManager;
-	/** The JPA repository. */
-	private transient EntityManagerFactory entityManagerFactory;
+	/** The first chunk operation. */
+	private static final String OPERATION_CHUNK_FIRST = "chunk.first";
+	/** The next chunk operation. */
+	private static final String OPERATION_CHUNK_NEXT = "chunk.next";
+	/** The number of keys read at once for a key index. */
+	private static final int KEY_INDEX_CHUNK_SIZE = 10000;
+	/** The first key chunk operation. */
+	private static final String OPERATION_KEYS_FIRST = "keys.first";
+	/** The next key chunk operation. */
+	private static final String OPERATION_KEYS_NEXT = "keys.next";
+	/** The lookup operation. */
+	private static final String OPERATION_LOOKUP = "lookup";
+	/** The first bounded chunk operation. */
+	private static final String OPERATION_RANGE_FIRST = "range.first";
+	/** The next bounded chunk operation. */
+	private static final String OPERATION_RANGE_NEXT = "range.next";
+	/** The number of key ranges per thread of a partitioned lookup. */
+	private static final int RANGES_PER_THREAD = 4;
+	/** Validation message. */
+	private static final String SPECIFICATION_NULL = "Specification may not be null.";
+	/** The executor counting the totals of pages, shut down on close. */
+	private final transient ExecutorService countExecutor = DictionaryJpaImpl.createCountExecutor();
+	/** The executor for concurrent queries. */
+	private transient volatile Executor executor = this.countExecutor;
+	/** The default totals strategy. */
+	private transient volatile TotalsStrategy defaultTotalsStrategy;
+	/** The fetch plans per entity type. */
+	private final transient ConcurrentMap<Class<?>, FetchPlan> fetchPlans = new ConcurrentHashMap<Class<?>, FetchPlan>();
+	/** The key attributes per entity type. */
+	private final transient ConcurrentMap<Class<?>, KeyAttributes> keyAttributes = new ConcurrentHashMap<Class<?>, KeyAttributes>();
+	/** The number of bind parameters per key lookup query. */
+	private transient volatile int keyBatchSize = DictionaryJpaImpl.DEFAULT_KEY_BATCH_SIZE;
+	/** The monitor. */
+	private transient volatile DictionaryMonitor monitor = NoOpDictionaryMonitor.INSTANCE;
+	/** The property attributes per entity type. */
+	private final transient ConcurrentMap<Class<?>, PropertyAttributes> propertyAttributes = new ConcurrentHashMap<Class<?>, PropertyAttributes>();
+	/** The query cache. */
+	private final transient QueryCache queryCache = new QueryCache();
+	/** The read profiles per entity type. */
+	private final transient ConcurrentMap<Class<?>, ReadProfile> readProfiles = new ConcurrentHashMap<Class<?>, ReadProfile>();
+	/** The totals strategies per entity type. */
+	private final transient ConcurrentMap<Class<?>, TotalsStrategy> totalsStrategies = new ConcurrentHashMap<Class<?>, TotalsStrategy>();
+	/** The entity manager factory created by, and closed with, this dictionary. */
+	private final transient EntityManagerFactory ownedFactory;
+	/** The entity manager provider. */
+	private final transient EntityManagerProvider provider;
 
 	/**
 	 * Default constructor.
 	 * 
+	 * Access to the entity manager is serialized, so the dictionary may be
+	 * shared between threads.
+	 * 
 	 * @param entityManager
 	 *            The {@link EntityManager} to use.
 	 */
 	public DictionaryJpaImpl(final EntityManager entityManager) {
-		this.entityManager = entityManager;
+		this(new SharedEntityManagerProvider(entityManager), null);
 	}
 
 	/**
 	 * Default constructor.
 	 * 
+	 * Creates an {@link EntityManager} per call, which is closed once the call
+	 * completes. Entities are therefore returned detached, and lazy
+	 * associations that were not fetched can not be read afterwards; use a
+	 * {@link FetchPlan}, or a {@link SharedEntityManagerProvider} or
+	 * {@link ThreadScopedEntityManagerProvider}
+	 * to keep entities managed after the call.
+	 * 
 	 * @param entityManagerFactory
 	 *            The {@link EntityManagerFactory} to get the
 	 *            {@link EntityManager} for.
 	 */
 	public DictionaryJpaImpl(final EntityManagerFactory entityManagerFactory) {
-		this.entityManagerFactory = entityManagerFactory;
+		this(entityManagerFactory, false);
+	}
+
+	/**
+	 * Default constructor.
+	 * 
+	 * @param provider
+	 *            The {@link EntityManagerProvider} that scopes the
+	 *            {@link EntityManager}s.
+	 */
+	public DictionaryJpaImpl(final EntityManagerProvider provider) {
+		this(provider, null);
 	}
 
 	/**
 	 * Default constructor.
 	 * 
+	 * The {@link EntityManagerFactory} is closed when the dictionary is
+	 * closed.
+	 * 
 	 * @param unitName
 	 *            The unit name to get the {@link EntityManagerFactory} for.
 	 */
 	public DictionaryJpaImpl(final String unitName) {
-		this(Persistence.createEntityManagerFactory(unitName));
+		this(Persistence.createEntityManagerFactory(unitName), true);
+	}
+
+	/**
+	 * Constructs the dictionary.
+	 * 
+	 * @param provider
+	 *            The entity manager provider.
+	 * @param ownedFactory
+	 *            The factory to close with the dictionary, may be null.
+	 */
+	private DictionaryJpaImpl(final EntityManagerProvider provider, final EntityManagerFactory ownedFactory) {
+		Validate.notNull(provider, "Entity manager provider may not be null.");
+		this.provider = provider;
+		this.ownedFactory = ownedFactory;
+		this.defaultTotalsStrategy = new ExactTotalsStrategy(this.queryCache);
+	}
+
+	/**
+	 * Constructs the dictionary with an entity manager per call.
+	 * 
+	 * @param entityManagerFactory
+	 *            The entity manager factory.
+	 * @param owned
+	 *            Whether the factory is closed with the dictionary.
+	 */
+	private DictionaryJpaImpl(final EntityManagerFactory entityManagerFactory, final boolean owned) {
+		this(new CallScopedEntityManagerProvider(entityManagerFactory), owned ? entityManagerFactory : null);
+	}
+
+	/**
+	 * Creates the executor counting the totals of pages. Its threads end once
+	 * idle, and totals that can not be queued, because the queue is full or
+	 * the executor is shut down, are counted by the calling thread.
+	 * 
+	 * @return The executor.
+	 */
+	private static ExecutorService createCountExecutor() {
+		final AtomicInteger counter = new AtomicInteger();
+		final ThreadPoolExecutor countExecutor = new ThreadPoolExecutor(DictionaryJpaImpl.COUNT_THREADS,
+				DictionaryJpaImpl.COUNT_THREADS, 1, TimeUnit.MINUTES, new LinkedBlockingQueue<Runnable>(
+						DictionaryJpaImpl.COUNT_QUEUE_SIZE), new ThreadFactory() {
+					/** {@inheritDoc} */
+					@Override
+					public Thread newThread(final Runnable runnable) {
+						final Thread thread = new Thread(runnable, new StringBuilder("dictionary-count-").append(
+								counter.incrementAndGet()).toString());
+						thread.setDaemon(true);
+						return thread;
+					}
+				}, new RejectedExecutionHandler() {
+					/** {@inheritDoc} */
+					@Override
+					public void rejectedExecution(final Runnable runnable, final ThreadPoolExecutor executor) {
+						runnable.run();
+					}
+				});
+		countExecutor.allowCoreThreadTimeOut(true);
+		return countExecutor;
+	}
+
+	/**
+	 * Closes the entity manager provider, and the entity manager factory if it
+	 * was created by this dictionary. The executor counting the totals of
+	 * pages is shut down.
+	 */
+	@Override
+	public void close() {
+		DictionaryJpaImpl.LOGGER.debug("Closing dictionary.");
+		this.countExecutor.shutdown();
+		try {
+			this.provider.close();
+		} finally {
+			if (!CheckUtil.isNull(this.ownedFactory) && this.ownedFactory.isOpen()) {
+				this.ownedFactory.close();
+			}
+		}
 	}
 
 	/** {@inheritDoc} */
@@ -89,13 +295,15 @@ public final class DictionaryJpaImpl
 	public <E> Collection<E> lookup(final EntityDescriptor<E> entityDescriptor) throws DictionaryException {
 		DictionaryJpaImpl.LOGGER.debug("Finding all entities for {}", entityDescriptor);
 		Validate.notNull(entityDescriptor, DictionaryJpaImpl.ENTITY_DESCRIPTOR_NULL);
-		final Class<E> entityType = entityDescriptor.getEntityType();
-		final EntityManager manager = this.getEntityManager();
-		final CriteriaBuilder builder = manager.getCriteriaBuilder();
-		final CriteriaQuery<E> query = builder.createQuery(entityType);
-		query.select(query.from(entityType));
-		final TypedQuery<E> typedQuery = manager.createQuery(query);
-		return typedQuery.getResultList();
+		return this.execute(entityDescriptor.getEntityType(), DictionaryOperation.LOOKUP, new ManagerCallback<List<E>>() {
+			/** {@inheritDoc} */
+			@Override
+			public List<E> execute(final EntityManager manager) {
+				return DictionaryJpaImpl.this.read(manager, entityDescriptor,
+						DictionaryJpaImpl.this.createLookupQuery(manager, entityDescriptor.getEntityType()),
+						DictionaryJpaImpl.this.createHints(manager, entityDescriptor));
+			}
+		});
 	}
 
 	/** {@inheritDoc} */
@@ -103,8 +311,368 @@ public final class DictionaryJpaImpl
 	public <E, K extends Serializable> E lookup(final KeyedEntityDescriptor<E, K> entityDescriptor, final K key) throws DictionaryException {
 		DictionaryJpaImpl.LOGGER.debug("Finding entity with key '{}' for {}", key, entityDescriptor);
 		Validate.notNull(entityDescriptor, DictionaryJpaImpl.ENTITY_DESCRIPTOR_NULL);
-		final EntityManager manager = this.getEntityManager();
-		return manager.find(entityDescriptor.getEntityType(), key);
+		return this.execute(entityDescriptor.getEntityType(), DictionaryOperation.LOOKUP_KEY, new ManagerCallback<E>() {
+			/** {@inheritDoc} */
+			@Override
+			public E execute(final EntityManager manager) {
+				final E entity = manager.find(entityDescriptor.getEntityType(), key,
+						DictionaryJpaImpl.this.createHints(manager, entityDescriptor));
+				if (!CheckUtil.isNull(entity)) {
+					DictionaryJpaImpl.this.detach(manager, entityDescriptor, Collections.singletonList(entity));
+				}
+				return entity;
+			}
+		});
+	}
+
+	/**
+	 * Looks up a reference to the entity with a given key, without reading
+	 * it.
+	 * 
+	 * The reference is a lazy proxy that is read on first access, so it can
+	 * only be accessed as long as its entity manager is open. References are
+	 * therefore only created if the provider shares its entity managers, such
+	 * as a shared or thread scoped provider. Otherwise the entity manager is
+	 * closed or cleared once the lookup completes, and the entity is read
+	 * right away as with {@link #lookup(KeyedEntityDescriptor, Serializable)}.
+	 * 
+	 * @param entityDescriptor
+	 *            The entity descriptor. May not be null.
+	 * @param key
+	 *            The key. May not be null.
+	 * @param <E>
+	 *            The entity type.
+	 * @param <K>
+	 *            The key type.
+	 * @return The reference, or the entity if entity managers are not shared,
+	 *         which may be null.
+	 * @throws DictionaryException
+	 *             Thrown if the reference could not be created.
+	 * @see EntityManager#getReference(Class, Object)
+	 */
+	public <E, K extends Serializable> E lookupReference(final KeyedEntityDescriptor<E, K> entityDescriptor, final K key)
+			throws DictionaryException {
+		DictionaryJpaImpl.LOGGER.debug("Finding reference with key '{}' for {}", key, entityDescriptor);
+		Validate.notNull(entityDescriptor, DictionaryJpaImpl.ENTITY_DESCRIPTOR_NULL);
+		Validate.notNull(key, "Key may not be null.");
+		if (!this.provider.isShared()) {
+			return this.lookup(entityDescriptor, key);
+		}
+		return this.execute(entityDescriptor.getEntityType(), DictionaryOperation.LOOKUP_REFERENCE, new ManagerCallback<E>() {
+			/** {@inheritDoc} */
+			@Override
+			public E execute(final EntityManager manager) {
+				return manager.getReference(entityDescriptor.getEntityType(), key);
+			}
+		});
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public <E, K extends Serializable> List<E> lookupAfter(final KeyedEntityDescriptor<E, K> entityDescriptor, final K key,
+			final int count) throws DictionaryException {
+		DictionaryJpaImpl.LOGGER.debug("Finding {} entities after key '{}' for {}", count, key, entityDescriptor);
+		Validate.notNull(entityDescriptor, DictionaryJpaImpl.ENTITY_DESCRIPTOR_NULL);
+		Validate.isTrue(CheckUtil.checkPositive(count), "Count is not positive.");
+		return this.execute(entityDescriptor.getEntityType(), DictionaryOperation.LOOKUP_AFTER, new ManagerCallback<List<E>>() {
+			/** {@inheritDoc} */
+			@Override
+			public List<E> execute(final EntityManager manager) {
+				return DictionaryJpaImpl.this.read(manager, entityDescriptor,
+						DictionaryJpaImpl.this.createChunkQuery(manager, entityDescriptor.getEntityType(), key, count),
+						DictionaryJpaImpl.this.createHints(manager, entityDescriptor));
+			}
+		});
+	}
+
+	/**
+	 * Looks up the entities for a number of keys.
+	 * 
+	 * Keys held by the shared cache are served from there, the remainder is
+	 * fetched with as few queries as the key batch size allows.
+	 * 
+	 * @param entityDescriptor
+	 *            The entity descriptor. May not be null.
+	 * @param keys
+	 *            The keys. May not be null.
+	 * @param <E>
+	 *            The entity type.
+	 * @param <K>
+	 *            The key type.
+	 * @return The entities, in the order of the keys. Contains null for keys
+	 *         that have no entity.
+	 * @throws DictionaryException
+	 *             Thrown if the entities could not be looked up.
+	 * @see #setKeyBatchSize(int)
+	 */
+	public <E, K extends Serializable> List<E> lookupAll(final KeyedEntityDescriptor<E, K> entityDescriptor, final List<K> keys)
+			throws DictionaryException {
+		DictionaryJpaImpl.LOGGER.debug("Finding {} entities by key for {}", keys == null ? 0 : keys.size(), entityDescriptor);
+		Validate.notNull(entityDescriptor, DictionaryJpaImpl.ENTITY_DESCRIPTOR_NULL);
+		Validate.notNull(keys, "Keys may not be null.");
+		final Class<E> entityType = entityDescriptor.getEntityType();
+		return this.execute(entityType, DictionaryOperation.LOOKUP_ALL, new ManagerCallback<List<E>>() {
+			/** {@inheritDoc} */
+			@Override
+			public List<E> execute(final EntityManager manager) {
+				final Map<Object, E> found = new HashMap<Object, E>();
+				final Map<String, Object> hints = DictionaryJpaImpl.this.createHints(manager, entityDescriptor);
+				final Cache cache = manager.getEntityManagerFactory().getCache();
+				final Set<K> remaining = new LinkedHashSet<K>();
+				for (final K key : keys) {
+					if (!CheckUtil.isNull(key) && !found.containsKey(key)) {
+						if (!CheckUtil.isNull(cache) && cache.contains(entityType, key)) {
+							found.put(key, manager.find(entityType, key, hints));
+						} else {
+							remaining.add(key);
+						}
+					}
+				}
+				final KeyAttributes attributes = DictionaryJpaImpl.this.getKeyAttributes(manager, entityType);
+				final int batch = Math.max(1, DictionaryJpaImpl.this.keyBatchSize / attributes.getComponentCount());
+				final PersistenceUnitUtil util = manager.getEntityManagerFactory().getPersistenceUnitUtil();
+				final List<K> pending = new ArrayList<K>(remaining);
+				for (int i = 0; i < pending.size(); i += batch) {
+					final CriteriaBuilder builder = manager.getCriteriaBuilder();
+					final CriteriaQuery<E> query = builder.createQuery(entityType);
+					final Root<E> root = query.from(entityType);
+					query.select(root).where(attributes.createIn(builder, root, pending.subList(i, Math.min(i + batch, pending.size()))));
+					for (final E entity : DictionaryJpaImpl.this.read(manager, entityDescriptor, manager.createQuery(query), hints)) {
+						found.put(util.getIdentifier(entity), entity);
+					}
+				}
+				DictionaryJpaImpl.this.detach(manager, entityDescriptor, found.values());
+				final List<E> result = new ArrayList<E>(keys.size());
+				for (final K key : keys) {
+					result.add(found.get(key));
+				}
+				return result;
+			}
+		});
+	}
+
+	/**
+	 * Looks up all entities, reading them in chunks of a given size.
+	 * 
+	 * Entities are read in key order. Every chunk is read on an entity
+	 * manager acquired for that chunk only, so an open iterator does not block
+	 * other users of a shared entity manager. Entities from a chunk are
+	 * detached before the next chunk is read, so memory use is bounded by the
+	 * chunk size regardless of the number of entities. The iterator should be
+	 * closed once done, to detach the entities of the last chunk from a shared
+	 * entity manager.
+	 * 
+	 * @param entityDescriptor
+	 *            The entity descriptor. May not be null.
+	 * @param chunkSize
+	 *            The number of entities to read at once. Must be positive.
+	 * @param <E>
+	 *            The entity type.
+	 * @return An iterator over all entities.
+	 * @throws DictionaryException
+	 *             Thrown if the entities could not be looked up.
+	 */
+	public <E> CloseableIterator<E> lookupIterator(final EntityDescriptor<E> entityDescriptor, final int chunkSize)
+			throws DictionaryException {
+		DictionaryJpaImpl.LOGGER.debug("Iterating entities in chunks of {} for {}", chunkSize, entityDescriptor);
+		Validate.notNull(entityDescriptor, DictionaryJpaImpl.ENTITY_DESCRIPTOR_NULL);
+		Validate.isTrue(CheckUtil.checkPositive(chunkSize), "Chunk size is not positive.");
+		return new ChunkedIterator<E>(this, this.provider, entityDescriptor.getEntityType(), chunkSize);
+	}
+
+	/**
+	 * Looks up all entities of a type, scanning key ranges in parallel, and
+	 * hands them to a consumer.
+	 * 
+	 * The key space is split into a number of ranges per thread. Integral
+	 * keys are split evenly between the lowest and highest key, other keys at
+	 * evenly spaced rows. Every range is read in chunks in key order, each
+	 * chunk on an entity manager of its own, by a thread pool that lives for
+	 * the duration of the call. Entities arrive in key order within a range, but ranges are read
+	 * concurrently. If the dictionary shares a single entity manager, the
+	 * ranges are read in sequence on the calling thread.
+	 * 
+	 * @param entityDescriptor
+	 *            The entity descriptor. May not be null.
+	 * @param parallelism
+	 *            The number of threads, and so of concurrent entity managers.
+	 *            Must be positive.
+	 * @param chunkSize
+	 *            The number of entities to read at once per range. Must be
+	 *            positive.
+	 * @param consumer
+	 *            The consumer, called concurrently. May not be null.
+	 * @param <E>
+	 *            The entity type.
+	 * @param <K>
+	 *            The key type.
+	 * @return The number of entities read.
+	 * @throws DictionaryException
+	 *             Thrown if the entities could not be looked up.
+	 */
+	public <E, K extends Serializable> long lookupPartitioned(final KeyedEntityDescriptor<E, K> entityDescriptor,
+			final int parallelism, final int chunkSize, final EntityConsumer<? super E> consumer) throws DictionaryException {
+		DictionaryJpaImpl.LOGGER.debug("Finding all entities with {} threads for {}", parallelism, entityDescriptor);
+		Validate.notNull(entityDescriptor, DictionaryJpaImpl.ENTITY_DESCRIPTOR_NULL);
+		Validate.isTrue(CheckUtil.checkPositive(parallelism), "Parallelism is not positive.");
+		Validate.isTrue(CheckUtil.checkPositive(chunkSize), "Chunk size is not positive.");
+		Validate.notNull(consumer, "Consumer may not be null.");
+		final Class<E> entityType = entityDescriptor.getEntityType();
+		final boolean sequential = parallelism == 1 || this.provider instanceof SharedEntityManagerProvider;
+		final List<Object> boundaries;
+		if (sequential) {
+			boundaries = Collections.emptyList();
+		} else {
+			boundaries = this.execute(entityType, DictionaryOperation.LOOKUP_PARTITION_BOUNDARIES, new ManagerCallback<List<Object>>() {
+				/** {@inheritDoc} */
+				@Override
+				public List<Object> execute(final EntityManager manager) {
+					return DictionaryJpaImpl.this.createBoundaries(manager, entityType, parallelism * DictionaryJpaImpl.RANGES_PER_THREAD);
+				}
+			});
+		}
+		final List<RangeScan<E>> scans = new ArrayList<RangeScan<E>>(boundaries.size() + 1);
+		Object lower = null;
+		for (final Object boundary : boundaries) {
+			scans.add(new RangeScan<E>(this, this.provider.isShared(), entityType, lower, boundary, chunkSize, consumer));
+			lower = boundary;
+		}
+		scans.add(new RangeScan<E>(this, this.provider.isShared(), entityType, lower, null, chunkSize, consumer));
+		if (sequential) {
+			long count = 0;
+			for (final RangeScan<E> scan : scans) {
+				count += scan.call();
+			}
+			return count;
+		}
+		return DictionaryJpaImpl.scan(scans, parallelism);
+	}
+
+	/**
+	 * Looks up the keys of all entities of a type into a key index. Only the
+	 * keys are read, in chunks and in key order.
+	 * 
+	 * @param entityDescriptor
+	 *            The entity descriptor, with an integral key. May not be
+	 *            null.
+	 * @param <E>
+	 *            The entity type.
+	 * @param <K>
+	 *            The key type.
+	 * @return The key index.
+	 * @throws DictionaryException
+	 *             Thrown if the keys could not be looked up.
+	 */
+	public <E, K extends Serializable> KeyIndex lookupKeyIndex(final KeyedEntityDescriptor<E, K> entityDescriptor)
+			throws DictionaryException {
+		return this.refreshKeyIndex(entityDescriptor, KeyIndex.EMPTY);
+	}
+
+	/**
+	 * Refreshes a key index with the keys above its highest key. This picks up
+	 * entities inserted with ascending keys, such as those from a sequence.
+	 * Removed entities are not detected, use {@link KeyIndex#without(long...)}
+	 * or look up a new index.
+	 * 
+	 * @param entityDescriptor
+	 *            The entity descriptor, with an integral key. May not be
+	 *            null.
+	 * @param index
+	 *            The index to refresh. May not be null.
+	 * @param <E>
+	 *            The entity type.
+	 * @param <K>
+	 *            The key type.
+	 * @return The refreshed key index.
+	 * @throws DictionaryException
+	 *             Thrown if the keys could not be looked up.
+	 */
+	public <E, K extends Serializable> KeyIndex refreshKeyIndex(final KeyedEntityDescriptor<E, K> entityDescriptor,
+			final KeyIndex index) throws DictionaryException {
+		DictionaryJpaImpl.LOGGER.debug("Refreshing {} for {}", index, entityDescriptor);
+		Validate.notNull(entityDescriptor, DictionaryJpaImpl.ENTITY_DESCRIPTOR_NULL);
+		Validate.notNull(index, "Index may not be null.");
+		final Class<E> entityType = entityDescriptor.getEntityType();
+		long[] keys = new long[DictionaryJpaImpl.KEY_INDEX_CHUNK_SIZE];
+		int size = 0;
+		List<Number> chunk;
+		do {
+			final Number last;
+			if (size == 0) {
+				last = null;
+			} else {
+				last = Long.valueOf(keys[size - 1]);
+			}
+			chunk = this.execute(entityType, DictionaryOperation.LOOKUP_KEY_INDEX, new ManagerCallback<List<Number>>() {
+				/** {@inheritDoc} */
+				@Override
+				public List<Number> execute(final EntityManager manager) {
+					final KeyAttributes attributes = DictionaryJpaImpl.this.getKeyAttributes(manager, entityType);
+					Validate.isTrue(attributes.isIntegral(), "Key is not integral.", entityType);
+					Object after = null;
+					if (!CheckUtil.isNull(last)) {
+						after = attributes.createIntegralKey(last.longValue());
+					} else if (!index.isEmpty()) {
+						after = attributes.createIntegralKey(index.getLast());
+					}
+					return DictionaryJpaImpl.this.createKeyQuery(manager, entityType, after, DictionaryJpaImpl.KEY_INDEX_CHUNK_SIZE)
+							.getResultList();
+				}
+			});
+			if (size + chunk.size() > keys.length) {
+				keys = Arrays.copyOf(keys, Math.max(keys.length * 2, size + chunk.size()));
+			}
+			for (final Number key : chunk) {
+				keys[size++] = key.longValue();
+			}
+		} while (chunk.size() == DictionaryJpaImpl.KEY_INDEX_CHUNK_SIZE);
+		return index.append(keys, size);
+	}
+
+	/**
+	 * Looks up a page of entities along with the totals.
+	 * 
+	 * The totals are counted concurrently with the page query, each on its own
+	 * entity manager, so the latency is that of the slower query rather than
+	 * their sum. By default the totals are counted on a small pool owned by
+	 * the dictionary.
+	 * 
+	 * @param entityDescriptor
+	 *            The entity descriptor. May not be null.
+	 * @param row
+	 *            The row to start at.
+	 * @param count
+	 *            The number of entities on the page.
+	 * @param <E>
+	 *            The entity type.
+	 * @return The page.
+	 * @throws DictionaryException
+	 *             Thrown if the page could not be looked up.
+	 * @see #setExecutor(Executor)
+	 */
+	public <E> Page<E> lookupPage(final EntityDescriptor<E> entityDescriptor, final int row, final int count)
+			throws DictionaryException {
+		Validate.notNull(entityDescriptor, DictionaryJpaImpl.ENTITY_DESCRIPTOR_NULL);
+		final Executor currentExecutor = this.executor;
+		final FutureTask<Totals> totals = new FutureTask<Totals>(new Callable<Totals>() {
+			/** {@inheritDoc} */
+			@Override
+			public Totals call() throws DictionaryException {
+				return DictionaryJpaImpl.this.lookupCount(entityDescriptor);
+			}
+		});
+		currentExecutor.execute(totals);
+		boolean success = false;
+		try {
+			final List<E> entities = this.lookupPaginated(entityDescriptor, row, count);
+			final Page<E> page = new Page<E>(entities, row, DictionaryJpaImpl.await(totals));
+			success = true;
+			return page;
+		} finally {
+			if (!success) {
+				totals.cancel(true);
+			}
+		}
 	}
 
 	/** {@inheritDoc} */
@@ -115,41 +683,912 @@ public final class DictionaryJpaImpl
 		Validate.notNull(entityDescriptor, DictionaryJpaImpl.ENTITY_DESCRIPTOR_NULL);
 		Validate.isTrue(CheckUtil.checkPositive(count), "Count is not positive.");
 		Validate.isTrue(CheckUtil.checkPositive(row), "Row is not positive.");
+		return this.execute(entityDescriptor.getEntityType(), DictionaryOperation.LOOKUP_PAGINATED, new ManagerCallback<List<E>>() {
+			/** {@inheritDoc} */
+			@Override
+			public List<E> execute(final EntityManager manager) {
+				final TypedQuery<E> typedQuery = DictionaryJpaImpl.this.createLookupQuery(manager, entityDescriptor.getEntityType());
+				typedQuery.setFirstResult(row);
+				typedQuery.setMaxResults(count);
+				return DictionaryJpaImpl.this.read(manager, entityDescriptor, typedQuery,
+						DictionaryJpaImpl.this.createHints(manager, entityDescriptor));
+			}
+		});
+	}
+
+	/**
+	 * Looks up the entities matching a specification.
+	 * 
+	 * @param entityDescriptor
+	 *            The entity descriptor. May not be null.
+	 * @param specification
+	 *            The specification. May not be null.
+	 * @param <E>
+	 *            The entity type.
+	 * @return The entities, in the order of the specification.
+	 * @throws DictionaryException
+	 *             Thrown if the entities could not be looked up.
+	 */
+	public <E> List<E> lookup(final EntityDescriptor<E> entityDescriptor, final QuerySpecification<E> specification)
+			throws DictionaryException {
+		DictionaryJpaImpl.LOGGER.debug("Finding entities matching {} for {}", specification, entityDescriptor);
+		Validate.notNull(entityDescriptor, DictionaryJpaImpl.ENTITY_DESCRIPTOR_NULL);
+		Validate.notNull(specification, DictionaryJpaImpl.SPECIFICATION_NULL);
+		return this.execute(entityDescriptor.getEntityType(), DictionaryOperation.LOOKUP_SPECIFICATION, new ManagerCallback<List<E>>() {
+			/** {@inheritDoc} */
+			@Override
+			public List<E> execute(final EntityManager manager) {
+				return DictionaryJpaImpl.this.read(manager, entityDescriptor,
+						DictionaryJpaImpl.this.createSpecificationQuery(manager, entityDescriptor.getEntityType(), specification),
+						DictionaryJpaImpl.this.createHints(manager, entityDescriptor));
+			}
+		});
+	}
+
+	/**
+	 * Looks up a page of the entities matching a specification.
+	 * 
+	 * @param entityDescriptor
+	 *            The entity descriptor. May not be null.
+	 * @param specification
+	 *            The specification. May not be null.
+	 * @param row
+	 *            The row to start at.
+	 * @param count
+	 *            The number of entities.
+	 * @param <E>
+	 *            The entity type.
+	 * @return The entities, in the order of the specification.
+	 * @throws DictionaryException
+	 *             Thrown if the entities could not be looked up.
+	 */
+	public <E> List<E> lookupPaginated(final EntityDescriptor<E> entityDescriptor, final QuerySpecification<E> specification,
+			final int row, final int count) throws DictionaryException {
+		DictionaryJpaImpl.LOGGER.debug("Finding {} entities starting at {} matching {} for {}", count, row, specification,
+				entityDescriptor);
+		Validate.notNull(entityDescriptor, DictionaryJpaImpl.ENTITY_DESCRIPTOR_NULL);
+		Validate.notNull(specification, DictionaryJpaImpl.SPECIFICATION_NULL);
+		Validate.isTrue(CheckUtil.checkPositive(count), "Count is not positive.");
+		Validate.isTrue(CheckUtil.checkPositive(row), "Row is not positive.");
+		return this.execute(entityDescriptor.getEntityType(), DictionaryOperation.LOOKUP_SPECIFICATION_PAGINATED,
+				new ManagerCallback<List<E>>() {
+					/** {@inheritDoc} */
+					@Override
+					public List<E> execute(final EntityManager manager) {
+						final TypedQuery<E> typedQuery = DictionaryJpaImpl.this.createSpecificationQuery(manager,
+								entityDescriptor.getEntityType(), specification);
+						typedQuery.setFirstResult(row);
+						typedQuery.setMaxResults(count);
+						return DictionaryJpaImpl.this.read(manager, entityDescriptor, typedQuery,
+								DictionaryJpaImpl.this.createHints(manager, entityDescriptor));
+					}
+				});
+	}
+
+	/**
+	 * Counts the entities matching a specification, using the totals strategy
+	 * of the entity type. The count may thus be estimated or stale, use
+	 * {@link #lookupCount(EntityDescriptor, QuerySpecification)} to know
+	 * whether it is exact.
+	 * 
+	 * @param entityDescriptor
+	 *            The entity descriptor. May not be null.
+	 * @param specification
+	 *            The specification. May not be null, its orderings are
+	 *            ignored.
+	 * @param <E>
+	 *            The entity type.
+	 * @return The number of entities.
+	 * @throws DictionaryException
+	 *             Thrown if the entities could not be counted.
+	 * @see #setTotalsStrategy(EntityDescriptor, TotalsStrategy)
+	 */
+	public <E> int lookupTotals(final EntityDescriptor<E> entityDescriptor, final QuerySpecification<E> specification)
+			throws DictionaryException {
+		return (int) this.lookupCount(entityDescriptor, specification).getCount();
+	}
+
+	/**
+	 * Looks up a page of projections holding the basic and embedded
+	 * properties the entity descriptor exposes.
+	 * 
+	 * @param entityDescriptor
+	 *            The entity descriptor. May not be null.
+	 * @param row
+	 *            The row to start at.
+	 * @param count
+	 *            The number of rows.
+	 * @param <E>
+	 *            The entity type.
+	 * @return The rows, ordered by key.
+	 * @throws DictionaryException
+	 *             Thrown if the rows could not be looked up.
+	 * @see #lookupProjection(EntityDescriptor, Collection, int, int)
+	 */
+	public <E> List<Map<String, Object>> lookupProjection(final EntityDescriptor<E> entityDescriptor, final int row, final int count)
+			throws DictionaryException {
+		return this.lookupProjection(entityDescriptor, null, row, count);
+	}
+
+	/**
+	 * Looks up a page of projections holding the given properties.
+	 * 
+	 * Only the selected properties are read, no entities are instantiated or
+	 * managed. Each row maps property names to values, in the order of the
+	 * properties.
+	 * 
+	 * @param entityDescriptor
+	 *            The entity descriptor. May not be null.
+	 * @param properties
+	 *            The properties to select, these must be persistent singular
+	 *            attributes. If null, all basic and embedded properties of the
+	 *            entity descriptor are selected.
+	 * @param row
+	 *            The row to start at.
+	 * @param count
+	 *            The number of rows.
+	 * @param <E>
+	 *            The entity type.
+	 * @return The rows, ordered by key.
+	 * @throws DictionaryException
+	 *             Thrown if the rows could not be looked up.
+	 */
+	public <E> List<Map<String, Object>> lookupProjection(final EntityDescriptor<E> entityDescriptor,
+			final Collection<? extends PropertyDescriptor<?, E>> properties, final int row, final int count)
+			throws DictionaryException {
+		DictionaryJpaImpl.LOGGER.debug("Finding {} projections starting at {} for {}", count, row, entityDescriptor);
+		Validate.notNull(entityDescriptor, DictionaryJpaImpl.ENTITY_DESCRIPTOR_NULL);
+		Validate.isTrue(CheckUtil.checkPositive(count), "Count is not positive.");
+		Validate.isTrue(CheckUtil.checkPositive(row), "Row is not positive.");
 		final Class<E> entityType = entityDescriptor.getEntityType();
-		final EntityManager manager = this.getEntityManager();
-		final CriteriaBuilder builder = manager.getCriteriaBuilder();
-		final CriteriaQuery<E> query = builder.createQuery(entityType);
-		query.select(query.from(entityType));
-		final TypedQuery<E> typedQuery = manager.createQuery(query);
-		typedQuery.setFirstResult(row);
-		typedQuery.setMaxResults(count);
-		return typedQuery.getResultList();
+		return this.execute(entityType, DictionaryOperation.LOOKUP_PROJECTION, new ManagerCallback<List<Map<String, Object>>>() {
+			/** {@inheritDoc} */
+			@Override
+			public List<Map<String, Object>> execute(final EntityManager manager) {
+				final PropertyAttributes attributes = DictionaryJpaImpl.this.getPropertyAttributes(manager, entityType);
+				final List<String> names = new ArrayList<String>();
+				if (CheckUtil.isNull(properties)) {
+					for (final Map.Entry<String, Attribute<?, ?>> entry : attributes.getAttributes().entrySet()) {
+						final PersistentAttributeType type = entry.getValue().getPersistentAttributeType();
+						if ((PersistentAttributeType.BASIC.equals(type) || PersistentAttributeType.EMBEDDED.equals(type))
+								&& !CheckUtil.isNull(entityDescriptor.getProperty(entry.getKey()))) {
+							names.add(entry.getKey());
+						}
+					}
+				} else {
+					for (final PropertyDescriptor<?, E> property : properties) {
+						names.add(property.getName());
+					}
+				}
+				final CriteriaBuilder builder = manager.getCriteriaBuilder();
+				final CriteriaQuery<Tuple> query = builder.createTupleQuery();
+				final Root<E> root = query.from(entityType);
+				final List<Selection<?>> selections = new ArrayList<Selection<?>>(names.size());
+				for (final String name : names) {
+					final Attribute<?, ?> attribute = attributes.getAttribute(name);
+					Validate.isTrue(!CheckUtil.isNull(attribute) && !attribute.isCollection(),
+							"Property is not a persistent singular attribute: ", name);
+					selections.add(root.get(attribute.getName()));
+				}
+				query.multiselect(selections);
+				query.orderBy(DictionaryJpaImpl.this.getKeyAttributes(manager, entityType).createOrder(builder, root));
+				final TypedQuery<Tuple> typedQuery = manager.createQuery(query);
+				typedQuery.setFirstResult(row);
+				typedQuery.setMaxResults(count);
+				final List<Map<String, Object>> rows = new ArrayList<Map<String, Object>>();
+				for (final Tuple tuple : typedQuery.getResultList()) {
+					final Map<String, Object> values = new LinkedHashMap<String, Object>();
+					for (int i = 0; i < names.size(); i++) {
+						values.put(names.get(i), tuple.get(i));
+					}
+					rows.add(values);
+				}
+				return rows;
+			}
+		});
 	}
 
 	/** {@inheritDoc} */
 	@Override
 	public <E> int lookupTotals(final EntityDescriptor<E> entityDescriptor) throws DictionaryException {
+		return (int) this.lookupCount(entityDescriptor).getCount();
+	}
+
+	/**
+	 * Counts the entities, using the totals strategy of the entity type.
+	 * 
+	 * @param entityDescriptor
+	 *            The entity descriptor. May not be null.
+	 * @param <E>
+	 *            The entity type.
+	 * @return The totals, which state whether the count is exact.
+	 * @throws DictionaryException
+	 *             Thrown if the entities could not be counted.
+	 * @see #setTotalsStrategy(EntityDescriptor, TotalsStrategy)
+	 */
+	public <E> Totals lookupCount(final EntityDescriptor<E> entityDescriptor) throws DictionaryException {
 		DictionaryJpaImpl.LOGGER.debug("Counting entities for {}", entityDescriptor);
 		Validate.notNull(entityDescriptor, DictionaryJpaImpl.ENTITY_DESCRIPTOR_NULL);
-		final EntityManager manager = this.getEntityManager();
-		final CriteriaBuilder builder = manager.getCriteriaBuilder();
-		final CriteriaQuery<Long> query = builder.createQuery(Long.class);
-		query.select(builder.count(query.from(entityDescriptor.getEntityType())));
-		final TypedQuery<Long> typedQuery = manager.createQuery(query);
-		return typedQuery.getSingleResult().intValue();
+		final TotalsStrategy strategy = this.getTotalsStrategy(entityDescriptor.getEntityType());
+		return this.execute(entityDescriptor.getEntityType(), DictionaryOperation.LOOKUP_COUNT, new ManagerCallback<Totals>() {
+			/** {@inheritDoc} */
+			@Override
+			public Totals execute(final EntityManager manager) {
+				return strategy.lookupTotals(entityDescriptor, manager);
+			}
+		});
 	}
 
 	/**
-	 * Gets an entity manager.
+	 * Counts the entities matching a specification, using the totals strategy
+	 * of the entity type.
 	 * 
-	 * @return The entity manager.
+	 * @param entityDescriptor
+	 *            The entity descriptor. May not be null.
+	 * @param specification
+	 *            The specification. May not be null, its orderings are
+	 *            ignored.
+	 * @param <E>
+	 *            The entity type.
+	 * @return The totals, which state whether the count is exact.
+	 * @throws DictionaryException
+	 *             Thrown if the entities could not be counted.
+	 * @see #setTotalsStrategy(EntityDescriptor, TotalsStrategy)
 	 */
-	private EntityManager getEntityManager() {
-		EntityManager result = this.entityManager;
-		if (CheckUtil.isNull(result)) {
-			result = this.entityManagerFactory.createEntityManager();
+	public <E> Totals lookupCount(final EntityDescriptor<E> entityDescriptor, final QuerySpecification<E> specification)
+			throws DictionaryException {
+		DictionaryJpaImpl.LOGGER.debug("Counting entities matching {} for {}", specification, entityDescriptor);
+		Validate.notNull(entityDescriptor, DictionaryJpaImpl.ENTITY_DESCRIPTOR_NULL);
+		Validate.notNull(specification, DictionaryJpaImpl.SPECIFICATION_NULL);
+		final Class<E> entityType = entityDescriptor.getEntityType();
+		final TotalsStrategy strategy = this.getTotalsStrategy(entityType);
+		return this.execute(entityType, DictionaryOperation.LOOKUP_SPECIFICATION_COUNT, new ManagerCallback<Totals>() {
+			/** {@inheritDoc} */
+			@Override
+			public Totals execute(final EntityManager manager) {
+				return strategy.lookupTotals(entityDescriptor, specification, new CriteriaFactory<Long>() {
+					/** {@inheritDoc} */
+					@Override
+					public CriteriaQuery<Long> create(final CriteriaBuilder builder) {
+						final CriteriaQuery<Long> query = builder.createQuery(Long.class);
+						final Root<E> root = query.from(entityType);
+						query.select(builder.count(root)).where(
+								SpecificationCriteria.createPredicates(builder, root,
+										DictionaryJpaImpl.this.getPropertyAttributes(manager, entityType), specification));
+						return query;
+					}
+				}, manager);
+			}
+		});
+	}
+
+	/**
+	 * Sets the totals strategy used for entity types without a specific
+	 * strategy. Defaults to an {@link ExactTotalsStrategy}.
+	 * 
+	 * @param totalsStrategy
+	 *            The strategy. May not be null.
+	 */
+	public void setDefaultTotalsStrategy(final TotalsStrategy totalsStrategy) {
+		Validate.notNull(totalsStrategy, "Totals strategy may not be null.");
+		this.defaultTotalsStrategy = totalsStrategy;
+	}
+
+	/**
+	 * Sets the fetch plan for an entity type. The plan applies to all lookups
+	 * of entities, apart from iterators and projections.
+	 * 
+	 * @param entityDescriptor
+	 *            The entity descriptor. May not be null.
+	 * @param fetchPlan
+	 *            The fetch plan, or null to fetch as mapped.
+	 */
+	public void setFetchPlan(final EntityDescriptor<?> entityDescriptor, final FetchPlan fetchPlan) {
+		Validate.notNull(entityDescriptor, DictionaryJpaImpl.ENTITY_DESCRIPTOR_NULL);
+		if (CheckUtil.isNull(fetchPlan)) {
+			this.fetchPlans.remove(entityDescriptor.getEntityType());
+		} else {
+			this.fetchPlans.put(entityDescriptor.getEntityType(), fetchPlan);
+		}
+	}
+
+	/**
+	 * Sets the read profile for an entity type. The profile applies to all
+	 * lookups of entities, apart from iterators and projections.
+	 * 
+	 * @param entityDescriptor
+	 *            The entity descriptor. May not be null.
+	 * @param readProfile
+	 *            The read profile, or null to read managed entities with the
+	 *            defaults of the entity manager.
+	 */
+	public void setReadProfile(final EntityDescriptor<?> entityDescriptor, final ReadProfile readProfile) {
+		Validate.notNull(entityDescriptor, DictionaryJpaImpl.ENTITY_DESCRIPTOR_NULL);
+		if (CheckUtil.isNull(readProfile)) {
+			this.readProfiles.remove(entityDescriptor.getEntityType());
+		} else {
+			this.readProfiles.put(entityDescriptor.getEntityType(), readProfile);
+		}
+	}
+
+	/**
+	 * Sets the totals strategy for an entity type.
+	 * 
+	 * @param entityDescriptor
+	 *            The entity descriptor. May not be null.
+	 * @param totalsStrategy
+	 *            The strategy, or null to use the default strategy.
+	 */
+	public void setTotalsStrategy(final EntityDescriptor<?> entityDescriptor, final TotalsStrategy totalsStrategy) {
+		Validate.notNull(entityDescriptor, DictionaryJpaImpl.ENTITY_DESCRIPTOR_NULL);
+		if (CheckUtil.isNull(totalsStrategy)) {
+			this.totalsStrategies.remove(entityDescriptor.getEntityType());
+		} else {
+			this.totalsStrategies.put(entityDescriptor.getEntityType(), totalsStrategy);
+		}
+	}
+
+	/**
+	 * Gets the query cache.
+	 * 
+	 * @return The query cache, exposing hit and miss counts.
+	 */
+	public QueryCache getQueryCache() {
+		return this.queryCache;
+	}
+
+	/**
+	 * Sets the executor used to run queries concurrently, overriding the pool
+	 * owned by the dictionary. The executor is not shut down with the
+	 * dictionary.
+	 * 
+	 * @param executor
+	 *            The executor, or null to use the pool owned by the
+	 *            dictionary.
+	 * @see #lookupPage(EntityDescriptor, int, int)
+	 */
+	public void setExecutor(final Executor executor) {
+		if (CheckUtil.isNull(executor)) {
+			this.executor = this.countExecutor;
+		} else {
+			this.executor = executor;
+		}
+	}
+
+	/**
+	 * Sets the monitor recording the operations of this dictionary. If the
+	 * entity manager provider creates its own entity managers, or delegates
+	 * to replica providers that do, it reports these to the monitor as well.
+	 * 
+	 * @param monitor
+	 *            The monitor. May not be null.
+	 */
+	public void setMonitor(final DictionaryMonitor monitor) {
+		Validate.notNull(monitor, "Monitor may not be null.");
+		this.monitor = monitor;
+		if (this.provider instanceof AbstractEntityManagerProvider) {
+			((AbstractEntityManagerProvider) this.provider).setMonitor(monitor);
+		} else if (this.provider instanceof ReplicaEntityManagerProvider) {
+			((ReplicaEntityManagerProvider) this.provider).setMonitor(monitor);
+		}
+	}
+
+	/**
+	 * Sets the number of bind parameters used per key lookup query. Should not
+	 * exceed the limit of the database, composite keys use a parameter per
+	 * component.
+	 * 
+	 * @param keyBatchSize
+	 *            The number of parameters. Must be positive.
+	 * @see #lookupAll(KeyedEntityDescriptor, List)
+	 */
+	public void setKeyBatchSize(final int keyBatchSize) {
+		Validate.isTrue(CheckUtil.checkPositive(keyBatchSize), "Key batch size is not positive.");
+		this.keyBatchSize = keyBatchSize;
+	}
+
+	/**
+	 * Creates a query for a chunk of entities following a given key, ordered
+	 * by key.
+	 * 
+	 * @param manager
+	 *            The entity manager.
+	 * @param entityType
+	 *            The entity type.
+	 * @param key
+	 *            The key to start after, or null to start at the first key.
+	 * @param count
+	 *            The maximum number of entities.
+	 * @param <E>
+	 *            The entity type.
+	 * @return The query.
+	 */
+	<E> TypedQuery<E> createChunkQuery(final EntityManager manager, final Class<E> entityType, final Object key, final int count) {
+		return this.createRangeQuery(manager, entityType, key, null, count);
+	}
+
+	/**
+	 * Creates a query reading a chunk of entities within a key range, ordered
+	 * by key.
+	 * 
+	 * @param manager
+	 *            The entity manager.
+	 * @param entityType
+	 *            The entity type.
+	 * @param lower
+	 *            The key to start after, or null to start at the first key.
+	 * @param upper
+	 *            The last key to include, or null to include all keys.
+	 * @param count
+	 *            The maximum number of entities.
+	 * @param <E>
+	 *            The entity type.
+	 * @return The query.
+	 */
+	<E> TypedQuery<E> createRangeQuery(final EntityManager manager, final Class<E> entityType, final Object lower,
+			final Object upper, final int count) {
+		final KeyAttributes attributes = this.getKeyAttributes(manager, entityType);
+		final boolean first = CheckUtil.isNull(lower);
+		final boolean bounded = !CheckUtil.isNull(upper);
+		final String operation;
+		if (bounded && first) {
+			operation = DictionaryJpaImpl.OPERATION_RANGE_FIRST;
+		} else if (bounded) {
+			operation = DictionaryJpaImpl.OPERATION_RANGE_NEXT;
+		} else if (first) {
+			operation = DictionaryJpaImpl.OPERATION_CHUNK_FIRST;
+		} else {
+			operation = DictionaryJpaImpl.OPERATION_CHUNK_NEXT;
+		}
+		final TypedQuery<E> typedQuery = this.queryCache.getQuery(manager, entityType, operation, entityType,
+				new CriteriaFactory<E>() {
+					/** {@inheritDoc} */
+					@Override
+					public CriteriaQuery<E> create(final CriteriaBuilder builder) {
+						final CriteriaQuery<E> query = builder.createQuery(entityType);
+						final Root<E> root = query.from(entityType);
+						query.select(root);
+						final List<Predicate> predicates = new ArrayList<Predicate>(2);
+						if (!first) {
+							predicates.add(attributes.createAfter(builder, root, attributes.createParameters(builder)));
+						}
+						if (bounded) {
+							predicates.add(attributes.createUpTo(builder, root, attributes.createUpperParameters(builder)));
+						}
+						query.where(predicates.toArray(new Predicate[predicates.size()]));
+						query.orderBy(attributes.createOrder(builder, root));
+						return query;
+					}
+				});
+		if (!first) {
+			final List<Object> values = attributes.getValues(lower);
+			for (int i = 0; i < values.size(); i++) {
+				typedQuery.setParameter(attributes.getParameterName(i), values.get(i));
+			}
 		}
-		Validate.notNull(result, "Entity manager was null.");
+		if (bounded) {
+			final List<Object> values = attributes.getValues(upper);
+			for (int i = 0; i < values.size(); i++) {
+				typedQuery.setParameter(attributes.getUpperParameterName(i), values.get(i));
+			}
+		}
+		typedQuery.setMaxResults(count);
+		return typedQuery;
+	}
+
+	/**
+	 * Runs an operation on an acquired entity manager. A failure of the
+	 * callback is reported to the provider. The entity manager is released
+	 * and the operation is reported to the monitor once the callback
+	 * completes, whether or not it succeeded.
+	 * 
+	 * @param entityType
+	 *            The entity type the operation applies to.
+	 * @param operation
+	 *            The monitored operation.
+	 * @param callback
+	 *            The callback.
+	 * @param <T>
+	 *            The result type.
+	 * @return The result of the callback.
+	 * @throws DictionaryException
+	 *             Thrown if the callback failed.
+	 */
+	<T> T execute(final Class<?> entityType, final DictionaryOperation operation, final ManagerCallback<T> callback)
+			throws DictionaryException {
+		final long start = System.nanoTime();
+		T result = null;
+		boolean success = false;
+		final EntityManager manager = this.provider.acquire();
+		try {
+			result = callback.execute(manager);
+			success = true;
+			return result;
+		} catch (final RuntimeException e) {
+			this.provider.fail(manager, e);
+			throw e;
+		} finally {
+			this.provider.release(manager);
+			final DictionaryMonitor current = this.monitor;
+			if (current != NoOpDictionaryMonitor.INSTANCE) {
+				current.operation(entityType, operation, System.nanoTime() - start, DictionaryJpaImpl.countRows(result), success);
+			}
+		}
+	}
+
+	/**
+	 * Waits for a concurrently executed lookup.
+	 * 
+	 * @param future
+	 *            The lookup.
+	 * @param <T>
+	 *            The result type.
+	 * @return The result.
+	 * @throws DictionaryException
+	 *             Thrown if the lookup failed.
+	 */
+	static <T> T await(final Future<T> future) throws DictionaryException {
+		try {
+			return future.get();
+		} catch (final InterruptedException e) {
+			future.cancel(true);
+			Thread.currentThread().interrupt();
+			throw new PersistenceException(e);
+		} catch (final ExecutionException e) {
+			final Throwable cause = e.getCause();
+			if (cause instanceof DictionaryException) {
+				throw (DictionaryException) cause;
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new PersistenceException(cause);
+		}
+	}
+
+	/**
+	 * Counts the rows of an operation result. A collection counts its non-null
+	 * elements, any other result counts as a single row unless it is null.
+	 * 
+	 * @param result
+	 *            The result, may be null.
+	 * @return The number of rows.
+	 */
+	private static int countRows(final Object result) {
+		int rows = 0;
+		if (result instanceof Collection) {
+			for (final Object element : (Collection<?>) result) {
+				if (!CheckUtil.isNull(element)) {
+					rows++;
+				}
+			}
+		} else if (!CheckUtil.isNull(result)) {
+			rows = 1;
+		}
+		return rows;
+	}
+
+	/**
+	 * Runs range scans on a thread pool that is shut down afterwards. Once a
+	 * scan fails, the remaining scans are interrupted.
+	 * 
+	 * @param scans
+	 *            The scans.
+	 * @param parallelism
+	 *            The maximum number of threads.
+	 * @return The number of entities read.
+	 * @throws DictionaryException
+	 *             Thrown if a scan failed.
+	 */
+	private static long scan(final List<? extends Callable<Long>> scans, final int parallelism) throws DictionaryException {
+		final ExecutorService service = Executors.newFixedThreadPool(Math.min(parallelism, scans.size()));
+		try {
+			final CompletionService<Long> completion = new ExecutorCompletionService<Long>(service);
+			for (final Callable<Long> scan : scans) {
+				completion.submit(scan);
+			}
+			long count = 0;
+			for (int i = 0; i < scans.size(); i++) {
+				count += DictionaryJpaImpl.await(completion.take());
+			}
+			return count;
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new PersistenceException(e);
+		} finally {
+			service.shutdownNow();
+		}
+	}
+
+	/**
+	 * Creates the hints applying the read profile and fetch plan of an entity
+	 * type.
+	 * 
+	 * @param manager
+	 *            The entity manager.
+	 * @param entityDescriptor
+	 *            The entity descriptor.
+	 * @param <E>
+	 *            The entity type.
+	 * @return The hints, empty if there is neither a read profile nor a fetch
+	 *         plan.
+	 */
+	private <E> Map<String, Object> createHints(final EntityManager manager, final EntityDescriptor<E> entityDescriptor) {
+		final Class<E> entityType = entityDescriptor.getEntityType();
+		final ReadProfile readProfile = this.readProfiles.get(entityType);
+		final FetchPlan fetchPlan = this.fetchPlans.get(entityType);
+		if (CheckUtil.isNull(readProfile) && CheckUtil.isNull(fetchPlan)) {
+			return Collections.emptyMap();
+		}
+		final Map<String, Object> hints = new HashMap<String, Object>();
+		if (!CheckUtil.isNull(readProfile)) {
+			hints.putAll(readProfile.getHints());
+		}
+		if (!CheckUtil.isNull(fetchPlan)) {
+			hints.putAll(fetchPlan.createHints(manager, entityDescriptor, this.getPropertyAttributes(manager, entityType)));
+		}
+		return hints;
+	}
+
+	/**
+	 * Detaches entities if the read profile of their type says so.
+	 * 
+	 * @param manager
+	 *            The entity manager.
+	 * @param entityDescriptor
+	 *            The entity descriptor.
+	 * @param entities
+	 *            The entities.
+	 */
+	private void detach(final EntityManager manager, final EntityDescriptor<?> entityDescriptor, final Collection<?> entities) {
+		final ReadProfile readProfile = this.readProfiles.get(entityDescriptor.getEntityType());
+		if (!CheckUtil.isNull(readProfile) && readProfile.isDetach()) {
+			for (final Object entity : entities) {
+				if (!CheckUtil.isNull(entity)) {
+					manager.detach(entity);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reads the results of a query, applying the read profile of the entity
+	 * type.
+	 * 
+	 * @param manager
+	 *            The entity manager.
+	 * @param entityDescriptor
+	 *            The entity descriptor.
+	 * @param query
+	 *            The query.
+	 * @param hints
+	 *            The hints to apply.
+	 * @param <E>
+	 *            The entity type.
+	 * @return The results.
+	 */
+	private <E> List<E> read(final EntityManager manager, final EntityDescriptor<E> entityDescriptor, final TypedQuery<E> query,
+			final Map<String, Object> hints) {
+		for (final Map.Entry<String, Object> hint : hints.entrySet()) {
+			query.setHint(hint.getKey(), hint.getValue());
+		}
+		final ReadProfile readProfile = this.readProfiles.get(entityDescriptor.getEntityType());
+		if (!CheckUtil.isNull(readProfile)) {
+			query.setFlushMode(readProfile.getFlushMode());
+		}
+		final List<E> result = query.getResultList();
+		this.detach(manager, entityDescriptor, result);
 		return result;
 	}
+
+	/**
+	 * Creates a query selecting the entities matching a specification. The
+	 * key order follows the order of the specification, to keep pages stable.
+	 * 
+	 * @param manager
+	 *            The entity manager.
+	 * @param entityType
+	 *            The entity type.
+	 * @param specification
+	 *            The specification.
+	 * @param <E>
+	 *            The entity type.
+	 * @return The query.
+	 */
+	private <E> TypedQuery<E> createSpecificationQuery(final EntityManager manager, final Class<E> entityType,
+			final QuerySpecification<E> specification) {
+		final CriteriaBuilder builder = manager.getCriteriaBuilder();
+		final CriteriaQuery<E> query = builder.createQuery(entityType);
+		final Root<E> root = query.from(entityType);
+		final PropertyAttributes attributes = this.getPropertyAttributes(manager, entityType);
+		final List<Order> order = SpecificationCriteria.createOrder(builder, root, attributes, specification);
+		order.addAll(this.getKeyAttributes(manager, entityType).createOrder(builder, root));
+		query.select(root).where(SpecificationCriteria.createPredicates(builder, root, attributes, specification)).orderBy(order);
+		return manager.createQuery(query);
+	}
+
+	/**
+	 * Creates the boundaries splitting the keys of an entity type into ranges
+	 * of about equal size. Integral keys are split between the lowest and
+	 * highest key, other keys are sampled at evenly spaced rows.
+	 * 
+	 * @param manager
+	 *            The entity manager.
+	 * @param entityType
+	 *            The entity type.
+	 * @param ranges
+	 *            The preferred number of ranges.
+	 * @param <E>
+	 *            The entity type.
+	 * @return The inclusive upper bounds of all ranges but the last, in key
+	 *         order. There may be fewer for small tables.
+	 */
+	@SuppressWarnings("unchecked")
+	private <E> List<Object> createBoundaries(final EntityManager manager, final Class<E> entityType, final int ranges) {
+		final KeyAttributes attributes = this.getKeyAttributes(manager, entityType);
+		final List<Object> boundaries = new ArrayList<Object>(ranges);
+		final CriteriaBuilder builder = manager.getCriteriaBuilder();
+		if (attributes.isIntegral()) {
+			final CriteriaQuery<Tuple> query = builder.createTupleQuery();
+			final Expression<Long> path = (Expression<Long>) (Expression<?>) attributes.createPaths(query.from(entityType)).get(0);
+			query.multiselect(builder.min(path), builder.max(path));
+			final Tuple bounds = manager.createQuery(query).getSingleResult();
+			final Number min = (Number) bounds.get(0);
+			final Number max = (Number) bounds.get(1);
+			if (!CheckUtil.isNull(min)) {
+				final BigInteger lowest = BigInteger.valueOf(min.longValue());
+				final BigInteger span = BigInteger.valueOf(max.longValue()).subtract(lowest);
+				BigInteger previous = lowest.subtract(BigInteger.ONE);
+				for (int i = 1; i < ranges; i++) {
+					final BigInteger boundary = lowest.add(span.multiply(BigInteger.valueOf(i)).divide(BigInteger.valueOf(ranges)));
+					if (boundary.compareTo(previous) > 0 && boundary.longValue() < max.longValue()) {
+						boundaries.add(attributes.createIntegralKey(boundary.longValue()));
+						previous = boundary;
+					}
+				}
+			}
+		} else {
+			final CriteriaQuery<Long> query = builder.createQuery(Long.class);
+			query.select(builder.count(query.from(entityType)));
+			final long total = manager.createQuery(query).getSingleResult().longValue();
+			final PersistenceUnitUtil util = manager.getEntityManagerFactory().getPersistenceUnitUtil();
+			long previous = 0;
+			for (int i = 1; i < ranges; i++) {
+				final long offset = total * i / ranges;
+				if (offset > previous) {
+					final List<E> sample = this.createRangeQuery(manager, entityType, null, null, 1)
+							.setFirstResult((int) (offset - 1)).getResultList();
+					if (!sample.isEmpty()) {
+						boundaries.add(util.getIdentifier(sample.get(0)));
+						manager.detach(sample.get(0));
+					}
+					previous = offset;
+				}
+			}
+		}
+		return boundaries;
+	}
+
+	/**
+	 * Creates a query reading a chunk of the keys of an integral keyed entity
+	 * type, ordered by key.
+	 * 
+	 * @param manager
+	 *            The entity manager.
+	 * @param entityType
+	 *            The entity type.
+	 * @param key
+	 *            The key to start after, or null to start at the first key.
+	 * @param count
+	 *            The maximum number of keys.
+	 * @return The query.
+	 */
+	private TypedQuery<Number> createKeyQuery(final EntityManager manager, final Class<?> entityType, final Object key,
+			final int count) {
+		final KeyAttributes attributes = this.getKeyAttributes(manager, entityType);
+		final boolean first = CheckUtil.isNull(key);
+		final String operation;
+		if (first) {
+			operation = DictionaryJpaImpl.OPERATION_KEYS_FIRST;
+		} else {
+			operation = DictionaryJpaImpl.OPERATION_KEYS_NEXT;
+		}
+		final TypedQuery<Number> typedQuery = this.queryCache.getQuery(manager, entityType, operation, Number.class,
+				new CriteriaFactory<Number>() {
+					/** {@inheritDoc} */
+					@SuppressWarnings("unchecked")
+					@Override
+					public CriteriaQuery<Number> create(final CriteriaBuilder builder) {
+						final CriteriaQuery<Number> query = builder.createQuery(Number.class);
+						final Root<?> root = query.from(entityType);
+						query.select((Expression<Number>) (Expression<?>) attributes.createPaths(root).get(0));
+						if (!first) {
+							query.where(attributes.createAfter(builder, root, attributes.createParameters(builder)));
+						}
+						query.orderBy(attributes.createOrder(builder, root));
+						return query;
+					}
+				});
+		if (!first) {
+			typedQuery.setParameter(attributes.getParameterName(0), key);
+		}
+		typedQuery.setMaxResults(count);
+		return typedQuery;
+	}
+
+	/**
+	 * Creates a query selecting all entities of a type.
+	 * 
+	 * @param manager
+	 *            The entity manager.
+	 * @param entityType
+	 *            The entity type.
+	 * @param <E>
+	 *            The entity type.
+	 * @return The query.
+	 */
+	private <E> TypedQuery<E> createLookupQuery(final EntityManager manager, final Class<E> entityType) {
+		return this.queryCache.getQuery(manager, entityType, DictionaryJpaImpl.OPERATION_LOOKUP, entityType,
+				new CriteriaFactory<E>() {
+					/** {@inheritDoc} */
+					@Override
+					public CriteriaQuery<E> create(final CriteriaBuilder builder) {
+						final CriteriaQuery<E> query = builder.createQuery(entityType);
+						query.select(query.from(entityType));
+						return query;
+					}
+				});
+	}
+
+	/**
+	 * Gets the key attributes for an entity type.
+	 * 
+	 * @param manager
+	 *            The entity manager to resolve the meta model from.
+	 * @param entityType
+	 *            The entity type.
+	 * @return The key attributes.
+	 */
+	private KeyAttributes getKeyAttributes(final EntityManager manager, final Class<?> entityType) {
+		KeyAttributes attributes = this.keyAttributes.get(entityType);
+		if (CheckUtil.isNull(attributes)) {
+			attributes = KeyAttributes.create(manager.getMetamodel(), entityType);
+			this.keyAttributes.putIfAbsent(entityType, attributes);
+		}
+		return attributes;
+	}
+
+	/**
+	 * Gets the property attributes for an entity type.
+	 * 
+	 * @param manager
+	 *            The entity manager to resolve the meta model from.
+	 * @param entityType
+	 *            The entity type.
+	 * @return The property attributes.
+	 */
+	private PropertyAttributes getPropertyAttributes(final EntityManager manager, final Class<?> entityType) {
+		PropertyAttributes attributes = this.propertyAttributes.get(entityType);
+		if (CheckUtil.isNull(attributes)) {
+			attributes = PropertyAttributes.create(manager.getMetamodel(), entityType);
+			this.propertyAttributes.putIfAbsent(entityType, attributes);
+		}
+		return attributes;
+	}
+
+	/**
+	 * Gets the totals strategy for an entity type.
+	 * 
+	 * @param entityType
+	 *            The entity type.
+	 * @return The strategy of the entity type, or the default strategy.
+	 */
+	private TotalsStrategy getTotalsStrategy(final Class<?> entityType) {
+		final TotalsStrategy strategy = this.totalsStrategies.get(entityType);
+		if (CheckUtil.isNull(strategy)) {
+			return this.defaultTotalsStrategy;
+		}
+		return strategy;
+	}
 }
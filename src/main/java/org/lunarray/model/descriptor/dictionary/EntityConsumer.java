@@ -0,0 +1,39 @@
+/* 
+ * Model Tools.
+ * Copyright (C) 2013 Pal Hargitai (pal@lunarray.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.lunarray.model.descriptor.dictionary;
+
+/**
+ * Receives entities as they are read.
+ * 
+ * @author Pal Hargitai (pal@lunarray.org)
+ * @param <E>
+ *            The entity type.
+ * @see DictionaryJpaImpl#lookupPartitioned(org.lunarray.model.descriptor.model.entity.KeyedEntityDescriptor, int, int,
+ *      EntityConsumer)
+ */
+public interface EntityConsumer<E> {
+
+	/**
+	 * Consumes an entity. May be called concurrently from several threads, the
+	 * entity is detached once the call returns.
+	 * 
+	 * @param entity
+	 *            The entity.
+	 */
+	void consume(E entity);
+}
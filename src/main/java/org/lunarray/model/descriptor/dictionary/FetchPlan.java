@@ -0,0 +1,172 @@
+/* 
+ * Model Tools.
+ * Copyright (C) 2013 Pal Hargitai (pal@lunarray.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.lunarray.model.descriptor.dictionary;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import javax.persistence.EntityGraph;
+import javax.persistence.EntityManager;
+import javax.persistence.metamodel.Attribute;
+import javax.persistence.metamodel.Attribute.PersistentAttributeType;
+
+import org.apache.commons.lang.Validate;
+import org.lunarray.common.check.CheckUtil;
+import org.lunarray.model.descriptor.model.entity.EntityDescriptor;
+
+/**
+ * The references to fetch along with looked up entities.
+ * 
+ * A fetch plan is applied as an entity graph, so references are read with
+ * the entities in a single query rather than with a query per entity. The
+ * plan either names the properties to fetch, or is derived from the
+ * reference properties the entity descriptor exposes.
+ * 
+ * @author Pal Hargitai (pal@lunarray.org)
+ * @see DictionaryJpaImpl#setFetchPlan(EntityDescriptor, FetchPlan)
+ */
+public final class FetchPlan {
+
+	/** The hint for a fetch graph. */
+	public static final String FETCH_GRAPH = "javax.persistence.fetchgraph";
+	/** The hint for a load graph. */
+	public static final String LOAD_GRAPH = "javax.persistence.loadgraph";
+
+	/** The graph hint. */
+	private final transient String hint;
+	/** The property names, or null if derived. */
+	private final transient List<String> properties;
+
+	/**
+	 * Constructs the fetch plan.
+	 * 
+	 * @param hint
+	 *            The graph hint.
+	 * @param properties
+	 *            The property names, or null if derived.
+	 */
+	private FetchPlan(final String hint, final List<String> properties) {
+		this.hint = hint;
+		this.properties = properties;
+	}
+
+	/**
+	 * Creates a fetch plan holding the single valued references the entity
+	 * descriptor exposes.
+	 * 
+	 * @return The fetch plan, applied as a load graph.
+	 */
+	public static FetchPlan derived() {
+		return new FetchPlan(FetchPlan.LOAD_GRAPH, null);
+	}
+
+	/**
+	 * Creates a fetch plan holding the given properties.
+	 * 
+	 * @param properties
+	 *            The names of the properties to fetch, as known by the entity
+	 *            descriptor. May not be null.
+	 * @return The fetch plan, applied as a load graph.
+	 */
+	public static FetchPlan of(final String... properties) {
+		Validate.notNull(properties, "Properties may not be null.");
+		Validate.noNullElements(properties, "Properties may not contain null.");
+		return new FetchPlan(FetchPlan.LOAD_GRAPH, Collections.unmodifiableList(new ArrayList<String>(Arrays.asList(properties))));
+	}
+
+	/**
+	 * Gets this plan applied as a fetch graph. Attributes outside a fetch
+	 * graph are treated as lazy, rather than as mapped.
+	 * 
+	 * @return The fetch plan, applied as a fetch graph.
+	 */
+	public FetchPlan asFetchGraph() {
+		return new FetchPlan(FetchPlan.FETCH_GRAPH, this.properties);
+	}
+
+	/**
+	 * Gets the value for the hint field.
+	 * 
+	 * @return The value for the hint field.
+	 */
+	public String getHint() {
+		return this.hint;
+	}
+
+	/**
+	 * Gets the value for the properties field.
+	 * 
+	 * @return The value for the properties field, or null if derived.
+	 */
+	public List<String> getProperties() {
+		return this.properties;
+	}
+
+	/**
+	 * Tests whether the plan is derived from the entity descriptor.
+	 * 
+	 * @return True if and only if the plan is derived.
+	 */
+	public boolean isDerived() {
+		return CheckUtil.isNull(this.properties);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public String toString() {
+		return new StringBuilder("FetchPlan[hint=").append(this.hint).append(", properties=").append(this.properties)
+				.append(']').toString();
+	}
+
+	/**
+	 * Creates the query hints for this plan.
+	 * 
+	 * @param manager
+	 *            The entity manager.
+	 * @param entityDescriptor
+	 *            The entity descriptor.
+	 * @param attributes
+	 *            The property attributes of the entity.
+	 * @param <E>
+	 *            The entity type.
+	 * @return The hints, holding the entity graph.
+	 */
+	<E> Map<String, Object> createHints(final EntityManager manager, final EntityDescriptor<E> entityDescriptor,
+			final PropertyAttributes attributes) {
+		final EntityGraph<E> graph = manager.createEntityGraph(entityDescriptor.getEntityType());
+		if (this.isDerived()) {
+			for (final Map.Entry<String, Attribute<?, ?>> entry : attributes.getAttributes().entrySet()) {
+				final PersistentAttributeType type = entry.getValue().getPersistentAttributeType();
+				if ((PersistentAttributeType.MANY_TO_ONE.equals(type) || PersistentAttributeType.ONE_TO_ONE.equals(type))
+						&& !CheckUtil.isNull(entityDescriptor.getProperty(entry.getKey()))) {
+					graph.addAttributeNodes(entry.getValue().getName());
+				}
+			}
+		} else {
+			for (final String property : this.properties) {
+				final Attribute<?, ?> attribute = attributes.getAttribute(property);
+				Validate.isTrue(!CheckUtil.isNull(attribute), "Property is not a persistent attribute: ", property);
+				graph.addAttributeNodes(attribute.getName());
+			}
+		}
+		return Collections.<String, Object> singletonMap(this.hint, graph);
+	}
+}
@@ -0,0 +1,491 @@
+/* 
+ * Model Tools.
+ * Copyright (C) 2013 Pal Hargitai (pal@lunarray.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.lunarray.model.descriptor.dictionary;
+
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.persistence.PersistenceException;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.Expression;
+import javax.persistence.criteria.Order;
+import javax.persistence.criteria.ParameterExpression;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import javax.persistence.metamodel.EntityType;
+import javax.persistence.metamodel.Metamodel;
+import javax.persistence.metamodel.SingularAttribute;
+import javax.persistence.metamodel.Type;
+import javax.persistence.metamodel.Type.PersistenceType;
+
+import org.apache.commons.lang.ClassUtils;
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.Validate;
+import org.lunarray.common.check.CheckUtil;
+
+/**
+ * The key attributes of an entity, as described by the JPA meta model.
+ * 
+ * Supports simple identifiers ({@link javax.persistence.Id}), embedded
+ * identifiers ({@link javax.persistence.EmbeddedId}) and identifier classes (
+ * {@link javax.persistence.IdClass}). Composite keys are ordered by the names
+ * of their components.
+ * 
+ * @author Pal Hargitai (pal@lunarray.org)
+ */
+final class KeyAttributes {
+
+	/** The integral key types. */
+	private static final List<Class<?>> INTEGRAL_TYPES = Arrays.<Class<?>> asList(Long.class, Integer.class, Short.class,
+			Byte.class);
+	/** The parameter name prefix. */
+	private static final String PARAMETER_PREFIX = "key";
+	/** The upper bound parameter name prefix. */
+	private static final String UPPER_PARAMETER_PREFIX = "upper";
+	/** The component names, empty for simple keys. */
+	private final transient List<String> componentNames;
+	/** The component types, or the key type for simple keys. */
+	private final transient List<Class<?>> componentTypes;
+	/** The identifier attribute name, null for identifier classes. */
+	private final transient String identifierName;
+
+	/**
+	 * Constructs the key attributes.
+	 * 
+	 * @param identifierName
+	 *            The identifier attribute name.
+	 * @param componentNames
+	 *            The component names.
+	 * @param componentTypes
+	 *            The component types.
+	 */
+	private KeyAttributes(final String identifierName, final List<String> componentNames, final List<Class<?>> componentTypes) {
+		this.identifierName = identifierName;
+		this.componentNames = componentNames;
+		this.componentTypes = componentTypes;
+	}
+
+	/**
+	 * Resolves the key attributes of an entity.
+	 * 
+	 * @param metamodel
+	 *            The meta model. May not be null.
+	 * @param entityType
+	 *            The entity type. May not be null.
+	 * @return The key attributes.
+	 */
+	public static KeyAttributes create(final Metamodel metamodel, final Class<?> entityType) {
+		Validate.notNull(metamodel, "Meta model may not be null.");
+		Validate.notNull(entityType, "Entity type may not be null.");
+		final EntityType<?> type = metamodel.entity(entityType);
+		final Map<String, Class<?>> components = new TreeMap<String, Class<?>>();
+		String identifierName = null;
+		if (type.hasSingleIdAttribute()) {
+			final Type<?> idType = type.getIdType();
+			final SingularAttribute<?, ?> identifier = type.getId(idType.getJavaType());
+			identifierName = identifier.getName();
+			if (PersistenceType.EMBEDDABLE.equals(idType.getPersistenceType())) {
+				for (final SingularAttribute<?, ?> component : metamodel.embeddable(idType.getJavaType()).getSingularAttributes()) {
+					components.put(component.getName(), component.getJavaType());
+				}
+			} else {
+				return new KeyAttributes(identifierName, Collections.<String> emptyList(),
+						Collections.<Class<?>> singletonList(idType.getJavaType()));
+			}
+		} else {
+			for (final SingularAttribute<?, ?> component : type.getIdClassAttributes()) {
+				components.put(component.getName(), component.getJavaType());
+			}
+		}
+		return new KeyAttributes(identifierName, new ArrayList<String>(components.keySet()), new ArrayList<Class<?>>(
+				components.values()));
+	}
+
+	/**
+	 * Creates the parameters for the key components.
+	 * 
+	 * @param builder
+	 *            The criteria builder.
+	 * @return The parameters, in component order.
+	 */
+	public List<ParameterExpression<Comparable<Object>>> createParameters(final CriteriaBuilder builder) {
+		return this.createParameters(builder, KeyAttributes.PARAMETER_PREFIX);
+	}
+
+	/**
+	 * Creates the upper bound parameters for the key components.
+	 * 
+	 * @param builder
+	 *            The criteria builder.
+	 * @return The parameters, in component order.
+	 */
+	public List<ParameterExpression<Comparable<Object>>> createUpperParameters(final CriteriaBuilder builder) {
+		return this.createParameters(builder, KeyAttributes.UPPER_PARAMETER_PREFIX);
+	}
+
+	/**
+	 * Creates the key ordering.
+	 * 
+	 * @param builder
+	 *            The criteria builder.
+	 * @param root
+	 *            The query root.
+	 * @return The ascending ordering, in component order.
+	 */
+	public List<Order> createOrder(final CriteriaBuilder builder, final Root<?> root) {
+		final List<Order> order = new ArrayList<Order>();
+		for (final Path<?> path : this.createPaths(root)) {
+			order.add(builder.asc(path));
+		}
+		return order;
+	}
+
+	/**
+	 * Creates the paths to the key components.
+	 * 
+	 * @param root
+	 *            The query root.
+	 * @return The component paths.
+	 */
+	public List<Path<?>> createPaths(final Root<?> root) {
+		final List<Path<?>> paths = new ArrayList<Path<?>>();
+		if (this.componentNames.isEmpty()) {
+			paths.add(root.get(this.identifierName));
+		} else {
+			Path<?> parent = root;
+			if (!CheckUtil.isNull(this.identifierName)) {
+				parent = root.get(this.identifierName);
+			}
+			for (final String component : this.componentNames) {
+				paths.add(parent.get(component));
+			}
+		}
+		return paths;
+	}
+
+	/**
+	 * Creates a predicate that matches all keys strictly after the key bound to
+	 * the given parameters.
+	 * 
+	 * For composite keys this is the lexicographic comparison
+	 * <code>(a &gt; ?) or (a = ? and b &gt; ?) or ...</code>.
+	 * 
+	 * @param builder
+	 *            The criteria builder.
+	 * @param root
+	 *            The query root.
+	 * @param parameters
+	 *            The parameters, as created by
+	 *            {@link #createParameters(CriteriaBuilder)}.
+	 * @return The predicate.
+	 */
+	public Predicate createAfter(final CriteriaBuilder builder, final Root<?> root,
+			final List<ParameterExpression<Comparable<Object>>> parameters) {
+		final List<Path<?>> paths = this.createPaths(root);
+		final List<Predicate> alternatives = new ArrayList<Predicate>(paths.size());
+		for (int i = 0; i < paths.size(); i++) {
+			final List<Predicate> conjunction = new ArrayList<Predicate>(i + 1);
+			for (int j = 0; j < i; j++) {
+				conjunction.add(builder.equal(paths.get(j), parameters.get(j)));
+			}
+			conjunction.add(builder.greaterThan(KeyAttributes.comparable(paths.get(i)), parameters.get(i)));
+			alternatives.add(builder.and(conjunction.toArray(new Predicate[conjunction.size()])));
+		}
+		return builder.or(alternatives.toArray(new Predicate[alternatives.size()]));
+	}
+
+	/**
+	 * Creates a predicate that matches all keys up to, and including, the key
+	 * bound to the given parameters.
+	 * 
+	 * For composite keys this is the lexicographic comparison
+	 * <code>(a &lt; ?) or (a = ? and b &lt;= ?) or ...</code>.
+	 * 
+	 * @param builder
+	 *            The criteria builder.
+	 * @param root
+	 *            The query root.
+	 * @param parameters
+	 *            The parameters, as created by
+	 *            {@link #createUpperParameters(CriteriaBuilder)}.
+	 * @return The predicate.
+	 */
+	public Predicate createUpTo(final CriteriaBuilder builder, final Root<?> root,
+			final List<ParameterExpression<Comparable<Object>>> parameters) {
+		final List<Path<?>> paths = this.createPaths(root);
+		final List<Predicate> alternatives = new ArrayList<Predicate>(paths.size());
+		for (int i = 0; i < paths.size(); i++) {
+			final List<Predicate> conjunction = new ArrayList<Predicate>(i + 1);
+			for (int j = 0; j < i; j++) {
+				conjunction.add(builder.equal(paths.get(j), parameters.get(j)));
+			}
+			if (i == paths.size() - 1) {
+				conjunction.add(builder.lessThanOrEqualTo(KeyAttributes.comparable(paths.get(i)), parameters.get(i)));
+			} else {
+				conjunction.add(builder.lessThan(KeyAttributes.comparable(paths.get(i)), parameters.get(i)));
+			}
+			alternatives.add(builder.and(conjunction.toArray(new Predicate[conjunction.size()])));
+		}
+		return builder.or(alternatives.toArray(new Predicate[alternatives.size()]));
+	}
+
+	/**
+	 * Creates a key from an integral value.
+	 * 
+	 * @param value
+	 *            The value.
+	 * @return The key, of the key type.
+	 * @see #isIntegral()
+	 */
+	public Object createIntegralKey(final long value) {
+		Validate.isTrue(this.isIntegral(), "Key is not integral.");
+		final Class<?> type = ClassUtils.primitiveToWrapper(this.componentTypes.get(0));
+		final Object key;
+		if (Integer.class.equals(type)) {
+			key = Integer.valueOf((int) value);
+		} else if (Short.class.equals(type)) {
+			key = Short.valueOf((short) value);
+		} else if (Byte.class.equals(type)) {
+			key = Byte.valueOf((byte) value);
+		} else {
+			key = Long.valueOf(value);
+		}
+		return key;
+	}
+
+	/**
+	 * Creates a predicate that matches any of the given keys.
+	 * 
+	 * For simple keys this is an <code>in</code> predicate, for composite keys
+	 * a disjunction of component equalities.
+	 * 
+	 * @param builder
+	 *            The criteria builder.
+	 * @param root
+	 *            The query root.
+	 * @param keys
+	 *            The keys. May not be empty.
+	 * @return The predicate.
+	 */
+	public Predicate createIn(final CriteriaBuilder builder, final Root<?> root, final Collection<?> keys) {
+		Validate.notEmpty(keys, "Keys may not be empty.");
+		final List<Path<?>> paths = this.createPaths(root);
+		final Predicate result;
+		if (this.isSimple()) {
+			result = paths.get(0).in(keys);
+		} else {
+			final List<Predicate> alternatives = new ArrayList<Predicate>(keys.size());
+			for (final Object key : keys) {
+				final List<Object> values = this.getValues(key);
+				final Predicate[] conjunction = new Predicate[paths.size()];
+				for (int i = 0; i < paths.size(); i++) {
+					conjunction[i] = builder.equal(paths.get(i), values.get(i));
+				}
+				alternatives.add(builder.and(conjunction));
+			}
+			result = builder.or(alternatives.toArray(new Predicate[alternatives.size()]));
+		}
+		return result;
+	}
+
+	/**
+	 * Gets the number of key components.
+	 * 
+	 * @return The number of components, 1 for simple keys.
+	 */
+	public int getComponentCount() {
+		return this.componentTypes.size();
+	}
+
+	/**
+	 * Gets the parameter name for a component.
+	 * 
+	 * @param index
+	 *            The component index.
+	 * @return The parameter name.
+	 */
+	public String getParameterName(final int index) {
+		return KeyAttributes.parameterName(KeyAttributes.PARAMETER_PREFIX, index);
+	}
+
+	/**
+	 * Gets the upper bound parameter name for a component.
+	 * 
+	 * @param index
+	 *            The component index.
+	 * @return The parameter name.
+	 */
+	public String getUpperParameterName(final int index) {
+		return KeyAttributes.parameterName(KeyAttributes.UPPER_PARAMETER_PREFIX, index);
+	}
+
+	/**
+	 * Tests whether this is a simple integral key.
+	 * 
+	 * @return True if and only if the key is simple and a whole number that
+	 *         fits a long.
+	 */
+	public boolean isIntegral() {
+		return this.isSimple()
+				&& KeyAttributes.INTEGRAL_TYPES.contains(ClassUtils.primitiveToWrapper(this.componentTypes.get(0)));
+	}
+
+	/**
+	 * Tests whether this is a simple key.
+	 * 
+	 * @return True if and only if the key has a single, non composite,
+	 *         attribute.
+	 */
+	public boolean isSimple() {
+		return this.componentNames.isEmpty();
+	}
+
+	/**
+	 * Gets the component values of a key.
+	 * 
+	 * @param key
+	 *            The key. May not be null.
+	 * @return The component values, in component order.
+	 */
+	public List<Object> getValues(final Object key) {
+		Validate.notNull(key, "Key may not be null.");
+		final List<Object> values = new ArrayList<Object>(this.componentTypes.size());
+		if (this.componentNames.isEmpty()) {
+			values.add(key);
+		} else {
+			for (final String component : this.componentNames) {
+				values.add(KeyAttributes.readComponent(key, component));
+			}
+		}
+		return values;
+	}
+
+	/**
+	 * Creates the parameters for the key components.
+	 * 
+	 * @param builder
+	 *            The criteria builder.
+	 * @param prefix
+	 *            The parameter name prefix.
+	 * @return The parameters, in component order.
+	 */
+	private List<ParameterExpression<Comparable<Object>>> createParameters(final CriteriaBuilder builder, final String prefix) {
+		final List<ParameterExpression<Comparable<Object>>> parameters = new ArrayList<ParameterExpression<Comparable<Object>>>(
+				this.componentTypes.size());
+		for (int i = 0; i < this.componentTypes.size(); i++) {
+			parameters.add(builder.parameter(KeyAttributes.comparableType(this.componentTypes.get(i)),
+					KeyAttributes.parameterName(prefix, i)));
+		}
+		return parameters;
+	}
+
+	/**
+	 * Casts a path to a comparable expression.
+	 * 
+	 * @param path
+	 *            The path.
+	 * @return The expression.
+	 */
+	@SuppressWarnings("unchecked")
+	private static Expression<Comparable<Object>> comparable(final Path<?> path) {
+		return (Expression<Comparable<Object>>) (Expression<?>) path;
+	}
+
+	/**
+	 * Gets the comparable parameter type for a component type.
+	 * 
+	 * @param type
+	 *            The component type.
+	 * @return The wrapped parameter type.
+	 */
+	@SuppressWarnings("unchecked")
+	private static Class<Comparable<Object>> comparableType(final Class<?> type) {
+		Class<?> result = type;
+		if (type.isPrimitive()) {
+			result = ClassUtils.primitiveToWrapper(type);
+		}
+		return (Class<Comparable<Object>>) result;
+	}
+
+	/**
+	 * Gets the parameter name for a component.
+	 * 
+	 * @param prefix
+	 *            The parameter name prefix.
+	 * @param index
+	 *            The component index.
+	 * @return The parameter name.
+	 */
+	private static String parameterName(final String prefix, final int index) {
+		return new StringBuilder(prefix).append(index).toString();
+	}
+
+	/**
+	 * Reads a key component, either from a field or from a getter.
+	 * 
+	 * @param key
+	 *            The key.
+	 * @param component
+	 *            The component name.
+	 * @return The component value.
+	 */
+	private static Object readComponent(final Object key, final String component) {
+		try {
+			for (Class<?> type = key.getClass(); !Object.class.equals(type); type = type.getSuperclass()) {
+				for (final Field field : type.getDeclaredFields()) {
+					if (component.equals(field.getName())) {
+						KeyAttributes.makeAccessible(field);
+						return field.get(key);
+					}
+				}
+			}
+			final Method getter = key.getClass().getMethod(
+					new StringBuilder("get").append(StringUtils.capitalize(component)).toString());
+			KeyAttributes.makeAccessible(getter);
+			return getter.invoke(key);
+		} catch (final IllegalAccessException e) {
+			throw new PersistenceException(e);
+		} catch (final NoSuchMethodException e) {
+			throw new PersistenceException(e);
+		} catch (final InvocationTargetException e) {
+			throw new PersistenceException(e);
+		}
+	}
+
+	/**
+	 * Makes a member accessible.
+	 * 
+	 * @param member
+	 *            The member.
+	 */
+	private static void makeAccessible(final AccessibleObject member) {
+		if (!member.isAccessible()) {
+			member.setAccessible(true);
+		}
+	}
+}
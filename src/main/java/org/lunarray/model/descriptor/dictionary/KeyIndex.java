@@ -0,0 +1,251 @@
+/* 
+ * Model Tools.
+ * Copyright (C) 2013 Pal Hargitai (pal@lunarray.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.lunarray.model.descriptor.dictionary;
+
+import java.util.Arrays;
+
+import org.apache.commons.lang.Validate;
+
+/**
+ * An immutable index of integral entity keys, kept as a sorted array of
+ * primitive longs.
+ * 
+ * Existence checks are a binary search and key ranges are array copies, so
+ * neither touches the database nor boxes keys. An index is a snapshot, it is
+ * refreshed by creating a new index, see
+ * {@link DictionaryJpaImpl#refreshKeyIndex(org.lunarray.model.descriptor.model.entity.KeyedEntityDescriptor, KeyIndex)}
+ * , {@link #with(long...)} and {@link #without(long...)}.
+ * 
+ * @author Pal Hargitai (pal@lunarray.org)
+ * @see DictionaryJpaImpl#lookupKeyIndex(org.lunarray.model.descriptor.model.entity.KeyedEntityDescriptor)
+ */
+public final class KeyIndex {
+
+	/** The empty index. */
+	public static final KeyIndex EMPTY = new KeyIndex(new long[0]);
+	/** The keys, sorted and distinct. */
+	private final transient long[] keys;
+
+	/**
+	 * Constructs the index.
+	 * 
+	 * @param keys
+	 *            The keys, sorted and distinct.
+	 */
+	private KeyIndex(final long[] keys) {
+		this.keys = keys;
+	}
+
+	/**
+	 * Creates an index of the given keys.
+	 * 
+	 * @param keys
+	 *            The keys, in any order. May not be null.
+	 * @return The index.
+	 */
+	public static KeyIndex of(final long... keys) {
+		return KeyIndex.EMPTY.with(keys);
+	}
+
+	/**
+	 * Sorts keys and removes duplicates.
+	 * 
+	 * @param keys
+	 *            The keys.
+	 * @return The sorted and distinct keys, in a new array.
+	 */
+	private static long[] distinct(final long[] keys) {
+		Validate.notNull(keys, "Keys may not be null.");
+		final long[] sorted = keys.clone();
+		Arrays.sort(sorted);
+		int size = 0;
+		for (int i = 0; i < sorted.length; i++) {
+			if (size == 0 || sorted[size - 1] != sorted[i]) {
+				sorted[size++] = sorted[i];
+			}
+		}
+		return Arrays.copyOf(sorted, size);
+	}
+
+	/**
+	 * Tests whether a key exists.
+	 * 
+	 * @param key
+	 *            The key.
+	 * @return True if and only if the key is in the index.
+	 */
+	public boolean exists(final long key) {
+		return Arrays.binarySearch(this.keys, key) >= 0;
+	}
+
+	/**
+	 * Tests whether all keys exist.
+	 * 
+	 * @param candidates
+	 *            The keys. May not be null.
+	 * @return True if and only if all keys are in the index.
+	 */
+	public boolean existsAll(final long... candidates) {
+		Validate.notNull(candidates, "Keys may not be null.");
+		for (final long candidate : candidates) {
+			if (!this.exists(candidate)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Gets the highest key.
+	 * 
+	 * @return The highest key.
+	 */
+	public long getLast() {
+		Validate.isTrue(!this.isEmpty(), "Index is empty.");
+		return this.keys[this.keys.length - 1];
+	}
+
+	/**
+	 * Tests whether the index is empty.
+	 * 
+	 * @return True if and only if there are no keys.
+	 */
+	public boolean isEmpty() {
+		return this.keys.length == 0;
+	}
+
+	/**
+	 * Gets the keys in a range.
+	 * 
+	 * @param from
+	 *            The lowest key, inclusive.
+	 * @param to
+	 *            The highest key, exclusive.
+	 * @return The keys in the range, in order.
+	 */
+	public long[] range(final long from, final long to) {
+		final int start = this.position(from);
+		return Arrays.copyOfRange(this.keys, start, Math.max(start, this.position(to)));
+	}
+
+	/**
+	 * Gets the number of keys.
+	 * 
+	 * @return The number of keys.
+	 */
+	public int size() {
+		return this.keys.length;
+	}
+
+	/**
+	 * Gets all keys.
+	 * 
+	 * @return The keys, in order.
+	 */
+	public long[] toArray() {
+		return this.keys.clone();
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public String toString() {
+		return new StringBuilder("KeyIndex[size=").append(this.keys.length).append(']').toString();
+	}
+
+	/**
+	 * Creates an index with additional keys.
+	 * 
+	 * @param added
+	 *            The keys to add, in any order. May not be null.
+	 * @return The new index.
+	 */
+	public KeyIndex with(final long... added) {
+		final long[] other = KeyIndex.distinct(added);
+		final long[] merged = new long[this.keys.length + other.length];
+		int i = 0;
+		int j = 0;
+		int size = 0;
+		while (i < this.keys.length || j < other.length) {
+			if (j == other.length || i < this.keys.length && this.keys[i] < other[j]) {
+				merged[size++] = this.keys[i++];
+			} else if (i == this.keys.length || other[j] < this.keys[i]) {
+				merged[size++] = other[j++];
+			} else {
+				merged[size++] = this.keys[i++];
+				j++;
+			}
+		}
+		return new KeyIndex(Arrays.copyOf(merged, size));
+	}
+
+	/**
+	 * Creates an index without the given keys.
+	 * 
+	 * @param removed
+	 *            The keys to remove, in any order. May not be null.
+	 * @return The new index.
+	 */
+	public KeyIndex without(final long... removed) {
+		final long[] other = KeyIndex.distinct(removed);
+		final long[] remaining = new long[this.keys.length];
+		int j = 0;
+		int size = 0;
+		for (final long key : this.keys) {
+			while (j < other.length && other[j] < key) {
+				j++;
+			}
+			if (j == other.length || other[j] != key) {
+				remaining[size++] = key;
+			}
+		}
+		return new KeyIndex(Arrays.copyOf(remaining, size));
+	}
+
+	/**
+	 * Appends keys above the highest key.
+	 * 
+	 * @param appended
+	 *            The keys, sorted, distinct and above the highest key.
+	 * @param count
+	 *            The number of keys to take from the array.
+	 * @return The new index.
+	 */
+	KeyIndex append(final long[] appended, final int count) {
+		if (count == 0) {
+			return this;
+		}
+		final long[] merged = Arrays.copyOf(this.keys, this.keys.length + count);
+		System.arraycopy(appended, 0, merged, this.keys.length, count);
+		return new KeyIndex(merged);
+	}
+
+	/**
+	 * Gets the position of the first key not below a given key.
+	 * 
+	 * @param key
+	 *            The key.
+	 * @return The position.
+	 */
+	private int position(final long key) {
+		final int index = Arrays.binarySearch(this.keys, key);
+		if (index < 0) {
+			return -index - 1;
+		}
+		return index;
+	}
+}
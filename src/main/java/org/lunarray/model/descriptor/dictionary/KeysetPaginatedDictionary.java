@@ -0,0 +1,58 @@
+/* 
+ * Model Tools.
+ * Copyright (C) 2013 Pal Hargitai (pal@lunarray.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.lunarray.model.descriptor.dictionary;
+
+import java.io.Serializable;
+import java.util.List;
+
+import org.lunarray.model.descriptor.dictionary.exceptions.DictionaryException;
+import org.lunarray.model.descriptor.model.entity.KeyedEntityDescriptor;
+
+/**
+ * A paginated dictionary that also supports keyset (seek) pagination.
+ * 
+ * Rather than skipping a number of rows, a page is described by the last key
+ * of the previous page. Entities are ordered by their key, so a page costs the
+ * same regardless of how deep it is.
+ * 
+ * @author Pal Hargitai (pal@lunarray.org)
+ */
+public interface KeysetPaginatedDictionary
+		extends PaginatedDictionary {
+
+	/**
+	 * Looks up the entities following a given key, ordered by key.
+	 * 
+	 * @param entityDescriptor
+	 *            The entity descriptor. May not be null.
+	 * @param key
+	 *            The last key of the previous page. If null, the first page
+	 *            is returned.
+	 * @param count
+	 *            The maximum number of entities to return. Must be positive.
+	 * @param <E>
+	 *            The entity type.
+	 * @param <K>
+	 *            The key type.
+	 * @return The entities with a key strictly greater than the given key.
+	 * @throws DictionaryException
+	 *             Thrown if the entities could not be looked up.
+	 */
+	<E, K extends Serializable> List<E> lookupAfter(KeyedEntityDescriptor<E, K> entityDescriptor, K key, int count)
+			throws DictionaryException;
+}
@@ -0,0 +1,44 @@
+/* 
+ * Model Tools.
+ * Copyright (C) 2013 Pal Hargitai (pal@lunarray.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.lunarray.model.descriptor.dictionary;
+
+import javax.persistence.EntityManager;
+
+import org.lunarray.model.descriptor.dictionary.exceptions.DictionaryException;
+
+/**
+ * An operation on an acquired entity manager.
+ * 
+ * @author Pal Hargitai (pal@lunarray.org)
+ * @param <T>
+ *            The result type.
+ * @see DictionaryJpaImpl
+ */
+interface ManagerCallback<T> {
+
+	/**
+	 * Executes the operation.
+	 * 
+	 * @param manager
+	 *            The entity manager, released once the operation completes.
+	 * @return The result.
+	 * @throws DictionaryException
+	 *             Thrown if the operation failed.
+	 */
+	T execute(EntityManager manager) throws DictionaryException;
+}
@@ -0,0 +1,82 @@
+/* 
+ * Model Tools.
+ * Copyright (C) 2013 Pal Hargitai (pal@lunarray.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.lunarray.model.descriptor.dictionary;
+
+import java.util.List;
+
+import org.lunarray.model.descriptor.dictionary.totals.Totals;
+
+/**
+ * A page of entities along with the totals of all entities.
+ * 
+ * @author Pal Hargitai (pal@lunarray.org)
+ * @param <E>
+ *            The entity type.
+ */
+public final class Page<E> {
+
+	/** The entities. */
+	private final transient List<E> entities;
+	/** The row of the first entity. */
+	private final transient int row;
+	/** The totals. */
+	private final transient Totals totals;
+
+	/**
+	 * Default constructor.
+	 * 
+	 * @param entities
+	 *            The entities.
+	 * @param row
+	 *            The row of the first entity.
+	 * @param totals
+	 *            The totals.
+	 */
+	public Page(final List<E> entities, final int row, final Totals totals) {
+		this.entities = entities;
+		this.row = row;
+		this.totals = totals;
+	}
+
+	/**
+	 * Gets the value for the entities field.
+	 * 
+	 * @return The value for the entities field.
+	 */
+	public List<E> getEntities() {
+		return this.entities;
+	}
+
+	/**
+	 * Gets the value for the row field.
+	 * 
+	 * @return The value for the row field.
+	 */
+	public int getRow() {
+		return this.row;
+	}
+
+	/**
+	 * Gets the value for the totals field.
+	 * 
+	 * @return The value for the totals field.
+	 */
+	public Totals getTotals() {
+		return this.totals;
+	}
+}
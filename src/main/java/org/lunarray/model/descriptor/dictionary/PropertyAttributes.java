@@ -0,0 +1,114 @@
+/* 
+ * Model Tools.
+ * Copyright (C) 2013 Pal Hargitai (pal@lunarray.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.lunarray.model.descriptor.dictionary;
+
+import java.lang.reflect.AnnotatedElement;
+import java.lang.reflect.Member;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.persistence.Column;
+import javax.persistence.metamodel.Attribute;
+import javax.persistence.metamodel.Metamodel;
+
+import org.apache.commons.lang.Validate;
+import org.lunarray.common.check.CheckUtil;
+import org.lunarray.model.descriptor.util.StringUtil;
+
+/**
+ * The attributes of an entity, by the name of their descriptor property.
+ * 
+ * Property names follow the JPA property resolver: the name from
+ * {@link Column} if present, the attribute name otherwise.
+ * 
+ * @author Pal Hargitai (pal@lunarray.org)
+ * @see org.lunarray.model.descriptor.builder.annotation.resolver.attribute.jpa.JpaAttributePropertyResolverStrategy
+ */
+final class PropertyAttributes {
+
+	/** The attributes by property name. */
+	private final transient Map<String, Attribute<?, ?>> attributes;
+
+	/**
+	 * Constructs the property attributes.
+	 * 
+	 * @param attributes
+	 *            The attributes by property name.
+	 */
+	private PropertyAttributes(final Map<String, Attribute<?, ?>> attributes) {
+		this.attributes = attributes;
+	}
+
+	/**
+	 * Resolves the property attributes of an entity.
+	 * 
+	 * @param metamodel
+	 *            The meta model. May not be null.
+	 * @param entityType
+	 *            The entity type. May not be null.
+	 * @return The property attributes.
+	 */
+	public static PropertyAttributes create(final Metamodel metamodel, final Class<?> entityType) {
+		Validate.notNull(metamodel, "Meta model may not be null.");
+		Validate.notNull(entityType, "Entity type may not be null.");
+		final Map<String, Attribute<?, ?>> attributes = new TreeMap<String, Attribute<?, ?>>();
+		for (final Attribute<?, ?> attribute : metamodel.entity(entityType).getAttributes()) {
+			attributes.put(PropertyAttributes.getPropertyName(attribute), attribute);
+		}
+		return new PropertyAttributes(Collections.unmodifiableMap(attributes));
+	}
+
+	/**
+	 * Gets the property name of an attribute.
+	 * 
+	 * @param attribute
+	 *            The attribute.
+	 * @return The property name.
+	 */
+	private static String getPropertyName(final Attribute<?, ?> attribute) {
+		final Member member = attribute.getJavaMember();
+		if (member instanceof AnnotatedElement) {
+			final Column column = ((AnnotatedElement) member).getAnnotation(Column.class);
+			if (!CheckUtil.isNull(column) && !StringUtil.isEmptyString(column.name())) {
+				return column.name();
+			}
+		}
+		return attribute.getName();
+	}
+
+	/**
+	 * Gets the attribute for a property.
+	 * 
+	 * @param propertyName
+	 *            The property name.
+	 * @return The attribute, or null if there is none.
+	 */
+	public Attribute<?, ?> getAttribute(final String propertyName) {
+		return this.attributes.get(propertyName);
+	}
+
+	/**
+	 * Gets all attributes by property name.
+	 * 
+	 * @return The attributes, ordered by property name.
+	 */
+	public Map<String, Attribute<?, ?>> getAttributes() {
+		return this.attributes;
+	}
+}
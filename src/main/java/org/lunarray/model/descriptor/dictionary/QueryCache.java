@@ -0,0 +1,219 @@
+/* 
+ * Model Tools.
+ * Copyright (C) 2013 Pal Hargitai (pal@lunarray.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.lunarray.model.descriptor.dictionary;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.PersistenceException;
+import javax.persistence.TypedQuery;
+import javax.persistence.criteria.CriteriaQuery;
+
+import org.apache.commons.lang.Validate;
+import org.lunarray.common.check.CheckUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Caches queries per entity manager factory, entity type and operation.
+ * 
+ * On a miss the criteria query is built and registered as a named query with
+ * the {@link EntityManagerFactory} of the entity manager, so subsequent
+ * lookups on that factory skip both criteria construction and query
+ * translation. If the provider refuses to register the query, the criteria
+ * query itself is kept as a template, which still skips construction. Named
+ * queries and templates are kept per factory, as a dictionary may use several
+ * factories, and are dropped once a factory is no longer referenced.
+ * 
+ * @author Pal Hargitai (pal@lunarray.org)
+ */
+public final class QueryCache {
+
+	/** The logger. */
+	private static final Logger LOGGER = LoggerFactory.getLogger(QueryCache.class);
+	/** The named query prefix. */
+	private static final String NAME_PREFIX = "org.lunarray.model.descriptor.dictionary.";
+	/** The number of hits. */
+	private final transient AtomicLong hits = new AtomicLong();
+	/** The number of misses. */
+	private final transient AtomicLong misses = new AtomicLong();
+	/** The registrations per entity manager factory, guarded by itself. */
+	private final transient Map<EntityManagerFactory, Registrations> registrations = new WeakHashMap<EntityManagerFactory, Registrations>();
+
+	/**
+	 * Clears the cache and its statistics. Registered named queries remain
+	 * with the entity manager factories and are overwritten on the next miss.
+	 */
+	public void clear() {
+		synchronized (this.registrations) {
+			this.registrations.clear();
+		}
+		this.hits.set(0);
+		this.misses.set(0);
+	}
+
+	/**
+	 * Gets the number of cache hits.
+	 * 
+	 * @return The number of hits.
+	 */
+	public long getHits() {
+		return this.hits.get();
+	}
+
+	/**
+	 * Gets the number of cache misses.
+	 * 
+	 * @return The number of misses.
+	 */
+	public long getMisses() {
+		return this.misses.get();
+	}
+
+	/**
+	 * Gets a query for an entity type and operation.
+	 * 
+	 * @param manager
+	 *            The entity manager to create the query with. May not be
+	 *            null.
+	 * @param entityType
+	 *            The entity type. May not be null.
+	 * @param operation
+	 *            The operation. May not be null.
+	 * @param resultType
+	 *            The result type. May not be null.
+	 * @param factory
+	 *            The factory to create the criteria query with on a miss. May
+	 *            not be null.
+	 * @param <T>
+	 *            The result type.
+	 * @return A fresh query, without any parameters, first result or maximum
+	 *         results set.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> TypedQuery<T> getQuery(final EntityManager manager, final Class<?> entityType, final String operation,
+			final Class<T> resultType, final CriteriaFactory<T> factory) {
+		Validate.notNull(manager, "Entity manager may not be null.");
+		Validate.notNull(entityType, "Entity type may not be null.");
+		Validate.notNull(operation, "Operation may not be null.");
+		Validate.notNull(factory, "Factory may not be null.");
+		final String name = new StringBuilder(QueryCache.NAME_PREFIX).append(entityType.getName()).append('.').append(operation)
+				.toString();
+		final EntityManagerFactory entityManagerFactory = manager.getEntityManagerFactory();
+		final Registrations registered = this.getRegistrations(entityManagerFactory);
+		final TypedQuery<T> result;
+		if (registered.getNamedQueries().containsKey(name)) {
+			this.hits.incrementAndGet();
+			result = manager.createNamedQuery(name, resultType);
+		} else {
+			final CriteriaQuery<T> template = (CriteriaQuery<T>) registered.getTemplates().get(name);
+			if (CheckUtil.isNull(template)) {
+				this.misses.incrementAndGet();
+				final CriteriaQuery<T> criteria = factory.create(manager.getCriteriaBuilder());
+				result = manager.createQuery(criteria);
+				this.register(entityManagerFactory, registered, name, result, criteria);
+			} else {
+				this.hits.incrementAndGet();
+				result = manager.createQuery(template);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Gets the registrations for a factory.
+	 * 
+	 * @param entityManagerFactory
+	 *            The entity manager factory.
+	 * @return The registrations.
+	 */
+	private Registrations getRegistrations(final EntityManagerFactory entityManagerFactory) {
+		synchronized (this.registrations) {
+			Registrations registered = this.registrations.get(entityManagerFactory);
+			if (CheckUtil.isNull(registered)) {
+				registered = new Registrations();
+				this.registrations.put(entityManagerFactory, registered);
+			}
+			return registered;
+		}
+	}
+
+	/**
+	 * Registers a query as a named query, or as a template if that fails.
+	 * 
+	 * @param entityManagerFactory
+	 *            The entity manager factory.
+	 * @param registered
+	 *            The registrations of the factory.
+	 * @param name
+	 *            The query name.
+	 * @param query
+	 *            The query.
+	 * @param criteria
+	 *            The criteria query.
+	 */
+	private void register(final EntityManagerFactory entityManagerFactory, final Registrations registered, final String name,
+			final TypedQuery<?> query, final CriteriaQuery<?> criteria) {
+		try {
+			entityManagerFactory.addNamedQuery(name, query);
+			registered.getNamedQueries().put(name, Boolean.TRUE);
+		} catch (final PersistenceException e) {
+			QueryCache.LOGGER.debug("Could not register named query '{}', keeping template.", name, e);
+			registered.getTemplates().put(name, criteria);
+		} catch (final UnsupportedOperationException e) {
+			QueryCache.LOGGER.debug("Could not register named query '{}', keeping template.", name, e);
+			registered.getTemplates().put(name, criteria);
+		}
+	}
+
+	/**
+	 * The queries registered with a single entity manager factory.
+	 * 
+	 * @author Pal Hargitai (pal@lunarray.org)
+	 */
+	private static final class Registrations {
+
+		/** The names of the registered named queries. */
+		private final transient ConcurrentMap<String, Boolean> namedQueries = new ConcurrentHashMap<String, Boolean>();
+		/** The criteria templates for queries that could not be registered. */
+		private final transient ConcurrentMap<String, CriteriaQuery<?>> templates = new ConcurrentHashMap<String, CriteriaQuery<?>>();
+
+		/**
+		 * Gets the value for the namedQueries field.
+		 * 
+		 * @return The value for the namedQueries field.
+		 */
+		public ConcurrentMap<String, Boolean> getNamedQueries() {
+			return this.namedQueries;
+		}
+
+		/**
+		 * Gets the value for the templates field.
+		 * 
+		 * @return The value for the templates field.
+		 */
+		public ConcurrentMap<String, CriteriaQuery<?>> getTemplates() {
+			return this.templates;
+		}
+	}
+}
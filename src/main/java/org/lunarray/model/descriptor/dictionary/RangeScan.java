@@ -0,0 +1,135 @@
+/* 
+ * Model Tools.
+ * Copyright (C) 2013 Pal Hargitai (pal@lunarray.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.lunarray.model.descriptor.dictionary;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceException;
+
+import org.lunarray.model.descriptor.dictionary.exceptions.DictionaryException;
+import org.lunarray.model.descriptor.dictionary.monitor.DictionaryOperation;
+
+/**
+ * Reads all entities of a type within a key range, in chunks, and hands them
+ * to a consumer.
+ * 
+ * The range excludes its lower bound and includes its upper bound, either
+ * bound may be null to leave the range open. Every chunk is read through
+ * {@link DictionaryJpaImpl#execute(Class, DictionaryOperation, ManagerCallback)}
+ * on an entity manager of its own. If the entity manager is shared, the
+ * entities of a chunk are detached once consumed.
+ * 
+ * @author Pal Hargitai (pal@lunarray.org)
+ * @param <E>
+ *            The entity type.
+ */
+final class RangeScan<E>
+		implements Callable<Long>, ManagerCallback<List<E>> {
+
+	/** The chunk size. */
+	private final transient int chunkSize;
+	/** The consumer. */
+	private final transient EntityConsumer<? super E> consumer;
+	/** The dictionary. */
+	private final transient DictionaryJpaImpl dictionary;
+	/** The entity type. */
+	private final transient Class<E> entityType;
+	/** The key of the last entity read, the exclusive lower bound of the next chunk. */
+	private transient Object key;
+	/** Whether the entity manager is shared. */
+	private final transient boolean shared;
+	/** The inclusive upper bound, may be null. */
+	private final transient Object upper;
+
+	/**
+	 * Constructs the scan.
+	 * 
+	 * @param dictionary
+	 *            The dictionary to read chunks through.
+	 * @param shared
+	 *            Whether the entity manager of the dictionary is shared.
+	 * @param entityType
+	 *            The entity type.
+	 * @param lower
+	 *            The exclusive lower bound, or null.
+	 * @param upper
+	 *            The inclusive upper bound, or null.
+	 * @param chunkSize
+	 *            The chunk size.
+	 * @param consumer
+	 *            The consumer.
+	 */
+	public RangeScan(final DictionaryJpaImpl dictionary, final boolean shared, final Class<E> entityType, final Object lower,
+			final Object upper, final int chunkSize, final EntityConsumer<? super E> consumer) {
+		this.dictionary = dictionary;
+		this.shared = shared;
+		this.entityType = entityType;
+		this.key = lower;
+		this.upper = upper;
+		this.chunkSize = chunkSize;
+		this.consumer = consumer;
+	}
+
+	/**
+	 * Reads the range.
+	 * 
+	 * @return The number of entities read.
+	 * @throws DictionaryException
+	 *             Thrown if a chunk could not be read.
+	 */
+	@Override
+	public Long call() throws DictionaryException {
+		long count = 0;
+		int size;
+		do {
+			if (Thread.currentThread().isInterrupted()) {
+				throw new PersistenceException("Range scan interrupted.");
+			}
+			size = this.dictionary.execute(this.entityType, DictionaryOperation.LOOKUP_PARTITIONED, this).size();
+			count += size;
+		} while (size == this.chunkSize);
+		return count;
+	}
+
+	/**
+	 * Reads and consumes the next chunk.
+	 * 
+	 * @param manager
+	 *            The entity manager.
+	 * @return The chunk.
+	 */
+	@Override
+	public List<E> execute(final EntityManager manager) {
+		final List<E> chunk = this.dictionary.createRangeQuery(manager, this.entityType, this.key, this.upper, this.chunkSize)
+				.getResultList();
+		for (final E entity : chunk) {
+			this.consumer.consume(entity);
+		}
+		if (!chunk.isEmpty()) {
+			this.key = manager.getEntityManagerFactory().getPersistenceUnitUtil().getIdentifier(chunk.get(chunk.size() - 1));
+		}
+		if (this.shared) {
+			for (final E entity : chunk) {
+				manager.detach(entity);
+			}
+		}
+		return chunk;
+	}
+}
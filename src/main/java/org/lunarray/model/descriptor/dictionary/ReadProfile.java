@@ -0,0 +1,172 @@
+/* 
+ * Model Tools.
+ * Copyright (C) 2013 Pal Hargitai (pal@lunarray.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.lunarray.model.descriptor.dictionary;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.persistence.FlushModeType;
+
+import org.apache.commons.lang.Validate;
+import org.lunarray.common.check.CheckUtil;
+
+/**
+ * How entities are read by dictionary lookups.
+ * 
+ * Lookups are pure reads, a read profile tells the provider so. Queries use
+ * {@link FlushModeType#COMMIT}, so pending changes are not flushed before
+ * each lookup. Provider specific hints may mark results read only, so no
+ * snapshots are kept for dirty checking, and set the JDBC fetch size. Results
+ * may also be detached once read.
+ * 
+ * @author Pal Hargitai (pal@lunarray.org)
+ * @see DictionaryJpaImpl#setReadProfile(org.lunarray.model.descriptor.model.entity.EntityDescriptor,
+ *      ReadProfile)
+ */
+public final class ReadProfile {
+
+	/** The EclipseLink fetch size hint. */
+	public static final String ECLIPSELINK_FETCH_SIZE = "eclipselink.jdbc.fetch-size";
+	/** The EclipseLink read only hint. */
+	public static final String ECLIPSELINK_READ_ONLY = "eclipselink.read-only";
+	/** The Hibernate fetch size hint. */
+	public static final String HIBERNATE_FETCH_SIZE = "org.hibernate.fetchSize";
+	/** The Hibernate read only hint. */
+	public static final String HIBERNATE_READ_ONLY = "org.hibernate.readOnly";
+
+	/** Whether to detach results. */
+	private final transient boolean detach;
+	/** The query hints. */
+	private final transient Map<String, Object> hints;
+
+	/**
+	 * Constructs the read profile.
+	 * 
+	 * @param hints
+	 *            The query hints.
+	 * @param detach
+	 *            Whether to detach results.
+	 */
+	private ReadProfile(final Map<String, Object> hints, final boolean detach) {
+		this.hints = hints;
+		this.detach = detach;
+	}
+
+	/**
+	 * Creates a read profile with the given hints.
+	 * 
+	 * @param hints
+	 *            The query hints. May not be null.
+	 * @return The read profile.
+	 */
+	public static ReadProfile create(final Map<String, ?> hints) {
+		Validate.notNull(hints, "Hints may not be null.");
+		return new ReadProfile(Collections.unmodifiableMap(new HashMap<String, Object>(hints)), false);
+	}
+
+	/**
+	 * Creates a read only profile for EclipseLink.
+	 * 
+	 * @param fetchSize
+	 *            The JDBC fetch size. Must be positive.
+	 * @return The read profile.
+	 */
+	public static ReadProfile eclipseLink(final int fetchSize) {
+		Validate.isTrue(CheckUtil.checkPositive(fetchSize), "Fetch size is not positive.");
+		final Map<String, Object> hints = new HashMap<String, Object>();
+		hints.put(ReadProfile.ECLIPSELINK_READ_ONLY, Boolean.TRUE.toString());
+		hints.put(ReadProfile.ECLIPSELINK_FETCH_SIZE, Integer.valueOf(fetchSize));
+		return ReadProfile.create(hints);
+	}
+
+	/**
+	 * Creates a read only profile for Hibernate.
+	 * 
+	 * @param fetchSize
+	 *            The JDBC fetch size. Must be positive.
+	 * @return The read profile.
+	 */
+	public static ReadProfile hibernate(final int fetchSize) {
+		Validate.isTrue(CheckUtil.checkPositive(fetchSize), "Fetch size is not positive.");
+		final Map<String, Object> hints = new HashMap<String, Object>();
+		hints.put(ReadProfile.HIBERNATE_READ_ONLY, Boolean.TRUE);
+		hints.put(ReadProfile.HIBERNATE_FETCH_SIZE, Integer.valueOf(fetchSize));
+		return ReadProfile.create(hints);
+	}
+
+	/**
+	 * Gets the flush mode used for lookups.
+	 * 
+	 * @return The flush mode, always {@link FlushModeType#COMMIT}.
+	 */
+	public FlushModeType getFlushMode() {
+		return FlushModeType.COMMIT;
+	}
+
+	/**
+	 * Gets the value for the hints field.
+	 * 
+	 * @return The value for the hints field.
+	 */
+	public Map<String, Object> getHints() {
+		return this.hints;
+	}
+
+	/**
+	 * Tests whether results are detached once read.
+	 * 
+	 * @return True if and only if results are detached.
+	 */
+	public boolean isDetach() {
+		return this.detach;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public String toString() {
+		return new StringBuilder("ReadProfile[hints=").append(this.hints).append(", detach=").append(this.detach).append(']')
+				.toString();
+	}
+
+	/**
+	 * Gets this profile with a further hint.
+	 * 
+	 * @param name
+	 *            The hint name. May not be empty.
+	 * @param value
+	 *            The hint value.
+	 * @return The read profile.
+	 */
+	public ReadProfile withHint(final String name, final Object value) {
+		Validate.notEmpty(name, "Hint name may not be empty.");
+		final Map<String, Object> newHints = new HashMap<String, Object>(this.hints);
+		newHints.put(name, value);
+		return new ReadProfile(Collections.unmodifiableMap(newHints), this.detach);
+	}
+
+	/**
+	 * Gets this profile detaching results once read. Detached results no
+	 * longer take up the persistence context of a shared entity manager.
+	 * 
+	 * @return The read profile.
+	 */
+	public ReadProfile detached() {
+		return new ReadProfile(this.hints, true);
+	}
+}
@@ -0,0 +1,145 @@
+/* 
+ * Model Tools.
+ * Copyright (C) 2013 Pal Hargitai (pal@lunarray.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.lunarray.model.descriptor.dictionary;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.Expression;
+import javax.persistence.criteria.Order;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import javax.persistence.metamodel.Attribute;
+
+import org.apache.commons.lang.Validate;
+import org.lunarray.common.check.CheckUtil;
+import org.lunarray.model.descriptor.dictionary.query.Filter;
+import org.lunarray.model.descriptor.dictionary.query.FilterType;
+import org.lunarray.model.descriptor.dictionary.query.Ordering;
+import org.lunarray.model.descriptor.dictionary.query.QuerySpecification;
+
+/**
+ * Translates query specifications into criteria.
+ * 
+ * @author Pal Hargitai (pal@lunarray.org)
+ * @see QuerySpecification
+ */
+final class SpecificationCriteria {
+
+	/**
+	 * Utility class.
+	 */
+	private SpecificationCriteria() {
+		// Utility class.
+	}
+
+	/**
+	 * Creates the orders of a specification.
+	 * 
+	 * @param builder
+	 *            The criteria builder.
+	 * @param root
+	 *            The entity root.
+	 * @param attributes
+	 *            The property attributes of the entity.
+	 * @param specification
+	 *            The specification.
+	 * @return The orders.
+	 */
+	public static List<Order> createOrder(final CriteriaBuilder builder, final Root<?> root, final PropertyAttributes attributes,
+			final QuerySpecification<?> specification) {
+		final List<Order> order = new ArrayList<Order>();
+		for (final Ordering ordering : specification.getOrderings()) {
+			final Path<Object> path = SpecificationCriteria.getPath(root, attributes, ordering.getProperty());
+			if (ordering.isAscending()) {
+				order.add(builder.asc(path));
+			} else {
+				order.add(builder.desc(path));
+			}
+		}
+		return order;
+	}
+
+	/**
+	 * Creates the predicates of a specification.
+	 * 
+	 * @param builder
+	 *            The criteria builder.
+	 * @param root
+	 *            The entity root.
+	 * @param attributes
+	 *            The property attributes of the entity.
+	 * @param specification
+	 *            The specification.
+	 * @return The predicates, all of which must hold.
+	 */
+	@SuppressWarnings("unchecked")
+	public static Predicate[] createPredicates(final CriteriaBuilder builder, final Root<?> root,
+			final PropertyAttributes attributes, final QuerySpecification<?> specification) {
+		final List<Predicate> predicates = new ArrayList<Predicate>();
+		for (final Filter filter : specification.getFilters()) {
+			final Path<Object> path = SpecificationCriteria.getPath(root, attributes, filter.getProperty());
+			final List<Object> values = filter.getValues();
+			if (FilterType.EQUAL.equals(filter.getType())) {
+				if (CheckUtil.isNull(values.get(0))) {
+					predicates.add(builder.isNull(path));
+				} else {
+					predicates.add(builder.equal(path, values.get(0)));
+				}
+			} else if (FilterType.IN.equals(filter.getType())) {
+				if (values.isEmpty()) {
+					predicates.add(builder.disjunction());
+				} else {
+					predicates.add(path.in(values));
+				}
+			} else if (FilterType.LIKE.equals(filter.getType())) {
+				predicates.add(builder.like((Expression<String>) (Expression<?>) path, (String) values.get(0),
+						QuerySpecification.ESCAPE));
+			} else if (FilterType.RANGE.equals(filter.getType())) {
+				final Expression<Comparable<Object>> comparable = (Expression<Comparable<Object>>) (Expression<?>) path;
+				if (!CheckUtil.isNull(values.get(0))) {
+					predicates.add(builder.greaterThanOrEqualTo(comparable, (Comparable<Object>) values.get(0)));
+				}
+				if (!CheckUtil.isNull(values.get(1))) {
+					predicates.add(builder.lessThanOrEqualTo(comparable, (Comparable<Object>) values.get(1)));
+				}
+			}
+		}
+		return predicates.toArray(new Predicate[predicates.size()]);
+	}
+
+	/**
+	 * Gets the path to a property.
+	 * 
+	 * @param root
+	 *            The entity root.
+	 * @param attributes
+	 *            The property attributes of the entity.
+	 * @param property
+	 *            The property name.
+	 * @return The path.
+	 */
+	private static Path<Object> getPath(final Root<?> root, final PropertyAttributes attributes, final String property) {
+		final Attribute<?, ?> attribute = attributes.getAttribute(property);
+		Validate.isTrue(!CheckUtil.isNull(attribute) && !attribute.isCollection(), "Property is not a persistent singular attribute: ",
+				property);
+		return root.get(attribute.getName());
+	}
+}
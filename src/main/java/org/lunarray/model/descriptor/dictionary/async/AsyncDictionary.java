@@ -0,0 +1,104 @@
+/* 
+ * Model Tools.
+ * Copyright (C) 2013 Pal Hargitai (pal@lunarray.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.lunarray.model.descriptor.dictionary.async;
+
+import java.io.Closeable;
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Future;
+
+import org.lunarray.model.descriptor.dictionary.PaginatedDictionary;
+import org.lunarray.model.descriptor.model.entity.EntityDescriptor;
+import org.lunarray.model.descriptor.model.entity.KeyedEntityDescriptor;
+
+/**
+ * An asynchronous paginated dictionary.
+ * 
+ * Every lookup returns immediately with a {@link Future}. Failures are
+ * reported through the future, as the cause of an
+ * {@link java.util.concurrent.ExecutionException}.
+ * 
+ * @author Pal Hargitai (pal@lunarray.org)
+ * @see PaginatedDictionary
+ */
+public interface AsyncDictionary
+		extends Closeable {
+
+	/**
+	 * Releases the resources used for executing lookups.
+	 */
+	@Override
+	void close();
+
+	/**
+	 * Looks up all entities.
+	 * 
+	 * @param entityDescriptor
+	 *            The entity descriptor. May not be null.
+	 * @param <E>
+	 *            The entity type.
+	 * @return The future entities.
+	 * @see PaginatedDictionary#lookup(EntityDescriptor)
+	 */
+	<E> Future<Collection<E>> lookup(EntityDescriptor<E> entityDescriptor);
+
+	/**
+	 * Looks up an entity by key.
+	 * 
+	 * @param entityDescriptor
+	 *            The entity descriptor. May not be null.
+	 * @param key
+	 *            The key.
+	 * @param <E>
+	 *            The entity type.
+	 * @param <K>
+	 *            The key type.
+	 * @return The future entity.
+	 * @see PaginatedDictionary#lookup(KeyedEntityDescriptor, Serializable)
+	 */
+	<E, K extends Serializable> Future<E> lookup(KeyedEntityDescriptor<E, K> entityDescriptor, K key);
+
+	/**
+	 * Looks up a page of entities.
+	 * 
+	 * @param entityDescriptor
+	 *            The entity descriptor. May not be null.
+	 * @param row
+	 *            The row to start at.
+	 * @param count
+	 *            The number of entities.
+	 * @param <E>
+	 *            The entity type.
+	 * @return The future entities.
+	 * @see PaginatedDictionary#lookupPaginated(EntityDescriptor, int, int)
+	 */
+	<E> Future<List<E>> lookupPaginated(EntityDescriptor<E> entityDescriptor, int row, int count);
+
+	/**
+	 * Counts the entities.
+	 * 
+	 * @param entityDescriptor
+	 *            The entity descriptor. May not be null.
+	 * @param <E>
+	 *            The entity type.
+	 * @return The future count.
+	 * @see PaginatedDictionary#lookupTotals(EntityDescriptor)
+	 */
+	<E> Future<Integer> lookupTotals(EntityDescriptor<E> entityDescriptor);
+}
@@ -0,0 +1,189 @@
+/* 
+ * Model Tools.
+ * Copyright (C) 2013 Pal Hargitai (pal@lunarray.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.lunarray.model.descriptor.dictionary.async;
+
+import java.io.Serializable;
+import java.lang.reflect.InvocationTargetException;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.lang.Validate;
+import org.lunarray.model.descriptor.dictionary.PaginatedDictionary;
+import org.lunarray.model.descriptor.dictionary.exceptions.DictionaryException;
+import org.lunarray.model.descriptor.model.entity.EntityDescriptor;
+import org.lunarray.model.descriptor.model.entity.KeyedEntityDescriptor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs the lookups of a dictionary on an executor.
+ * 
+ * The delegate should scope its entity managers per call or per pooled
+ * acquisition, such as a
+ * {@link org.lunarray.model.descriptor.dictionary.DictionaryJpaImpl} created
+ * from an entity manager factory, so every task gets its own entity manager.
+ * 
+ * @author Pal Hargitai (pal@lunarray.org)
+ */
+public final class ExecutorAsyncDictionary
+		implements AsyncDictionary {
+
+	/** The logger. */
+	private static final Logger LOGGER = LoggerFactory.getLogger(ExecutorAsyncDictionary.class);
+	/** The delegate. */
+	private final transient PaginatedDictionary delegate;
+	/** The executor. */
+	private final transient ExecutorService executor;
+	/** Whether the executor is owned, and shut down on close. */
+	private final transient boolean ownsExecutor;
+
+	/**
+	 * Default constructor.
+	 * 
+	 * Uses virtual threads if the runtime supports them, and a bounded pool
+	 * of twice the number of processors otherwise.
+	 * 
+	 * @param delegate
+	 *            The dictionary to run lookups on. May not be null.
+	 */
+	public ExecutorAsyncDictionary(final PaginatedDictionary delegate) {
+		this(delegate, ExecutorAsyncDictionary.createDefaultExecutor(), true);
+	}
+
+	/**
+	 * Default constructor.
+	 * 
+	 * @param delegate
+	 *            The dictionary to run lookups on. May not be null.
+	 * @param executor
+	 *            The executor to run lookups on. May not be null. Is not shut
+	 *            down on close.
+	 */
+	public ExecutorAsyncDictionary(final PaginatedDictionary delegate, final ExecutorService executor) {
+		this(delegate, executor, false);
+	}
+
+	/**
+	 * Constructs the dictionary.
+	 * 
+	 * @param delegate
+	 *            The delegate.
+	 * @param executor
+	 *            The executor.
+	 * @param ownsExecutor
+	 *            Whether the executor is shut down on close.
+	 */
+	private ExecutorAsyncDictionary(final PaginatedDictionary delegate, final ExecutorService executor, final boolean ownsExecutor) {
+		Validate.notNull(delegate, "Delegate may not be null.");
+		Validate.notNull(executor, "Executor may not be null.");
+		this.delegate = delegate;
+		this.executor = executor;
+		this.ownsExecutor = ownsExecutor;
+	}
+
+	/**
+	 * Creates the default executor.
+	 * 
+	 * @return A virtual thread per task executor if available, otherwise a
+	 *         bounded pool.
+	 */
+	private static ExecutorService createDefaultExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (final NoSuchMethodException e) {
+			ExecutorAsyncDictionary.LOGGER.debug("Virtual threads not available, using a bounded pool.");
+		} catch (final IllegalAccessException e) {
+			ExecutorAsyncDictionary.LOGGER.debug("Virtual threads not accessible, using a bounded pool.", e);
+		} catch (final InvocationTargetException e) {
+			ExecutorAsyncDictionary.LOGGER.debug("Virtual threads not usable, using a bounded pool.", e);
+		}
+		final AtomicInteger counter = new AtomicInteger();
+		return Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors() * 2, new ThreadFactory() {
+			/** {@inheritDoc} */
+			@Override
+			public Thread newThread(final Runnable runnable) {
+				final Thread thread = new Thread(runnable, new StringBuilder("dictionary-async-").append(counter.incrementAndGet())
+						.toString());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void close() {
+		if (this.ownsExecutor) {
+			this.executor.shutdown();
+		}
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public <E> Future<Collection<E>> lookup(final EntityDescriptor<E> entityDescriptor) {
+		return this.executor.submit(new Callable<Collection<E>>() {
+			/** {@inheritDoc} */
+			@Override
+			public Collection<E> call() throws DictionaryException {
+				return ExecutorAsyncDictionary.this.delegate.lookup(entityDescriptor);
+			}
+		});
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public <E, K extends Serializable> Future<E> lookup(final KeyedEntityDescriptor<E, K> entityDescriptor, final K key) {
+		return this.executor.submit(new Callable<E>() {
+			/** {@inheritDoc} */
+			@Override
+			public E call() throws DictionaryException {
+				return ExecutorAsyncDictionary.this.delegate.lookup(entityDescriptor, key);
+			}
+		});
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public <E> Future<List<E>> lookupPaginated(final EntityDescriptor<E> entityDescriptor, final int row, final int count) {
+		return this.executor.submit(new Callable<List<E>>() {
+			/** {@inheritDoc} */
+			@Override
+			public List<E> call() throws DictionaryException {
+				return ExecutorAsyncDictionary.this.delegate.lookupPaginated(entityDescriptor, row, count);
+			}
+		});
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public <E> Future<Integer> lookupTotals(final EntityDescriptor<E> entityDescriptor) {
+		return this.executor.submit(new Callable<Integer>() {
+			/** {@inheritDoc} */
+			@Override
+			public Integer call() throws DictionaryException {
+				return Integer.valueOf(ExecutorAsyncDictionary.this.delegate.lookupTotals(entityDescriptor));
+			}
+		});
+	}
+}
@@ -0,0 +1,110 @@
+/* 
+ * Model Tools.
+ * Copyright (C) 2013 Pal Hargitai (pal@lunarray.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.lunarray.model.descriptor.dictionary.cache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import javax.persistence.PostRemove;
+import javax.persistence.PostUpdate;
+
+import org.apache.commons.lang.Validate;
+import org.lunarray.common.check.CheckUtil;
+
+/**
+ * JPA entity listener that invalidates cached entities once they are updated
+ * or removed.
+ * 
+ * Register it with {@link javax.persistence.EntityListeners} on the entities,
+ * or as a default entity listener in <code>orm.xml</code>, and register the
+ * caching dictionaries to invalidate with {@link #register(CachingDictionary)}.
+ * 
+ * Since the persistence provider instantiates entity listeners, caches are
+ * registered per context class loader of the registering thread, and only
+ * invalidated by writes on threads with the same context class loader. Both
+ * class loaders and caches are held weakly, so neither an unloaded
+ * application nor a discarded cache is kept alive by a registration.
+ * 
+ * @author Pal Hargitai (pal@lunarray.org)
+ */
+public final class CacheInvalidationListener {
+
+	/** The caches to invalidate, per context class loader. */
+	private static final Map<ClassLoader, Set<CachingDictionary>> CACHES = new WeakHashMap<ClassLoader, Set<CachingDictionary>>();
+
+	/**
+	 * Registers a cache for invalidation by writes on threads with the
+	 * context class loader of the calling thread.
+	 * 
+	 * @param cache
+	 *            The cache. May not be null.
+	 */
+	public static void register(final CachingDictionary cache) {
+		Validate.notNull(cache, "Cache may not be null.");
+		final ClassLoader loader = Thread.currentThread().getContextClassLoader();
+		synchronized (CacheInvalidationListener.CACHES) {
+			Set<CachingDictionary> caches = CacheInvalidationListener.CACHES.get(loader);
+			if (CheckUtil.isNull(caches)) {
+				caches = Collections.newSetFromMap(new WeakHashMap<CachingDictionary, Boolean>());
+				CacheInvalidationListener.CACHES.put(loader, caches);
+			}
+			caches.add(cache);
+		}
+	}
+
+	/**
+	 * Unregisters a cache.
+	 * 
+	 * @param cache
+	 *            The cache.
+	 */
+	public static void unregister(final CachingDictionary cache) {
+		synchronized (CacheInvalidationListener.CACHES) {
+			for (final Set<CachingDictionary> caches : CacheInvalidationListener.CACHES.values()) {
+				caches.remove(cache);
+			}
+		}
+	}
+
+	/**
+	 * Invalidates an updated or removed entity in all caches registered for
+	 * the context class loader of the current thread.
+	 * 
+	 * @param entity
+	 *            The entity.
+	 */
+	@PostUpdate
+	@PostRemove
+	public void invalidate(final Object entity) {
+		final List<CachingDictionary> current;
+		synchronized (CacheInvalidationListener.CACHES) {
+			final Set<CachingDictionary> caches = CacheInvalidationListener.CACHES.get(Thread.currentThread().getContextClassLoader());
+			if (CheckUtil.isNull(caches)) {
+				return;
+			}
+			current = new ArrayList<CachingDictionary>(caches);
+		}
+		for (final CachingDictionary cache : current) {
+			cache.invalidate(entity);
+		}
+	}
+}
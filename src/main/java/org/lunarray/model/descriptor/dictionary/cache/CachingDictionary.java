@@ -0,0 +1,538 @@
+/* 
+ * Model Tools.
+ * Copyright (C) 2013 Pal Hargitai (pal@lunarray.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.lunarray.model.descriptor.dictionary.cache;
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.persistence.PersistenceException;
+import javax.persistence.PersistenceUnitUtil;
+
+import org.apache.commons.lang.Validate;
+import org.apache.commons.lang.builder.EqualsBuilder;
+import org.apache.commons.lang.builder.HashCodeBuilder;
+import org.lunarray.common.check.CheckUtil;
+import org.lunarray.model.descriptor.dictionary.PaginatedDictionary;
+import org.lunarray.model.descriptor.dictionary.exceptions.DictionaryException;
+import org.lunarray.model.descriptor.model.entity.EntityDescriptor;
+import org.lunarray.model.descriptor.model.entity.KeyedEntityDescriptor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A read-through cache in front of a dictionary.
+ * 
+ * Caches lookups by key, bounded by a maximum number of entries with least
+ * recently used eviction, and a time to live that may be set per entity type.
+ * Other lookups are passed on to the delegate. Cached entities are shared
+ * between callers and should be treated as read only. Concurrent lookups of
+ * an entity that is not cached share a single lookup on the delegate, entities
+ * being looked up do not count towards the maximum number of entries.
+ * 
+ * Entries are invalidated explicitly or, when registered with the
+ * {@link CacheInvalidationListener}, when entities are updated or removed.
+ * 
+ * @author Pal Hargitai (pal@lunarray.org)
+ */
+public final class CachingDictionary
+		implements PaginatedDictionary {
+
+	/** Validation message. */
+	private static final String ENTITY_DESCRIPTOR_NULL = "Entity descriptor may not be null.";
+	/** The logger. */
+	private static final Logger LOGGER = LoggerFactory.getLogger(CachingDictionary.class);
+	/** The cached entities, in access order. */
+	private final transient LinkedHashMap<CacheKey, CacheEntry> cache;
+	/** The default time to live, in nanoseconds. */
+	private final transient long defaultTimeToLive;
+	/** The delegate. */
+	private final transient PaginatedDictionary delegate;
+	/** The number of evictions. */
+	private final transient AtomicLong evictions = new AtomicLong();
+	/** The number of hits. */
+	private final transient AtomicLong hits = new AtomicLong();
+	/** The lookups in progress, guarded by the cache monitor. */
+	private final transient Map<CacheKey, Load> loads = new HashMap<CacheKey, Load>();
+	/** The maximum number of entries. */
+	private final transient int maximumSize;
+	/** The number of misses. */
+	private final transient AtomicLong misses = new AtomicLong();
+	/** The time to live per entity type, in nanoseconds. */
+	private final transient ConcurrentMap<Class<?>, Long> timeToLive = new ConcurrentHashMap<Class<?>, Long>();
+	/** The unit utility, to resolve keys of entities, may be null. */
+	private final transient PersistenceUnitUtil unitUtil;
+
+	/**
+	 * Default constructor.
+	 * 
+	 * @param delegate
+	 *            The dictionary to cache. May not be null.
+	 * @param unitUtil
+	 *            The utility to resolve the keys of invalidated entities. If
+	 *            null, invalidating an entity scans the cache and invalidates
+	 *            its entire type.
+	 * @param maximumSize
+	 *            The maximum number of cached entities. Must be positive.
+	 * @param defaultTimeToLive
+	 *            The time to keep entities for. Must be positive.
+	 * @param unit
+	 *            The time unit. May not be null.
+	 */
+	public CachingDictionary(final PaginatedDictionary delegate, final PersistenceUnitUtil unitUtil, final int maximumSize,
+			final long defaultTimeToLive, final TimeUnit unit) {
+		Validate.notNull(delegate, "Delegate may not be null.");
+		Validate.isTrue(CheckUtil.checkPositive(maximumSize), "Maximum size is not positive.");
+		Validate.isTrue(defaultTimeToLive > 0, "Time to live is not positive.");
+		Validate.notNull(unit, "Unit may not be null.");
+		this.delegate = delegate;
+		this.unitUtil = unitUtil;
+		this.maximumSize = maximumSize;
+		this.defaultTimeToLive = unit.toNanos(defaultTimeToLive);
+		this.cache = new LinkedHashMap<CacheKey, CacheEntry>(16, 0.75f, true);
+	}
+
+	/**
+	 * Gets the number of evictions due to the size bound.
+	 * 
+	 * @return The number of evictions.
+	 */
+	public long getEvictions() {
+		return this.evictions.get();
+	}
+
+	/**
+	 * Gets the number of hits, this includes lookups that waited for a
+	 * concurrent lookup of the same entity.
+	 * 
+	 * @return The number of hits.
+	 */
+	public long getHits() {
+		return this.hits.get();
+	}
+
+	/**
+	 * Gets the number of misses, the lookups passed on to the delegate. This
+	 * includes expired entries.
+	 * 
+	 * @return The number of misses.
+	 */
+	public long getMisses() {
+		return this.misses.get();
+	}
+
+	/**
+	 * Gets the number of cached entities.
+	 * 
+	 * @return The number of cached entities.
+	 */
+	public int getSize() {
+		synchronized (this.cache) {
+			return this.cache.size();
+		}
+	}
+
+	/**
+	 * Invalidates the cached entity for a key.
+	 * 
+	 * @param entityType
+	 *            The entity type.
+	 * @param key
+	 *            The key.
+	 */
+	public void invalidate(final Class<?> entityType, final Serializable key) {
+		final CacheKey cacheKey = new CacheKey(entityType, key);
+		synchronized (this.cache) {
+			this.cache.remove(cacheKey);
+			this.loads.remove(cacheKey);
+		}
+	}
+
+	/**
+	 * Invalidates the cached entries for an entity.
+	 * 
+	 * With a unit utility, the entity is invalidated by its key under its
+	 * type and the supertypes thereof. Otherwise, the cache is scanned and all
+	 * entries of its type are invalidated. Lookups of the entity in progress
+	 * are not cached.
+	 * 
+	 * @param entity
+	 *            The entity, may be of a subtype or proxy type.
+	 */
+	public void invalidate(final Object entity) {
+		if (CheckUtil.isNull(entity)) {
+			return;
+		}
+		if (CheckUtil.isNull(this.unitUtil)) {
+			synchronized (this.cache) {
+				CachingDictionary.removeType(this.cache.keySet().iterator(), entity);
+				CachingDictionary.removeType(this.loads.keySet().iterator(), entity);
+			}
+		} else {
+			final Object key = this.unitUtil.getIdentifier(entity);
+			synchronized (this.cache) {
+				for (Class<?> type = entity.getClass(); !CheckUtil.isNull(type); type = type.getSuperclass()) {
+					final CacheKey cacheKey = new CacheKey(type, key);
+					this.cache.remove(cacheKey);
+					this.loads.remove(cacheKey);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Invalidates all cached entities.
+	 */
+	public void invalidateAll() {
+		synchronized (this.cache) {
+			this.cache.clear();
+			this.loads.clear();
+		}
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public <E> Collection<E> lookup(final EntityDescriptor<E> entityDescriptor) throws DictionaryException {
+		return this.delegate.lookup(entityDescriptor);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public <E, K extends Serializable> E lookup(final KeyedEntityDescriptor<E, K> entityDescriptor, final K key) throws DictionaryException {
+		Validate.notNull(entityDescriptor, CachingDictionary.ENTITY_DESCRIPTOR_NULL);
+		final Class<E> entityType = entityDescriptor.getEntityType();
+		final CacheKey cacheKey = new CacheKey(entityType, key);
+		final long now = System.nanoTime();
+		final Load load = new Load();
+		final Load current;
+		synchronized (this.cache) {
+			final CacheEntry entry = this.cache.get(cacheKey);
+			if (!CheckUtil.isNull(entry) && now - entry.getExpiry() < 0) {
+				this.hits.incrementAndGet();
+				return entityType.cast(entry.getEntity());
+			}
+			current = this.loads.get(cacheKey);
+			if (CheckUtil.isNull(current)) {
+				this.loads.put(cacheKey, load);
+			} else {
+				this.hits.incrementAndGet();
+			}
+		}
+		if (!CheckUtil.isNull(current)) {
+			return this.await(entityDescriptor, key, current);
+		}
+		this.misses.incrementAndGet();
+		E entity = null;
+		boolean success = false;
+		try {
+			entity = this.delegate.lookup(entityDescriptor, key);
+			success = true;
+		} finally {
+			synchronized (this.cache) {
+				if (this.loads.get(cacheKey) == load) {
+					this.loads.remove(cacheKey);
+					if (success && !CheckUtil.isNull(entity)) {
+						this.put(cacheKey, new CacheEntry(entity, now + this.getTimeToLive(entityType)));
+					}
+				}
+			}
+			load.complete(entity, success);
+		}
+		return entity;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public <E> List<E> lookupPaginated(final EntityDescriptor<E> entityDescriptor, final int row, final int count)
+			throws DictionaryException {
+		return this.delegate.lookupPaginated(entityDescriptor, row, count);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public <E> int lookupTotals(final EntityDescriptor<E> entityDescriptor) throws DictionaryException {
+		return this.delegate.lookupTotals(entityDescriptor);
+	}
+
+	/**
+	 * Sets the time to live for an entity type.
+	 * 
+	 * @param entityDescriptor
+	 *            The entity descriptor. May not be null.
+	 * @param duration
+	 *            The time to keep entities for. Must be positive.
+	 * @param unit
+	 *            The time unit. May not be null.
+	 */
+	public void setTimeToLive(final EntityDescriptor<?> entityDescriptor, final long duration, final TimeUnit unit) {
+		Validate.notNull(entityDescriptor, CachingDictionary.ENTITY_DESCRIPTOR_NULL);
+		Validate.isTrue(duration > 0, "Time to live is not positive.");
+		Validate.notNull(unit, "Unit may not be null.");
+		this.timeToLive.put(entityDescriptor.getEntityType(), Long.valueOf(unit.toNanos(duration)));
+	}
+
+	/**
+	 * Removes the keys of the type of an entity, or of its supertypes.
+	 * 
+	 * @param iterator
+	 *            The keys.
+	 * @param entity
+	 *            The entity.
+	 */
+	private static void removeType(final Iterator<CacheKey> iterator, final Object entity) {
+		while (iterator.hasNext()) {
+			if (iterator.next().getEntityType().isInstance(entity)) {
+				iterator.remove();
+			}
+		}
+	}
+
+	/**
+	 * Waits for a concurrent lookup of the same entity. If that lookup failed,
+	 * the entity is looked up again.
+	 * 
+	 * @param entityDescriptor
+	 *            The entity descriptor.
+	 * @param key
+	 *            The key.
+	 * @param load
+	 *            The concurrent lookup.
+	 * @param <E>
+	 *            The entity type.
+	 * @param <K>
+	 *            The key type.
+	 * @return The entity.
+	 * @throws DictionaryException
+	 *             Thrown if the entity could not be looked up.
+	 */
+	private <E, K extends Serializable> E await(final KeyedEntityDescriptor<E, K> entityDescriptor, final K key,
+			final Load load) throws DictionaryException {
+		if (!load.await()) {
+			return this.lookup(entityDescriptor, key);
+		}
+		return entityDescriptor.getEntityType().cast(load.getEntity());
+	}
+
+	/**
+	 * Gets the time to live for an entity type.
+	 * 
+	 * @param entityType
+	 *            The entity type.
+	 * @return The time to live, in nanoseconds.
+	 */
+	private long getTimeToLive(final Class<?> entityType) {
+		final Long result = this.timeToLive.get(entityType);
+		if (CheckUtil.isNull(result)) {
+			return this.defaultTimeToLive;
+		}
+		return result.longValue();
+	}
+
+	/**
+	 * Caches an entry, evicting the least recently used entries beyond the
+	 * maximum size. Must be called while holding the cache monitor.
+	 * 
+	 * @param cacheKey
+	 *            The key.
+	 * @param entry
+	 *            The entry.
+	 */
+	private void put(final CacheKey cacheKey, final CacheEntry entry) {
+		this.cache.put(cacheKey, entry);
+		final Iterator<Map.Entry<CacheKey, CacheEntry>> iterator = this.cache.entrySet().iterator();
+		while (this.cache.size() > this.maximumSize && iterator.hasNext()) {
+			final Map.Entry<CacheKey, CacheEntry> eldest = iterator.next();
+			CachingDictionary.LOGGER.debug("Evicting {} from the cache.", eldest.getKey());
+			iterator.remove();
+			this.evictions.incrementAndGet();
+		}
+	}
+
+	/**
+	 * A cached entity with its expiry.
+	 * 
+	 * @author Pal Hargitai (pal@lunarray.org)
+	 */
+	private static final class CacheEntry {
+
+		/** The entity. */
+		private final transient Object entity;
+		/** The expiry, in {@link System#nanoTime()}. */
+		private final transient long expiry;
+
+		/**
+		 * Default constructor.
+		 * 
+		 * @param entity
+		 *            The entity.
+		 * @param expiry
+		 *            The expiry.
+		 */
+		public CacheEntry(final Object entity, final long expiry) {
+			this.entity = entity;
+			this.expiry = expiry;
+		}
+
+		/**
+		 * Gets the value for the entity field.
+		 * 
+		 * @return The value for the entity field.
+		 */
+		public Object getEntity() {
+			return this.entity;
+		}
+
+		/**
+		 * Gets the value for the expiry field.
+		 * 
+		 * @return The value for the expiry field.
+		 */
+		public long getExpiry() {
+			return this.expiry;
+		}
+	}
+
+	/**
+	 * The cache key, an entity type with a key.
+	 * 
+	 * @author Pal Hargitai (pal@lunarray.org)
+	 */
+	private static final class CacheKey {
+
+		/** The entity type. */
+		private final transient Class<?> entityType;
+		/** The key. */
+		private final transient Object key;
+
+		/**
+		 * Default constructor.
+		 * 
+		 * @param entityType
+		 *            The entity type.
+		 * @param key
+		 *            The key.
+		 */
+		public CacheKey(final Class<?> entityType, final Object key) {
+			this.entityType = entityType;
+			this.key = key;
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public boolean equals(final Object obj) {
+			if (!(obj instanceof CacheKey)) {
+				return false;
+			}
+			final CacheKey other = (CacheKey) obj;
+			return new EqualsBuilder().append(this.entityType, other.entityType).append(this.key, other.key).isEquals();
+		}
+
+		/**
+		 * Gets the value for the entityType field.
+		 * 
+		 * @return The value for the entityType field.
+		 */
+		public Class<?> getEntityType() {
+			return this.entityType;
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public int hashCode() {
+			return new HashCodeBuilder().append(this.entityType).append(this.key).toHashCode();
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public String toString() {
+			return new StringBuilder(this.entityType.getName()).append('#').append(this.key).toString();
+		}
+	}
+
+	/**
+	 * A lookup in progress, which concurrent lookups of the same entity wait
+	 * for. Invalidation removes the lookup, so its entity is not cached.
+	 * 
+	 * @author Pal Hargitai (pal@lunarray.org)
+	 */
+	private static final class Load {
+
+		/** Whether the lookup completed. */
+		private transient boolean done;
+		/** The entity, may be null. */
+		private transient Object entity;
+		/** Whether the lookup succeeded. */
+		private transient boolean success;
+
+		/**
+		 * Default constructor.
+		 */
+		public Load() {
+			super();
+		}
+
+		/**
+		 * Waits for the lookup to complete.
+		 * 
+		 * @return True if and only if the lookup succeeded.
+		 */
+		public synchronized boolean await() {
+			try {
+				while (!this.done) {
+					this.wait();
+				}
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new PersistenceException(e);
+			}
+			return this.success;
+		}
+
+		/**
+		 * Completes the lookup.
+		 * 
+		 * @param entity
+		 *            The entity, may be null.
+		 * @param success
+		 *            Whether the lookup succeeded.
+		 */
+		public synchronized void complete(final Object entity, final boolean success) {
+			this.entity = entity;
+			this.success = success;
+			this.done = true;
+			this.notifyAll();
+		}
+
+		/**
+		 * Gets the value for the entity field.
+		 * 
+		 * @return The value for the entity field.
+		 */
+		public synchronized Object getEntity() {
+			return this.entity;
+		}
+	}
+}
@@ -0,0 +1,107 @@
+/* 
+ * Model Tools.
+ * Copyright (C) 2013 Pal Hargitai (pal@lunarray.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.lunarray.model.descriptor.dictionary.manager;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.apache.commons.lang.Validate;
+import org.lunarray.model.descriptor.dictionary.monitor.DictionaryMonitor;
+import org.lunarray.model.descriptor.dictionary.monitor.NoOpDictionaryMonitor;
+
+/**
+ * An entity manager provider that creates its entity managers from a factory.
+ * 
+ * @author Pal Hargitai (pal@lunarray.org)
+ */
+public abstract class AbstractEntityManagerProvider
+		implements EntityManagerProvider {
+
+	/** The entity manager factory. */
+	private final transient EntityManagerFactory entityManagerFactory;
+	/** The monitor. */
+	private transient volatile DictionaryMonitor monitor = NoOpDictionaryMonitor.INSTANCE;
+
+	/**
+	 * Default constructor.
+	 * 
+	 * @param entityManagerFactory
+	 *            The entity manager factory. May not be null.
+	 */
+	protected AbstractEntityManagerProvider(final EntityManagerFactory entityManagerFactory) {
+		Validate.notNull(entityManagerFactory, "Entity manager factory may not be null.");
+		this.entityManagerFactory = entityManagerFactory;
+	}
+
+	/**
+	 * Does nothing, the entity manager is released as usual.
+	 * 
+	 * @param manager
+	 *            The entity manager.
+	 * @param cause
+	 *            The failure.
+	 */
+	@Override
+	public void fail(final EntityManager manager, final RuntimeException cause) {
+		// A failure does not affect the scope of the entity manager.
+	}
+
+	/**
+	 * Gets the entity manager factory.
+	 * 
+	 * @return The entity manager factory.
+	 */
+	public final EntityManagerFactory getEntityManagerFactory() {
+		return this.entityManagerFactory;
+	}
+
+	/**
+	 * Sets the monitor recording opened and closed entity managers.
+	 * 
+	 * @param monitor
+	 *            The monitor. May not be null.
+	 */
+	public final void setMonitor(final DictionaryMonitor monitor) {
+		Validate.notNull(monitor, "Monitor may not be null.");
+		this.monitor = monitor;
+	}
+
+	/**
+	 * Closes an entity manager, if it is still open.
+	 * 
+	 * @param manager
+	 *            The entity manager.
+	 */
+	protected final void closeEntityManager(final EntityManager manager) {
+		if (manager.isOpen()) {
+			manager.close();
+			this.monitor.entityManagerClosed();
+		}
+	}
+
+	/**
+	 * Creates a new entity manager.
+	 * 
+	 * @return The entity manager.
+	 */
+	protected final EntityManager openEntityManager() {
+		final EntityManager manager = this.entityManagerFactory.createEntityManager();
+		this.monitor.entityManagerOpened();
+		return manager;
+	}
+}
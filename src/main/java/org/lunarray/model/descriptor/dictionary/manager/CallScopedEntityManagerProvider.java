@@ -0,0 +1,67 @@
+/* 
+ * Model Tools.
+ * Copyright (C) 2013 Pal Hargitai (pal@lunarray.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.lunarray.model.descriptor.dictionary.manager;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.apache.commons.lang.Validate;
+
+/**
+ * Creates an entity manager per call and closes it once the call is done.
+ * 
+ * @author Pal Hargitai (pal@lunarray.org)
+ */
+public final class CallScopedEntityManagerProvider
+		extends AbstractEntityManagerProvider {
+
+	/**
+	 * Default constructor.
+	 * 
+	 * @param entityManagerFactory
+	 *            The entity manager factory. May not be null.
+	 */
+	public CallScopedEntityManagerProvider(final EntityManagerFactory entityManagerFactory) {
+		super(entityManagerFactory);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public EntityManager acquire() {
+		return this.openEntityManager();
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void close() {
+		// Nothing to close, all entity managers are closed on release.
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public boolean isShared() {
+		return false;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void release(final EntityManager manager) {
+		Validate.notNull(manager, "Entity manager may not be null.");
+		this.closeEntityManager(manager);
+	}
+}
@@ -0,0 +1,77 @@
+/* 
+ * Model Tools.
+ * Copyright (C) 2013 Pal Hargitai (pal@lunarray.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.lunarray.model.descriptor.dictionary.manager;
+
+import java.io.Closeable;
+
+import javax.persistence.EntityManager;
+
+/**
+ * Provides entity managers to a dictionary and decides their scope.
+ * 
+ * Every {@link #acquire()} must be followed by a {@link #release(EntityManager)}
+ * of the same entity manager, on the same thread. Failures of operations on
+ * the entity manager are reported with
+ * {@link #fail(EntityManager, RuntimeException)} before it is released.
+ * 
+ * @author Pal Hargitai (pal@lunarray.org)
+ */
+public interface EntityManagerProvider
+		extends Closeable {
+
+	/**
+	 * Acquires an entity manager.
+	 * 
+	 * @return The entity manager.
+	 */
+	EntityManager acquire();
+
+	/**
+	 * Closes the provider and any entity manager it created. Must only be
+	 * called once no entity managers are acquired.
+	 */
+	@Override
+	void close();
+
+	/**
+	 * Reports that an operation on an acquired entity manager failed. Called
+	 * before the entity manager is released.
+	 * 
+	 * @param manager
+	 *            The entity manager. May not be null.
+	 * @param cause
+	 *            The failure. May not be null.
+	 */
+	void fail(EntityManager manager, RuntimeException cause);
+
+	/**
+	 * Tests whether acquired entity managers may be shared with other users.
+	 * If so, their persistence context may not be cleared.
+	 * 
+	 * @return True if and only if entity managers may be shared.
+	 */
+	boolean isShared();
+
+	/**
+	 * Releases an acquired entity manager.
+	 * 
+	 * @param manager
+	 *            The entity manager. May not be null.
+	 */
+	void release(EntityManager manager);
+}
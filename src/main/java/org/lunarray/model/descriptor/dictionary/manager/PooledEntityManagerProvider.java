@@ -0,0 +1,139 @@
+/* 
+ * Model Tools.
+ * Copyright (C) 2013 Pal Hargitai (pal@lunarray.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.lunarray.model.descriptor.dictionary.manager;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.PersistenceException;
+
+import org.apache.commons.lang.Validate;
+import org.lunarray.common.check.CheckUtil;
+
+/**
+ * Keeps a bounded pool of entity managers.
+ * 
+ * At most the given number of entity managers are acquired at once; further
+ * acquisitions wait up to a timeout. The persistence context is cleared when
+ * an entity manager is returned to the pool.
+ * 
+ * @author Pal Hargitai (pal@lunarray.org)
+ */
+public final class PooledEntityManagerProvider
+		extends AbstractEntityManagerProvider {
+
+	/** Whether the pool is closed. */
+	private transient volatile boolean closed;
+	/** The idle entity managers. */
+	private final transient BlockingQueue<EntityManager> idle;
+	/** The available acquisitions. */
+	private final transient Semaphore permits;
+	/** The acquisition timeout. */
+	private final transient long timeout;
+	/** The acquisition timeout unit. */
+	private final transient TimeUnit timeoutUnit;
+
+	/**
+	 * Default constructor.
+	 * 
+	 * @param entityManagerFactory
+	 *            The entity manager factory. May not be null.
+	 * @param maximumSize
+	 *            The maximum number of entity managers. Must be positive.
+	 * @param timeout
+	 *            The time to wait for an entity manager.
+	 * @param timeoutUnit
+	 *            The unit of the timeout. May not be null.
+	 */
+	public PooledEntityManagerProvider(final EntityManagerFactory entityManagerFactory, final int maximumSize,
+			final long timeout, final TimeUnit timeoutUnit) {
+		super(entityManagerFactory);
+		Validate.isTrue(CheckUtil.checkPositive(maximumSize), "Maximum size is not positive.");
+		Validate.notNull(timeoutUnit, "Timeout unit may not be null.");
+		this.idle = new LinkedBlockingQueue<EntityManager>(maximumSize);
+		this.permits = new Semaphore(maximumSize, true);
+		this.timeout = timeout;
+		this.timeoutUnit = timeoutUnit;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public EntityManager acquire() {
+		Validate.isTrue(!this.closed, "Pool is closed.");
+		try {
+			if (!this.permits.tryAcquire(this.timeout, this.timeoutUnit)) {
+				throw new PersistenceException("No entity manager became available in time.");
+			}
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new PersistenceException(e);
+		}
+		try {
+			EntityManager manager = this.idle.poll();
+			while (!CheckUtil.isNull(manager) && !manager.isOpen()) {
+				manager = this.idle.poll();
+			}
+			if (CheckUtil.isNull(manager)) {
+				manager = this.openEntityManager();
+			}
+			return manager;
+		} catch (final RuntimeException e) {
+			this.permits.release();
+			throw e;
+		}
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void close() {
+		this.closed = true;
+		EntityManager manager = this.idle.poll();
+		while (!CheckUtil.isNull(manager)) {
+			this.closeEntityManager(manager);
+			manager = this.idle.poll();
+		}
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public boolean isShared() {
+		return false;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void release(final EntityManager manager) {
+		Validate.notNull(manager, "Entity manager may not be null.");
+		try {
+			if (this.closed || !manager.isOpen()) {
+				this.closeEntityManager(manager);
+			} else {
+				manager.clear();
+				if (!this.idle.offer(manager) || this.closed && this.idle.remove(manager)) {
+					this.closeEntityManager(manager);
+				}
+			}
+		} finally {
+			this.permits.release();
+		}
+	}
+}
@@ -0,0 +1,571 @@
+/* 
+ * Model Tools.
+ * Copyright (C) 2013 Pal Hargitai (pal@lunarray.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.lunarray.model.descriptor.dictionary.manager;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.EntityNotFoundException;
+import javax.persistence.NoResultException;
+import javax.persistence.NonUniqueResultException;
+import javax.persistence.PersistenceException;
+
+import org.apache.commons.lang.Validate;
+import org.lunarray.common.check.CheckUtil;
+import org.lunarray.model.descriptor.dictionary.monitor.DictionaryMonitor;
+import org.lunarray.model.descriptor.util.StringUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Provides entity managers of read replicas, falling back to the primary.
+ * 
+ * Every acquire selects a replica that is not ejected, either in turn or the
+ * one with the fewest acquired entity managers. A replica that fails to
+ * provide an entity manager, fails a query, or fails a {@link #check()}, is
+ * ejected for a while and the primary is used in its stead when no replica is
+ * left. As entity managers connect lazily, a replica that went down is
+ * usually detected by the first query that fails on it; that operation fails,
+ * the operations that follow are served by the remaining members. After
+ * {@link #recordWrite()}, the calling thread is pinned to the primary for the
+ * pin window, so it reads its own writes.
+ * 
+ * The provider does not see writes made elsewhere. A
+ * {@link org.lunarray.model.descriptor.dictionary.BatchWriter} constructed on
+ * this provider records its writes, any other write must be followed by a
+ * call to {@link #recordWrite()} on the writing thread, or that thread may
+ * read stale data from a replica.
+ * 
+ * @author Pal Hargitai (pal@lunarray.org)
+ */
+public final class ReplicaEntityManagerProvider
+		implements EntityManagerProvider {
+
+	/** The default ejection time, in seconds. */
+	public static final long DEFAULT_EJECTION_TIME = 30;
+	/** The default validation query. */
+	public static final String DEFAULT_VALIDATION_QUERY = "SELECT 1";
+	/** The logger. */
+	private static final Logger LOGGER = LoggerFactory.getLogger(ReplicaEntityManagerProvider.class);
+	/** The time a failed replica is ejected, in nanoseconds. */
+	private transient volatile long ejectionTime = TimeUnit.SECONDS.toNanos(ReplicaEntityManagerProvider.DEFAULT_EJECTION_TIME);
+	/** The members, by entity manager factory. */
+	private final transient Map<EntityManagerFactory, Member> members = new IdentityHashMap<EntityManagerFactory, Member>();
+	/** The time until which the current thread is pinned to the primary. */
+	private final transient ThreadLocal<Long> pinnedUntil = new ThreadLocal<Long>();
+	/** The time a thread is pinned after a write, in nanoseconds. */
+	private transient volatile long pinWindow;
+	/** The primary. */
+	private final transient Member primary;
+	/** The replicas. */
+	private final transient List<Member> replicas;
+	/** The selection strategy. */
+	private final transient ReplicaSelection selection;
+	/** The selection counter. */
+	private final transient AtomicInteger turn = new AtomicInteger();
+	/** The validation query. */
+	private transient volatile String validationQuery = ReplicaEntityManagerProvider.DEFAULT_VALIDATION_QUERY;
+
+	/**
+	 * Constructs the provider with an entity manager per call on every
+	 * factory.
+	 * 
+	 * @param primary
+	 *            The primary factory. May not be null.
+	 * @param replicas
+	 *            The replica factories. May not be empty.
+	 * @param selection
+	 *            The selection strategy. May not be null.
+	 */
+	public ReplicaEntityManagerProvider(final EntityManagerFactory primary, final List<EntityManagerFactory> replicas,
+			final ReplicaSelection selection) {
+		this(new CallScopedEntityManagerProvider(primary), ReplicaEntityManagerProvider.callScoped(replicas), selection);
+	}
+
+	/**
+	 * Constructs the provider.
+	 * 
+	 * @param primary
+	 *            The primary provider. May not be null.
+	 * @param replicas
+	 *            The replica providers, each on their own factory. May not be
+	 *            empty.
+	 * @param selection
+	 *            The selection strategy. May not be null.
+	 */
+	public ReplicaEntityManagerProvider(final AbstractEntityManagerProvider primary,
+			final List<? extends AbstractEntityManagerProvider> replicas, final ReplicaSelection selection) {
+		Validate.notNull(primary, "Primary may not be null.");
+		Validate.notEmpty(replicas, "Replicas may not be empty.");
+		Validate.noNullElements(replicas, "Replicas may not contain null.");
+		Validate.notNull(selection, "Selection may not be null.");
+		this.selection = selection;
+		this.primary = this.register(primary);
+		this.replicas = new ArrayList<Member>(replicas.size());
+		for (final AbstractEntityManagerProvider replica : replicas) {
+			this.replicas.add(this.register(replica));
+		}
+	}
+
+	/**
+	 * Wraps factories in call scoped providers.
+	 * 
+	 * @param factories
+	 *            The factories.
+	 * @return The providers.
+	 */
+	private static List<AbstractEntityManagerProvider> callScoped(final List<EntityManagerFactory> factories) {
+		Validate.notNull(factories, "Replicas may not be null.");
+		final List<AbstractEntityManagerProvider> providers = new ArrayList<AbstractEntityManagerProvider>(factories.size());
+		for (final EntityManagerFactory factory : factories) {
+			providers.add(new CallScopedEntityManagerProvider(factory));
+		}
+		return providers;
+	}
+
+	/**
+	 * Tests whether a failure indicates a failing replica.
+	 * 
+	 * @param cause
+	 *            The failure.
+	 * @return True if and only if the failure is a persistence failure that
+	 *         does not concern the result of a query.
+	 */
+	private static boolean isReplicaFailure(final RuntimeException cause) {
+		return cause instanceof PersistenceException && !(cause instanceof NoResultException)
+				&& !(cause instanceof NonUniqueResultException) && !(cause instanceof EntityNotFoundException);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public EntityManager acquire() {
+		if (!this.isPinned()) {
+			for (int i = 0; i < this.replicas.size(); i++) {
+				final Member replica = this.select();
+				if (CheckUtil.isNull(replica)) {
+					break;
+				}
+				try {
+					return replica.acquire();
+				} catch (final RuntimeException e) {
+					this.eject(replica, e);
+				}
+			}
+		}
+		return this.primary.acquire();
+	}
+
+	/**
+	 * Validates all replicas, ejecting those that fail and readmitting those
+	 * that pass.
+	 * 
+	 * @return The number of healthy replicas.
+	 */
+	public int check() {
+		int healthy = 0;
+		for (final Member replica : this.replicas) {
+			try {
+				replica.validate(this.validationQuery);
+				replica.setEjectedUntil(0);
+				healthy++;
+			} catch (final RuntimeException e) {
+				this.eject(replica, e);
+			}
+		}
+		return healthy;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void close() {
+		try {
+			for (final Member replica : this.replicas) {
+				replica.getProvider().close();
+			}
+		} finally {
+			this.primary.getProvider().close();
+		}
+	}
+
+	/**
+	 * Ejects the replica of the entity manager if the failure is a
+	 * persistence failure. Failures that concern the result of a query, such
+	 * as a missing or non-unique result, do not eject the replica.
+	 * 
+	 * @param manager
+	 *            The entity manager. May not be null.
+	 * @param cause
+	 *            The failure. May not be null.
+	 */
+	@Override
+	public void fail(final EntityManager manager, final RuntimeException cause) {
+		Validate.notNull(manager, "Entity manager may not be null.");
+		Validate.notNull(cause, "Cause may not be null.");
+		final Member member = this.member(manager.getEntityManagerFactory());
+		member.getProvider().fail(manager, cause);
+		if (member != this.primary && ReplicaEntityManagerProvider.isReplicaFailure(cause)) {
+			this.eject(member, cause);
+		}
+	}
+
+	/**
+	 * Gets the number of entity managers acquired from a factory and not yet
+	 * released.
+	 * 
+	 * @param factory
+	 *            The primary or a replica factory.
+	 * @return The number of outstanding entity managers.
+	 */
+	public int getOutstanding(final EntityManagerFactory factory) {
+		return this.member(factory).getOutstanding();
+	}
+
+	/**
+	 * Gets the primary factory.
+	 * 
+	 * @return The primary factory.
+	 */
+	public EntityManagerFactory getPrimaryFactory() {
+		return this.primary.getProvider().getEntityManagerFactory();
+	}
+
+	/**
+	 * Tests whether a replica is ejected.
+	 * 
+	 * @param factory
+	 *            The replica factory.
+	 * @return True if and only if the replica is currently ejected.
+	 */
+	public boolean isEjected(final EntityManagerFactory factory) {
+		return this.member(factory).isEjected(System.nanoTime());
+	}
+
+	/**
+	 * Tests whether the current thread is pinned to the primary.
+	 * 
+	 * @return True if and only if the current thread wrote within the pin
+	 *         window.
+	 */
+	public boolean isPinned() {
+		final Long until = this.pinnedUntil.get();
+		if (CheckUtil.isNull(until)) {
+			return false;
+		} else if (until.longValue() - System.nanoTime() > 0) {
+			return true;
+		}
+		this.pinnedUntil.remove();
+		return false;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public boolean isShared() {
+		boolean shared = this.primary.getProvider().isShared();
+		for (final Member replica : this.replicas) {
+			shared |= replica.getProvider().isShared();
+		}
+		return shared;
+	}
+
+	/**
+	 * Records a write by the current thread, pinning it to the primary for
+	 * the pin window. Call this after every commit that is not made by a
+	 * {@link org.lunarray.model.descriptor.dictionary.BatchWriter} on this
+	 * provider.
+	 * 
+	 * @see #setPinWindow(long, TimeUnit)
+	 */
+	public void recordWrite() {
+		final long window = this.pinWindow;
+		if (window > 0) {
+			this.pinnedUntil.set(Long.valueOf(System.nanoTime() + window));
+		}
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void release(final EntityManager manager) {
+		Validate.notNull(manager, "Entity manager may not be null.");
+		this.member(manager.getEntityManagerFactory()).release(manager);
+	}
+
+	/**
+	 * Periodically validates all replicas.
+	 * 
+	 * @param executor
+	 *            The executor to run on. May not be null.
+	 * @param period
+	 *            The time between runs. Must be positive.
+	 * @param unit
+	 *            The time unit. May not be null.
+	 * @return The scheduled task, cancel it to stop validating.
+	 * @see #check()
+	 */
+	public ScheduledFuture<?> scheduleCheck(final ScheduledExecutorService executor, final long period, final TimeUnit unit) {
+		Validate.notNull(executor, "Executor may not be null.");
+		Validate.isTrue(period > 0, "Period is not positive.");
+		Validate.notNull(unit, "Unit may not be null.");
+		return executor.scheduleWithFixedDelay(new Runnable() {
+			/** {@inheritDoc} */
+			@Override
+			public void run() {
+				final int healthy = ReplicaEntityManagerProvider.this.check();
+				ReplicaEntityManagerProvider.LOGGER.debug("{} of {} replicas are healthy.", healthy,
+						ReplicaEntityManagerProvider.this.replicas.size());
+			}
+		}, period, period, unit);
+	}
+
+	/**
+	 * Sets the time a failed replica is ejected. Defaults to
+	 * {@value #DEFAULT_EJECTION_TIME} seconds.
+	 * 
+	 * @param time
+	 *            The ejection time. May not be negative.
+	 * @param unit
+	 *            The time unit. May not be null.
+	 */
+	public void setEjectionTime(final long time, final TimeUnit unit) {
+		Validate.isTrue(time >= 0, "Ejection time may not be negative.");
+		Validate.notNull(unit, "Unit may not be null.");
+		this.ejectionTime = unit.toNanos(time);
+	}
+
+	/**
+	 * Sets the monitor on the primary and replica providers, so they report
+	 * the entity managers they open and close.
+	 * 
+	 * @param monitor
+	 *            The monitor. May not be null.
+	 */
+	public void setMonitor(final DictionaryMonitor monitor) {
+		Validate.notNull(monitor, "Monitor may not be null.");
+		this.primary.getProvider().setMonitor(monitor);
+		for (final Member replica : this.replicas) {
+			replica.getProvider().setMonitor(monitor);
+		}
+	}
+
+	/**
+	 * Sets the time a thread reads from the primary after a write. Defaults to
+	 * zero, which disables pinning.
+	 * 
+	 * @param window
+	 *            The pin window. May not be negative.
+	 * @param unit
+	 *            The time unit. May not be null.
+	 * @see #recordWrite()
+	 */
+	public void setPinWindow(final long window, final TimeUnit unit) {
+		Validate.isTrue(window >= 0, "Pin window may not be negative.");
+		Validate.notNull(unit, "Unit may not be null.");
+		this.pinWindow = unit.toNanos(window);
+	}
+
+	/**
+	 * Sets the native query used to validate replicas. Defaults to
+	 * {@value #DEFAULT_VALIDATION_QUERY}.
+	 * 
+	 * @param validationQuery
+	 *            The validation query. May not be empty.
+	 */
+	public void setValidationQuery(final String validationQuery) {
+		Validate.isTrue(!StringUtil.isEmptyString(validationQuery), "Validation query may not be empty.");
+		this.validationQuery = validationQuery;
+	}
+
+	/**
+	 * Ejects a replica.
+	 * 
+	 * @param replica
+	 *            The replica.
+	 * @param cause
+	 *            The failure.
+	 */
+	private void eject(final Member replica, final RuntimeException cause) {
+		ReplicaEntityManagerProvider.LOGGER.warn("Ejecting replica {}.", replica, cause);
+		replica.setEjectedUntil(System.nanoTime() + this.ejectionTime);
+	}
+
+	/**
+	 * Gets the member for a factory.
+	 * 
+	 * @param factory
+	 *            The factory.
+	 * @return The member.
+	 */
+	private Member member(final EntityManagerFactory factory) {
+		final Member member = this.members.get(factory);
+		Validate.isTrue(!CheckUtil.isNull(member), "Unknown entity manager factory.", factory);
+		return member;
+	}
+
+	/**
+	 * Registers a member.
+	 * 
+	 * @param provider
+	 *            The provider.
+	 * @return The member.
+	 */
+	private Member register(final AbstractEntityManagerProvider provider) {
+		final EntityManagerFactory factory = provider.getEntityManagerFactory();
+		Validate.isTrue(!this.members.containsKey(factory), "Every provider needs its own factory.", factory);
+		final Member member = new Member(provider);
+		this.members.put(factory, member);
+		return member;
+	}
+
+	/**
+	 * Selects a replica that is not ejected.
+	 * 
+	 * @return The replica, or null if all are ejected.
+	 */
+	private Member select() {
+		final long now = System.nanoTime();
+		final int size = this.replicas.size();
+		final int start = (this.turn.getAndIncrement() & Integer.MAX_VALUE) % size;
+		Member selected = null;
+		for (int i = 0; i < size; i++) {
+			final Member candidate = this.replicas.get((start + i) % size);
+			if (!candidate.isEjected(now)) {
+				if (ReplicaSelection.ROUND_ROBIN.equals(this.selection)) {
+					return candidate;
+				} else if (CheckUtil.isNull(selected) || candidate.getOutstanding() < selected.getOutstanding()) {
+					selected = candidate;
+				}
+			}
+		}
+		return selected;
+	}
+
+	/**
+	 * The primary or a replica.
+	 * 
+	 * @author Pal Hargitai (pal@lunarray.org)
+	 */
+	private static final class Member {
+
+		/** The time until which this member is ejected. */
+		private transient volatile long ejectedUntil;
+		/** The number of outstanding entity managers. */
+		private final transient AtomicInteger outstanding = new AtomicInteger();
+		/** The provider. */
+		private final transient AbstractEntityManagerProvider provider;
+
+		/**
+		 * Constructs the member.
+		 * 
+		 * @param provider
+		 *            The provider.
+		 */
+		public Member(final AbstractEntityManagerProvider provider) {
+			this.provider = provider;
+		}
+
+		/**
+		 * Acquires an entity manager.
+		 * 
+		 * @return The entity manager.
+		 */
+		public EntityManager acquire() {
+			final EntityManager manager = this.provider.acquire();
+			this.outstanding.incrementAndGet();
+			return manager;
+		}
+
+		/**
+		 * Gets the number of outstanding entity managers.
+		 * 
+		 * @return The number of outstanding entity managers.
+		 */
+		public int getOutstanding() {
+			return this.outstanding.get();
+		}
+
+		/**
+		 * Gets the value for the provider field.
+		 * 
+		 * @return The value for the provider field.
+		 */
+		public AbstractEntityManagerProvider getProvider() {
+			return this.provider;
+		}
+
+		/**
+		 * Tests whether this member is ejected.
+		 * 
+		 * @param now
+		 *            The current time, in nanoseconds.
+		 * @return True if and only if this member is ejected.
+		 */
+		public boolean isEjected(final long now) {
+			final long until = this.ejectedUntil;
+			return until != 0 && until - now > 0;
+		}
+
+		/**
+		 * Releases an entity manager.
+		 * 
+		 * @param manager
+		 *            The entity manager.
+		 */
+		public void release(final EntityManager manager) {
+			this.outstanding.decrementAndGet();
+			this.provider.release(manager);
+		}
+
+		/**
+		 * Sets a new value for the ejectedUntil field.
+		 * 
+		 * @param ejectedUntil
+		 *            The new value for the ejectedUntil field.
+		 */
+		public void setEjectedUntil(final long ejectedUntil) {
+			this.ejectedUntil = ejectedUntil;
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public String toString() {
+			return this.provider.getEntityManagerFactory().toString();
+		}
+
+		/**
+		 * Runs a validation query.
+		 * 
+		 * @param query
+		 *            The native query.
+		 */
+		public void validate(final String query) {
+			final EntityManager manager = this.provider.acquire();
+			try {
+				manager.createNativeQuery(query).getSingleResult();
+			} finally {
+				this.provider.release(manager);
+			}
+		}
+	}
+}
@@ -0,0 +1,80 @@
+/* 
+ * Model Tools.
+ * Copyright (C) 2013 Pal Hargitai (pal@lunarray.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.lunarray.model.descriptor.dictionary.manager;
+
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.persistence.EntityManager;
+
+import org.apache.commons.lang.Validate;
+
+/**
+ * Provides a single, externally managed, entity manager.
+ * 
+ * Since entity managers are not thread safe, access is serialized: an
+ * acquisition blocks until other threads have released the entity manager.
+ * The entity manager is never closed by this provider.
+ * 
+ * @author Pal Hargitai (pal@lunarray.org)
+ */
+public final class SharedEntityManagerProvider
+		implements EntityManagerProvider {
+
+	/** The entity manager. */
+	private final transient EntityManager entityManager;
+	/** The lock guarding the entity manager. */
+	private final transient Lock lock = new ReentrantLock();
+
+	/**
+	 * Default constructor.
+	 * 
+	 * @param entityManager
+	 *            The entity manager. May not be null.
+	 */
+	public SharedEntityManagerProvider(final EntityManager entityManager) {
+		Validate.notNull(entityManager, "Entity manager may not be null.");
+		this.entityManager = entityManager;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public EntityManager acquire() {
+		this.lock.lock();
+		return this.entityManager;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void close() {
+		// The entity manager is managed externally.
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public boolean isShared() {
+		return true;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void release(final EntityManager manager) {
+		Validate.isTrue(this.entityManager == manager, "Entity manager was not acquired from this provider.");
+		this.lock.unlock();
+	}
+}
@@ -0,0 +1,278 @@
+/* 
+ * Model Tools.
+ * Copyright (C) 2013 Pal Hargitai (pal@lunarray.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.lunarray.model.descriptor.dictionary.manager;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.apache.commons.lang.Validate;
+import org.lunarray.common.check.CheckUtil;
+
+/**
+ * Reuses an entity manager per thread, this includes virtual threads.
+ * 
+ * The persistence context is cleared every given number of calls, so it does
+ * not grow without bounds. The entity manager of a thread lives until that
+ * thread calls {@link #closeCurrent()}, typically at the end of a unit of
+ * work such as a request, or until the provider is closed. The entity
+ * managers of ended threads are closed as new threads register, at a cost
+ * amortized over the registrations. Closing the provider closes the entity
+ * managers of all threads, those that are in use are closed once released.
+ * 
+ * @author Pal Hargitai (pal@lunarray.org)
+ */
+public final class ThreadScopedEntityManagerProvider
+		extends AbstractEntityManagerProvider {
+
+	/** The smallest number of scopes at which ended threads are swept. */
+	private static final int SWEEP_MINIMUM = 64;
+	/** The number of calls after which the persistence context is cleared. */
+	private final transient int clearInterval;
+	/** Whether the provider is closed. */
+	private transient volatile boolean closed;
+	/** The scopes of all threads. */
+	private final transient Set<ThreadScope> registry = Collections
+			.newSetFromMap(new ConcurrentHashMap<ThreadScope, Boolean>());
+	/** The scope of the current thread. */
+	private final transient ThreadLocal<ThreadScope> scopes = new ThreadLocal<ThreadScope>();
+	/** The number of scopes at which ended threads are swept next. */
+	private final transient AtomicInteger sweepThreshold = new AtomicInteger(ThreadScopedEntityManagerProvider.SWEEP_MINIMUM);
+
+	/**
+	 * Default constructor.
+	 * 
+	 * @param entityManagerFactory
+	 *            The entity manager factory. May not be null.
+	 * @param clearInterval
+	 *            The number of calls after which the persistence context is
+	 *            cleared. Must be positive.
+	 */
+	public ThreadScopedEntityManagerProvider(final EntityManagerFactory entityManagerFactory, final int clearInterval) {
+		super(entityManagerFactory);
+		Validate.isTrue(CheckUtil.checkPositive(clearInterval), "Clear interval is not positive.");
+		this.clearInterval = clearInterval;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public EntityManager acquire() {
+		Validate.isTrue(!this.closed, "Provider is closed.");
+		ThreadScope scope = this.scopes.get();
+		if (CheckUtil.isNull(scope) || !scope.enter()) {
+			if (!CheckUtil.isNull(scope)) {
+				this.registry.remove(scope);
+			}
+			scope = new ThreadScope(Thread.currentThread(), this.openEntityManager());
+			scope.enter();
+			this.scopes.set(scope);
+			this.register(scope);
+		}
+		return scope.getManager();
+	}
+
+	/**
+	 * Closes the provider and the entity managers of all threads. Entity
+	 * managers that are in use are closed once their thread releases them.
+	 */
+	@Override
+	public void close() {
+		this.closed = true;
+		for (final ThreadScope scope : this.registry) {
+			this.closeScope(scope);
+		}
+		this.scopes.remove();
+	}
+
+	/**
+	 * Closes the entity manager of the calling thread, if it has one. The
+	 * next acquisition on this thread opens a new entity manager. Must not be
+	 * called while the entity manager is acquired.
+	 */
+	public void closeCurrent() {
+		final ThreadScope scope = this.scopes.get();
+		if (!CheckUtil.isNull(scope)) {
+			Validate.isTrue(!scope.isAcquired(), "Entity manager is still acquired.");
+			this.scopes.remove();
+			this.closeScope(scope);
+		}
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public boolean isShared() {
+		return true;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void release(final EntityManager manager) {
+		final ThreadScope scope = this.scopes.get();
+		Validate.isTrue(!CheckUtil.isNull(scope) && scope.getManager() == manager,
+				"Entity manager was not acquired from this provider on this thread.");
+		scope.exit(this.clearInterval);
+		if (this.closed) {
+			this.closeScope(scope);
+		}
+	}
+
+	/**
+	 * Closes the entity manager of a scope, unless it is in use.
+	 * 
+	 * @param scope
+	 *            The scope.
+	 */
+	private void closeScope(final ThreadScope scope) {
+		if (scope.close()) {
+			this.registry.remove(scope);
+			this.closeEntityManager(scope.getManager());
+		}
+	}
+
+	/**
+	 * Registers the scope of a new thread. Once the number of scopes doubles,
+	 * the scopes of ended threads are closed.
+	 * 
+	 * @param scope
+	 *            The scope.
+	 */
+	private void register(final ThreadScope scope) {
+		this.registry.add(scope);
+		final int threshold = this.sweepThreshold.get();
+		if (this.registry.size() >= threshold && this.sweepThreshold.compareAndSet(threshold, Integer.MAX_VALUE)) {
+			for (final ThreadScope candidate : this.registry) {
+				if (!candidate.isAlive()) {
+					this.closeScope(candidate);
+				}
+			}
+			this.sweepThreshold.set(Math.max(ThreadScopedEntityManagerProvider.SWEEP_MINIMUM, this.registry.size() * 2));
+		}
+	}
+
+	/**
+	 * The entity manager of a thread, with its usage. The owning thread enters
+	 * and exits calls, any thread may close the scope.
+	 * 
+	 * @author Pal Hargitai (pal@lunarray.org)
+	 */
+	private static final class ThreadScope {
+
+		/** Whether the scope is closed. */
+		private transient boolean closed;
+		/** The number of nested acquisitions. */
+		private transient int depth;
+		/** The entity manager. */
+		private final transient EntityManager manager;
+		/** The owning thread. */
+		private final transient Thread thread;
+		/** The number of completed calls since the last clear. */
+		private transient int uses;
+
+		/**
+		 * Default constructor.
+		 * 
+		 * @param thread
+		 *            The owning thread.
+		 * @param manager
+		 *            The entity manager.
+		 */
+		public ThreadScope(final Thread thread, final EntityManager manager) {
+			this.thread = thread;
+			this.manager = manager;
+		}
+
+		/**
+		 * Closes the scope if it is not in use, or if its thread ended.
+		 * 
+		 * @return True if and only if the scope was closed by this call, its
+		 *         entity manager should then be closed.
+		 */
+		public synchronized boolean close() {
+			if (this.closed || (this.depth > 0 && this.thread.isAlive())) {
+				return false;
+			}
+			this.closed = true;
+			return true;
+		}
+
+		/**
+		 * Enters a call.
+		 * 
+		 * @return True if and only if the scope may be used, false if it or
+		 *         its entity manager is closed.
+		 */
+		public synchronized boolean enter() {
+			if (this.closed || !this.manager.isOpen()) {
+				return false;
+			}
+			this.depth++;
+			return true;
+		}
+
+		/**
+		 * Exits a call, clearing the persistence context every clear interval
+		 * calls.
+		 * 
+		 * @param clearInterval
+		 *            The clear interval.
+		 */
+		public synchronized void exit(final int clearInterval) {
+			this.depth--;
+			if (this.depth == 0) {
+				this.uses++;
+				if (this.uses >= clearInterval) {
+					this.uses = 0;
+					if (!this.closed && this.manager.isOpen()) {
+						this.manager.clear();
+					}
+				}
+			}
+		}
+
+		/**
+		 * Gets the value for the manager field.
+		 * 
+		 * @return The value for the manager field.
+		 */
+		public EntityManager getManager() {
+			return this.manager;
+		}
+
+		/**
+		 * Tests whether the entity manager is acquired.
+		 * 
+		 * @return True if and only if a call is in progress.
+		 */
+		public synchronized boolean isAcquired() {
+			return this.depth > 0;
+		}
+
+		/**
+		 * Tests whether the owning thread is alive.
+		 * 
+		 * @return True if and only if the owning thread has not ended.
+		 */
+		public boolean isAlive() {
+			return this.thread.isAlive();
+		}
+	}
+}
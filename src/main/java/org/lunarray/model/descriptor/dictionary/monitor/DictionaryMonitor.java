@@ -0,0 +1,55 @@
+/* 
+ * Model Tools.
+ * Copyright (C) 2013 Pal Hargitai (pal@lunarray.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.lunarray.model.descriptor.dictionary.monitor;
+
+/**
+ * Records dictionary operations. Implementations are called on the lookup
+ * path, so must be thread safe and should be fast.
+ * 
+ * @author Pal Hargitai (pal@lunarray.org)
+ * @see NoOpDictionaryMonitor
+ * @see JmxDictionaryMonitor
+ */
+public interface DictionaryMonitor {
+
+	/**
+	 * Records that an entity manager was closed.
+	 */
+	void entityManagerClosed();
+
+	/**
+	 * Records that an entity manager was opened.
+	 */
+	void entityManagerOpened();
+
+	/**
+	 * Records an operation.
+	 * 
+	 * @param entityType
+	 *            The entity type.
+	 * @param operation
+	 *            The operation.
+	 * @param nanos
+	 *            The duration of the operation, in nanoseconds.
+	 * @param rows
+	 *            The number of rows returned.
+	 * @param success
+	 *            Whether the operation succeeded.
+	 */
+	void operation(Class<?> entityType, DictionaryOperation operation, long nanos, int rows, boolean success);
+}
@@ -0,0 +1,56 @@
+/* 
+ * Model Tools.
+ * Copyright (C) 2013 Pal Hargitai (pal@lunarray.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.lunarray.model.descriptor.dictionary.monitor;
+
+import java.util.List;
+
+/**
+ * The JMX view of dictionary statistics.
+ * 
+ * @author Pal Hargitai (pal@lunarray.org)
+ * @see JmxDictionaryMonitor
+ */
+public interface DictionaryMonitorMXBean {
+
+	/**
+	 * Gets the number of entity managers closed.
+	 * 
+	 * @return The number of entity managers.
+	 */
+	long getEntityManagersClosed();
+
+	/**
+	 * Gets the number of entity managers opened.
+	 * 
+	 * @return The number of entity managers.
+	 */
+	long getEntityManagersOpened();
+
+	/**
+	 * Gets the statistics of all operations that have been called, per entity
+	 * type.
+	 * 
+	 * @return The statistics.
+	 */
+	List<OperationSnapshot> getOperations();
+
+	/**
+	 * Clears all statistics.
+	 */
+	void reset();
+}
@@ -0,0 +1,58 @@
+/* 
+ * Model Tools.
+ * Copyright (C) 2013 Pal Hargitai (pal@lunarray.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.lunarray.model.descriptor.dictionary.monitor;
+
+/**
+ * The monitored dictionary operations.
+ * 
+ * @author Pal Hargitai (pal@lunarray.org)
+ * @see DictionaryMonitor
+ */
+public enum DictionaryOperation {
+
+	/** Looking up all entities. */
+	LOOKUP,
+	/** Looking up entities following a key. */
+	LOOKUP_AFTER,
+	/** Looking up entities by a number of keys. */
+	LOOKUP_ALL,
+	/** Looking up a chunk of entities of an iterator. */
+	LOOKUP_CHUNK,
+	/** Counting entities. */
+	LOOKUP_COUNT,
+	/** Looking up an entity by key. */
+	LOOKUP_KEY,
+	/** Looking up the keys for a key index. */
+	LOOKUP_KEY_INDEX,
+	/** Looking up a page of entities. */
+	LOOKUP_PAGINATED,
+	/** Looking up the range boundaries of a partitioned lookup. */
+	LOOKUP_PARTITION_BOUNDARIES,
+	/** Looking up a chunk of a key range of a partitioned lookup. */
+	LOOKUP_PARTITIONED,
+	/** Looking up a page of projections. */
+	LOOKUP_PROJECTION,
+	/** Looking up a reference by key. */
+	LOOKUP_REFERENCE,
+	/** Looking up entities matching a specification. */
+	LOOKUP_SPECIFICATION,
+	/** Counting entities matching a specification. */
+	LOOKUP_SPECIFICATION_COUNT,
+	/** Looking up a page of entities matching a specification. */
+	LOOKUP_SPECIFICATION_PAGINATED;
+}
@@ -0,0 +1,186 @@
+/* 
+ * Model Tools.
+ * Copyright (C) 2013 Pal Hargitai (pal@lunarray.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.lunarray.model.descriptor.dictionary.monitor;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import org.apache.commons.lang.Validate;
+import org.lunarray.common.check.CheckUtil;
+
+/**
+ * A monitor keeping statistics per entity type and operation, which can be
+ * exposed as an MBean.
+ * 
+ * @author Pal Hargitai (pal@lunarray.org)
+ */
+public final class JmxDictionaryMonitor
+		implements DictionaryMonitor, DictionaryMonitorMXBean {
+
+	/** The MBean domain. */
+	public static final String DOMAIN = "org.lunarray.model.descriptor.dictionary";
+	/** The median percentile. */
+	private static final double P50 = 50d;
+	/** The 99th percentile. */
+	private static final double P99 = 99d;
+	/** The 99.9th percentile. */
+	private static final double P999 = 99.9d;
+
+	/** The number of entity managers closed. */
+	private final transient AtomicLong closed = new AtomicLong();
+	/** The number of entity managers opened. */
+	private final transient AtomicLong opened = new AtomicLong();
+	/** The name the MBean is registered with, may be null. */
+	private transient volatile ObjectName registeredName;
+	/** The statistics per entity type and operation. */
+	private final transient ConcurrentMap<Class<?>, ConcurrentMap<DictionaryOperation, OperationStatistics>> statistics = new ConcurrentHashMap<Class<?>, ConcurrentMap<DictionaryOperation, OperationStatistics>>();
+
+	/**
+	 * Default constructor.
+	 */
+	public JmxDictionaryMonitor() {
+		// Default constructor.
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void entityManagerClosed() {
+		this.closed.incrementAndGet();
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void entityManagerOpened() {
+		this.opened.incrementAndGet();
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public long getEntityManagersClosed() {
+		return this.closed.get();
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public long getEntityManagersOpened() {
+		return this.opened.get();
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public List<OperationSnapshot> getOperations() {
+		final List<OperationSnapshot> snapshots = new ArrayList<OperationSnapshot>();
+		for (final Map.Entry<Class<?>, ConcurrentMap<DictionaryOperation, OperationStatistics>> type : this.statistics.entrySet()) {
+			for (final Map.Entry<DictionaryOperation, OperationStatistics> operation : type.getValue().entrySet()) {
+				final OperationStatistics value = operation.getValue();
+				final LatencyHistogram latencies = value.getLatencies();
+				snapshots.add(new OperationSnapshot(type.getKey().getName(), operation.getKey().name(), value.getCalls(), value
+						.getErrors(), value.getRows(), latencies.getValueAtPercentile(JmxDictionaryMonitor.P50), latencies
+						.getValueAtPercentile(JmxDictionaryMonitor.P99), latencies.getValueAtPercentile(JmxDictionaryMonitor.P999)));
+			}
+		}
+		return snapshots;
+	}
+
+	/**
+	 * Gets the statistics of an operation on an entity type.
+	 * 
+	 * @param entityType
+	 *            The entity type.
+	 * @param operation
+	 *            The operation.
+	 * @return The statistics, or null if the operation has not been called.
+	 */
+	public OperationStatistics getStatistics(final Class<?> entityType, final DictionaryOperation operation) {
+		final Map<DictionaryOperation, OperationStatistics> operations = this.statistics.get(entityType);
+		if (CheckUtil.isNull(operations)) {
+			return null;
+		}
+		return operations.get(operation);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void operation(final Class<?> entityType, final DictionaryOperation operation, final long nanos, final int rows,
+			final boolean success) {
+		ConcurrentMap<DictionaryOperation, OperationStatistics> operations = this.statistics.get(entityType);
+		if (CheckUtil.isNull(operations)) {
+			this.statistics.putIfAbsent(entityType, new ConcurrentHashMap<DictionaryOperation, OperationStatistics>());
+			operations = this.statistics.get(entityType);
+		}
+		OperationStatistics value = operations.get(operation);
+		if (CheckUtil.isNull(value)) {
+			operations.putIfAbsent(operation, new OperationStatistics());
+			value = operations.get(operation);
+		}
+		value.record(nanos, rows, success);
+	}
+
+	/**
+	 * Registers this monitor with the platform MBean server.
+	 * 
+	 * @param name
+	 *            The name of the monitor, distinguishing it from other
+	 *            monitors. May not be empty.
+	 * @return The object name the monitor is registered with.
+	 * @throws JMException
+	 *             Thrown if the monitor could not be registered.
+	 */
+	public synchronized ObjectName register(final String name) throws JMException {
+		Validate.notEmpty(name, "Name may not be empty.");
+		Validate.isTrue(CheckUtil.isNull(this.registeredName), "Monitor is already registered.");
+		final ObjectName objectName = new ObjectName(new StringBuilder(JmxDictionaryMonitor.DOMAIN)
+				.append(":type=DictionaryMonitor,name=").append(ObjectName.quote(name)).toString());
+		ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+		this.registeredName = objectName;
+		return objectName;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void reset() {
+		for (final ConcurrentMap<DictionaryOperation, OperationStatistics> operations : this.statistics.values()) {
+			for (final OperationStatistics value : operations.values()) {
+				value.reset();
+			}
+		}
+		this.opened.set(0);
+		this.closed.set(0);
+	}
+
+	/**
+	 * Unregisters this monitor from the platform MBean server, if registered.
+	 * 
+	 * @throws JMException
+	 *             Thrown if the monitor could not be unregistered.
+	 */
+	public synchronized void unregister() throws JMException {
+		if (!CheckUtil.isNull(this.registeredName)) {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(this.registeredName);
+			this.registeredName = null;
+		}
+	}
+}
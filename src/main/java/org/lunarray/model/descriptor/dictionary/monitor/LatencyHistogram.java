@@ -0,0 +1,151 @@
+/* 
+ * Model Tools.
+ * Copyright (C) 2013 Pal Hargitai (pal@lunarray.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.lunarray.model.descriptor.dictionary.monitor;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.apache.commons.lang.Validate;
+
+/**
+ * A lock free histogram of latencies.
+ * 
+ * Values below {@value #LINEAR_BUCKETS} are counted exactly. Larger values are
+ * counted in buckets of {@value #SUB_BUCKETS} per power of two, so
+ * percentiles are accurate to within an eighth of their value. Memory use is
+ * fixed, regardless of the number of values recorded.
+ * 
+ * @author Pal Hargitai (pal@lunarray.org)
+ */
+public final class LatencyHistogram {
+
+	/** The number of exact buckets. */
+	private static final int LINEAR_BUCKETS = 16;
+	/** The exponent of the first logarithmic bucket. */
+	private static final int LINEAR_EXPONENT = 4;
+	/** The sub bucket shift. */
+	private static final int SUB_BUCKET_BITS = 3;
+	/** The number of buckets per power of two. */
+	private static final int SUB_BUCKETS = 8;
+	/** The number of buckets. */
+	private static final int BUCKETS = LatencyHistogram.LINEAR_BUCKETS + (Long.SIZE - 1 - LatencyHistogram.LINEAR_EXPONENT)
+			* LatencyHistogram.SUB_BUCKETS;
+
+	/** The counts per bucket. */
+	private final transient AtomicLongArray counts = new AtomicLongArray(LatencyHistogram.BUCKETS);
+
+	/**
+	 * Default constructor.
+	 */
+	public LatencyHistogram() {
+		// Default constructor.
+	}
+
+	/**
+	 * Gets the bucket of a value.
+	 * 
+	 * @param value
+	 *            The value, not negative.
+	 * @return The bucket.
+	 */
+	private static int getBucket(final long value) {
+		if (value < LatencyHistogram.LINEAR_BUCKETS) {
+			return (int) value;
+		}
+		final int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+		final int subBucket = (int) (value >>> (exponent - LatencyHistogram.SUB_BUCKET_BITS)) & (LatencyHistogram.SUB_BUCKETS - 1);
+		return LatencyHistogram.LINEAR_BUCKETS + (exponent - LatencyHistogram.LINEAR_EXPONENT) * LatencyHistogram.SUB_BUCKETS
+				+ subBucket;
+	}
+
+	/**
+	 * Gets the highest value of a bucket.
+	 * 
+	 * @param bucket
+	 *            The bucket.
+	 * @return The highest value.
+	 */
+	private static long getHighestValue(final int bucket) {
+		if (bucket < LatencyHistogram.LINEAR_BUCKETS) {
+			return bucket;
+		}
+		final int exponent = (bucket - LatencyHistogram.LINEAR_BUCKETS) / LatencyHistogram.SUB_BUCKETS
+				+ LatencyHistogram.LINEAR_EXPONENT;
+		final long subBucket = (bucket - LatencyHistogram.LINEAR_BUCKETS) % LatencyHistogram.SUB_BUCKETS;
+		final int shift = exponent - LatencyHistogram.SUB_BUCKET_BITS;
+		return ((LatencyHistogram.SUB_BUCKETS + subBucket + 1) << shift) - 1;
+	}
+
+	/**
+	 * Gets the number of values recorded.
+	 * 
+	 * @return The count.
+	 */
+	public long getCount() {
+		long count = 0;
+		for (int i = 0; i < LatencyHistogram.BUCKETS; i++) {
+			count += this.counts.get(i);
+		}
+		return count;
+	}
+
+	/**
+	 * Gets the value at a percentile, as the highest value of the bucket the
+	 * percentile falls in.
+	 * 
+	 * @param percentile
+	 *            The percentile, between 0 and 100.
+	 * @return The value, or 0 if nothing was recorded.
+	 */
+	public long getValueAtPercentile(final double percentile) {
+		Validate.isTrue(percentile >= 0 && percentile <= 100, "Percentile is not between 0 and 100.");
+		final long[] snapshot = new long[LatencyHistogram.BUCKETS];
+		long total = 0;
+		for (int i = 0; i < LatencyHistogram.BUCKETS; i++) {
+			snapshot[i] = this.counts.get(i);
+			total += snapshot[i];
+		}
+		final long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+		long seen = 0;
+		for (int i = 0; i < LatencyHistogram.BUCKETS; i++) {
+			seen += snapshot[i];
+			if (seen >= rank) {
+				return LatencyHistogram.getHighestValue(i);
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Records a value.
+	 * 
+	 * @param value
+	 *            The value, negative values are recorded as 0.
+	 */
+	public void record(final long value) {
+		this.counts.incrementAndGet(LatencyHistogram.getBucket(Math.max(0, value)));
+	}
+
+	/**
+	 * Clears all recorded values.
+	 */
+	public void reset() {
+		for (int i = 0; i < LatencyHistogram.BUCKETS; i++) {
+			this.counts.set(i, 0);
+		}
+	}
+}
@@ -0,0 +1,56 @@
+/* 
+ * Model Tools.
+ * Copyright (C) 2013 Pal Hargitai (pal@lunarray.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.lunarray.model.descriptor.dictionary.monitor;
+
+/**
+ * A monitor that records nothing.
+ * 
+ * @author Pal Hargitai (pal@lunarray.org)
+ */
+public final class NoOpDictionaryMonitor
+		implements DictionaryMonitor {
+
+	/** The instance. */
+	public static final DictionaryMonitor INSTANCE = new NoOpDictionaryMonitor();
+
+	/**
+	 * Default constructor.
+	 */
+	private NoOpDictionaryMonitor() {
+		// Use the instance.
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void entityManagerClosed() {
+		// Records nothing.
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void entityManagerOpened() {
+		// Records nothing.
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void operation(final Class<?> entityType, final DictionaryOperation operation, final long nanos, final int rows,
+			final boolean success) {
+		// Records nothing.
+	}
+}
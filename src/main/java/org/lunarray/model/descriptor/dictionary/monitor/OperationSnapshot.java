@@ -0,0 +1,152 @@
+/* 
+ * Model Tools.
+ * Copyright (C) 2013 Pal Hargitai (pal@lunarray.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.lunarray.model.descriptor.dictionary.monitor;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * A snapshot of the statistics of an operation on an entity type, as exposed
+ * through JMX.
+ * 
+ * @author Pal Hargitai (pal@lunarray.org)
+ * @see DictionaryMonitorMXBean
+ */
+public final class OperationSnapshot {
+
+	/** The number of calls. */
+	private final transient long calls;
+	/** The entity type name. */
+	private final transient String entityType;
+	/** The number of failed calls. */
+	private final transient long errors;
+	/** The median latency, in nanoseconds. */
+	private final transient long latencyP50;
+	/** The 99th percentile latency, in nanoseconds. */
+	private final transient long latencyP99;
+	/** The 99.9th percentile latency, in nanoseconds. */
+	private final transient long latencyP999;
+	/** The operation name. */
+	private final transient String operation;
+	/** The number of rows returned. */
+	private final transient long rows;
+
+	/**
+	 * Default constructor.
+	 * 
+	 * @param entityType
+	 *            The entity type name.
+	 * @param operation
+	 *            The operation name.
+	 * @param calls
+	 *            The number of calls.
+	 * @param errors
+	 *            The number of failed calls.
+	 * @param rows
+	 *            The number of rows returned.
+	 * @param latencyP50
+	 *            The median latency, in nanoseconds.
+	 * @param latencyP99
+	 *            The 99th percentile latency, in nanoseconds.
+	 * @param latencyP999
+	 *            The 99.9th percentile latency, in nanoseconds.
+	 */
+	@ConstructorProperties({ "entityType", "operation", "calls", "errors", "rows", "latencyP50", "latencyP99", "latencyP999" })
+	public OperationSnapshot(final String entityType, final String operation, final long calls, final long errors, final long rows,
+			final long latencyP50, final long latencyP99, final long latencyP999) {
+		this.entityType = entityType;
+		this.operation = operation;
+		this.calls = calls;
+		this.errors = errors;
+		this.rows = rows;
+		this.latencyP50 = latencyP50;
+		this.latencyP99 = latencyP99;
+		this.latencyP999 = latencyP999;
+	}
+
+	/**
+	 * Gets the value for the calls field.
+	 * 
+	 * @return The value for the calls field.
+	 */
+	public long getCalls() {
+		return this.calls;
+	}
+
+	/**
+	 * Gets the value for the entity type field.
+	 * 
+	 * @return The value for the entity type field.
+	 */
+	public String getEntityType() {
+		return this.entityType;
+	}
+
+	/**
+	 * Gets the value for the errors field.
+	 * 
+	 * @return The value for the errors field.
+	 */
+	public long getErrors() {
+		return this.errors;
+	}
+
+	/**
+	 * Gets the value for the median latency field.
+	 * 
+	 * @return The value for the median latency field.
+	 */
+	public long getLatencyP50() {
+		return this.latencyP50;
+	}
+
+	/**
+	 * Gets the value for the 99th percentile latency field.
+	 * 
+	 * @return The value for the 99th percentile latency field.
+	 */
+	public long getLatencyP99() {
+		return this.latencyP99;
+	}
+
+	/**
+	 * Gets the value for the 99.9th percentile latency field.
+	 * 
+	 * @return The value for the 99.9th percentile latency field.
+	 */
+	public long getLatencyP999() {
+		return this.latencyP999;
+	}
+
+	/**
+	 * Gets the value for the operation field.
+	 * 
+	 * @return The value for the operation field.
+	 */
+	public String getOperation() {
+		return this.operation;
+	}
+
+	/**
+	 * Gets the value for the rows field.
+	 * 
+	 * @return The value for the rows field.
+	 */
+	public long getRows() {
+		return this.rows;
+	}
+}
@@ -0,0 +1,110 @@
+/* 
+ * Model Tools.
+ * Copyright (C) 2013 Pal Hargitai (pal@lunarray.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.lunarray.model.descriptor.dictionary.monitor;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The statistics of an operation on an entity type.
+ * 
+ * @author Pal Hargitai (pal@lunarray.org)
+ * @see JmxDictionaryMonitor
+ */
+public final class OperationStatistics {
+
+	/** The number of calls. */
+	private final transient AtomicLong calls = new AtomicLong();
+	/** The number of failed calls. */
+	private final transient AtomicLong errors = new AtomicLong();
+	/** The latencies, in nanoseconds. */
+	private final transient LatencyHistogram latencies = new LatencyHistogram();
+	/** The number of rows returned. */
+	private final transient AtomicLong rows = new AtomicLong();
+
+	/**
+	 * Default constructor.
+	 */
+	public OperationStatistics() {
+		// Default constructor.
+	}
+
+	/**
+	 * Gets the number of calls.
+	 * 
+	 * @return The number of calls.
+	 */
+	public long getCalls() {
+		return this.calls.get();
+	}
+
+	/**
+	 * Gets the number of failed calls.
+	 * 
+	 * @return The number of failed calls.
+	 */
+	public long getErrors() {
+		return this.errors.get();
+	}
+
+	/**
+	 * Gets the value for the latencies field.
+	 * 
+	 * @return The value for the latencies field, in nanoseconds.
+	 */
+	public LatencyHistogram getLatencies() {
+		return this.latencies;
+	}
+
+	/**
+	 * Gets the number of rows returned.
+	 * 
+	 * @return The number of rows.
+	 */
+	public long getRows() {
+		return this.rows.get();
+	}
+
+	/**
+	 * Records a call.
+	 * 
+	 * @param nanos
+	 *            The duration, in nanoseconds.
+	 * @param rowCount
+	 *            The number of rows returned.
+	 * @param success
+	 *            Whether the call succeeded.
+	 */
+	public void record(final long nanos, final int rowCount, final boolean success) {
+		this.calls.incrementAndGet();
+		if (!success) {
+			this.errors.incrementAndGet();
+		}
+		this.rows.addAndGet(rowCount);
+		this.latencies.record(nanos);
+	}
+
+	/**
+	 * Clears the statistics.
+	 */
+	public void reset() {
+		this.calls.set(0);
+		this.errors.set(0);
+		this.rows.set(0);
+		this.latencies.reset();
+	}
+}
@@ -0,0 +1,423 @@
+/* 
+ * Model Tools.
+ * Copyright (C) 2013 Pal Hargitai (pal@lunarray.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.lunarray.model.descriptor.dictionary.prefetch;
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang.Validate;
+import org.apache.commons.lang.builder.EqualsBuilder;
+import org.apache.commons.lang.builder.HashCodeBuilder;
+import org.lunarray.common.check.CheckUtil;
+import org.lunarray.model.descriptor.dictionary.PaginatedDictionary;
+import org.lunarray.model.descriptor.dictionary.exceptions.DictionaryException;
+import org.lunarray.model.descriptor.model.entity.EntityDescriptor;
+import org.lunarray.model.descriptor.model.entity.KeyedEntityDescriptor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Prefetches the pages following a paginated lookup.
+ * 
+ * After serving a page, the next pages are looked up in the background into a
+ * buffer shared by all callers, in which every page is kept by its entity
+ * type, row and size. A request for a buffered page is served from the
+ * buffer, regardless of the pages requested in between, so callers paging
+ * through the same type do not drop each other's pages. Prefetched pages that
+ * are not requested in time are dropped. A request waits a limited time for a
+ * page that is still being prefetched, and looks the page up directly
+ * otherwise. Other lookups are passed on to the delegate.
+ * 
+ * @author Pal Hargitai (pal@lunarray.org)
+ */
+public final class PrefetchingDictionary
+		implements PaginatedDictionary {
+
+	/** The default time to wait for a page being prefetched, in milliseconds. */
+	public static final long DEFAULT_WAIT_TIME = 1000;
+	/** The logger. */
+	private static final Logger LOGGER = LoggerFactory.getLogger(PrefetchingDictionary.class);
+	/** The prefetched pages, in prefetch order. */
+	private final transient Map<PageKey, PrefetchedPage> buffer = new LinkedHashMap<PageKey, PrefetchedPage>();
+	/** The number of entities currently buffered. */
+	private transient int buffered;
+	/** The delegate. */
+	private final transient PaginatedDictionary delegate;
+	/** The number of pages to prefetch. */
+	private final transient int depth;
+	/** The number of discarded prefetched pages. */
+	private final transient AtomicLong discards = new AtomicLong();
+	/** The executor to prefetch on. */
+	private final transient ExecutorService executor;
+	/** The number of hits. */
+	private final transient AtomicLong hits = new AtomicLong();
+	/** The maximum number of buffered entities. */
+	private final transient int maximumBuffered;
+	/** The number of misses. */
+	private final transient AtomicLong misses = new AtomicLong();
+	/** The time a prefetched page is kept, in nanoseconds. */
+	private final transient long timeout;
+	/** The time to wait for a page being prefetched, in nanoseconds. */
+	private transient volatile long waitTime = TimeUnit.MILLISECONDS.toNanos(PrefetchingDictionary.DEFAULT_WAIT_TIME);
+
+	/**
+	 * Default constructor.
+	 * 
+	 * @param delegate
+	 *            The dictionary to prefetch from. May not be null.
+	 * @param executor
+	 *            The executor to prefetch on. May not be null.
+	 * @param depth
+	 *            The number of pages to prefetch. Must be positive.
+	 * @param maximumBuffered
+	 *            The maximum number of entities buffered over all entity
+	 *            types. Must be positive.
+	 * @param timeout
+	 *            The time a prefetched page is kept. Must be positive.
+	 * @param unit
+	 *            The time unit. May not be null.
+	 */
+	public PrefetchingDictionary(final PaginatedDictionary delegate, final ExecutorService executor, final int depth,
+			final int maximumBuffered, final long timeout, final TimeUnit unit) {
+		Validate.notNull(delegate, "Delegate may not be null.");
+		Validate.notNull(executor, "Executor may not be null.");
+		Validate.isTrue(CheckUtil.checkPositive(depth), "Depth is not positive.");
+		Validate.isTrue(CheckUtil.checkPositive(maximumBuffered), "Maximum buffered is not positive.");
+		Validate.isTrue(timeout > 0, "Timeout is not positive.");
+		Validate.notNull(unit, "Unit may not be null.");
+		this.delegate = delegate;
+		this.executor = executor;
+		this.depth = depth;
+		this.maximumBuffered = maximumBuffered;
+		this.timeout = unit.toNanos(timeout);
+	}
+
+	/**
+	 * Gets the number of prefetched pages that were dropped unused.
+	 * 
+	 * @return The number of discards.
+	 */
+	public long getDiscards() {
+		return this.discards.get();
+	}
+
+	/**
+	 * Gets the number of pages served from the buffer.
+	 * 
+	 * @return The number of hits.
+	 */
+	public long getHits() {
+		return this.hits.get();
+	}
+
+	/**
+	 * Gets the number of pages looked up directly.
+	 * 
+	 * @return The number of misses.
+	 */
+	public long getMisses() {
+		return this.misses.get();
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public <E> Collection<E> lookup(final EntityDescriptor<E> entityDescriptor) throws DictionaryException {
+		return this.delegate.lookup(entityDescriptor);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public <E, K extends Serializable> E lookup(final KeyedEntityDescriptor<E, K> entityDescriptor, final K key) throws DictionaryException {
+		return this.delegate.lookup(entityDescriptor, key);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public <E> List<E> lookupPaginated(final EntityDescriptor<E> entityDescriptor, final int row, final int count)
+			throws DictionaryException {
+		Validate.notNull(entityDescriptor, "Entity descriptor may not be null.");
+		final Class<E> entityType = entityDescriptor.getEntityType();
+		final PrefetchedPage prefetched = this.take(new PageKey(entityType, row, count));
+		List<E> result = null;
+		if (!CheckUtil.isNull(prefetched)) {
+			result = this.await(entityType, prefetched);
+		}
+		if (CheckUtil.isNull(result)) {
+			this.misses.incrementAndGet();
+			result = this.delegate.lookupPaginated(entityDescriptor, row, count);
+		} else {
+			this.hits.incrementAndGet();
+		}
+		if (result.size() == count) {
+			this.prefetch(entityDescriptor, row, count);
+		}
+		return result;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public <E> int lookupTotals(final EntityDescriptor<E> entityDescriptor) throws DictionaryException {
+		return this.delegate.lookupTotals(entityDescriptor);
+	}
+
+	/**
+	 * Sets the time a request waits for a page that is still being
+	 * prefetched, before looking it up directly. Defaults to
+	 * {@value #DEFAULT_WAIT_TIME} milliseconds.
+	 * 
+	 * @param time
+	 *            The wait time. May not be negative.
+	 * @param unit
+	 *            The time unit. May not be null.
+	 */
+	public void setWaitTime(final long time, final TimeUnit unit) {
+		Validate.isTrue(time >= 0, "Wait time may not be negative.");
+		Validate.notNull(unit, "Unit may not be null.");
+		this.waitTime = unit.toNanos(time);
+	}
+
+	/**
+	 * Waits for a prefetched page, up to the wait time.
+	 * 
+	 * @param entityType
+	 *            The entity type.
+	 * @param prefetched
+	 *            The prefetched page.
+	 * @param <E>
+	 *            The entity type.
+	 * @return The entities, or null if the prefetch failed or did not complete
+	 *         in time.
+	 */
+	@SuppressWarnings("unchecked")
+	private <E> List<E> await(final Class<E> entityType, final PrefetchedPage prefetched) {
+		try {
+			return (List<E>) prefetched.getEntities().get(this.waitTime, TimeUnit.NANOSECONDS);
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (final ExecutionException e) {
+			PrefetchingDictionary.LOGGER.debug("Prefetch failed for {}, looking up directly.", entityType, e);
+		} catch (final TimeoutException e) {
+			PrefetchingDictionary.LOGGER.debug("Prefetch not completed in time for {}, looking up directly.", entityType);
+			prefetched.getEntities().cancel(true);
+			this.discards.incrementAndGet();
+		}
+		return null;
+	}
+
+	/**
+	 * Drops a prefetched page. Must be called while holding the buffer
+	 * monitor.
+	 * 
+	 * @param page
+	 *            The page.
+	 */
+	private void discard(final PrefetchedPage page) {
+		page.getEntities().cancel(true);
+		this.buffered -= page.getCount();
+		this.discards.incrementAndGet();
+	}
+
+	/**
+	 * Drops the expired pages. Must be called while holding the buffer
+	 * monitor.
+	 * 
+	 * @param now
+	 *            The current time, in {@link System#nanoTime()}.
+	 */
+	private void expire(final long now) {
+		final Iterator<PrefetchedPage> iterator = this.buffer.values().iterator();
+		while (iterator.hasNext()) {
+			final PrefetchedPage page = iterator.next();
+			if (now - page.getExpiry() >= 0) {
+				iterator.remove();
+				this.discard(page);
+			}
+		}
+	}
+
+	/**
+	 * Prefetches the pages following a page, up to the depth and within the
+	 * buffer limit.
+	 * 
+	 * @param entityDescriptor
+	 *            The entity descriptor.
+	 * @param row
+	 *            The row of the served page.
+	 * @param count
+	 *            The page size.
+	 * @param <E>
+	 *            The entity type.
+	 */
+	private <E> void prefetch(final EntityDescriptor<E> entityDescriptor, final int row, final int count) {
+		final Class<E> entityType = entityDescriptor.getEntityType();
+		final long now = System.nanoTime();
+		synchronized (this.buffer) {
+			this.expire(now);
+			for (int i = 1; i <= this.depth && this.buffered + count <= this.maximumBuffered; i++) {
+				final int nextRow = row + i * count;
+				final PageKey key = new PageKey(entityType, nextRow, count);
+				if (!this.buffer.containsKey(key)) {
+					final Future<List<E>> entities = this.executor.submit(new Callable<List<E>>() {
+						/** {@inheritDoc} */
+						@Override
+						public List<E> call() throws DictionaryException {
+							return PrefetchingDictionary.this.delegate.lookupPaginated(entityDescriptor, nextRow, count);
+						}
+					});
+					this.buffer.put(key, new PrefetchedPage(count, entities, now + this.timeout));
+					this.buffered += count;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Takes a page from the buffer, dropping expired pages.
+	 * 
+	 * @param key
+	 *            The page key.
+	 * @return The page, or null.
+	 */
+	private PrefetchedPage take(final PageKey key) {
+		synchronized (this.buffer) {
+			this.expire(System.nanoTime());
+			final PrefetchedPage result = this.buffer.remove(key);
+			if (!CheckUtil.isNull(result)) {
+				this.buffered -= result.getCount();
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * The key of a page, an entity type with a row and page size.
+	 * 
+	 * @author Pal Hargitai (pal@lunarray.org)
+	 */
+	private static final class PageKey {
+
+		/** The page size. */
+		private final transient int count;
+		/** The entity type. */
+		private final transient Class<?> entityType;
+		/** The row. */
+		private final transient int row;
+
+		/**
+		 * Default constructor.
+		 * 
+		 * @param entityType
+		 *            The entity type.
+		 * @param row
+		 *            The row.
+		 * @param count
+		 *            The page size.
+		 */
+		public PageKey(final Class<?> entityType, final int row, final int count) {
+			this.entityType = entityType;
+			this.row = row;
+			this.count = count;
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public boolean equals(final Object obj) {
+			if (!(obj instanceof PageKey)) {
+				return false;
+			}
+			final PageKey other = (PageKey) obj;
+			return new EqualsBuilder().append(this.entityType, other.entityType).append(this.row, other.row)
+					.append(this.count, other.count).isEquals();
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public int hashCode() {
+			return new HashCodeBuilder().append(this.entityType).append(this.row).append(this.count).toHashCode();
+		}
+	}
+
+	/**
+	 * A page being prefetched.
+	 * 
+	 * @author Pal Hargitai (pal@lunarray.org)
+	 */
+	private static final class PrefetchedPage {
+
+		/** The page size. */
+		private final transient int count;
+		/** The entities. */
+		private final transient Future<?> entities;
+		/** The expiry, in {@link System#nanoTime()}. */
+		private final transient long expiry;
+
+		/**
+		 * Default constructor.
+		 * 
+		 * @param count
+		 *            The page size.
+		 * @param entities
+		 *            The entities.
+		 * @param expiry
+		 *            The expiry.
+		 */
+		public PrefetchedPage(final int count, final Future<?> entities, final long expiry) {
+			this.count = count;
+			this.entities = entities;
+			this.expiry = expiry;
+		}
+
+		/**
+		 * Gets the value for the count field.
+		 * 
+		 * @return The value for the count field.
+		 */
+		public int getCount() {
+			return this.count;
+		}
+
+		/**
+		 * Gets the value for the entities field.
+		 * 
+		 * @return The value for the entities field.
+		 */
+		public Future<?> getEntities() {
+			return this.entities;
+		}
+
+		/**
+		 * Gets the value for the expiry field.
+		 * 
+		 * @return The value for the expiry field.
+		 */
+		public long getExpiry() {
+			return this.expiry;
+		}
+	}
+}
@@ -0,0 +1,86 @@
+/* 
+ * Model Tools.
+ * Copyright (C) 2013 Pal Hargitai (pal@lunarray.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.lunarray.model.descriptor.dictionary.query;
+
+import java.util.List;
+
+/**
+ * A filter on a property.
+ * 
+ * @author Pal Hargitai (pal@lunarray.org)
+ * @see QuerySpecification
+ */
+public final class Filter {
+
+	/** The property name. */
+	private final transient String property;
+	/** The filter type. */
+	private final transient FilterType type;
+	/** The values. */
+	private final transient List<Object> values;
+
+	/**
+	 * Default constructor.
+	 * 
+	 * @param property
+	 *            The property name.
+	 * @param type
+	 *            The filter type.
+	 * @param values
+	 *            The values.
+	 */
+	Filter(final String property, final FilterType type, final List<Object> values) {
+		this.property = property;
+		this.type = type;
+		this.values = values;
+	}
+
+	/**
+	 * Gets the value for the property field.
+	 * 
+	 * @return The value for the property field.
+	 */
+	public String getProperty() {
+		return this.property;
+	}
+
+	/**
+	 * Gets the value for the type field.
+	 * 
+	 * @return The value for the type field.
+	 */
+	public FilterType getType() {
+		return this.type;
+	}
+
+	/**
+	 * Gets the value for the values field.
+	 * 
+	 * @return The value for the values field.
+	 */
+	public List<Object> getValues() {
+		return this.values;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public String toString() {
+		return new StringBuilder("Filter[property=").append(this.property).append(", type=").append(this.type)
+				.append(", values=").append(this.values).append(']').toString();
+	}
+}
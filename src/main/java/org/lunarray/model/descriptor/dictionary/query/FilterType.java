@@ -0,0 +1,39 @@
+/* 
+ * Model Tools.
+ * Copyright (C) 2013 Pal Hargitai (pal@lunarray.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.lunarray.model.descriptor.dictionary.query;
+
+/**
+ * The type of a filter.
+ * 
+ * @author Pal Hargitai (pal@lunarray.org)
+ * @see Filter
+ */
+public enum FilterType {
+
+	/** The property equals the single value, or is null if the value is. */
+	EQUAL,
+	/** The property equals any of the values. */
+	IN,
+	/** The property matches the single pattern value. */
+	LIKE,
+	/**
+	 * The property lies between the lower and upper value, inclusive. A null
+	 * bound leaves the range open.
+	 */
+	RANGE;
+}
@@ -0,0 +1,70 @@
+/* 
+ * Model Tools.
+ * Copyright (C) 2013 Pal Hargitai (pal@lunarray.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.lunarray.model.descriptor.dictionary.query;
+
+/**
+ * An ordering on a property.
+ * 
+ * @author Pal Hargitai (pal@lunarray.org)
+ * @see QuerySpecification
+ */
+public final class Ordering {
+
+	/** Whether the order is ascending. */
+	private final transient boolean ascending;
+	/** The property name. */
+	private final transient String property;
+
+	/**
+	 * Default constructor.
+	 * 
+	 * @param property
+	 *            The property name.
+	 * @param ascending
+	 *            Whether the order is ascending.
+	 */
+	Ordering(final String property, final boolean ascending) {
+		this.property = property;
+		this.ascending = ascending;
+	}
+
+	/**
+	 * Gets the value for the property field.
+	 * 
+	 * @return The value for the property field.
+	 */
+	public String getProperty() {
+		return this.property;
+	}
+
+	/**
+	 * Tests whether the order is ascending.
+	 * 
+	 * @return True if and only if the order is ascending.
+	 */
+	public boolean isAscending() {
+		return this.ascending;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public String toString() {
+		return new StringBuilder("Ordering[property=").append(this.property).append(", ascending=").append(this.ascending)
+				.append(']').toString();
+	}
+}
@@ -0,0 +1,233 @@
+/* 
+ * Model Tools.
+ * Copyright (C) 2013 Pal Hargitai (pal@lunarray.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.lunarray.model.descriptor.dictionary.query;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.lang.Validate;
+import org.lunarray.model.descriptor.model.property.PropertyDescriptor;
+
+/**
+ * Specifies which entities a lookup selects and in what order.
+ * 
+ * All filters must hold for an entity to be selected. Entities are ordered by
+ * the orderings in sequence, and by key last, so pages are stable. Filters
+ * and orderings are translated into the query, so the database does the work.
+ * A specification is not thread safe while it is being built.
+ * 
+ * @author Pal Hargitai (pal@lunarray.org)
+ * @param <E>
+ *            The entity type.
+ */
+public final class QuerySpecification<E> {
+
+	/** The escape character for like patterns. */
+	public static final char ESCAPE = '\\';
+
+	/** The filters. */
+	private final transient List<Filter> filters = new ArrayList<Filter>();
+	/** The orderings. */
+	private final transient List<Ordering> orderings = new ArrayList<Ordering>();
+
+	/**
+	 * Default constructor.
+	 */
+	public QuerySpecification() {
+		// Default constructor.
+	}
+
+	/**
+	 * Escapes a value for use in a like pattern.
+	 * 
+	 * @param value
+	 *            The value. May not be null.
+	 * @return The escaped value.
+	 */
+	public static String escape(final String value) {
+		Validate.notNull(value, "Value may not be null.");
+		final StringBuilder builder = new StringBuilder(value.length());
+		for (int i = 0; i < value.length(); i++) {
+			final char character = value.charAt(i);
+			if (character == QuerySpecification.ESCAPE || character == '%' || character == '_') {
+				builder.append(QuerySpecification.ESCAPE);
+			}
+			builder.append(character);
+		}
+		return builder.toString();
+	}
+
+	/**
+	 * Orders by a property, ascending.
+	 * 
+	 * @param property
+	 *            The property. May not be null.
+	 * @return This specification.
+	 */
+	public QuerySpecification<E> ascending(final PropertyDescriptor<?, E> property) {
+		return this.orderBy(property, true);
+	}
+
+	/**
+	 * Filters on a property lying within a range.
+	 * 
+	 * @param property
+	 *            The property. May not be null.
+	 * @param lower
+	 *            The inclusive lower bound, or null for none.
+	 * @param upper
+	 *            The inclusive upper bound, or null for none.
+	 * @param <P>
+	 *            The property type.
+	 * @return This specification.
+	 */
+	public <P extends Comparable<? super P>> QuerySpecification<E> between(final PropertyDescriptor<P, E> property, final P lower,
+			final P upper) {
+		return this.filter(property, FilterType.RANGE, Arrays.<Object> asList(lower, upper));
+	}
+
+	/**
+	 * Orders by a property, descending.
+	 * 
+	 * @param property
+	 *            The property. May not be null.
+	 * @return This specification.
+	 */
+	public QuerySpecification<E> descending(final PropertyDescriptor<?, E> property) {
+		return this.orderBy(property, false);
+	}
+
+	/**
+	 * Filters on a property being equal to a value.
+	 * 
+	 * @param property
+	 *            The property. May not be null.
+	 * @param value
+	 *            The value, or null to select properties that are null.
+	 * @param <P>
+	 *            The property type.
+	 * @return This specification.
+	 */
+	public <P> QuerySpecification<E> equal(final PropertyDescriptor<P, E> property, final P value) {
+		return this.filter(property, FilterType.EQUAL, Collections.<Object> singletonList(value));
+	}
+
+	/**
+	 * Gets the value for the filters field.
+	 * 
+	 * @return The value for the filters field.
+	 */
+	public List<Filter> getFilters() {
+		return Collections.unmodifiableList(this.filters);
+	}
+
+	/**
+	 * Gets the value for the orderings field.
+	 * 
+	 * @return The value for the orderings field.
+	 */
+	public List<Ordering> getOrderings() {
+		return Collections.unmodifiableList(this.orderings);
+	}
+
+	/**
+	 * Filters on a property being equal to any of the values.
+	 * 
+	 * @param property
+	 *            The property. May not be null.
+	 * @param values
+	 *            The values. May not be null, if empty nothing is selected.
+	 * @param <P>
+	 *            The property type.
+	 * @return This specification.
+	 */
+	public <P> QuerySpecification<E> in(final PropertyDescriptor<P, E> property, final Collection<? extends P> values) {
+		Validate.notNull(values, "Values may not be null.");
+		return this.filter(property, FilterType.IN, new ArrayList<Object>(values));
+	}
+
+	/**
+	 * Filters on a property matching a like pattern. Use
+	 * {@link #escape(String)} for literal parts of the pattern.
+	 * 
+	 * @param property
+	 *            The property. May not be null.
+	 * @param pattern
+	 *            The pattern. May not be null.
+	 * @return This specification.
+	 */
+	public QuerySpecification<E> like(final PropertyDescriptor<String, E> property, final String pattern) {
+		Validate.notNull(pattern, "Pattern may not be null.");
+		return this.filter(property, FilterType.LIKE, Collections.<Object> singletonList(pattern));
+	}
+
+	/**
+	 * Filters on a property starting with a prefix.
+	 * 
+	 * @param property
+	 *            The property. May not be null.
+	 * @param prefix
+	 *            The prefix. May not be null.
+	 * @return This specification.
+	 */
+	public QuerySpecification<E> startsWith(final PropertyDescriptor<String, E> property, final String prefix) {
+		return this.like(property, new StringBuilder(QuerySpecification.escape(prefix)).append('%').toString());
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public String toString() {
+		return new StringBuilder("QuerySpecification[filters=").append(this.filters).append(", orderings=")
+				.append(this.orderings).append(']').toString();
+	}
+
+	/**
+	 * Adds a filter.
+	 * 
+	 * @param property
+	 *            The property. May not be null.
+	 * @param type
+	 *            The filter type.
+	 * @param values
+	 *            The values.
+	 * @return This specification.
+	 */
+	private QuerySpecification<E> filter(final PropertyDescriptor<?, E> property, final FilterType type, final List<Object> values) {
+		Validate.notNull(property, "Property may not be null.");
+		this.filters.add(new Filter(property.getName(), type, Collections.unmodifiableList(values)));
+		return this;
+	}
+
+	/**
+	 * Adds an ordering.
+	 * 
+	 * @param property
+	 *            The property. May not be null.
+	 * @param ascending
+	 *            Whether the order is ascending.
+	 * @return This specification.
+	 */
+	private QuerySpecification<E> orderBy(final PropertyDescriptor<?, E> property, final boolean ascending) {
+		Validate.notNull(property, "Property may not be null.");
+		this.orderings.add(new Ordering(property.getName(), ascending));
+		return this;
+	}
+}
@@ -0,0 +1,462 @@
+/* 
+ * Model Tools.
+ * Copyright (C) 2013 Pal Hargitai (pal@lunarray.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.lunarray.model.descriptor.dictionary.routing;
+
+import java.io.Closeable;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import javax.persistence.PersistenceException;
+
+import org.apache.commons.lang.Validate;
+import org.lunarray.common.check.CheckUtil;
+import org.lunarray.model.descriptor.dictionary.DictionaryJpaImpl;
+import org.lunarray.model.descriptor.dictionary.KeysetPaginatedDictionary;
+import org.lunarray.model.descriptor.dictionary.exceptions.DictionaryException;
+import org.lunarray.model.descriptor.model.entity.EntityDescriptor;
+import org.lunarray.model.descriptor.model.entity.KeyedEntityDescriptor;
+import org.lunarray.model.descriptor.resource.Resource;
+import org.lunarray.model.descriptor.resource.jparesource.IndexedJpaResource;
+import org.lunarray.model.descriptor.resource.jparesource.JpaResource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Routes lookups to the persistence unit that manages the entity type.
+ * 
+ * The entities of a unit are read from the index written by the
+ * {@link org.lunarray.model.descriptor.resource.jparesource.EntityIndexProcessor}
+ * , so routing does not start any unit. Units without an index are started to
+ * read their meta model. A unit is routed to if it is the first, in the given
+ * order, to manage the entity type.
+ * 
+ * The entity manager factory of a unit is created on first use and shared by
+ * all lookups on that unit. Units that have not been used for the idle timeout
+ * are closed by {@link #closeIdle()}, and started again when next used.
+ * Entities are detached once looked up, and closing a unit closes its entity
+ * manager factory, so lazy associations of entities from an idle closed unit
+ * can not be loaded. Use fetch joins or fetch plans for the associations that
+ * are needed. Starting a unit again runs its schema generation again, units
+ * that are closed when idle should not drop or create their schema.
+ * 
+ * @author Pal Hargitai (pal@lunarray.org)
+ */
+public final class RoutingDictionary
+		implements KeysetPaginatedDictionary, Closeable {
+
+	/** The logger. */
+	private static final Logger LOGGER = LoggerFactory.getLogger(RoutingDictionary.class);
+	/** The time a unit may be idle before it is closed, in nanoseconds. */
+	private transient volatile long idleTimeout = Long.MAX_VALUE;
+	/** The routes per entity type. */
+	private final transient ConcurrentMap<Class<?>, Unit> routes = new ConcurrentHashMap<Class<?>, Unit>();
+	/** The persistence units, in routing order. */
+	private final transient List<Unit> units;
+
+	/**
+	 * Constructs the dictionary for a number of persistence units.
+	 * 
+	 * @param unitNames
+	 *            The persistence unit names, in routing order. May not be
+	 *            empty.
+	 */
+	public RoutingDictionary(final List<String> unitNames) {
+		this(unitNames, Collections.<String, Object> emptyMap());
+	}
+
+	/**
+	 * Constructs the dictionary for a number of persistence units, with
+	 * properties overriding those of the units.
+	 * 
+	 * @param unitNames
+	 *            The persistence unit names, in routing order. May not be
+	 *            empty.
+	 * @param properties
+	 *            The properties to create the entity manager factories with.
+	 *            May not be null.
+	 */
+	public RoutingDictionary(final List<String> unitNames, final Map<String, ?> properties) {
+		Validate.notEmpty(unitNames, "Unit names may not be empty.");
+		Validate.noNullElements(unitNames, "Unit names may not contain null.");
+		Validate.notNull(properties, "Properties may not be null.");
+		final ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+		this.units = new ArrayList<Unit>(unitNames.size());
+		for (final String unitName : unitNames) {
+			this.units.add(new Unit(unitName, new HashMap<String, Object>(properties), classLoader));
+		}
+	}
+
+	/**
+	 * Closes all persistence units.
+	 */
+	@Override
+	public void close() {
+		for (final Unit unit : this.units) {
+			unit.close();
+		}
+	}
+
+	/**
+	 * Closes the persistence units that have not been used for the idle
+	 * timeout. Units that are in use are never closed. Entities looked up from
+	 * a closed unit are detached and can no longer load lazy associations.
+	 * 
+	 * @return The number of closed units.
+	 * @see #setIdleTimeout(long, TimeUnit)
+	 */
+	public int closeIdle() {
+		final long now = System.nanoTime();
+		int closed = 0;
+		for (final Unit unit : this.units) {
+			if (unit.closeIfIdle(now, this.idleTimeout)) {
+				closed++;
+			}
+		}
+		return closed;
+	}
+
+	/**
+	 * Gets the name of the persistence unit an entity type is routed to.
+	 * 
+	 * @param entityType
+	 *            The entity type. May not be null.
+	 * @return The persistence unit name.
+	 */
+	public String getUnitName(final Class<?> entityType) {
+		Validate.notNull(entityType, "Entity type may not be null.");
+		return this.route(entityType).getName();
+	}
+
+	/**
+	 * Tests whether the entity manager factory of a persistence unit is open.
+	 * 
+	 * @param unitName
+	 *            The persistence unit name.
+	 * @return True if and only if the unit is routed to and started.
+	 */
+	public boolean isOpen(final String unitName) {
+		for (final Unit unit : this.units) {
+			if (unit.getName().equals(unitName)) {
+				return unit.isOpen();
+			}
+		}
+		return false;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public <E> Collection<E> lookup(final EntityDescriptor<E> entityDescriptor) throws DictionaryException {
+		final Unit unit = this.route(entityDescriptor);
+		final DictionaryJpaImpl dictionary = unit.acquire();
+		try {
+			return dictionary.lookup(entityDescriptor);
+		} finally {
+			unit.release();
+		}
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public <E, K extends Serializable> E lookup(final KeyedEntityDescriptor<E, K> entityDescriptor, final K key) throws DictionaryException {
+		final Unit unit = this.route(entityDescriptor);
+		final DictionaryJpaImpl dictionary = unit.acquire();
+		try {
+			return dictionary.lookup(entityDescriptor, key);
+		} finally {
+			unit.release();
+		}
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public <E, K extends Serializable> List<E> lookupAfter(final KeyedEntityDescriptor<E, K> entityDescriptor, final K key,
+			final int count) throws DictionaryException {
+		final Unit unit = this.route(entityDescriptor);
+		final DictionaryJpaImpl dictionary = unit.acquire();
+		try {
+			return dictionary.lookupAfter(entityDescriptor, key, count);
+		} finally {
+			unit.release();
+		}
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public <E> List<E> lookupPaginated(final EntityDescriptor<E> entityDescriptor, final int row, final int count)
+			throws DictionaryException {
+		final Unit unit = this.route(entityDescriptor);
+		final DictionaryJpaImpl dictionary = unit.acquire();
+		try {
+			return dictionary.lookupPaginated(entityDescriptor, row, count);
+		} finally {
+			unit.release();
+		}
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public <E> int lookupTotals(final EntityDescriptor<E> entityDescriptor) throws DictionaryException {
+		final Unit unit = this.route(entityDescriptor);
+		final DictionaryJpaImpl dictionary = unit.acquire();
+		try {
+			return dictionary.lookupTotals(entityDescriptor);
+		} finally {
+			unit.release();
+		}
+	}
+
+	/**
+	 * Periodically closes idle persistence units.
+	 * 
+	 * @param executor
+	 *            The executor to run on. May not be null.
+	 * @param period
+	 *            The time between runs. Must be positive.
+	 * @param unit
+	 *            The time unit. May not be null.
+	 * @return The scheduled task, cancel it to stop closing idle units.
+	 * @see #closeIdle()
+	 */
+	public ScheduledFuture<?> scheduleCloseIdle(final ScheduledExecutorService executor, final long period, final TimeUnit unit) {
+		Validate.notNull(executor, "Executor may not be null.");
+		Validate.isTrue(period > 0, "Period is not positive.");
+		Validate.notNull(unit, "Unit may not be null.");
+		return executor.scheduleWithFixedDelay(new Runnable() {
+			/** {@inheritDoc} */
+			@Override
+			public void run() {
+				final int closed = RoutingDictionary.this.closeIdle();
+				RoutingDictionary.LOGGER.debug("Closed {} idle persistence units.", closed);
+			}
+		}, period, period, unit);
+	}
+
+	/**
+	 * Sets the time a persistence unit may be idle before it is closed. By
+	 * default units are never idle.
+	 * 
+	 * @param timeout
+	 *            The timeout. May not be negative.
+	 * @param unit
+	 *            The time unit. May not be null.
+	 * @see #closeIdle()
+	 */
+	public void setIdleTimeout(final long timeout, final TimeUnit unit) {
+		Validate.isTrue(timeout >= 0, "Timeout may not be negative.");
+		Validate.notNull(unit, "Unit may not be null.");
+		this.idleTimeout = unit.toNanos(timeout);
+	}
+
+	/**
+	 * Routes an entity type.
+	 * 
+	 * @param entityType
+	 *            The entity type.
+	 * @return The unit managing the entity type.
+	 */
+	private Unit route(final Class<?> entityType) {
+		Unit unit = this.routes.get(entityType);
+		if (CheckUtil.isNull(unit)) {
+			for (final Unit candidate : this.units) {
+				if (candidate.manages(entityType)) {
+					unit = candidate;
+					break;
+				}
+			}
+			if (CheckUtil.isNull(unit)) {
+				throw new PersistenceException(new StringBuilder("No persistence unit manages ").append(entityType.getName())
+						.toString());
+			}
+			RoutingDictionary.LOGGER.debug("Routing {} to persistence unit '{}'.", entityType, unit.getName());
+			this.routes.putIfAbsent(entityType, unit);
+		}
+		return unit;
+	}
+
+	/**
+	 * Routes an entity descriptor.
+	 * 
+	 * @param entityDescriptor
+	 *            The entity descriptor.
+	 * @return The unit managing the entity type.
+	 */
+	private Unit route(final EntityDescriptor<?> entityDescriptor) {
+		Validate.notNull(entityDescriptor, "Entity descriptor may not be null.");
+		return this.route(entityDescriptor.getEntityType());
+	}
+
+	/**
+	 * A persistence unit, started on demand.
+	 * 
+	 * @author Pal Hargitai (pal@lunarray.org)
+	 */
+	private static final class Unit {
+
+		/** The number of lookups in progress. */
+		private transient int active;
+		/** The dictionary, null while closed. */
+		private transient DictionaryJpaImpl dictionary;
+		/** The entity manager factory, null while closed. */
+		private transient EntityManagerFactory factory;
+		/** The time of last use, in nanoseconds. */
+		private transient long lastUsed;
+		/** The persistence unit name. */
+		private final transient String name;
+		/** The entity manager factory properties. */
+		private final transient Map<String, Object> properties;
+		/** The entities of the unit. */
+		private final transient Resource<Class<? extends Object>> resource;
+
+		/**
+		 * Constructs the unit.
+		 * 
+		 * @param name
+		 *            The persistence unit name.
+		 * @param properties
+		 *            The entity manager factory properties.
+		 * @param classLoader
+		 *            The class loader to read the entity index with.
+		 */
+		public Unit(final String name, final Map<String, Object> properties, final ClassLoader classLoader) {
+			this.name = name;
+			this.properties = properties;
+			this.resource = new IndexedJpaResource<Object>(name, null, classLoader, new Resource<Class<? extends Object>>() {
+				/** {@inheritDoc} */
+				@Override
+				public Collection<Class<? extends Object>> getResources() {
+					return new JpaResource<Object>(Unit.this.getFactory()).getResources();
+				}
+			});
+		}
+
+		/**
+		 * Starts the unit if needed, and marks it in use.
+		 * 
+		 * @return The dictionary.
+		 */
+		public synchronized DictionaryJpaImpl acquire() {
+			this.open();
+			this.active++;
+			return this.dictionary;
+		}
+
+		/**
+		 * Closes the unit.
+		 */
+		public synchronized void close() {
+			if (!CheckUtil.isNull(this.factory)) {
+				RoutingDictionary.LOGGER.debug("Closing persistence unit '{}'.", this.name);
+				try {
+					this.dictionary.close();
+				} finally {
+					this.factory.close();
+					this.factory = null;
+					this.dictionary = null;
+				}
+			}
+		}
+
+		/**
+		 * Closes the unit if it is open, not in use and idle.
+		 * 
+		 * @param now
+		 *            The current time, in nanoseconds.
+		 * @param timeout
+		 *            The idle timeout, in nanoseconds.
+		 * @return True if and only if the unit was closed.
+		 */
+		public synchronized boolean closeIfIdle(final long now, final long timeout) {
+			if (!CheckUtil.isNull(this.factory) && this.active == 0 && now - this.lastUsed >= timeout) {
+				this.close();
+				return true;
+			}
+			return false;
+		}
+
+		/**
+		 * Starts the unit if needed and gets the entity manager factory.
+		 * 
+		 * @return The entity manager factory.
+		 */
+		public synchronized EntityManagerFactory getFactory() {
+			this.open();
+			this.lastUsed = System.nanoTime();
+			return this.factory;
+		}
+
+		/**
+		 * Gets the value for the name field.
+		 * 
+		 * @return The value for the name field.
+		 */
+		public String getName() {
+			return this.name;
+		}
+
+		/**
+		 * Tests whether the unit is started.
+		 * 
+		 * @return True if and only if the unit is started.
+		 */
+		public synchronized boolean isOpen() {
+			return !CheckUtil.isNull(this.factory);
+		}
+
+		/**
+		 * Tests whether the unit manages an entity type.
+		 * 
+		 * @param entityType
+		 *            The entity type.
+		 * @return True if and only if the entity type belongs to the unit.
+		 */
+		public boolean manages(final Class<?> entityType) {
+			return this.resource.getResources().contains(entityType);
+		}
+
+		/**
+		 * Marks the unit no longer in use by a lookup.
+		 */
+		public synchronized void release() {
+			this.active--;
+			this.lastUsed = System.nanoTime();
+		}
+
+		/**
+		 * Starts the unit if needed.
+		 */
+		private void open() {
+			if (CheckUtil.isNull(this.factory)) {
+				RoutingDictionary.LOGGER.debug("Starting persistence unit '{}'.", this.name);
+				this.factory = Persistence.createEntityManagerFactory(this.name, this.properties);
+				this.dictionary = new DictionaryJpaImpl(this.factory);
+			}
+		}
+	}
+}
@@ -0,0 +1,156 @@
+/* 
+ * Model Tools.
+ * Copyright (C) 2013 Pal Hargitai (pal@lunarray.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.lunarray.model.descriptor.dictionary.totals;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.EntityManager;
+
+import org.apache.commons.lang.Validate;
+import org.lunarray.common.check.CheckUtil;
+import org.lunarray.model.descriptor.dictionary.CriteriaFactory;
+import org.lunarray.model.descriptor.dictionary.query.QuerySpecification;
+import org.lunarray.model.descriptor.model.entity.EntityDescriptor;
+
+/**
+ * Caches the totals of a delegate strategy for a given time.
+ * 
+ * Totals served from the cache are marked as not exact, since they may be
+ * stale. Entries may be invalidated explicitly, for example after a write.
+ * Specifications without filters share the totals of all entities, the counts
+ * of specifications with filters are not cached.
+ * 
+ * @author Pal Hargitai (pal@lunarray.org)
+ */
+public final class CachedTotalsStrategy
+		implements TotalsStrategy {
+
+	/** The cached totals per entity type. */
+	private final transient ConcurrentMap<Class<?>, CachedTotals> cache = new ConcurrentHashMap<Class<?>, CachedTotals>();
+	/** The delegate strategy. */
+	private final transient TotalsStrategy delegate;
+	/** The time to live, in nanoseconds. */
+	private final transient long timeToLive;
+
+	/**
+	 * Default constructor.
+	 * 
+	 * @param delegate
+	 *            The strategy to cache. May not be null.
+	 * @param timeToLive
+	 *            The time to keep totals for. Must be positive.
+	 * @param unit
+	 *            The time unit. May not be null.
+	 */
+	public CachedTotalsStrategy(final TotalsStrategy delegate, final long timeToLive, final TimeUnit unit) {
+		Validate.notNull(delegate, "Delegate may not be null.");
+		Validate.notNull(unit, "Unit may not be null.");
+		Validate.isTrue(timeToLive > 0, "Time to live is not positive.");
+		this.delegate = delegate;
+		this.timeToLive = unit.toNanos(timeToLive);
+	}
+
+	/**
+	 * Invalidates the totals of an entity type.
+	 * 
+	 * @param entityType
+	 *            The entity type.
+	 */
+	public void invalidate(final Class<?> entityType) {
+		this.cache.remove(entityType);
+	}
+
+	/**
+	 * Invalidates all totals.
+	 */
+	public void invalidateAll() {
+		this.cache.clear();
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public <E> Totals lookupTotals(final EntityDescriptor<E> entityDescriptor, final EntityManager manager) {
+		final Class<E> entityType = entityDescriptor.getEntityType();
+		final long now = System.nanoTime();
+		final CachedTotals cached = this.cache.get(entityType);
+		final Totals result;
+		if (CheckUtil.isNull(cached) || now - cached.getExpiry() >= 0) {
+			result = this.delegate.lookupTotals(entityDescriptor, manager);
+			this.cache.put(entityType, new CachedTotals(result, now + this.timeToLive));
+		} else {
+			result = new Totals(cached.getTotals().getCount(), false);
+		}
+		return result;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public <E> Totals lookupTotals(final EntityDescriptor<E> entityDescriptor, final QuerySpecification<E> specification,
+			final CriteriaFactory<Long> countFactory, final EntityManager manager) {
+		if (specification.getFilters().isEmpty()) {
+			return this.lookupTotals(entityDescriptor, manager);
+		}
+		return this.delegate.lookupTotals(entityDescriptor, specification, countFactory, manager);
+	}
+
+	/**
+	 * Cached totals with their expiry.
+	 * 
+	 * @author Pal Hargitai (pal@lunarray.org)
+	 */
+	private static final class CachedTotals {
+
+		/** The expiry, in {@link System#nanoTime()}. */
+		private final transient long expiry;
+		/** The totals. */
+		private final transient Totals totals;
+
+		/**
+		 * Default constructor.
+		 * 
+		 * @param totals
+		 *            The totals.
+		 * @param expiry
+		 *            The expiry.
+		 */
+		public CachedTotals(final Totals totals, final long expiry) {
+			this.totals = totals;
+			this.expiry = expiry;
+		}
+
+		/**
+		 * Gets the value for the expiry field.
+		 * 
+		 * @return The value for the expiry field.
+		 */
+		public long getExpiry() {
+			return this.expiry;
+		}
+
+		/**
+		 * Gets the value for the totals field.
+		 * 
+		 * @return The value for the totals field.
+		 */
+		public Totals getTotals() {
+			return this.totals;
+		}
+	}
+}
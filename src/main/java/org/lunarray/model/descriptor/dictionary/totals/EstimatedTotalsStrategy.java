@@ -0,0 +1,127 @@
+/* 
+ * Model Tools.
+ * Copyright (C) 2013 Pal Hargitai (pal@lunarray.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.lunarray.model.descriptor.dictionary.totals;
+
+import java.util.List;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceException;
+import javax.persistence.Table;
+
+import org.apache.commons.lang.Validate;
+import org.lunarray.common.check.CheckUtil;
+import org.lunarray.model.descriptor.dictionary.CriteriaFactory;
+import org.lunarray.model.descriptor.dictionary.query.QuerySpecification;
+import org.lunarray.model.descriptor.model.entity.EntityDescriptor;
+import org.lunarray.model.descriptor.util.StringUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Estimates totals from the statistics the database keeps.
+ * 
+ * The estimate is read with a native query that takes the table name as its
+ * only parameter. Queries for some databases are provided, these read the
+ * table of the current schema. If no estimate is
+ * available the fallback strategy is used. Statistics cover whole tables, so
+ * specifications with filters are always counted by the fallback strategy.
+ * 
+ * @author Pal Hargitai (pal@lunarray.org)
+ */
+public final class EstimatedTotalsStrategy
+		implements TotalsStrategy {
+
+	/** Estimate query for H2. */
+	public static final String H2 = "select ROW_COUNT_ESTIMATE from INFORMATION_SCHEMA.TABLES where TABLE_SCHEMA = schema() and upper(TABLE_NAME) = upper(?1)";
+	/** Estimate query for MySQL. */
+	public static final String MYSQL = "select TABLE_ROWS from information_schema.TABLES where TABLE_SCHEMA = database() and TABLE_NAME = ?1";
+	/** Estimate query for PostgreSQL. */
+	public static final String POSTGRESQL = "select cast(reltuples as bigint) from pg_class where relkind = 'r' and relname = lower(?1) and relnamespace = (select oid from pg_namespace where nspname = current_schema())";
+	/** The logger. */
+	private static final Logger LOGGER = LoggerFactory.getLogger(EstimatedTotalsStrategy.class);
+	/** The estimate query. */
+	private final transient String estimateQuery;
+	/** The fallback strategy. */
+	private final transient TotalsStrategy fallback;
+
+	/**
+	 * Default constructor.
+	 * 
+	 * @param estimateQuery
+	 *            The native estimate query, for example {@link #H2}. May not
+	 *            be null.
+	 * @param fallback
+	 *            The strategy to use when there is no estimate. May not be
+	 *            null.
+	 */
+	public EstimatedTotalsStrategy(final String estimateQuery, final TotalsStrategy fallback) {
+		Validate.notEmpty(estimateQuery, "Estimate query may not be empty.");
+		Validate.notNull(fallback, "Fallback may not be null.");
+		this.estimateQuery = estimateQuery;
+		this.fallback = fallback;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public <E> Totals lookupTotals(final EntityDescriptor<E> entityDescriptor, final EntityManager manager) {
+		final Class<E> entityType = entityDescriptor.getEntityType();
+		final String tableName = this.getTableName(manager, entityType);
+		Totals result = null;
+		try {
+			final List<?> estimates = manager.createNativeQuery(this.estimateQuery).setParameter(1, tableName).getResultList();
+			if (!estimates.isEmpty() && estimates.get(0) instanceof Number) {
+				result = new Totals(((Number) estimates.get(0)).longValue(), false);
+			}
+		} catch (final PersistenceException e) {
+			EstimatedTotalsStrategy.LOGGER.debug("Could not estimate totals for table '{}'.", tableName, e);
+		}
+		if (CheckUtil.isNull(result)) {
+			result = this.fallback.lookupTotals(entityDescriptor, manager);
+		}
+		return result;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public <E> Totals lookupTotals(final EntityDescriptor<E> entityDescriptor, final QuerySpecification<E> specification,
+			final CriteriaFactory<Long> countFactory, final EntityManager manager) {
+		if (specification.getFilters().isEmpty()) {
+			return this.lookupTotals(entityDescriptor, manager);
+		}
+		return this.fallback.lookupTotals(entityDescriptor, specification, countFactory, manager);
+	}
+
+	/**
+	 * Gets the table name for an entity type.
+	 * 
+	 * @param manager
+	 *            The entity manager.
+	 * @param entityType
+	 *            The entity type.
+	 * @return The name from {@link Table}, or the entity name.
+	 */
+	private String getTableName(final EntityManager manager, final Class<?> entityType) {
+		for (Class<?> type = entityType; !CheckUtil.isNull(type); type = type.getSuperclass()) {
+			final Table table = type.getAnnotation(Table.class);
+			if (!CheckUtil.isNull(table) && !StringUtil.isEmptyString(table.name())) {
+				return table.name();
+			}
+		}
+		return manager.getMetamodel().entity(entityType).getName();
+	}
+}
@@ -0,0 +1,83 @@
+/* 
+ * Model Tools.
+ * Copyright (C) 2013 Pal Hargitai (pal@lunarray.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.lunarray.model.descriptor.dictionary.totals;
+
+import javax.persistence.EntityManager;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+
+import org.apache.commons.lang.Validate;
+import org.lunarray.model.descriptor.dictionary.CriteriaFactory;
+import org.lunarray.model.descriptor.dictionary.QueryCache;
+import org.lunarray.model.descriptor.dictionary.query.QuerySpecification;
+import org.lunarray.model.descriptor.model.entity.EntityDescriptor;
+
+/**
+ * Counts all entities with a <code>count</code> query. Specifications without
+ * filters share the cached query of all entities.
+ * 
+ * @author Pal Hargitai (pal@lunarray.org)
+ */
+public final class ExactTotalsStrategy
+		implements TotalsStrategy {
+
+	/** The count operation. */
+	private static final String OPERATION_COUNT = "count";
+	/** The query cache. */
+	private final transient QueryCache queryCache;
+
+	/**
+	 * Default constructor.
+	 * 
+	 * @param queryCache
+	 *            The query cache to get the count query from. May not be
+	 *            null.
+	 */
+	public ExactTotalsStrategy(final QueryCache queryCache) {
+		Validate.notNull(queryCache, "Query cache may not be null.");
+		this.queryCache = queryCache;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public <E> Totals lookupTotals(final EntityDescriptor<E> entityDescriptor, final EntityManager manager) {
+		final Class<E> entityType = entityDescriptor.getEntityType();
+		final Long count = this.queryCache.getQuery(manager, entityType, ExactTotalsStrategy.OPERATION_COUNT, Long.class,
+				new CriteriaFactory<Long>() {
+					/** {@inheritDoc} */
+					@Override
+					public CriteriaQuery<Long> create(final CriteriaBuilder builder) {
+						final CriteriaQuery<Long> query = builder.createQuery(Long.class);
+						query.select(builder.count(query.from(entityType)));
+						return query;
+					}
+				}).getSingleResult();
+		return new Totals(count.longValue(), true);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public <E> Totals lookupTotals(final EntityDescriptor<E> entityDescriptor, final QuerySpecification<E> specification,
+			final CriteriaFactory<Long> countFactory, final EntityManager manager) {
+		if (specification.getFilters().isEmpty()) {
+			return this.lookupTotals(entityDescriptor, manager);
+		}
+		final Long count = manager.createQuery(countFactory.create(manager.getCriteriaBuilder())).getSingleResult();
+		return new Totals(count.longValue(), true);
+	}
+}
@@ -0,0 +1,71 @@
+/* 
+ * Model Tools.
+ * Copyright (C) 2013 Pal Hargitai (pal@lunarray.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.lunarray.model.descriptor.dictionary.totals;
+
+/**
+ * The number of entities of a type, as determined by a totals strategy.
+ * 
+ * @author Pal Hargitai (pal@lunarray.org)
+ * @see TotalsStrategy
+ */
+public final class Totals {
+
+	/** The count. */
+	private final transient long count;
+	/** Whether the count is exact. */
+	private final transient boolean exact;
+
+	/**
+	 * Default constructor.
+	 * 
+	 * @param count
+	 *            The count.
+	 * @param exact
+	 *            Whether the count is exact.
+	 */
+	public Totals(final long count, final boolean exact) {
+		this.count = count;
+		this.exact = exact;
+	}
+
+	/**
+	 * Gets the value for the count field.
+	 * 
+	 * @return The value for the count field.
+	 */
+	public long getCount() {
+		return this.count;
+	}
+
+	/**
+	 * Tests whether the count is exact. A count is not exact if it is an
+	 * estimate, or if it may be stale.
+	 * 
+	 * @return True if and only if the count is exact.
+	 */
+	public boolean isExact() {
+		return this.exact;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public String toString() {
+		return new StringBuilder("Totals[count=").append(this.count).append(", exact=").append(this.exact).append(']')
+				.toString();
+	}
+}
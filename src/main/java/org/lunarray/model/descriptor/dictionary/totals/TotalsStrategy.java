@@ -0,0 +1,64 @@
+/* 
+ * Model Tools.
+ * Copyright (C) 2013 Pal Hargitai (pal@lunarray.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.lunarray.model.descriptor.dictionary.totals;
+
+import javax.persistence.EntityManager;
+
+import org.lunarray.model.descriptor.dictionary.CriteriaFactory;
+import org.lunarray.model.descriptor.dictionary.query.QuerySpecification;
+import org.lunarray.model.descriptor.model.entity.EntityDescriptor;
+
+/**
+ * Determines the number of entities of a type.
+ * 
+ * @author Pal Hargitai (pal@lunarray.org)
+ */
+public interface TotalsStrategy {
+
+	/**
+	 * Determines the number of entities.
+	 * 
+	 * @param entityDescriptor
+	 *            The entity descriptor. May not be null.
+	 * @param manager
+	 *            The entity manager to query with. May not be null.
+	 * @param <E>
+	 *            The entity type.
+	 * @return The totals.
+	 */
+	<E> Totals lookupTotals(EntityDescriptor<E> entityDescriptor, EntityManager manager);
+
+	/**
+	 * Determines the number of entities matching a specification.
+	 * 
+	 * @param entityDescriptor
+	 *            The entity descriptor. May not be null.
+	 * @param specification
+	 *            The specification. May not be null.
+	 * @param countFactory
+	 *            Creates the exact count query of the specification. May not
+	 *            be null.
+	 * @param manager
+	 *            The entity manager to query with. May not be null.
+	 * @param <E>
+	 *            The entity type.
+	 * @return The totals.
+	 */
+	<E> Totals lookupTotals(EntityDescriptor<E> entityDescriptor, QuerySpecification<E> specification,
+			CriteriaFactory<Long> countFactory, EntityManager manager);
+}
@@ -0,0 +1,283 @@
+/* 
+ * Model Tools.
+ * Copyright (C) 2013 Pal Hargitai (pal@lunarray.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.lunarray.model.descriptor.resource.jparesource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.annotation.processing.SupportedOptions;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.TypeElement;
+import javax.persistence.Entity;
+import javax.tools.Diagnostic.Kind;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.lunarray.common.check.CheckUtil;
+import org.lunarray.model.descriptor.util.StringUtil;
+import org.w3c.dom.Document;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+/**
+ * Writes an index of the entities of the persistence units at build time.
+ * 
+ * The persistence units are read from {@value #PERSISTENCE_DESCRIPTOR}, in
+ * the class output or on the source path. Build tools that copy resources
+ * before compiling, such as Maven, thus need no configuration. Each unit
+ * lists the classes annotated with {@link Entity} that are members of it:
+ * <ul>
+ * <li>the listed classes, compiled in this pass or on the class path,</li>
+ * <li>and, unless the unit excludes unlisted classes, the entities compiled
+ * in this pass.</li>
+ * </ul>
+ * Units that refer to mapping files or jar files, or that share a
+ * {@value #MAPPING_DESCRIPTOR}, may have members this processor can not see
+ * and are not indexed, so these are read from the meta model. The
+ * {@value #OPTION_PERSISTENCE_UNIT} processor option restricts the index to
+ * a single unit. The index lists binary names, one per line, and is written
+ * to {@value #INDEX_LOCATION} followed by the unit name and
+ * {@value #INDEX_SUFFIX}. The index only covers the classes compiled in one
+ * pass, incremental builds should recompile all entities.
+ * 
+ * @author Pal Hargitai (pal@lunarray.org)
+ * @see IndexedJpaResource
+ */
+@SupportedAnnotationTypes("javax.persistence.Entity")
+@SupportedOptions(EntityIndexProcessor.OPTION_PERSISTENCE_UNIT)
+public final class EntityIndexProcessor
+		extends AbstractProcessor {
+
+	/** The index location. */
+	public static final String INDEX_LOCATION = "META-INF/lunarray/entities/";
+	/** The index suffix. */
+	public static final String INDEX_SUFFIX = ".index";
+	/** The default mapping descriptor. */
+	public static final String MAPPING_DESCRIPTOR = "META-INF/orm.xml";
+	/** The option naming the persistence unit. */
+	public static final String OPTION_PERSISTENCE_UNIT = "lunarray.persistenceUnit";
+	/** The persistence descriptor. */
+	public static final String PERSISTENCE_DESCRIPTOR = "META-INF/persistence.xml";
+	/** The locations to read descriptors from. */
+	private static final StandardLocation[] DESCRIPTOR_LOCATIONS = { StandardLocation.CLASS_OUTPUT, StandardLocation.SOURCE_PATH };
+
+	/** The binary names of the entities found. */
+	private final transient Set<String> entities = new TreeSet<String>();
+
+	/**
+	 * Default constructor.
+	 */
+	public EntityIndexProcessor() {
+		super();
+	}
+
+	/**
+	 * Gets the text of the child elements of a persistence unit.
+	 * 
+	 * @param unit
+	 *            The persistence unit element.
+	 * @param name
+	 *            The child element name.
+	 * @return The trimmed texts.
+	 */
+	private static Set<String> getChildTexts(final org.w3c.dom.Element unit, final String name) {
+		final Set<String> texts = new TreeSet<String>();
+		final NodeList children = unit.getElementsByTagNameNS("*", name);
+		for (int i = 0; i < children.getLength(); i++) {
+			texts.add(children.item(i).getTextContent().trim());
+		}
+		return texts;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public boolean process(final Set<? extends TypeElement> annotations, final RoundEnvironment roundEnv) {
+		if (roundEnv.processingOver()) {
+			final Document descriptor = this.readDescriptor();
+			if (!CheckUtil.isNull(descriptor)) {
+				for (final Map.Entry<String, Set<String>> unit : this.resolveUnits(descriptor).entrySet()) {
+					this.write(unit.getKey(), unit.getValue());
+				}
+			}
+		} else {
+			for (final Element element : roundEnv.getElementsAnnotatedWith(Entity.class)) {
+				if (ElementKind.CLASS.equals(element.getKind())) {
+					this.entities.add(this.processingEnv.getElementUtils().getBinaryName((TypeElement) element).toString());
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Opens a descriptor.
+	 * 
+	 * @param name
+	 *            The descriptor name.
+	 * @return The descriptor, or null if there is none.
+	 */
+	private InputStream openDescriptor(final String name) {
+		for (final StandardLocation location : EntityIndexProcessor.DESCRIPTOR_LOCATIONS) {
+			try {
+				return this.processingEnv.getFiler().getResource(location, "", name).openInputStream();
+			} catch (final IOException e) {
+				// Not at this location, try the next.
+			} catch (final IllegalArgumentException e) {
+				// The location is not supported, try the next.
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Reads the persistence descriptor.
+	 * 
+	 * @return The descriptor, or null if there is none or it could not be
+	 *         read.
+	 */
+	private Document readDescriptor() {
+		final InputStream input = this.openDescriptor(EntityIndexProcessor.PERSISTENCE_DESCRIPTOR);
+		if (CheckUtil.isNull(input)) {
+			return null;
+		}
+		Document descriptor = null;
+		try {
+			try {
+				final DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+				factory.setNamespaceAware(true);
+				descriptor = factory.newDocumentBuilder().parse(input);
+			} finally {
+				input.close();
+			}
+		} catch (final IOException e) {
+			this.reportUnreadable(e);
+		} catch (final ParserConfigurationException e) {
+			this.reportUnreadable(e);
+		} catch (final SAXException e) {
+			this.reportUnreadable(e);
+		}
+		return descriptor;
+	}
+
+	/**
+	 * Reports an unreadable persistence descriptor.
+	 * 
+	 * @param cause
+	 *            The cause.
+	 */
+	private void reportUnreadable(final Exception cause) {
+		this.processingEnv.getMessager().printMessage(
+				Kind.ERROR,
+				new StringBuilder("Could not read ").append(EntityIndexProcessor.PERSISTENCE_DESCRIPTOR).append(": ")
+						.append(cause.getMessage()));
+	}
+
+	/**
+	 * Resolves the members of the persistence units to index.
+	 * 
+	 * @param descriptor
+	 *            The persistence descriptor.
+	 * @return The binary names of the member entities, by unit name.
+	 */
+	private Map<String, Set<String>> resolveUnits(final Document descriptor) {
+		final String unitName = this.processingEnv.getOptions().get(EntityIndexProcessor.OPTION_PERSISTENCE_UNIT);
+		final InputStream mapping = this.openDescriptor(EntityIndexProcessor.MAPPING_DESCRIPTOR);
+		final boolean sharedMapping = !CheckUtil.isNull(mapping);
+		if (sharedMapping) {
+			try {
+				mapping.close();
+			} catch (final IOException e) {
+				// Only its presence matters.
+			}
+		}
+		final Map<String, Set<String>> units = new TreeMap<String, Set<String>>();
+		final NodeList elements = descriptor.getElementsByTagNameNS("*", "persistence-unit");
+		for (int i = 0; i < elements.getLength(); i++) {
+			final org.w3c.dom.Element unit = (org.w3c.dom.Element) elements.item(i);
+			final String name = unit.getAttribute("name");
+			if (!StringUtil.isEmptyString(unitName) && !unitName.equals(name)) {
+				continue;
+			}
+			if (sharedMapping || !EntityIndexProcessor.getChildTexts(unit, "mapping-file").isEmpty()
+					|| !EntityIndexProcessor.getChildTexts(unit, "jar-file").isEmpty()) {
+				this.processingEnv.getMessager().printMessage(Kind.NOTE,
+						new StringBuilder("Not indexing persistence unit ").append(name).append(", it refers to mapping or jar files."));
+				continue;
+			}
+			final Set<String> members = new TreeSet<String>();
+			for (final String listed : EntityIndexProcessor.getChildTexts(unit, "class")) {
+				final TypeElement element = this.processingEnv.getElementUtils().getTypeElement(listed.replace('$', '.'));
+				if (!CheckUtil.isNull(element) && !CheckUtil.isNull(element.getAnnotation(Entity.class))) {
+					members.add(this.processingEnv.getElementUtils().getBinaryName(element).toString());
+				}
+			}
+			final Set<String> exclude = EntityIndexProcessor.getChildTexts(unit, "exclude-unlisted-classes");
+			if (exclude.isEmpty() || exclude.contains("false")) {
+				members.addAll(this.entities);
+			}
+			units.put(name, members);
+		}
+		return units;
+	}
+
+	/**
+	 * Writes the index.
+	 * 
+	 * @param unitName
+	 *            The persistence unit name.
+	 * @param members
+	 *            The binary names of the member entities.
+	 */
+	private void write(final String unitName, final Set<String> members) {
+		final String location = new StringBuilder(EntityIndexProcessor.INDEX_LOCATION).append(unitName)
+				.append(EntityIndexProcessor.INDEX_SUFFIX).toString();
+		try {
+			final FileObject resource = this.processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", location);
+			final Writer writer = resource.openWriter();
+			try {
+				for (final String entity : members) {
+					writer.write(entity);
+					writer.write('\n');
+				}
+			} finally {
+				writer.close();
+			}
+		} catch (final IOException e) {
+			this.processingEnv.getMessager().printMessage(Kind.ERROR,
+					new StringBuilder("Could not write entity index ").append(location).append(": ").append(e.getMessage()));
+		}
+	}
+}
@@ -0,0 +1,215 @@
+/* 
+ * Model Tools.
+ * Copyright (C) 2013 Pal Hargitai (pal@lunarray.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.lunarray.model.descriptor.resource.jparesource;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.persistence.PersistenceException;
+
+import org.apache.commons.lang.Validate;
+import org.lunarray.common.check.CheckUtil;
+import org.lunarray.model.descriptor.resource.Resource;
+import org.lunarray.model.descriptor.util.StringUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A resource retrieving the entities of a persistence unit from the index
+ * written by the {@link EntityIndexProcessor}.
+ * 
+ * No persistence unit is started if an index is found. The indices of all
+ * class path entries are combined. If there is no index, the entities are
+ * read through a fallback resource, by default a {@link JpaResource}.
+ * 
+ * @author Pal Hargitai (pal@lunarray.org)
+ * @param <S>
+ *            A marker type.
+ */
+public final class IndexedJpaResource<S>
+		implements Resource<Class<? extends S>> {
+
+	/** The index encoding. */
+	private static final String ENCODING = "UTF-8";
+	/** The logger. */
+	private static final Logger LOGGER = LoggerFactory.getLogger(IndexedJpaResource.class);
+	/** The class loader. */
+	private final transient ClassLoader classLoader;
+	/** The resource to use if there is no index, may be null. */
+	private final transient Resource<Class<? extends S>> fallback;
+	/** The marker type. */
+	private final transient Class<S> markerType;
+	/** The persistence unit name. */
+	private final transient String persistenceUnitName;
+	/** The resource cache. */
+	private transient volatile Collection<Class<? extends S>> resourceCache;
+
+	/**
+	 * Constructs the resource with a given persistence unit name.
+	 * 
+	 * @param persistenceUnitName
+	 *            The persistence unit name. May not be null.
+	 */
+	public IndexedJpaResource(final String persistenceUnitName) {
+		this(persistenceUnitName, null);
+	}
+
+	/**
+	 * Constructs the resource with both a persistence unit name and a marker
+	 * type.
+	 * 
+	 * @param persistenceUnitName
+	 *            The persistence unit name. May not be null.
+	 * @param markerType
+	 *            The marker type.
+	 */
+	public IndexedJpaResource(final String persistenceUnitName, final Class<S> markerType) {
+		this(persistenceUnitName, markerType, null);
+	}
+
+	/**
+	 * Constructs the resource with a persistence unit name, a marker type and
+	 * a class loader.
+	 * 
+	 * @param persistenceUnitName
+	 *            The persistence unit name. May not be null.
+	 * @param markerType
+	 *            The marker type.
+	 * @param classLoader
+	 *            The class loader to read the index and entities with, or
+	 *            null for the context class loader.
+	 */
+	public IndexedJpaResource(final String persistenceUnitName, final Class<S> markerType, final ClassLoader classLoader) {
+		this(persistenceUnitName, markerType, classLoader, null);
+	}
+
+	/**
+	 * Constructs the resource with a persistence unit name, a marker type, a
+	 * class loader and a fallback resource.
+	 * 
+	 * @param persistenceUnitName
+	 *            The persistence unit name. May not be null.
+	 * @param markerType
+	 *            The marker type.
+	 * @param classLoader
+	 *            The class loader to read the index and entities with, or
+	 *            null for the context class loader.
+	 * @param fallback
+	 *            The resource to use if there is no index, or null to read
+	 *            the meta model of the persistence unit.
+	 */
+	public IndexedJpaResource(final String persistenceUnitName, final Class<S> markerType, final ClassLoader classLoader,
+			final Resource<Class<? extends S>> fallback) {
+		Validate.notEmpty(persistenceUnitName, "Persistent unit may not be null.");
+		this.persistenceUnitName = persistenceUnitName;
+		this.markerType = markerType;
+		this.fallback = fallback;
+		if (CheckUtil.isNull(classLoader)) {
+			this.classLoader = Thread.currentThread().getContextClassLoader();
+		} else {
+			this.classLoader = classLoader;
+		}
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public Collection<Class<? extends S>> getResources() {
+		Collection<Class<? extends S>> resources = this.resourceCache;
+		if (CheckUtil.isNull(resources)) {
+			synchronized (this) {
+				resources = this.resourceCache;
+				if (CheckUtil.isNull(resources)) {
+					resources = this.init();
+					this.resourceCache = resources;
+				}
+			}
+		}
+		return resources;
+	}
+
+	/**
+	 * Initializes the resource cache.
+	 * 
+	 * @return The resources.
+	 */
+	private Collection<Class<? extends S>> init() {
+		final String location = new StringBuilder(EntityIndexProcessor.INDEX_LOCATION).append(this.persistenceUnitName)
+				.append(EntityIndexProcessor.INDEX_SUFFIX).toString();
+		try {
+			final Enumeration<URL> indices = this.classLoader.getResources(location);
+			if (!indices.hasMoreElements()) {
+				IndexedJpaResource.LOGGER.debug("No entity index for persistence unit '{}', reading the meta model.",
+						this.persistenceUnitName);
+				if (!CheckUtil.isNull(this.fallback)) {
+					return this.fallback.getResources();
+				}
+				return new JpaResource<S>(this.persistenceUnitName, this.markerType).getResources();
+			}
+			final Set<Class<? extends S>> temporaryClazzCache = new HashSet<Class<? extends S>>();
+			while (indices.hasMoreElements()) {
+				this.read(indices.nextElement(), temporaryClazzCache);
+			}
+			IndexedJpaResource.LOGGER.debug("Found {} indexed entity descriptors for persistence unit '{}'.",
+					temporaryClazzCache.size(), this.persistenceUnitName);
+			return Collections.unmodifiableSet(temporaryClazzCache);
+		} catch (final IOException e) {
+			throw new PersistenceException(new StringBuilder("Could not read entity index ").append(location).toString(), e);
+		} catch (final ClassNotFoundException e) {
+			throw new PersistenceException(new StringBuilder("Indexed entity not found in ").append(location).toString(), e);
+		}
+	}
+
+	/**
+	 * Reads an index.
+	 * 
+	 * @param index
+	 *            The index.
+	 * @param resources
+	 *            The resources to add to.
+	 * @throws IOException
+	 *             Thrown if the index could not be read.
+	 * @throws ClassNotFoundException
+	 *             Thrown if an entity could not be loaded.
+	 */
+	@SuppressWarnings("unchecked")
+	private void read(final URL index, final Set<Class<? extends S>> resources) throws IOException, ClassNotFoundException {
+		final BufferedReader reader = new BufferedReader(new InputStreamReader(index.openStream(), IndexedJpaResource.ENCODING));
+		try {
+			String line = reader.readLine();
+			while (!CheckUtil.isNull(line)) {
+				final String name = line.trim();
+				if (!StringUtil.isEmptyString(name)) {
+					final Class<?> entityType = Class.forName(name, false, this.classLoader);
+					if (CheckUtil.isNull(this.markerType) || this.markerType.isAssignableFrom(entityType)) {
+						resources.add((Class<? extends S>) entityType);
+					}
+				}
+				line = reader.readLine();
+			}
+		} finally {
+			reader.close();
+		}
+	}
+}
@@ -18,9 +18,11 @@
 package org.lunarray.model.descriptor.resource.jparesource;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
 
+import javax.persistence.EntityManagerFactory;
 import javax.persistence.Persistence;
 import javax.persistence.metamodel.EntityType;
 import javax.persistence.metamodel.Metamodel;
@@ -34,6 +36,11 @@ import org.slf4j.LoggerFactory;
 /**
  * A resource retrieves all resources based on a JPA persistence unit.
  * 
+ * The entities are read from a given meta model or entity manager factory.
+ * If only a persistence unit name is given, an entity manager factory is
+ * created to read the meta model and closed right after. The resources are
+ * read once, on first access.
+ * 
  * @author Pal Hargitai (pal@lunarray.org)
  * @param <S>
  *            A marker type.
@@ -43,12 +50,71 @@ public final class JpaResource<S>
 
 	/** The logger. */
 	private static final Logger LOGGER = LoggerFactory.getLogger(JpaResource.class);
+	/** The entity manager factory, may be null. */
+	private final transient EntityManagerFactory entityManagerFactory;
 	/** The marker type. */
 	private final transient Class<S> markerType;
-	/** The persistence unit name. */
+	/** The meta model, may be null. */
+	private final transient Metamodel metamodel;
+	/** The persistence unit name, may be null. */
 	private final transient String persistenceUnitName;
 	/** The resource cache. */
-	private transient Set<Class<? extends S>> resourceCache;
+	private transient volatile Collection<Class<? extends S>> resourceCache;
+
+	/**
+	 * Constructs the jpa resource with an entity manager factory.
+	 * 
+	 * @param entityManagerFactory
+	 *            The entity manager factory. May not be null, is not closed
+	 *            by the resource.
+	 */
+	public JpaResource(final EntityManagerFactory entityManagerFactory) {
+		this(entityManagerFactory, null);
+	}
+
+	/**
+	 * Constructs the jpa resource with both an entity manager factory and a
+	 * marker type.
+	 * 
+	 * @param entityManagerFactory
+	 *            The entity manager factory. May not be null, is not closed
+	 *            by the resource.
+	 * @param markerType
+	 *            The marker type.
+	 */
+	public JpaResource(final EntityManagerFactory entityManagerFactory, final Class<S> markerType) {
+		Validate.notNull(entityManagerFactory, "Entity manager factory may not be null.");
+		this.persistenceUnitName = null;
+		this.entityManagerFactory = entityManagerFactory;
+		this.metamodel = null;
+		this.markerType = markerType;
+	}
+
+	/**
+	 * Constructs the jpa resource with a meta model.
+	 * 
+	 * @param metamodel
+	 *            The meta model. May not be null.
+	 */
+	public JpaResource(final Metamodel metamodel) {
+		this(metamodel, null);
+	}
+
+	/**
+	 * Constructs the jpa resource with both a meta model and a marker type.
+	 * 
+	 * @param metamodel
+	 *            The meta model. May not be null.
+	 * @param markerType
+	 *            The marker type.
+	 */
+	public JpaResource(final Metamodel metamodel, final Class<S> markerType) {
+		Validate.notNull(metamodel, "Meta model may not be null.");
+		this.persistenceUnitName = null;
+		this.entityManagerFactory = null;
+		this.metamodel = metamodel;
+		this.markerType = markerType;
+	}
 
 	/**
 	 * Construct the jpa resource with a given persistence unit name.
@@ -72,40 +138,70 @@ public final class JpaResource<S>
 	public JpaResource(final String persistentUnitName, final Class<S> markerType) {
 		Validate.notEmpty(persistentUnitName, "Persistent unit may not be null.");
 		this.persistenceUnitName = persistentUnitName;
+		this.entityManagerFactory = null;
+		this.metamodel = null;
 		this.markerType = markerType;
 	}
 
 	/** {@inheritDoc} */
 	@Override
 	public Collection<Class<? extends S>> getResources() {
-		if (CheckUtil.isNull(this.resourceCache)) {
-			this.init();
+		Collection<Class<? extends S>> resources = this.resourceCache;
+		if (CheckUtil.isNull(resources)) {
+			synchronized (this) {
+				resources = this.resourceCache;
+				if (CheckUtil.isNull(resources)) {
+					resources = this.init();
+					this.resourceCache = resources;
+				}
+			}
 		}
-		return this.resourceCache;
+		return resources;
 	}
 
 	/**
-	 * Gets the JPA meta model.
+	 * Reads the resources from a meta model.
 	 * 
-	 * @return The JPA meta model.
+	 * @param model
+	 *            The meta model.
+	 * @return The resources.
 	 */
-	private Metamodel getModel() {
-		return Persistence.createEntityManagerFactory(this.persistenceUnitName).getMetamodel();
+	@SuppressWarnings("unchecked")
+	private Collection<Class<? extends S>> read(final Metamodel model) {
+		final Set<Class<? extends S>> temporaryClazzCache = new HashSet<Class<? extends S>>();
+		for (final EntityType<?> entityType : model.getEntities()) {
+			if (CheckUtil.isNull(this.markerType) || this.markerType.isAssignableFrom(entityType.getJavaType())) {
+				temporaryClazzCache.add((Class<? extends S>) entityType.getJavaType());
+			}
+		}
+		return Collections.unmodifiableSet(temporaryClazzCache);
 	}
 
 	/**
 	 * Initializes the resource cache.
+	 * 
+	 * @return The resources.
 	 */
-	@SuppressWarnings("unchecked")
-	private void init() {
-		final Set<Class<? extends S>> temporaryClazzCache = new HashSet<Class<? extends S>>();
-		for (final EntityType<?> entityType : this.getModel().getEntities()) {
-			if (CheckUtil.isNull(this.markerType) || this.markerType.isAssignableFrom(entityType.getJavaType())) {
-				temporaryClazzCache.add((Class<? extends S>) entityType.getJavaType());
+	private Collection<Class<? extends S>> init() {
+		final Collection<Class<? extends S>> resources;
+		if (!CheckUtil.isNull(this.metamodel)) {
+			resources = this.read(this.metamodel);
+		} else if (!CheckUtil.isNull(this.entityManagerFactory)) {
+			resources = this.read(this.entityManagerFactory.getMetamodel());
+		} else {
+			final EntityManagerFactory createdFactory = Persistence.createEntityManagerFactory(this.persistenceUnitName);
+			try {
+				resources = this.read(createdFactory.getMetamodel());
+			} finally {
+				createdFactory.close();
 			}
 		}
-		JpaResource.LOGGER.debug("Found {} entity descriptors for persistence unit '{}'.", temporaryClazzCache.size(),
-				this.persistenceUnitName);
-		this.resourceCache = temporaryClazzCache;
+		if (CheckUtil.isNull(this.persistenceUnitName)) {
+			JpaResource.LOGGER.debug("Found {} entity descriptors.", resources.size());
+		} else {
+			JpaResource.LOGGER.debug("Found {} entity descriptors for persistence unit '{}'.", resources.size(),
+					this.persistenceUnitName);
+		}
+		return resources;
 	}
 }
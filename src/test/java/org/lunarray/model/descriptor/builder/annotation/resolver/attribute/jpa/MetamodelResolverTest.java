@@ -0,0 +1,130 @@
+/* 
+ * Model Tools.
+ * Copyright (C) 2013 Pal Hargitai (pal@lunarray.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.lunarray.model.descriptor.builder.annotation.resolver.attribute.jpa;
+
+import javax.persistence.Column;
+import javax.persistence.EmbeddedId;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+
+import junit.framework.Assert;
+
+import org.easymock.EasyMock;
+import org.junit.Before;
+import org.junit.Test;
+import org.lunarray.model.descriptor.AbstractJpaTest;
+import org.lunarray.model.descriptor.accessor.entity.DescribedEntity;
+import org.lunarray.model.descriptor.accessor.property.DescribedProperty;
+import org.lunarray.model.descriptor.builder.annotation.resolver.entity.EntityAttributeResolverStrategy;
+import org.lunarray.model.descriptor.builder.annotation.resolver.entity.def.DefaultEntityAttributeResolverStrategy;
+import org.lunarray.model.descriptor.builder.annotation.resolver.property.PropertyAttributeResolverStrategy;
+import org.lunarray.model.descriptor.builder.annotation.resolver.property.def.DefaultPropertyAttributeResolverStrategy;
+import org.lunarray.model.descriptor.builder.annotation.simple.SimpleBuilder;
+import org.lunarray.model.descriptor.model.Model;
+import org.lunarray.model.descriptor.model.SampleEntity01;
+import org.lunarray.model.descriptor.model.SampleEntity02;
+import org.lunarray.model.descriptor.model.SampleKey01;
+import org.lunarray.model.descriptor.model.entity.EntityDescriptor;
+import org.lunarray.model.descriptor.model.entity.KeyedEntityDescriptor;
+import org.lunarray.model.descriptor.resource.jparesource.JpaResource;
+
+/**
+ * Test the meta model based resolver.
+ * 
+ * @author Pal Hargitai (pal@lunarray.org)
+ * @see MetamodelEntityResolverStrategy
+ * @see MetamodelPropertyResolverStrategy
+ */
+public class MetamodelResolverTest
+		extends AbstractJpaTest {
+	/** The model. */
+	private Model<Object> model;
+
+	/** Initialize the test. */
+	@Override
+	@Before
+	public void init() throws Exception {
+		super.init();
+		final SimpleBuilder<Object> builder = SimpleBuilder.createBuilder();
+		builder.attributePropertyResolver(
+				new MetamodelPropertyResolverStrategy(this.getEmf().getMetamodel(), new DefaultPropertyAttributeResolverStrategy()))
+				.attributeEntityResolver(
+						new MetamodelEntityResolverStrategy(this.getEmf().getMetamodel(), new DefaultEntityAttributeResolverStrategy<Object>()))
+				.resources(new JpaResource<Object>(this.getEmf()));
+		this.model = builder.build();
+	}
+
+	/**
+	 * Test name resolving.
+	 * 
+	 * @see Column
+	 * @see PropertyAttributeResolverStrategy#getName(DescribedProperty)
+	 */
+	@Test
+	public void testColumnname() {
+		final EntityDescriptor<SampleEntity02> descriptor = this.model.getEntity(SampleEntity02.class);
+		Assert.assertNotNull(descriptor.getProperty("testColumn"));
+		Assert.assertNull(descriptor.getProperty("test"));
+	}
+
+	/**
+	 * Test key resolving.
+	 * 
+	 * @see EmbeddedId
+	 * @see Id
+	 * @see PropertyAttributeResolverStrategy#isKey(DescribedProperty)
+	 */
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testKeys() {
+		final KeyedEntityDescriptor<SampleEntity02, SampleKey01> embedded = this.model.getEntity(SampleEntity02.class).adapt(
+				KeyedEntityDescriptor.class);
+		Assert.assertEquals(SampleKey01.class, embedded.getKeyProperty().getPropertyType());
+		final KeyedEntityDescriptor<SampleEntity01, Long> simple = this.model.getEntity(SampleEntity01.class).adapt(
+				KeyedEntityDescriptor.class);
+		Assert.assertEquals(Long.class, simple.getKeyProperty().getPropertyType());
+	}
+
+	/**
+	 * Test name resolving.
+	 * 
+	 * @see Entity
+	 * @see EntityAttributeResolverStrategy#getName(DescribedEntity)
+	 */
+	@Test
+	public void testName() {
+		Assert.assertEquals("sample-entity-01", this.model.getEntity(SampleEntity01.class).getName());
+	}
+
+	/**
+	 * Test properties of unmanaged types are not resolved from the meta model.
+	 * 
+	 * @see PropertyAttributeResolverStrategy#isKey(DescribedProperty)
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	@Test
+	public void testUnmanaged() {
+		final DescribedProperty property = EasyMock.createNiceMock(DescribedProperty.class);
+		EasyMock.expect(property.getEntityType()).andReturn(MetamodelResolverTest.class).anyTimes();
+		final PropertyAttributeResolverStrategy delegate = EasyMock.createNiceMock(PropertyAttributeResolverStrategy.class);
+		EasyMock.expect(delegate.getName(property)).andReturn("identifier").anyTimes();
+		EasyMock.replay(property, delegate);
+		final PropertyAttributeResolverStrategy resolver = new MetamodelPropertyResolverStrategy(this.getEmf().getMetamodel(), delegate);
+		Assert.assertFalse(resolver.isKey(property));
+	}
+}
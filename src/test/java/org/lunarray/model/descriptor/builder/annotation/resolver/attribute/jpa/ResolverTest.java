@@ -21,9 +21,11 @@ import javax.persistence.Column;
 import javax.persistence.EmbeddedId;
 import javax.persistence.Entity;
 import javax.persistence.Id;
+import javax.persistence.OneToOne;
 
 import junit.framework.Assert;
 
+import org.easymock.EasyMock;
 import org.junit.Before;
 import org.junit.Test;
 import org.lunarray.model.descriptor.AbstractJpaTest;
@@ -122,6 +124,21 @@ public class ResolverTest
 		Assert.assertEquals(Long.class, descriptor03.getPropertyType());
 	}
 
+	/**
+	 * Test reference resolving.
+	 * 
+	 * @see OneToOne
+	 * @see PropertyAttributeResolverStrategy#isReference(DescribedProperty)
+	 */
+	@Test
+	public void testReference() {
+		final DescribedProperty<?> property = EasyMock.createNiceMock(DescribedProperty.class);
+		EasyMock.expect(Boolean.valueOf(property.isAnnotationPresent(OneToOne.class))).andReturn(Boolean.TRUE).anyTimes();
+		EasyMock.replay(property);
+		Assert.assertTrue(new JpaAttributePropertyResolverStrategy(new DefaultPropertyAttributeResolverStrategy())
+				.isReference(property));
+	}
+
 	/**
 	 * Test name resolving.
 	 * 
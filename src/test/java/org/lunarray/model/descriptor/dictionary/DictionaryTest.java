@@ -18,13 +18,44 @@
 package org.lunarray.model.descriptor.dictionary;
 
 import java.io.Serializable;
+import java.lang.management.ManagementFactory;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
+import javax.management.JMException;
+import javax.management.ObjectName;
 import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
 import javax.persistence.EntityTransaction;
+import javax.persistence.Persistence;
+import javax.persistence.PersistenceException;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Root;
 
 import junit.framework.Assert;
 
+import org.hibernate.Hibernate;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.jdbc.Work;
+import org.hibernate.stat.Statistics;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.lunarray.model.descriptor.AbstractJpaTest;
@@ -33,11 +64,33 @@ import org.lunarray.model.descriptor.builder.annotation.resolver.attribute.jpa.J
 import org.lunarray.model.descriptor.builder.annotation.resolver.entity.def.DefaultEntityAttributeResolverStrategy;
 import org.lunarray.model.descriptor.builder.annotation.resolver.property.def.DefaultPropertyAttributeResolverStrategy;
 import org.lunarray.model.descriptor.builder.annotation.simple.SimpleBuilder;
+import org.lunarray.model.descriptor.dictionary.async.AsyncDictionary;
+import org.lunarray.model.descriptor.dictionary.async.ExecutorAsyncDictionary;
+import org.lunarray.model.descriptor.dictionary.cache.CacheInvalidationListener;
+import org.lunarray.model.descriptor.dictionary.cache.CachingDictionary;
 import org.lunarray.model.descriptor.dictionary.exceptions.DictionaryException;
+import org.lunarray.model.descriptor.dictionary.manager.CallScopedEntityManagerProvider;
+import org.lunarray.model.descriptor.dictionary.manager.EntityManagerProvider;
+import org.lunarray.model.descriptor.dictionary.manager.PooledEntityManagerProvider;
+import org.lunarray.model.descriptor.dictionary.manager.ReplicaEntityManagerProvider;
+import org.lunarray.model.descriptor.dictionary.manager.ReplicaSelection;
+import org.lunarray.model.descriptor.dictionary.manager.ThreadScopedEntityManagerProvider;
+import org.lunarray.model.descriptor.dictionary.monitor.DictionaryOperation;
+import org.lunarray.model.descriptor.dictionary.monitor.JmxDictionaryMonitor;
+import org.lunarray.model.descriptor.dictionary.monitor.OperationStatistics;
+import org.lunarray.model.descriptor.dictionary.query.QuerySpecification;
+import org.lunarray.model.descriptor.dictionary.totals.CachedTotalsStrategy;
+import org.lunarray.model.descriptor.dictionary.totals.EstimatedTotalsStrategy;
+import org.lunarray.model.descriptor.dictionary.totals.ExactTotalsStrategy;
+import org.lunarray.model.descriptor.dictionary.totals.Totals;
+import org.lunarray.model.descriptor.dictionary.totals.TotalsStrategy;
 import org.lunarray.model.descriptor.model.Model;
 import org.lunarray.model.descriptor.model.SampleEntity01;
+import org.lunarray.model.descriptor.model.SampleEntity02;
+import org.lunarray.model.descriptor.model.SampleKey01;
 import org.lunarray.model.descriptor.model.entity.EntityDescriptor;
 import org.lunarray.model.descriptor.model.entity.KeyedEntityDescriptor;
+import org.lunarray.model.descriptor.model.property.PropertyDescriptor;
 import org.lunarray.model.descriptor.resource.Resource;
 import org.lunarray.model.descriptor.resource.jparesource.JpaResource;
 
@@ -52,6 +105,8 @@ public class DictionaryTest
 
 	/** The descriptor. */
 	private KeyedEntityDescriptor<SampleEntity01, Long> descriptor;
+	/** The embedded key descriptor. */
+	private KeyedEntityDescriptor<SampleEntity02, SampleKey01> embeddedDescriptor;
 	/** The JPA dictionary. */
 	private DictionaryJpaImpl dictionary;
 	/** The model. */
@@ -73,6 +128,7 @@ public class DictionaryTest
 				.resources(this.resource);
 		this.model = builder.build();
 		this.descriptor = this.model.getEntity(SampleEntity01.class).adapt(KeyedEntityDescriptor.class);
+		this.embeddedDescriptor = this.model.getEntity(SampleEntity02.class).adapt(KeyedEntityDescriptor.class);
 		final EntityManager em = this.getEmf().createEntityManager();
 		final EntityTransaction et = em.getTransaction();
 		et.begin();
@@ -84,6 +140,53 @@ public class DictionaryTest
 		et.commit();
 	}
 
+	/** Close the dictionary. */
+	@After
+	public void destroy() {
+		this.dictionary.close();
+	}
+
+	/**
+	 * Persist, merge and remove in batches, sent as JDBC batches. The schema
+	 * of the batching factory is left as is, to keep the inserted elements.
+	 * 
+	 * @see BatchWriter
+	 */
+	@Test
+	public void testBatchWriter() throws DictionaryException {
+		final Map<String, Object> properties = new HashMap<String, Object>(BatchWriter.createBatchingProperties(100));
+		properties.put("hibernate.hbm2ddl.auto", "none");
+		final EntityManagerFactory batching = Persistence.createEntityManagerFactory("default-unit", properties);
+		try {
+			final BatchWriter writer = new BatchWriter(batching);
+			writer.setBatchSize(100);
+			final List<SampleEntity01> entities = new ArrayList<SampleEntity01>();
+			for (int i = 0; i < 1000; i++) {
+				final SampleEntity01 entity = new SampleEntity01();
+				entity.setSample(new StringBuilder("batched-instance-").append(i).toString());
+				entities.add(entity);
+			}
+			final Statistics statistics = batching.unwrap(SessionFactory.class).getStatistics();
+			statistics.clear();
+			Assert.assertEquals(1000, writer.persist(this.descriptor, entities));
+			Assert.assertEquals(1000, statistics.getEntityInsertCount());
+			Assert.assertTrue(statistics.getFlushCount() >= 10);
+			Assert.assertTrue(statistics.getPrepareStatementCount() < 100);
+			Assert.assertEquals(1500, this.dictionary.lookupTotals(this.descriptor));
+			for (final SampleEntity01 entity : entities) {
+				entity.setSample(entity.getSample().replace("batched", "merged"));
+			}
+			Assert.assertEquals(1000, writer.merge(this.descriptor, entities));
+			Assert.assertEquals(1000, statistics.getEntityUpdateCount());
+			Assert.assertEquals("merged-instance-7", this.dictionary.lookup(this.descriptor, entities.get(7).getIdentifier())
+					.getSample());
+			Assert.assertEquals(250, writer.remove(this.descriptor, entities.subList(0, 250)));
+			Assert.assertEquals(1250, this.dictionary.lookupTotals(this.descriptor));
+		} finally {
+			batching.close();
+		}
+	}
+
 	/**
 	 * Test finding all elements.
 	 * 
@@ -94,6 +197,111 @@ public class DictionaryTest
 		Assert.assertEquals(500, this.dictionary.lookupTotals(this.descriptor));
 	}
 
+	/**
+	 * Walk all elements by key, in pages of 60.
+	 * 
+	 * @see KeysetPaginatedDictionary#lookupAfter(KeyedEntityDescriptor,
+	 *      Serializable, int)
+	 */
+	@Test
+	public void testFindAfter() throws DictionaryException {
+		Long last = null;
+		int total = 0;
+		List<SampleEntity01> entities = this.dictionary.lookupAfter(this.descriptor, last, 60);
+		while (!entities.isEmpty()) {
+			for (final SampleEntity01 entity : entities) {
+				if (last != null) {
+					Assert.assertTrue(entity.getIdentifier().longValue() > last.longValue());
+				}
+				last = entity.getIdentifier();
+			}
+			total += entities.size();
+			entities = this.dictionary.lookupAfter(this.descriptor, last, 60);
+		}
+		Assert.assertEquals(500, total);
+	}
+
+	/**
+	 * Find 3 elements after an embedded key.
+	 * 
+	 * @see KeysetPaginatedDictionary#lookupAfter(KeyedEntityDescriptor,
+	 *      Serializable, int)
+	 */
+	@Test
+	public void testFindAfterEmbedded() throws DictionaryException {
+		this.insertEmbedded(12);
+		final List<SampleEntity02> entities = this.dictionary.lookupAfter(this.embeddedDescriptor, this.createKey(1, 1), 3);
+		Assert.assertEquals(3, entities.size());
+		Assert.assertEquals(this.createKey(1, 2), entities.get(0).getKey());
+		Assert.assertEquals(this.createKey(1, 3), entities.get(1).getKey());
+		Assert.assertEquals(this.createKey(2, 0), entities.get(2).getKey());
+	}
+
+	/**
+	 * Count using cached and estimated totals.
+	 * 
+	 * @see DictionaryJpaImpl#lookupCount(EntityDescriptor)
+	 */
+	@Test
+	public void testCountStrategies() throws DictionaryException {
+		final CachedTotalsStrategy cached = new CachedTotalsStrategy(new ExactTotalsStrategy(this.dictionary.getQueryCache()), 1,
+				TimeUnit.HOURS);
+		this.dictionary.setTotalsStrategy(this.descriptor, cached);
+		Totals totals = this.dictionary.lookupCount(this.descriptor);
+		Assert.assertEquals(500, totals.getCount());
+		Assert.assertTrue(totals.isExact());
+		totals = this.dictionary.lookupCount(this.descriptor);
+		Assert.assertEquals(500, totals.getCount());
+		Assert.assertFalse(totals.isExact());
+		cached.invalidate(SampleEntity01.class);
+		Assert.assertTrue(this.dictionary.lookupCount(this.descriptor).isExact());
+		this.dictionary.setTotalsStrategy(this.descriptor, new EstimatedTotalsStrategy(EstimatedTotalsStrategy.H2,
+				new TotalsStrategy() {
+					/** {@inheritDoc} */
+					@Override
+					public <E> Totals lookupTotals(final EntityDescriptor<E> entityDescriptor, final EntityManager manager) {
+						Assert.fail("The estimate was not used.");
+						return null;
+					}
+
+					/** {@inheritDoc} */
+					@Override
+					public <E> Totals lookupTotals(final EntityDescriptor<E> entityDescriptor,
+							final QuerySpecification<E> specification, final CriteriaFactory<Long> countFactory,
+							final EntityManager manager) {
+						Assert.fail("The estimate was not used.");
+						return null;
+					}
+				}));
+		totals = this.dictionary.lookupCount(this.descriptor);
+		Assert.assertFalse(totals.isExact());
+		Assert.assertTrue(totals.getCount() >= 0);
+	}
+
+	/**
+	 * Count specifications using the totals strategy.
+	 * 
+	 * @see DictionaryJpaImpl#lookupCount(EntityDescriptor, QuerySpecification)
+	 */
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testCountSpecificationStrategies() throws DictionaryException {
+		final PropertyDescriptor<String, SampleEntity01> sample = (PropertyDescriptor<String, SampleEntity01>) this.descriptor
+				.getProperty("sample");
+		final CachedTotalsStrategy cached = new CachedTotalsStrategy(new ExactTotalsStrategy(this.dictionary.getQueryCache()), 1,
+				TimeUnit.HOURS);
+		this.dictionary.setTotalsStrategy(this.descriptor, cached);
+		Assert.assertTrue(this.dictionary.lookupCount(this.descriptor).isExact());
+		Totals totals = this.dictionary.lookupCount(this.descriptor, new QuerySpecification<SampleEntity01>().ascending(sample));
+		Assert.assertEquals(500, totals.getCount());
+		Assert.assertFalse(totals.isExact());
+		this.dictionary.setTotalsStrategy(this.descriptor, new EstimatedTotalsStrategy(EstimatedTotalsStrategy.H2, cached));
+		totals = this.dictionary.lookupCount(this.descriptor,
+				new QuerySpecification<SampleEntity01>().startsWith(sample, "entity-instance-1"));
+		Assert.assertEquals(111, totals.getCount());
+		Assert.assertTrue(totals.isExact());
+	}
+
 	/**
 	 * Fetch all elements.
 	 * 
@@ -104,6 +312,190 @@ public class DictionaryTest
 		Assert.assertEquals(500, this.dictionary.lookup(this.descriptor).size());
 	}
 
+	/**
+	 * Index all keys, check and enumerate them, then refresh after an insert.
+	 * 
+	 * @see DictionaryJpaImpl#lookupKeyIndex(KeyedEntityDescriptor)
+	 * @see DictionaryJpaImpl#refreshKeyIndex(KeyedEntityDescriptor, KeyIndex)
+	 */
+	@Test
+	public void testKeyIndex() throws DictionaryException {
+		final KeyIndex index = this.dictionary.lookupKeyIndex(this.descriptor);
+		Assert.assertEquals(500, index.size());
+		final long[] keys = index.toArray();
+		final long first = keys[0];
+		Assert.assertTrue(index.exists(first));
+		Assert.assertTrue(index.existsAll(keys[1], keys[250], keys[499]));
+		Assert.assertFalse(index.exists(index.getLast() + 1));
+		Assert.assertFalse(index.existsAll(first, index.getLast() + 1));
+		Assert.assertEquals(10, index.range(keys[10], keys[20]).length);
+		Assert.assertEquals(keys[10], index.range(keys[10], keys[20])[0]);
+		Assert.assertEquals(0, index.range(keys[20], keys[10]).length);
+		final KeyIndex removed = index.without(first, first, keys[3]);
+		Assert.assertEquals(498, removed.size());
+		Assert.assertFalse(removed.exists(keys[3]));
+		Assert.assertEquals(500, removed.with(keys[3], first).size());
+		final EntityManager em = this.getEmf().createEntityManager();
+		final EntityTransaction et = em.getTransaction();
+		et.begin();
+		final SampleEntity01 entity = new SampleEntity01();
+		entity.setSample("indexed-instance");
+		em.persist(entity);
+		et.commit();
+		em.close();
+		final KeyIndex refreshed = this.dictionary.refreshKeyIndex(this.descriptor, index);
+		Assert.assertEquals(501, refreshed.size());
+		Assert.assertTrue(refreshed.exists(entity.getIdentifier().longValue()));
+		Assert.assertSame(refreshed, this.dictionary.refreshKeyIndex(this.descriptor, refreshed));
+	}
+
+	/**
+	 * A cached entity is invalidated once it is updated.
+	 * 
+	 * @see CacheInvalidationListener
+	 */
+	@Test
+	public void testCacheInvalidation() throws DictionaryException {
+		final CachingDictionary cache = new CachingDictionary(this.dictionary, this.getEmf().getPersistenceUnitUtil(), 10, 1,
+				TimeUnit.HOURS);
+		CacheInvalidationListener.register(cache);
+		try {
+			final Long key = Long.valueOf(50l);
+			Assert.assertEquals("entity-instance-0", cache.lookup(this.descriptor, key).getSample());
+			Assert.assertEquals("entity-instance-0", cache.lookup(this.descriptor, key).getSample());
+			Assert.assertEquals(1, cache.getHits());
+			final EntityManager em = this.getEmf().createEntityManager();
+			final EntityTransaction et = em.getTransaction();
+			et.begin();
+			em.find(SampleEntity01.class, key).setSample("entity-instance-updated");
+			et.commit();
+			em.close();
+			Assert.assertEquals(0, cache.getSize());
+			Assert.assertEquals("entity-instance-updated", cache.lookup(this.descriptor, key).getSample());
+			Assert.assertEquals(2, cache.getMisses());
+		} finally {
+			CacheInvalidationListener.unregister(cache);
+		}
+	}
+
+	/**
+	 * Iterate all elements in chunks of 50, the persistence context only holds
+	 * the current chunk.
+	 * 
+	 * @see DictionaryJpaImpl#lookupIterator(EntityDescriptor, int)
+	 */
+	@Test
+	public void testIterate() throws DictionaryException {
+		final EntityManager manager = this.getEmf().createEntityManager();
+		final DictionaryJpaImpl managedDictionary = new DictionaryJpaImpl(manager);
+		final CloseableIterator<SampleEntity01> iterator = managedDictionary.lookupIterator(this.descriptor, 50);
+		final SampleEntity01 first = iterator.next();
+		Assert.assertTrue(manager.contains(first));
+		int total = 1;
+		while (iterator.hasNext()) {
+			final SampleEntity01 entity = iterator.next();
+			Assert.assertTrue(manager.contains(entity));
+			total++;
+			if (total == 51) {
+				Assert.assertFalse(manager.contains(first));
+			}
+		}
+		iterator.close();
+		Assert.assertEquals(500, total);
+		Assert.assertFalse(manager.contains(first));
+		manager.close();
+	}
+
+	/**
+	 * An open iterator does not block other users of a shared entity manager.
+	 * 
+	 * @see DictionaryJpaImpl#lookupIterator(EntityDescriptor, int)
+	 */
+	@Test
+	public void testIterateShared() throws Exception {
+		final EntityManager manager = this.getEmf().createEntityManager();
+		final DictionaryJpaImpl managedDictionary = new DictionaryJpaImpl(manager);
+		final CloseableIterator<SampleEntity01> iterator = managedDictionary.lookupIterator(this.descriptor, 50);
+		Assert.assertNotNull(iterator.next());
+		final ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			final Future<Integer> totals = executor.submit(new Callable<Integer>() {
+				/** {@inheritDoc} */
+				@Override
+				public Integer call() throws DictionaryException {
+					return Integer.valueOf(managedDictionary.lookupTotals(DictionaryTest.this.descriptor));
+				}
+			});
+			Assert.assertEquals(500, totals.get(10, TimeUnit.SECONDS).intValue());
+		} finally {
+			executor.shutdownNow();
+		}
+		iterator.close();
+		manager.close();
+	}
+
+	/**
+	 * Multiple elements, in key order, using batches of 2 keys.
+	 * 
+	 * @see DictionaryJpaImpl#lookupAll(KeyedEntityDescriptor, List)
+	 */
+	@Test
+	public void testFindMany() throws DictionaryException {
+		this.dictionary.setKeyBatchSize(2);
+		final List<SampleEntity01> entities = this.dictionary.lookupAll(this.descriptor,
+				Arrays.asList(Long.valueOf(60l), Long.valueOf(50l), Long.valueOf(-1l), Long.valueOf(55l), Long.valueOf(50l)));
+		Assert.assertEquals(5, entities.size());
+		Assert.assertEquals("entity-instance-10", entities.get(0).getSample());
+		Assert.assertEquals("entity-instance-0", entities.get(1).getSample());
+		Assert.assertNull(entities.get(2));
+		Assert.assertEquals("entity-instance-5", entities.get(3).getSample());
+		Assert.assertEquals("entity-instance-0", entities.get(4).getSample());
+	}
+
+	/**
+	 * Multiple elements with an embedded key.
+	 * 
+	 * @see DictionaryJpaImpl#lookupAll(KeyedEntityDescriptor, List)
+	 */
+	@Test
+	public void testFindManyEmbedded() throws DictionaryException {
+		this.insertEmbedded(12);
+		final List<SampleEntity02> entities = this.dictionary.lookupAll(this.embeddedDescriptor,
+				Arrays.asList(this.createKey(2, 1), this.createKey(0, 3), this.createKey(7, 7)));
+		Assert.assertEquals(3, entities.size());
+		Assert.assertEquals("embedded-instance-9", entities.get(0).getTest());
+		Assert.assertEquals("embedded-instance-3", entities.get(1).getTest());
+		Assert.assertNull(entities.get(2));
+	}
+
+	/**
+	 * All elements in parallel key ranges, for integral and embedded keys.
+	 * 
+	 * @see DictionaryJpaImpl#lookupPartitioned(KeyedEntityDescriptor, int, int, EntityConsumer)
+	 */
+	@Test
+	public void testFindPartitioned() throws DictionaryException {
+		final Set<Long> identifiers = Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
+		Assert.assertEquals(500, this.dictionary.lookupPartitioned(this.descriptor, 4, 20, new EntityConsumer<SampleEntity01>() {
+			/** {@inheritDoc} */
+			@Override
+			public void consume(final SampleEntity01 entity) {
+				Assert.assertTrue(identifiers.add(entity.getIdentifier()));
+			}
+		}));
+		Assert.assertEquals(500, identifiers.size());
+		this.insertEmbedded(50);
+		final Set<String> tests = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+		Assert.assertEquals(50, this.dictionary.lookupPartitioned(this.embeddedDescriptor, 3, 4, new EntityConsumer<SampleEntity02>() {
+			/** {@inheritDoc} */
+			@Override
+			public void consume(final SampleEntity02 entity) {
+				Assert.assertTrue(tests.add(entity.getTest()));
+			}
+		}));
+		Assert.assertEquals(50, tests.size());
+	}
+
 	/**
 	 * A single element.
 	 * 
@@ -117,6 +509,431 @@ public class DictionaryTest
 		Assert.assertEquals(50l, entity.getIdentifier().longValue());
 	}
 
+	/**
+	 * Lookups through pooled and thread scoped entity managers.
+	 * 
+	 * @see EntityManagerProvider
+	 */
+	@Test
+	public void testScopes() throws DictionaryException {
+		final DictionaryJpaImpl pooled = new DictionaryJpaImpl(new PooledEntityManagerProvider(this.getEmf(), 2, 1, TimeUnit.SECONDS));
+		Assert.assertEquals(500, pooled.lookupTotals(this.descriptor));
+		Assert.assertEquals("entity-instance-0", pooled.lookup(this.descriptor, Long.valueOf(50l)).getSample());
+		pooled.close();
+		final ThreadScopedEntityManagerProvider threadProvider = new ThreadScopedEntityManagerProvider(this.getEmf(), 2);
+		final DictionaryJpaImpl threadScoped = new DictionaryJpaImpl(threadProvider);
+		Assert.assertEquals(500, threadScoped.lookupTotals(this.descriptor));
+		Assert.assertEquals(500, threadScoped.lookup(this.descriptor).size());
+		Assert.assertEquals(500, threadScoped.lookupTotals(this.descriptor));
+		threadProvider.closeCurrent();
+		Assert.assertEquals(500, threadScoped.lookupTotals(this.descriptor));
+		threadScoped.close();
+	}
+
+	/**
+	 * Closing a thread scoped provider closes the entity managers of other
+	 * threads.
+	 * 
+	 * @see ThreadScopedEntityManagerProvider#close()
+	 */
+	@Test
+	public void testScopesClosed() throws Exception {
+		final ThreadScopedEntityManagerProvider threadProvider = new ThreadScopedEntityManagerProvider(this.getEmf(), 2);
+		final ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			final EntityManager manager = executor.submit(new Callable<EntityManager>() {
+				/** {@inheritDoc} */
+				@Override
+				public EntityManager call() {
+					final EntityManager acquired = threadProvider.acquire();
+					threadProvider.release(acquired);
+					return acquired;
+				}
+			}).get();
+			Assert.assertTrue(manager.isOpen());
+			threadProvider.close();
+			Assert.assertFalse(manager.isOpen());
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Lookups through the asynchronous dictionary.
+	 * 
+	 * @see AsyncDictionary
+	 */
+	@Test
+	public void testAsync() throws Exception {
+		final AsyncDictionary async = new ExecutorAsyncDictionary(this.dictionary);
+		try {
+			final Future<Integer> totals = async.lookupTotals(this.descriptor);
+			final Future<SampleEntity01> entity = async.lookup(this.descriptor, Long.valueOf(50l));
+			final Future<List<SampleEntity01>> page = async.lookupPaginated(this.descriptor, 50, 50);
+			Assert.assertEquals(500, totals.get().intValue());
+			Assert.assertEquals("entity-instance-0", entity.get().getSample());
+			Assert.assertEquals(50, page.get().size());
+		} finally {
+			async.close();
+		}
+	}
+
+	/**
+	 * Find 50 elements starting with number 50, counting concurrently.
+	 * 
+	 * @see DictionaryJpaImpl#lookupPage(EntityDescriptor, int, int)
+	 */
+	@Test
+	public void testFindPage() throws DictionaryException {
+		final ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			this.dictionary.setExecutor(executor);
+			final Page<SampleEntity01> page = this.dictionary.lookupPage(this.descriptor, 50, 50);
+			Assert.assertEquals(50, page.getEntities().size());
+			Assert.assertEquals("entity-instance-50", page.getEntities().get(0).getSample());
+			Assert.assertEquals(500, page.getTotals().getCount());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Count concurrently without an executor being set.
+	 * 
+	 * @see DictionaryJpaImpl#lookupPage(EntityDescriptor, int, int)
+	 */
+	@Test
+	public void testFindPageConcurrent() throws DictionaryException {
+		final EntityManagerProvider delegate = new CallScopedEntityManagerProvider(this.getEmf());
+		final Set<EntityManager> managers = Collections.newSetFromMap(new ConcurrentHashMap<EntityManager, Boolean>());
+		final Set<Thread> threads = Collections.newSetFromMap(new ConcurrentHashMap<Thread, Boolean>());
+		final DictionaryJpaImpl local = new DictionaryJpaImpl(new EntityManagerProvider() {
+			/** {@inheritDoc} */
+			@Override
+			public EntityManager acquire() {
+				final EntityManager manager = delegate.acquire();
+				managers.add(manager);
+				threads.add(Thread.currentThread());
+				return manager;
+			}
+
+			/** {@inheritDoc} */
+			@Override
+			public void close() {
+				delegate.close();
+			}
+
+			/** {@inheritDoc} */
+			@Override
+			public void fail(final EntityManager manager, final RuntimeException cause) {
+				delegate.fail(manager, cause);
+			}
+
+			/** {@inheritDoc} */
+			@Override
+			public boolean isShared() {
+				return delegate.isShared();
+			}
+
+			/** {@inheritDoc} */
+			@Override
+			public void release(final EntityManager manager) {
+				delegate.release(manager);
+			}
+		});
+		try {
+			final Page<SampleEntity01> page = local.lookupPage(this.descriptor, 50, 50);
+			Assert.assertEquals(50, page.getEntities().size());
+			Assert.assertEquals(500, page.getTotals().getCount());
+			Assert.assertEquals(2, managers.size());
+			Assert.assertEquals(2, threads.size());
+		} finally {
+			local.close();
+		}
+	}
+
+	/**
+	 * Fetch references along with the elements, in a single query.
+	 * 
+	 * @see DictionaryJpaImpl#setFetchPlan(EntityDescriptor, FetchPlan)
+	 */
+	@Test
+	public void testFetchPlan() throws DictionaryException {
+		this.insertEmbedded(8);
+		this.linkEmbedded();
+		final DictionaryJpaImpl local = new DictionaryJpaImpl(this.getEmf());
+		final Statistics statistics = this.getEmf().unwrap(SessionFactory.class).getStatistics();
+		statistics.clear();
+		Assert.assertEquals(8, local.lookup(this.embeddedDescriptor).size());
+		Assert.assertEquals(9, statistics.getPrepareStatementCount());
+		local.setFetchPlan(this.embeddedDescriptor, FetchPlan.derived());
+		statistics.clear();
+		final Collection<SampleEntity02> entities = local.lookup(this.embeddedDescriptor);
+		Assert.assertEquals(8, entities.size());
+		Assert.assertEquals(1, statistics.getPrepareStatementCount());
+		for (final SampleEntity02 entity : entities) {
+			Assert.assertNotNull(entity.getEntity().getSample());
+		}
+		local.setFetchPlan(this.embeddedDescriptor, FetchPlan.of("entity").asFetchGraph());
+		statistics.clear();
+		Assert.assertEquals(4, local.lookupPaginated(this.embeddedDescriptor, 2, 4).size());
+		Assert.assertEquals(1, statistics.getPrepareStatementCount());
+		local.close();
+	}
+
+	/**
+	 * Read through a read only profile, then detach.
+	 * 
+	 * @see DictionaryJpaImpl#setReadProfile(EntityDescriptor, ReadProfile)
+	 */
+	@Test
+	public void testReadProfile() throws DictionaryException {
+		final EntityManager manager = this.getEmf().createEntityManager();
+		final DictionaryJpaImpl local = new DictionaryJpaImpl(manager);
+		local.setReadProfile(this.descriptor, ReadProfile.hibernate(50));
+		final List<SampleEntity01> entities = local.lookupPaginated(this.descriptor, 50, 50);
+		Assert.assertEquals(50, entities.size());
+		Assert.assertTrue(manager.contains(entities.get(0)));
+		Assert.assertTrue(manager.unwrap(Session.class).isReadOnly(entities.get(0)));
+		local.setReadProfile(this.descriptor, ReadProfile.hibernate(50).detached());
+		final SampleEntity01 entity = local.lookupPaginated(this.descriptor, 150, 1).get(0);
+		Assert.assertFalse(manager.contains(entity));
+		Assert.assertFalse(manager.contains(local.lookup(this.descriptor, entity.getIdentifier())));
+		local.close();
+		manager.close();
+	}
+
+	/**
+	 * Record operations and entity managers, exposed through JMX.
+	 * 
+	 * @see DictionaryJpaImpl#setMonitor(org.lunarray.model.descriptor.dictionary.monitor.DictionaryMonitor)
+	 */
+	@Test
+	public void testMonitor() throws DictionaryException, JMException {
+		final JmxDictionaryMonitor monitor = new JmxDictionaryMonitor();
+		final DictionaryJpaImpl local = new DictionaryJpaImpl(this.getEmf());
+		local.setMonitor(monitor);
+		Assert.assertEquals(20, local.lookupPaginated(this.descriptor, 20, 20).size());
+		Assert.assertEquals(10, local.lookupPaginated(this.descriptor, 40, 10).size());
+		Assert.assertEquals(500, local.lookup(this.descriptor).size());
+		final OperationStatistics paginated = monitor.getStatistics(SampleEntity01.class, DictionaryOperation.LOOKUP_PAGINATED);
+		Assert.assertEquals(2, paginated.getCalls());
+		Assert.assertEquals(0, paginated.getErrors());
+		Assert.assertEquals(30, paginated.getRows());
+		Assert.assertEquals(2, paginated.getLatencies().getCount());
+		Assert.assertEquals(500, monitor.getStatistics(SampleEntity01.class, DictionaryOperation.LOOKUP).getRows());
+		Assert.assertNull(monitor.getStatistics(SampleEntity01.class, DictionaryOperation.LOOKUP_KEY));
+		Assert.assertEquals(3, monitor.getEntityManagersOpened());
+		Assert.assertEquals(3, monitor.getEntityManagersClosed());
+		final ObjectName name = monitor.register("test");
+		try {
+			Assert.assertEquals(Long.valueOf(3), ManagementFactory.getPlatformMBeanServer().getAttribute(name, "EntityManagersOpened"));
+		} finally {
+			monitor.unregister();
+		}
+		Assert.assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+		local.close();
+	}
+
+	/**
+	 * Read from an empty replica, fall back to the primary once it fails and
+	 * read from the primary after a batch write. The replica reports its entity
+	 * managers to the monitor.
+	 * 
+	 * @see ReplicaEntityManagerProvider
+	 */
+	@Test
+	public void testReplica() throws DictionaryException {
+		final EntityManagerFactory replica = Persistence.createEntityManagerFactory("replica-unit");
+		final ReplicaEntityManagerProvider provider = new ReplicaEntityManagerProvider(this.getEmf(), Arrays.asList(replica),
+				ReplicaSelection.LEAST_OUTSTANDING);
+		final DictionaryJpaImpl local = new DictionaryJpaImpl(provider);
+		final JmxDictionaryMonitor monitor = new JmxDictionaryMonitor();
+		local.setMonitor(monitor);
+		Assert.assertEquals(0, local.lookupTotals(this.descriptor));
+		Assert.assertEquals(1, monitor.getEntityManagersOpened());
+		Assert.assertEquals(1, monitor.getEntityManagersClosed());
+		Assert.assertEquals(1, provider.check());
+		provider.setPinWindow(1, TimeUnit.MINUTES);
+		Assert.assertFalse(provider.isPinned());
+		final BatchWriter writer = new BatchWriter(provider);
+		Assert.assertEquals(1, writer.merge(this.descriptor, this.dictionary.lookupPaginated(this.descriptor, 0, 1)));
+		Assert.assertTrue(provider.isPinned());
+		Assert.assertEquals(500, local.lookupTotals(this.descriptor));
+		replica.close();
+		Assert.assertFalse(provider.isEjected(replica));
+		Assert.assertEquals(0, provider.check());
+		Assert.assertTrue(provider.isEjected(replica));
+		Assert.assertEquals(500, local.lookupTotals(this.descriptor));
+		Assert.assertEquals(0, provider.getOutstanding(this.getEmf()));
+		local.close();
+	}
+
+	/**
+	 * A replica that goes down is ejected by the first query failing on it,
+	 * without a check.
+	 * 
+	 * @see ReplicaEntityManagerProvider#fail(EntityManager, RuntimeException)
+	 */
+	@Test
+	public void testReplicaFailover() throws DictionaryException {
+		final EntityManagerFactory replica = Persistence.createEntityManagerFactory("replica-unit");
+		final ReplicaEntityManagerProvider provider = new ReplicaEntityManagerProvider(this.getEmf(), Arrays.asList(replica),
+				ReplicaSelection.ROUND_ROBIN);
+		final DictionaryJpaImpl local = new DictionaryJpaImpl(provider);
+		Assert.assertEquals(0, local.lookupTotals(this.descriptor));
+		final EntityManager manager = replica.createEntityManager();
+		manager.unwrap(Session.class).doWork(new Work() {
+			/** {@inheritDoc} */
+			@Override
+			public void execute(final Connection connection) throws SQLException {
+				final Statement statement = connection.createStatement();
+				try {
+					statement.execute("SHUTDOWN");
+				} finally {
+					statement.close();
+				}
+			}
+		});
+		manager.close();
+		Assert.assertFalse(provider.isEjected(replica));
+		try {
+			local.lookupTotals(this.descriptor);
+			Assert.fail("The replica is down.");
+		} catch (final PersistenceException e) {
+			Assert.assertTrue(provider.isEjected(replica));
+		}
+		Assert.assertEquals(500, local.lookupTotals(this.descriptor));
+		Assert.assertEquals(0, provider.getOutstanding(replica));
+		local.close();
+		replica.close();
+	}
+
+	/**
+	 * Filter and order in the database.
+	 * 
+	 * @see DictionaryJpaImpl#lookupPaginated(EntityDescriptor, QuerySpecification, int, int)
+	 */
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testSpecification() throws DictionaryException {
+		final PropertyDescriptor<Long, SampleEntity01> identifier = this.descriptor.getKeyProperty();
+		final PropertyDescriptor<String, SampleEntity01> sample = (PropertyDescriptor<String, SampleEntity01>) this.descriptor
+				.getProperty("sample");
+		final QuerySpecification<SampleEntity01> prefix = new QuerySpecification<SampleEntity01>().startsWith(sample,
+				"entity-instance-1").descending(sample);
+		Assert.assertEquals(111, this.dictionary.lookupTotals(this.descriptor, prefix));
+		final List<SampleEntity01> page = this.dictionary.lookupPaginated(this.descriptor, prefix, 1, 2);
+		Assert.assertEquals("entity-instance-198", page.get(0).getSample());
+		Assert.assertEquals("entity-instance-197", page.get(1).getSample());
+		final List<SampleEntity01> ordered = this.dictionary.lookup(this.descriptor,
+				new QuerySpecification<SampleEntity01>().ascending(identifier));
+		Assert.assertEquals(500, ordered.size());
+		final QuerySpecification<SampleEntity01> range = new QuerySpecification<SampleEntity01>().between(identifier,
+				ordered.get(10).getIdentifier(), ordered.get(19).getIdentifier());
+		Assert.assertEquals(10, this.dictionary.lookup(this.descriptor, range).size());
+		final QuerySpecification<SampleEntity01> in = new QuerySpecification<SampleEntity01>().in(sample,
+				Arrays.asList("entity-instance-3", "entity-instance-7", "missing")).equal(sample, "entity-instance-7");
+		Assert.assertEquals(1, this.dictionary.lookupTotals(this.descriptor, in));
+	}
+
+	/**
+	 * A reference is only read once accessed.
+	 * 
+	 * @see DictionaryJpaImpl#lookupReference(KeyedEntityDescriptor, Serializable)
+	 */
+	@Test
+	public void testFindReference() throws DictionaryException {
+		final Long identifier = this.dictionary.lookupPaginated(this.descriptor, 10, 1).get(0).getIdentifier();
+		final EntityManager manager = this.getEmf().createEntityManager();
+		final DictionaryJpaImpl local = new DictionaryJpaImpl(manager);
+		final Statistics statistics = this.getEmf().unwrap(SessionFactory.class).getStatistics();
+		statistics.clear();
+		final SampleEntity01 reference = local.lookupReference(this.descriptor, identifier);
+		Assert.assertEquals(0, statistics.getPrepareStatementCount());
+		Assert.assertFalse(Persistence.getPersistenceUtil().isLoaded(reference));
+		Hibernate.initialize(reference);
+		Assert.assertTrue(Persistence.getPersistenceUtil().isLoaded(reference));
+		Assert.assertEquals(1, statistics.getPrepareStatementCount());
+		local.close();
+		manager.close();
+	}
+
+	/**
+	 * Without a shared entity manager, the entity is read instead.
+	 * 
+	 * @see DictionaryJpaImpl#lookupReference(KeyedEntityDescriptor, Serializable)
+	 */
+	@Test
+	public void testFindReferenceCallScoped() throws DictionaryException {
+		final SampleEntity01 reference = this.dictionary.lookupReference(this.descriptor, Long.valueOf(50l));
+		Assert.assertTrue(Persistence.getPersistenceUtil().isLoaded(reference));
+		Assert.assertEquals("entity-instance-0", reference.getSample());
+		Assert.assertNull(this.dictionary.lookupReference(this.descriptor, Long.valueOf(-1l)));
+	}
+
+	/**
+	 * Find 4 projections starting with number 4.
+	 * 
+	 * @see DictionaryJpaImpl#lookupProjection(EntityDescriptor, int, int)
+	 */
+	@Test
+	public void testFindProjection() throws DictionaryException {
+		this.insertEmbedded(12);
+		final List<Map<String, Object>> rows = this.dictionary.lookupProjection(this.embeddedDescriptor, 4, 4);
+		Assert.assertEquals(4, rows.size());
+		final Map<String, Object> row = rows.get(0);
+		Assert.assertEquals(this.createKey(1, 0), row.get("key"));
+		Assert.assertEquals("embedded-instance-4", row.get("testColumn"));
+		Assert.assertFalse(row.containsKey("entity"));
+	}
+
+	/**
+	 * Repeated lookups hit the query cache.
+	 * 
+	 * @see QueryCache
+	 */
+	@Test
+	public void testQueryCache() throws DictionaryException {
+		final QueryCache cache = this.dictionary.getQueryCache();
+		Assert.assertEquals(500, this.dictionary.lookupTotals(this.descriptor));
+		Assert.assertEquals(1, cache.getMisses());
+		Assert.assertEquals(0, cache.getHits());
+		Assert.assertEquals(500, this.dictionary.lookupTotals(this.descriptor));
+		Assert.assertEquals(50, this.dictionary.lookupPaginated(this.descriptor, 100, 50).size());
+		Assert.assertEquals(50, this.dictionary.lookupPaginated(this.descriptor, 50, 50).size());
+		Assert.assertEquals(2, cache.getMisses());
+		Assert.assertEquals(2, cache.getHits());
+	}
+
+	/**
+	 * Queries are registered with every factory they are used on.
+	 * 
+	 * @see QueryCache
+	 */
+	@Test
+	public void testQueryCacheFactories() {
+		final EntityManagerFactory replica = Persistence.createEntityManagerFactory("replica-unit");
+		final QueryCache cache = new QueryCache();
+		final CriteriaFactory<Long> count = new CriteriaFactory<Long>() {
+			/** {@inheritDoc} */
+			@Override
+			public CriteriaQuery<Long> create(final CriteriaBuilder builder) {
+				final CriteriaQuery<Long> query = builder.createQuery(Long.class);
+				query.select(builder.count(query.from(SampleEntity01.class)));
+				return query;
+			}
+		};
+		for (final EntityManagerFactory factory : Arrays.asList(this.getEmf(), replica, this.getEmf(), replica)) {
+			final EntityManager manager = factory.createEntityManager();
+			cache.getQuery(manager, SampleEntity01.class, "count", Long.class, count).getSingleResult();
+			manager.close();
+		}
+		Assert.assertEquals(2, cache.getMisses());
+		Assert.assertEquals(2, cache.getHits());
+		replica.close();
+	}
+
 	/**
 	 * Find 50 elements, starting with number 50.
 	 * 
@@ -128,4 +945,62 @@ public class DictionaryTest
 		Assert.assertEquals(50, entities.size());
 		Assert.assertEquals("entity-instance-50", entities.iterator().next().getSample());
 	}
+
+	/**
+	 * Creates an embedded key.
+	 * 
+	 * @param identifier
+	 *            The identifier.
+	 * @param sample
+	 *            The sample index.
+	 * @return The key.
+	 */
+	private SampleKey01 createKey(final long identifier, final int sample) {
+		final SampleKey01 key = new SampleKey01();
+		key.setIdentifier(Long.valueOf(identifier));
+		key.setSample(new StringBuilder("sample-").append(sample).toString());
+		return key;
+	}
+
+	/**
+	 * Links each element with an embedded key to a distinct element.
+	 */
+	private void linkEmbedded() {
+		final EntityManager em = this.getEmf().createEntityManager();
+		final EntityTransaction et = em.getTransaction();
+		et.begin();
+		final CriteriaBuilder builder = em.getCriteriaBuilder();
+		final CriteriaQuery<SampleEntity02> embeddedQuery = builder.createQuery(SampleEntity02.class);
+		embeddedQuery.from(SampleEntity02.class);
+		final List<SampleEntity02> embedded = em.createQuery(embeddedQuery).getResultList();
+		final CriteriaQuery<SampleEntity01> query = builder.createQuery(SampleEntity01.class);
+		final Root<SampleEntity01> root = query.from(SampleEntity01.class);
+		query.orderBy(builder.asc(root.get("identifier")));
+		final List<SampleEntity01> entities = em.createQuery(query).setMaxResults(embedded.size()).getResultList();
+		for (int i = 0; i < embedded.size(); i++) {
+			embedded.get(i).setEntity(entities.get(i));
+		}
+		et.commit();
+		em.close();
+	}
+
+	/**
+	 * Inserts elements with an embedded key, 4 per identifier.
+	 * 
+	 * @param count
+	 *            The number of elements.
+	 */
+	private void insertEmbedded(final int count) {
+		final EntityManager em = this.getEmf().createEntityManager();
+		final EntityTransaction et = em.getTransaction();
+		et.begin();
+		for (int i = 0; i < count; i++) {
+			final SampleEntity02 entity = new SampleEntity02();
+			entity.setKey(this.createKey(i / 4, i % 4));
+			entity.setTest(new StringBuilder("embedded-instance-").append(i).toString());
+			em.persist(entity);
+		}
+		et.commit();
+		em.close();
+	}
 }
@@ -0,0 +1,207 @@
+/* 
+ * Model Tools.
+ * Copyright (C) 2013 Pal Hargitai (pal@lunarray.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.lunarray.model.descriptor.dictionary.cache;
+
+import java.io.Serializable;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.Assert;
+
+import org.easymock.EasyMock;
+import org.easymock.IAnswer;
+import org.junit.Before;
+import org.junit.Test;
+import org.lunarray.model.descriptor.dictionary.Dictionary;
+import org.lunarray.model.descriptor.dictionary.PaginatedDictionary;
+import org.lunarray.model.descriptor.dictionary.exceptions.DictionaryException;
+import org.lunarray.model.descriptor.model.SampleEntity01;
+import org.lunarray.model.descriptor.model.entity.KeyedEntityDescriptor;
+
+/**
+ * Test the caching dictionary.
+ * 
+ * @author Pal Hargitai (pal@lunarray.org)
+ * @see CachingDictionary
+ */
+public class CachingDictionaryTest {
+
+	/** The cache. */
+	private CachingDictionary cache;
+	/** The delegate. */
+	private PaginatedDictionary delegate;
+	/** The descriptor. */
+	private KeyedEntityDescriptor<SampleEntity01, Long> descriptor;
+
+	/** Set up the mocks and the cache. */
+	@SuppressWarnings("unchecked")
+	@Before
+	public void init() {
+		this.delegate = EasyMock.createMock(PaginatedDictionary.class);
+		this.descriptor = EasyMock.createMock(KeyedEntityDescriptor.class);
+		EasyMock.expect(this.descriptor.getEntityType()).andReturn(SampleEntity01.class).anyTimes();
+		EasyMock.replay(this.descriptor);
+		this.cache = new CachingDictionary(this.delegate, null, 2, 1, TimeUnit.HOURS);
+	}
+
+	/**
+	 * Test evicting the least recently used entity.
+	 * 
+	 * @see Dictionary#lookup(KeyedEntityDescriptor, Serializable)
+	 */
+	@Test
+	public void testEviction() throws DictionaryException {
+		EasyMock.expect(this.delegate.lookup(this.descriptor, Long.valueOf(1l))).andReturn(this.createEntity(1l)).times(2);
+		EasyMock.expect(this.delegate.lookup(this.descriptor, Long.valueOf(2l))).andReturn(this.createEntity(2l)).once();
+		EasyMock.expect(this.delegate.lookup(this.descriptor, Long.valueOf(3l))).andReturn(this.createEntity(3l)).once();
+		EasyMock.replay(this.delegate);
+		this.cache.lookup(this.descriptor, Long.valueOf(1l));
+		this.cache.lookup(this.descriptor, Long.valueOf(2l));
+		this.cache.lookup(this.descriptor, Long.valueOf(2l));
+		this.cache.lookup(this.descriptor, Long.valueOf(3l));
+		this.cache.lookup(this.descriptor, Long.valueOf(1l));
+		EasyMock.verify(this.delegate);
+		Assert.assertEquals(1, this.cache.getHits());
+		Assert.assertEquals(4, this.cache.getMisses());
+		Assert.assertEquals(2, this.cache.getEvictions());
+		Assert.assertEquals(2, this.cache.getSize());
+	}
+
+	/**
+	 * Test invalidation through the entity listener.
+	 * 
+	 * @see CacheInvalidationListener
+	 */
+	@Test
+	public void testInvalidation() throws DictionaryException {
+		final SampleEntity01 entity = this.createEntity(1l);
+		EasyMock.expect(this.delegate.lookup(this.descriptor, Long.valueOf(1l))).andReturn(entity).times(2);
+		EasyMock.replay(this.delegate);
+		CacheInvalidationListener.register(this.cache);
+		try {
+			Assert.assertSame(entity, this.cache.lookup(this.descriptor, Long.valueOf(1l)));
+			Assert.assertSame(entity, this.cache.lookup(this.descriptor, Long.valueOf(1l)));
+			new CacheInvalidationListener().invalidate(entity);
+			Assert.assertEquals(0, this.cache.getSize());
+			Assert.assertSame(entity, this.cache.lookup(this.descriptor, Long.valueOf(1l)));
+		} finally {
+			CacheInvalidationListener.unregister(this.cache);
+		}
+		EasyMock.verify(this.delegate);
+		Assert.assertEquals(1, this.cache.getHits());
+		Assert.assertEquals(2, this.cache.getMisses());
+	}
+
+	/**
+	 * Test that an invalidation while the entity is looked up is not lost.
+	 * 
+	 * @see CachingDictionary#invalidate(Object)
+	 */
+	@Test
+	public void testInvalidationDuringLookup() throws DictionaryException {
+		final SampleEntity01 entity = this.createEntity(1l);
+		EasyMock.expect(this.delegate.lookup(this.descriptor, Long.valueOf(1l))).andAnswer(new IAnswer<SampleEntity01>() {
+			/** {@inheritDoc} */
+			@Override
+			public SampleEntity01 answer() {
+				CachingDictionaryTest.this.cache.invalidate(entity);
+				return entity;
+			}
+		}).once();
+		EasyMock.expect(this.delegate.lookup(this.descriptor, Long.valueOf(1l))).andReturn(entity).once();
+		EasyMock.replay(this.delegate);
+		Assert.assertSame(entity, this.cache.lookup(this.descriptor, Long.valueOf(1l)));
+		Assert.assertEquals(0, this.cache.getSize());
+		Assert.assertSame(entity, this.cache.lookup(this.descriptor, Long.valueOf(1l)));
+		Assert.assertSame(entity, this.cache.lookup(this.descriptor, Long.valueOf(1l)));
+		EasyMock.verify(this.delegate);
+		Assert.assertEquals(1, this.cache.getHits());
+		Assert.assertEquals(2, this.cache.getMisses());
+	}
+
+	/**
+	 * Test concurrent lookups of an entity share one lookup, which does not
+	 * evict cached entities while it is in progress.
+	 * 
+	 * @see Dictionary#lookup(KeyedEntityDescriptor, Serializable)
+	 */
+	@Test
+	public void testConcurrentLookup() throws Exception {
+		final SampleEntity01 entity = this.createEntity(1l);
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch proceed = new CountDownLatch(1);
+		EasyMock.expect(this.delegate.lookup(this.descriptor, Long.valueOf(2l))).andReturn(this.createEntity(2l)).once();
+		EasyMock.expect(this.delegate.lookup(this.descriptor, Long.valueOf(3l))).andReturn(this.createEntity(3l)).once();
+		EasyMock.expect(this.delegate.lookup(this.descriptor, Long.valueOf(1l))).andAnswer(new IAnswer<SampleEntity01>() {
+			/** {@inheritDoc} */
+			@Override
+			public SampleEntity01 answer() throws InterruptedException {
+				started.countDown();
+				proceed.await();
+				return entity;
+			}
+		}).once();
+		EasyMock.replay(this.delegate);
+		this.cache.lookup(this.descriptor, Long.valueOf(2l));
+		this.cache.lookup(this.descriptor, Long.valueOf(3l));
+		final ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			final Callable<SampleEntity01> lookup = new Callable<SampleEntity01>() {
+				/** {@inheritDoc} */
+				@Override
+				public SampleEntity01 call() throws DictionaryException {
+					return CachingDictionaryTest.this.cache.lookup(CachingDictionaryTest.this.descriptor, Long.valueOf(1l));
+				}
+			};
+			final Future<SampleEntity01> first = executor.submit(lookup);
+			Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+			final Future<SampleEntity01> second = executor.submit(lookup);
+			while (this.cache.getHits() == 0) {
+				Thread.sleep(1);
+			}
+			Assert.assertEquals(2, this.cache.getSize());
+			Assert.assertEquals(0, this.cache.getEvictions());
+			proceed.countDown();
+			Assert.assertSame(entity, first.get(10, TimeUnit.SECONDS));
+			Assert.assertSame(entity, second.get(10, TimeUnit.SECONDS));
+		} finally {
+			executor.shutdownNow();
+		}
+		EasyMock.verify(this.delegate);
+		Assert.assertEquals(1, this.cache.getHits());
+		Assert.assertEquals(3, this.cache.getMisses());
+		Assert.assertEquals(1, this.cache.getEvictions());
+	}
+
+	/**
+	 * Creates an entity.
+	 * 
+	 * @param identifier
+	 *            The identifier.
+	 * @return The entity.
+	 */
+	private SampleEntity01 createEntity(final long identifier) {
+		final SampleEntity01 entity = new SampleEntity01();
+		entity.setIdentifier(Long.valueOf(identifier));
+		return entity;
+	}
+}
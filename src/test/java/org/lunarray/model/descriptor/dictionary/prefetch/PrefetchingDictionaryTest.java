@@ -0,0 +1,169 @@
+/* 
+ * Model Tools.
+ * Copyright (C) 2013 Pal Hargitai (pal@lunarray.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.lunarray.model.descriptor.dictionary.prefetch;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.Assert;
+
+import org.easymock.EasyMock;
+import org.junit.Before;
+import org.junit.Test;
+import org.lunarray.model.descriptor.dictionary.PaginatedDictionary;
+import org.lunarray.model.descriptor.model.SampleEntity01;
+import org.lunarray.model.descriptor.model.entity.EntityDescriptor;
+
+/**
+ * Test the prefetching dictionary.
+ * 
+ * @author Pal Hargitai (pal@lunarray.org)
+ * @see PrefetchingDictionary
+ */
+public class PrefetchingDictionaryTest {
+
+	/** The delegate. */
+	private PaginatedDictionary delegate;
+	/** The descriptor. */
+	private EntityDescriptor<SampleEntity01> descriptor;
+	/** A page. */
+	private List<SampleEntity01> page;
+
+	/** Set up the mocks. */
+	@SuppressWarnings("unchecked")
+	@Before
+	public void init() {
+		this.descriptor = EasyMock.createMock(EntityDescriptor.class);
+		EasyMock.expect(this.descriptor.getEntityType()).andReturn(SampleEntity01.class).anyTimes();
+		EasyMock.replay(this.descriptor);
+		this.page = Collections.nCopies(10, new SampleEntity01());
+		this.delegate = EasyMock.createMock(PaginatedDictionary.class);
+	}
+
+	/**
+	 * Page through, jump to another page, then return to a prefetched page.
+	 * 
+	 * @see PaginatedDictionary#lookupPaginated(EntityDescriptor, int, int)
+	 */
+	@Test
+	public void testPrefetch() throws Exception {
+		EasyMock.expect(this.delegate.lookupPaginated(this.descriptor, 10, 10)).andReturn(this.page).once();
+		EasyMock.expect(this.delegate.lookupPaginated(this.descriptor, 20, 10)).andReturn(this.page).once();
+		EasyMock.expect(this.delegate.lookupPaginated(this.descriptor, 30, 10)).andReturn(this.page).once();
+		EasyMock.expect(this.delegate.lookupPaginated(this.descriptor, 50, 10)).andReturn(this.page).once();
+		EasyMock.expect(this.delegate.lookupPaginated(this.descriptor, 60, 10)).andReturn(this.page).once();
+		EasyMock.expect(this.delegate.lookupPaginated(this.descriptor, 40, 10)).andReturn(this.page).once();
+		EasyMock.replay(this.delegate);
+		final PrefetchingDictionary dictionary = new PrefetchingDictionary(this.delegate, new DirectExecutorService(true), 1, 100,
+				1, TimeUnit.MINUTES);
+		Assert.assertEquals(10, dictionary.lookupPaginated(this.descriptor, 10, 10).size());
+		Assert.assertEquals(10, dictionary.lookupPaginated(this.descriptor, 20, 10).size());
+		Assert.assertEquals(10, dictionary.lookupPaginated(this.descriptor, 50, 10).size());
+		Assert.assertEquals(10, dictionary.lookupPaginated(this.descriptor, 30, 10).size());
+		EasyMock.verify(this.delegate);
+		Assert.assertEquals(2, dictionary.getHits());
+		Assert.assertEquals(2, dictionary.getMisses());
+		Assert.assertEquals(0, dictionary.getDiscards());
+	}
+
+	/**
+	 * A page that is not prefetched in time is looked up directly.
+	 * 
+	 * @see PrefetchingDictionary#setWaitTime(long, TimeUnit)
+	 */
+	@Test
+	public void testPrefetchTimeout() throws Exception {
+		EasyMock.expect(this.delegate.lookupPaginated(this.descriptor, 10, 10)).andReturn(this.page).once();
+		EasyMock.expect(this.delegate.lookupPaginated(this.descriptor, 20, 10)).andReturn(this.page).once();
+		EasyMock.replay(this.delegate);
+		final PrefetchingDictionary dictionary = new PrefetchingDictionary(this.delegate, new DirectExecutorService(false), 1, 100,
+				1, TimeUnit.MINUTES);
+		dictionary.setWaitTime(1, TimeUnit.MILLISECONDS);
+		Assert.assertEquals(10, dictionary.lookupPaginated(this.descriptor, 10, 10).size());
+		Assert.assertEquals(10, dictionary.lookupPaginated(this.descriptor, 20, 10).size());
+		EasyMock.verify(this.delegate);
+		Assert.assertEquals(0, dictionary.getHits());
+		Assert.assertEquals(2, dictionary.getMisses());
+		Assert.assertEquals(1, dictionary.getDiscards());
+	}
+
+	/**
+	 * Runs tasks on the submitting thread, or never.
+	 * 
+	 * @author Pal Hargitai (pal@lunarray.org)
+	 */
+	private static final class DirectExecutorService
+			extends AbstractExecutorService {
+
+		/** Whether tasks are run. */
+		private final boolean run;
+		/** Whether the executor is shut down. */
+		private boolean shutdown;
+
+		/**
+		 * Default constructor.
+		 * 
+		 * @param run
+		 *            Whether tasks are run.
+		 */
+		public DirectExecutorService(final boolean run) {
+			this.run = run;
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public boolean awaitTermination(final long timeout, final TimeUnit unit) {
+			return this.shutdown;
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public void execute(final Runnable command) {
+			if (this.run) {
+				command.run();
+			}
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public boolean isShutdown() {
+			return this.shutdown;
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public boolean isTerminated() {
+			return this.shutdown;
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public void shutdown() {
+			this.shutdown = true;
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public List<Runnable> shutdownNow() {
+			this.shutdown = true;
+			return Collections.emptyList();
+		}
+	}
+}
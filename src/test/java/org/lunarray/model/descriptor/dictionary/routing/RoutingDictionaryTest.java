@@ -0,0 +1,124 @@
+/* 
+ * Model Tools.
+ * Copyright (C) 2013 Pal Hargitai (pal@lunarray.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.lunarray.model.descriptor.dictionary.routing;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.EntityTransaction;
+import javax.persistence.Persistence;
+import javax.persistence.PersistenceException;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.lunarray.model.descriptor.builder.annotation.resolver.attribute.jpa.JpaAttributeEntityResolverStrategy;
+import org.lunarray.model.descriptor.builder.annotation.resolver.attribute.jpa.JpaAttributePropertyResolverStrategy;
+import org.lunarray.model.descriptor.builder.annotation.resolver.entity.def.DefaultEntityAttributeResolverStrategy;
+import org.lunarray.model.descriptor.builder.annotation.resolver.property.def.DefaultPropertyAttributeResolverStrategy;
+import org.lunarray.model.descriptor.builder.annotation.simple.SimpleBuilder;
+import org.lunarray.model.descriptor.model.SampleEntity01;
+import org.lunarray.model.descriptor.model.entity.EntityDescriptor;
+import org.lunarray.model.descriptor.resource.jparesource.IndexedJpaResource;
+
+/**
+ * Test the routing dictionary.
+ * 
+ * @author Pal Hargitai (pal@lunarray.org)
+ * @see RoutingDictionary
+ */
+public class RoutingDictionaryTest {
+
+	/** The persistence unit routed to, with its own database. */
+	private static final String UNIT_NAME = "routing-unit";
+
+	/**
+	 * Route through the entity index, start the unit on first lookup and close
+	 * it once idle. The data survives closing and starting the unit again.
+	 * 
+	 * @see RoutingDictionary#closeIdle()
+	 */
+	@Test
+	public void testRouting() throws Exception {
+		final SimpleBuilder<Object> builder = SimpleBuilder.createBuilder();
+		builder.attributePropertyResolver(new JpaAttributePropertyResolverStrategy(new DefaultPropertyAttributeResolverStrategy()))
+				.attributeEntityResolver(new JpaAttributeEntityResolverStrategy(new DefaultEntityAttributeResolverStrategy<Object>()))
+				.resources(new IndexedJpaResource<Object>(RoutingDictionaryTest.UNIT_NAME));
+		final EntityDescriptor<SampleEntity01> descriptor = builder.build().getEntity(SampleEntity01.class);
+		final RoutingDictionary dictionary = new RoutingDictionary(Arrays.asList(RoutingDictionaryTest.UNIT_NAME));
+		try {
+			Assert.assertEquals(RoutingDictionaryTest.UNIT_NAME, dictionary.getUnitName(SampleEntity01.class));
+			Assert.assertFalse(dictionary.isOpen(RoutingDictionaryTest.UNIT_NAME));
+			Assert.assertEquals(0, dictionary.lookupTotals(descriptor));
+			Assert.assertTrue(dictionary.isOpen(RoutingDictionaryTest.UNIT_NAME));
+			this.insert(3);
+			Assert.assertEquals(3, dictionary.lookup(descriptor).size());
+			Assert.assertEquals(0, dictionary.closeIdle());
+			dictionary.setIdleTimeout(0, TimeUnit.SECONDS);
+			Assert.assertEquals(1, dictionary.closeIdle());
+			Assert.assertFalse(dictionary.isOpen(RoutingDictionaryTest.UNIT_NAME));
+			Assert.assertEquals(3, dictionary.lookupTotals(descriptor));
+			Assert.assertTrue(dictionary.isOpen(RoutingDictionaryTest.UNIT_NAME));
+			Assert.assertEquals(3, dictionary.lookup(descriptor).size());
+		} finally {
+			dictionary.close();
+		}
+		Assert.assertFalse(dictionary.isOpen(RoutingDictionaryTest.UNIT_NAME));
+	}
+
+	/**
+	 * Types outside of all units are not routed.
+	 * 
+	 * @see RoutingDictionary#getUnitName(Class)
+	 */
+	@Test(expected = PersistenceException.class)
+	public void testUnrouted() {
+		final RoutingDictionary dictionary = new RoutingDictionary(Arrays.asList(RoutingDictionaryTest.UNIT_NAME));
+		try {
+			dictionary.getUnitName(String.class);
+		} finally {
+			dictionary.close();
+		}
+	}
+
+	/**
+	 * Inserts elements.
+	 * 
+	 * @param count
+	 *            The number of elements.
+	 */
+	private void insert(final int count) {
+		final EntityManagerFactory emf = Persistence.createEntityManagerFactory(RoutingDictionaryTest.UNIT_NAME);
+		try {
+			final EntityManager em = emf.createEntityManager();
+			final EntityTransaction et = em.getTransaction();
+			et.begin();
+			for (int i = 0; i < count; i++) {
+				final SampleEntity01 entity = new SampleEntity01();
+				entity.setSample(new StringBuilder("routed-instance-").append(i).toString());
+				em.persist(entity);
+			}
+			et.commit();
+			em.close();
+		} finally {
+			emf.close();
+		}
+	}
+}
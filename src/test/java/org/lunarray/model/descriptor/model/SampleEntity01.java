@@ -18,18 +18,22 @@
 package org.lunarray.model.descriptor.model;
 
 import javax.persistence.Entity;
+import javax.persistence.EntityListeners;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
 import javax.persistence.SequenceGenerator;
 import javax.persistence.Table;
 
+import org.lunarray.model.descriptor.dictionary.cache.CacheInvalidationListener;
+
 /**
  * Test sample entity.
  * 
  * @author Pal Hargitai (pal@lunarray.org)
  */
 @Entity(name = "sample-entity-01")
+@EntityListeners(CacheInvalidationListener.class)
 @Table(name = "sampleentity01")
 @SequenceGenerator(name = "sample-entity-01-sequence", sequenceName = "sampleentity01sequence")
 public class SampleEntity01 {
@@ -0,0 +1,78 @@
+/* 
+ * Model Tools.
+ * Copyright (C) 2013 Pal Hargitai (pal@lunarray.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.lunarray.model.descriptor.resource.jparesource;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.lunarray.model.descriptor.model.SampleEntity01;
+import org.lunarray.model.descriptor.model.SampleEntity02;
+import org.lunarray.model.descriptor.resource.Resource;
+
+/**
+ * Test indexed resource resolving.
+ * 
+ * @author Pal Hargitai (pal@lunarray.org)
+ * @see IndexedJpaResource
+ */
+public class IndexedResourceTest {
+
+	/**
+	 * Test resolving from the index written while compiling the tests.
+	 * 
+	 * @see EntityIndexProcessor
+	 */
+	@Test
+	public void testIndex() throws Exception {
+		Assert.assertNotNull(Thread.currentThread().getContextClassLoader()
+				.getResource(EntityIndexProcessor.INDEX_LOCATION + "default-unit" + EntityIndexProcessor.INDEX_SUFFIX));
+		final Resource<Class<? extends Object>> resource = new IndexedJpaResource<Object>("default-unit");
+		Assert.assertEquals(2, resource.getResources().size());
+		Assert.assertTrue(resource.getResources().contains(SampleEntity01.class));
+		Assert.assertTrue(resource.getResources().contains(SampleEntity02.class));
+		final Resource<Class<? extends SampleEntity02>> marked = new IndexedJpaResource<SampleEntity02>("default-unit",
+				SampleEntity02.class);
+		Assert.assertEquals(1, marked.getResources().size());
+	}
+
+	/**
+	 * Test the index only lists the members of a unit.
+	 * 
+	 * @see EntityIndexProcessor
+	 */
+	@Test
+	public void testIndexMembers() throws Exception {
+		final Resource<Class<? extends Object>> resource = new IndexedJpaResource<Object>("index-unit");
+		Assert.assertEquals(1, resource.getResources().size());
+		Assert.assertTrue(resource.getResources().contains(SampleEntity01.class));
+	}
+
+	/**
+	 * Test falling back to the meta model without an index.
+	 */
+	@Test
+	public void testFallback() throws Exception {
+		final ClassLoader empty = new URLClassLoader(new URL[0], null);
+		final Resource<Class<? extends Object>> resource = new IndexedJpaResource<Object>("default-unit", null, empty);
+		Assert.assertTrue(resource.getResources().contains(SampleEntity01.class));
+		Assert.assertTrue(resource.getResources().contains(SampleEntity02.class));
+	}
+}
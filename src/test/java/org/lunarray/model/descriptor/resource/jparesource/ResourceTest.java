@@ -45,4 +45,21 @@ public class ResourceTest
 		Assert.assertTrue(resource.getResources().contains(SampleEntity01.class));
 		Assert.assertTrue(resource.getResources().contains(SampleEntity02.class));
 	}
+
+	/**
+	 * Test resource resolving from an existing factory and meta model, with a
+	 * marker type.
+	 * 
+	 * @see JpaResource#JpaResource(javax.persistence.EntityManagerFactory, Class)
+	 */
+	@Test
+	public void testResourceFactory() throws Exception {
+		final Resource<Class<? extends Object>> resource = new JpaResource<Object>(this.getEmf());
+		Assert.assertEquals(2, resource.getResources().size());
+		Assert.assertTrue(this.getEmf().isOpen());
+		final Resource<Class<? extends SampleEntity01>> marked = new JpaResource<SampleEntity01>(this.getEmf().getMetamodel(),
+				SampleEntity01.class);
+		Assert.assertEquals(1, marked.getResources().size());
+		Assert.assertTrue(marked.getResources().contains(SampleEntity01.class));
+	}
 }